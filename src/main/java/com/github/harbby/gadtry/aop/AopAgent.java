@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop;
+
+import com.github.harbby.gadtry.aop.impl.LoadTimeWeaver;
+
+import java.lang.instrument.Instrumentation;
+
+import static com.github.harbby.gadtry.base.MoreObjects.checkState;
+
+/**
+ * Java agent entry of load-time weaving.
+ * <pre>
+ *     java -javaagent:gadtry.jar ...
+ *
+ *     AopAgent.install(binder -&gt; binder.bind("timer", "execution(* com.example.service.*.*(..))")
+ *             .around(joinPoint -&gt; joinPoint.proceed()));
+ * </pre>
+ * install之后加载的匹配类会被直接织入advice, 不需要再通过AopFactory/AopGo创建代理对象.
+ */
+public final class AopAgent
+{
+    private static volatile Instrumentation instrumentation;
+
+    private AopAgent() {}
+
+    public static void premain(String agentArgs, Instrumentation inst)
+    {
+        instrumentation = inst;
+    }
+
+    public static void agentmain(String agentArgs, Instrumentation inst)
+    {
+        instrumentation = inst;
+    }
+
+    public static Instrumentation getInstrumentation()
+    {
+        return instrumentation;
+    }
+
+    public static boolean isInstalled()
+    {
+        return instrumentation != null;
+    }
+
+    public static LoadTimeWeaver install(Aspect... aspects)
+    {
+        Instrumentation inst = instrumentation;
+        checkState(inst != null, "gadtry agent not loaded, please add -javaagent:gadtry.jar");
+        LoadTimeWeaver weaver = LoadTimeWeaver.create(aspects);
+        inst.addTransformer(weaver);
+        return weaver;
+    }
+}
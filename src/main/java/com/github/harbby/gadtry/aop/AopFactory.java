@@ -24,12 +24,14 @@ import com.github.harbby.gadtry.aop.model.MethodInfo;
 import com.github.harbby.gadtry.aop.model.Pointcut;
 import com.github.harbby.gadtry.aop.v1.FilterBuilder;
 import com.github.harbby.gadtry.aop.v1.MethodFilter;
+import com.github.harbby.gadtry.aop.v1.PointcutExpression;
 import com.github.harbby.gadtry.collection.mutable.MutableList;
 import com.github.harbby.gadtry.function.Function1;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import static com.github.harbby.gadtry.base.MoreObjects.checkState;
@@ -58,11 +60,14 @@ public interface AopFactory
         List<Pointcut> pointcuts = new ArrayList<>();
         Binder binder = new Binder()
         {
-            @Deprecated
             @Override
             public PointBuilder bind(String pointName, String location)
             {
-                throw new UnsupportedOperationException("this method have't support!");
+                Pointcut pointcut = new Pointcut(pointName);
+                pointcut.setExpression(PointcutExpression.compile(location));
+                pointcut.setSearchClass(Collections.emptySet());
+                pointcuts.add(pointcut);
+                return new PointBuilder(pointcut);
             }
 
             @Override
@@ -83,11 +88,12 @@ public interface AopFactory
     public static <T> ByInstance<T> proxy(Class<T> pClass)
     {
         if (pClass.isInterface()) {
-            return instance -> new ProxyBuilder<>(pClass, instance, JdkProxy::newProxyInstance);
+            Proxy proxy = JavassistProxy.isAnonymousInterfaceProxy() ? JavassistProxy::newAnonymousProxyInstance : JdkProxy::newProxyInstance;
+            return instance -> new ProxyBuilder<>(pClass, instance, proxy);
         }
         else {
             checkState(!Modifier.isFinal(pClass.getModifiers()), pClass + " is final");
-            return instance -> new ProxyBuilder<>(pClass, instance, JavassistProxy::newProxyInstance);
+            return instance -> new ProxyBuilder<>(pClass, instance, JavassistProxy::newDirectProxyInstance);
         }
     }
 
@@ -132,6 +138,15 @@ public interface AopFactory
             return this;
         }
 
+        /**
+         * advice执行时复用JoinPoint和Before/After视图, 只对该代理生效, 见 {@link com.github.harbby.gadtry.aop.runtime.ReusableJoinPoint}
+         */
+        public ProxyBuilder<T> reuseJoinPoint()
+        {
+            this.reuseView = true;
+            return this;
+        }
+
         @Override
         protected Function1<MethodInfo, Boolean> getMethodFilter()
         {
@@ -17,6 +17,7 @@ package com.github.harbby.gadtry.aop;
 
 import com.github.harbby.gadtry.aop.aopgo.AopBuilder;
 import com.github.harbby.gadtry.aop.aopgo.AroundHandler;
+import com.github.harbby.gadtry.aop.aopgo.AsyncAroundHandler;
 import com.github.harbby.gadtry.aop.mock.MockGo;
 import com.github.harbby.gadtry.aop.model.After;
 import com.github.harbby.gadtry.aop.model.AfterReturning;
@@ -68,4 +69,19 @@ public class AopGo
     {
         return doAround(AroundHandler.doAfterThrowing(afterThrowing));
     }
+
+    public static MockGo.DoBuilder doAsyncAfter(Consumer<After, Exception> after)
+    {
+        return doAround(AsyncAroundHandler.doAsyncAfter(after));
+    }
+
+    public static MockGo.DoBuilder doAsyncAfterReturning(Consumer<AfterReturning, Exception> afterReturning)
+    {
+        return doAround(AsyncAroundHandler.doAsyncAfterReturning(afterReturning));
+    }
+
+    public static MockGo.DoBuilder doAsyncAfterThrowing(Consumer<AfterThrowing, Exception> afterThrowing)
+    {
+        return doAround(AsyncAroundHandler.doAsyncAfterThrowing(afterThrowing));
+    }
 }
@@ -29,13 +29,13 @@ import static java.util.Objects.requireNonNull;
 public interface Binder
 {
     /**
-     * Define a pointcut
+     * Define a pointcut by location expression,
+     * e.g. {@code execution(* com.example..*Service.get*(..)) && !@annotation(com.example.Ignore)}
      *
      * @param pointName cut name
-     * @param location cut location
+     * @param location cut location, see: {@link com.github.harbby.gadtry.aop.v1.PointcutExpression}
      * @return next set CutMode
      */
-    @Deprecated
     public PointBuilder bind(String pointName, String location);
 
     /**
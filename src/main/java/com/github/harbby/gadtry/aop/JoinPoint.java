@@ -16,6 +16,7 @@
 package com.github.harbby.gadtry.aop;
 
 import com.github.harbby.gadtry.aop.model.Before;
+import com.github.harbby.gadtry.aop.runtime.MethodInvoker;
 
 import java.lang.reflect.Method;
 
@@ -37,6 +38,24 @@ public interface JoinPoint
     Object proceed(Object[] args)
             throws Throwable;
 
+    /**
+     * @return index of the method in the proxy method table, -1 if unknown
+     * @see com.github.harbby.gadtry.aop.runtime.ProxyRuntime#getProxyMethods(Class)
+     */
+    default int getMethodIndex()
+    {
+        return -1;
+    }
+
+    /**
+     * @return true if this point and the advice views of the call are reused after the call returns
+     * @see com.github.harbby.gadtry.aop.runtime.ReusableJoinPoint
+     */
+    default boolean isReusable()
+    {
+        return false;
+    }
+
     public static JoinPoint of(Object instance, Method method, Object[] args)
     {
         requireNonNull(instance, "instance is null");
@@ -63,6 +82,54 @@ public interface JoinPoint
         };
     }
 
+    /**
+     * proceed() calls the method by the generated {@link MethodInvoker}, not by reflection
+     */
+    public static JoinPoint of(MethodInvoker invoker, Object instance, Method method, Object[] args)
+    {
+        requireNonNull(instance, "instance is null");
+        int methodIndex = invoker.getIndex(method);
+        if (methodIndex < 0) {
+            return of(instance, method, args);
+        }
+        return of(invoker, methodIndex, instance, method, args);
+    }
+
+    /**
+     * @param methodIndex index of the method in the proxy method table, it must be {@code invoker.getIndex(method)}
+     */
+    public static JoinPoint of(MethodInvoker invoker, int methodIndex, Object instance, Method method, Object[] args)
+    {
+        requireNonNull(instance, "instance is null");
+        return new JoinPoint()
+        {
+            @Override
+            public Method getMethod()
+            {
+                return method;
+            }
+
+            @Override
+            public Object proceed(Object[] args)
+                    throws Throwable
+            {
+                return invoker.invoke(methodIndex, instance, args);
+            }
+
+            @Override
+            public int getMethodIndex()
+            {
+                return methodIndex;
+            }
+
+            @Override
+            public Object[] getArgs()
+            {
+                return args;
+            }
+        };
+    }
+
     public static JoinPoint of(Method method, Object[] args)
     {
         return new JoinPoint()
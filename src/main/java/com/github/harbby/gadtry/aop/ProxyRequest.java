@@ -31,6 +31,8 @@ public class ProxyRequest<T>
     private Object target;
     private final Class<T> superclass;
     private boolean disableSuperMethod = false;
+    private boolean directDispatch = false;
+    private boolean anonymousClass = false;
 
     public ProxyRequest(Class<T> superclass)
     {
@@ -72,6 +74,16 @@ public class ProxyRequest<T>
         return disableSuperMethod;
     }
 
+    public boolean isDirectDispatch()
+    {
+        return directDispatch;
+    }
+
+    public boolean isAnonymousClass()
+    {
+        return anonymousClass;
+    }
+
     public static <T> Builder<T> builder(Class<T> superclass)
     {
         return new Builder<>(superclass);
@@ -112,6 +124,35 @@ public class ProxyRequest<T>
             return this;
         }
 
+        /**
+         * Generated proxy methods call {@link com.github.harbby.gadtry.aop.impl.DirectHandler} by method index
+         * when the handler implements it, this mode always uses javassist proxy, also when superclass is an interface.
+         * It removes the Method lookup and the args array (up to 3 parameters), primitive arguments and return values are still boxed.
+         * A handler that is not a DirectHandler is called by {@code handler.invoke(proxy, method, args)} as in the default mode.
+         *
+         * @return Builder
+         */
+        public Builder<T> directDispatch()
+        {
+            request.directDispatch = true;
+            return this;
+        }
+
+        /**
+         * Interface proxy is generated by javassist in direct dispatch mode and defined as a vm anonymous class
+         * of the interface (see: {@link com.github.harbby.gadtry.memory.UnsafeHelper#defineAnonymousClass}),
+         * instead of {@link java.lang.reflect.Proxy}. Proxy objects of an anonymous class can not be deserialized.
+         *
+         * @return Builder
+         */
+        public Builder<T> anonymousClass()
+        {
+            checkState(request.superclass.isInterface(), "anonymousClass only supports interface, but " + request.superclass);
+            request.anonymousClass = true;
+            request.directDispatch = true;
+            return this;
+        }
+
         public Builder<T> setInvocationHandler(InvocationHandler handler)
         {
             request.handler = requireNonNull(handler, "handler is null");
@@ -18,36 +18,16 @@ package com.github.harbby.gadtry.aop.aopgo;
 import com.github.harbby.gadtry.aop.JoinPoint;
 import com.github.harbby.gadtry.function.exception.Function;
 
-import java.lang.reflect.Method;
+import java.util.Arrays;
 
 public interface Advice
         extends Function<JoinPoint, Object, Throwable>
 {
+    /**
+     * this advice runs outside newAdvice, the advices are kept in one flat chain
+     */
     default Advice merge(Advice newAdvice)
     {
-        return joinPoint -> {
-            final JoinPoint mergeJoinPoint = new JoinPoint()
-            {
-                @Override
-                public Method getMethod()
-                {
-                    return joinPoint.getMethod();
-                }
-
-                @Override
-                public Object[] getArgs()
-                {
-                    return joinPoint.getArgs();
-                }
-
-                @Override
-                public Object proceed(Object[] args)
-                        throws Throwable
-                {
-                    return newAdvice.apply(joinPoint);
-                }
-            };
-            return this.apply(mergeJoinPoint);
-        };
+        return AdviceChain.of(Arrays.asList(this, newAdvice));
     }
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.aopgo;
+
+import com.github.harbby.gadtry.aop.JoinPoint;
+import com.github.harbby.gadtry.aop.runtime.ReusableJoinPoint.EscapingAdvice;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.github.harbby.gadtry.base.MoreObjects.checkState;
+
+/**
+ * 扁平的advice拦截链, advices[0]在最外层, 最后一个advice的proceed()调用目标方法.
+ * <p>
+ * 每次调用只创建一个 {@link ChainJoinPoint}, 按下标推进, 不再像嵌套的merge那样每层包装一个JoinPoint.
+ * 链中有 {@link EscapingAdvice} 时整条链也是EscapingAdvice, 复用模式的代理不会把复用的JoinPoint传给它
+ */
+class AdviceChain
+        implements Advice
+{
+    private final Advice[] advices;
+
+    private AdviceChain(Advice[] advices)
+    {
+        this.advices = advices;
+    }
+
+    /**
+     * 展开嵌套的AdviceChain, 保持advice的先后顺序
+     */
+    static Advice of(List<Advice> advices)
+    {
+        List<Advice> flatAdvices = new ArrayList<>(advices.size());
+        for (Advice advice : advices) {
+            if (advice instanceof AdviceChain) {
+                Collections.addAll(flatAdvices, ((AdviceChain) advice).advices);
+            }
+            else {
+                flatAdvices.add(advice);
+            }
+        }
+        checkState(!flatAdvices.isEmpty(), "advices is empty");
+        if (flatAdvices.size() == 1) {
+            return flatAdvices.get(0);
+        }
+        Advice[] array = flatAdvices.toArray(new Advice[0]);
+        for (Advice advice : array) {
+            if (advice instanceof EscapingAdvice) {
+                return new EscapingAdviceChain(array);
+            }
+        }
+        return new AdviceChain(array);
+    }
+
+    @Override
+    public Object apply(JoinPoint joinPoint)
+            throws Throwable
+    {
+        return advices[0].apply(new ChainJoinPoint(advices, joinPoint));
+    }
+
+    private static final class ChainJoinPoint
+            implements JoinPoint
+    {
+        private final Advice[] advices;
+        private final JoinPoint target;
+        private Object[] args;
+        private int index;
+
+        private ChainJoinPoint(Advice[] advices, JoinPoint target)
+        {
+            this.advices = advices;
+            this.target = target;
+            this.args = target.getArgs();
+        }
+
+        @Override
+        public Method getMethod()
+        {
+            return target.getMethod();
+        }
+
+        @Override
+        public int getMethodIndex()
+        {
+            return target.getMethodIndex();
+        }
+
+        @Override
+        public boolean isReusable()
+        {
+            return target.isReusable();
+        }
+
+        @Override
+        public Object[] getArgs()
+        {
+            return args;
+        }
+
+        @Override
+        public Object proceed(Object[] args)
+                throws Throwable
+        {
+            int current = this.index;
+            Object[] currentArgs = this.args;
+            int next = current + 1;
+            if (next == advices.length) {
+                return target.proceed(args);
+            }
+            this.index = next;
+            this.args = args;
+            try {
+                return advices[next].apply(this);
+            }
+            finally {
+                //advice可能多次调用proceed(), 返回后恢复当前层的状态
+                this.index = current;
+                this.args = currentArgs;
+            }
+        }
+    }
+
+    private static final class EscapingAdviceChain
+            extends AdviceChain
+            implements EscapingAdvice
+    {
+        private EscapingAdviceChain(Advice[] advices)
+        {
+            super(advices);
+        }
+    }
+}
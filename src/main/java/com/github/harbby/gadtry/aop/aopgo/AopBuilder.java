@@ -15,13 +15,17 @@
  */
 package com.github.harbby.gadtry.aop.aopgo;
 
+import com.github.harbby.gadtry.aop.JoinPoint;
 import com.github.harbby.gadtry.aop.ProxyRequest;
 import com.github.harbby.gadtry.aop.impl.Proxy;
 import com.github.harbby.gadtry.aop.impl.ProxyHandler;
+import com.github.harbby.gadtry.aop.mock.AopGoInvocationHandler;
 import com.github.harbby.gadtry.aop.mock.AopInvocationHandler;
 import com.github.harbby.gadtry.function.exception.Consumer;
+import com.github.harbby.gadtry.function.exception.Function;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -37,6 +41,7 @@ public class AopBuilder<T>
 
     private Consumer<MockBinder<T>, Throwable>[] binders = new Consumer[0];
     private String basePackage;
+    private boolean reuseJoinPoint;
 
     public AopBuilder(Class<T> superclass, T target)
     {
@@ -50,6 +55,16 @@ public class AopBuilder<T>
         return this;
     }
 
+    /**
+     * advice执行时复用JoinPoint和Before/After视图, 只对该代理生效.
+     * advice不能在调用返回后保存或在其他线程中使用它们, 见 {@link com.github.harbby.gadtry.aop.runtime.ReusableJoinPoint}
+     */
+    public final AopBuilder<T> reuseJoinPoint()
+    {
+        this.reuseJoinPoint = true;
+        return this;
+    }
+
     @SafeVarargs
     public final AopBuilder<T> aop(Consumer<MockBinder<T>, Throwable>... binders)
     {
@@ -61,14 +76,17 @@ public class AopBuilder<T>
     {
         ClassLoader loader = superclass.getClassLoader() == null ? ProxyHandler.class.getClassLoader() :
                 superclass.getClassLoader();
-        final AopInvocationHandler aopInvocationHandler = new AopInvocationHandler(target);
-        ProxyRequest<T> request = ProxyRequest.builder(superclass)
+        final AopInvocationHandler aopInvocationHandler = new AopGoInvocationHandler(target, reuseJoinPoint);
+        ProxyRequest.Builder<T> builder = ProxyRequest.builder(superclass)
                 .setInvocationHandler(aopInvocationHandler)
                 .setClassLoader(loader)
                 .setTarget(target)
-                .basePackage(basePackage)
-                .build();
-        T proxy = Proxy.proxy(request);
+                .basePackage(basePackage);
+        if (!superclass.isInterface()) {
+            //按方法下标分派, 不再经过Method查找
+            builder.directDispatch();
+        }
+        T proxy = Proxy.proxy(builder.build());
         aopInvocationHandler.setProxyClass(proxy.getClass());
         //---------------------------
         final MockBinder<T> mockBinder = new MockBinder<>(proxy, aopInvocationHandler);
@@ -81,14 +99,20 @@ public class AopBuilder<T>
             }
         }
         List<Aspect> aspects = mockBinder.build();
-        Map<Method, Advice> methodAdviceMap = new HashMap<>();
+        Map<Method, List<Advice>> methodAdviceMap = new HashMap<>();
         for (Aspect aspect : aspects) {
+            Advice[] advices = aspect.getAdvices();
+            if (advices.length == 0) {
+                continue;
+            }
             List<Method> methods = aspect.getPointcut().filter(proxy.getClass());
-            //merge aspect
-            Arrays.stream(aspect.getAdvices()).reduce(Advice::merge).ifPresent(advice ->
-                    methods.forEach(method -> methodAdviceMap.merge(method, advice, Advice::merge)));
+            //merge aspect, 先注册的aspect在外层
+            methods.forEach(method -> methodAdviceMap.computeIfAbsent(method, k -> new ArrayList<>())
+                    .addAll(Arrays.asList(advices)));
         }
-        methodAdviceMap.forEach(aopInvocationHandler::register);
+        Map<Method, Function<JoinPoint, Object, Throwable>> methodAdvices = new HashMap<>();
+        methodAdviceMap.forEach((method, advices) -> methodAdvices.put(method, AdviceChain.of(advices)));
+        aopInvocationHandler.registerAll(methodAdvices);
         return proxy;
     }
 }
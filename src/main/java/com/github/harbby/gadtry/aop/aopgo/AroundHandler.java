@@ -20,6 +20,7 @@ import com.github.harbby.gadtry.aop.model.After;
 import com.github.harbby.gadtry.aop.model.AfterReturning;
 import com.github.harbby.gadtry.aop.model.AfterThrowing;
 import com.github.harbby.gadtry.aop.model.Before;
+import com.github.harbby.gadtry.aop.runtime.ReusableJoinPoint;
 import com.github.harbby.gadtry.function.exception.Consumer;
 import com.github.harbby.gadtry.function.exception.Function;
 
@@ -31,7 +32,13 @@ public interface AroundHandler
     static AroundHandler doBefore(Consumer<Before, Exception> before)
     {
         return f -> {
-            before.apply(Before.of(f.getMethod(), f.getArgs()));
+            //before不能拿到JoinPoint调用proceed(), 复用模式下使用只读视图
+            if (f.isReusable()) {
+                ReusableJoinPoint.apply(before, f, null, null);
+            }
+            else {
+                before.apply(Before.of(f.getMethod(), f.getArgs()));
+            }
             return f.proceed();
         };
     }
@@ -40,7 +47,12 @@ public interface AroundHandler
     {
         return f -> {
             Object value = f.proceed();
-            afterReturning.apply(AfterReturning.of(f.getMethod(), f.getArgs(), value));
+            if (f.isReusable()) {
+                ReusableJoinPoint.apply(afterReturning, f, value, null);
+            }
+            else {
+                afterReturning.apply(AfterReturning.of(f.getMethod(), f.getArgs(), value));
+            }
             return value;
         };
     }
@@ -51,13 +63,15 @@ public interface AroundHandler
             try {
                 return f.proceed();
             }
-            catch (InvocationTargetException e) {
-                afterThrowing.apply(AfterThrowing.of(f.getMethod(), f.getArgs(), e.getTargetException()));
-                throw e.getTargetException();
-            }
             catch (Throwable e) {
-                afterThrowing.apply(AfterThrowing.of(f.getMethod(), f.getArgs(), e));
-                throw e;
+                Throwable throwable = e instanceof InvocationTargetException ? ((InvocationTargetException) e).getTargetException() : e;
+                if (f.isReusable()) {
+                    ReusableJoinPoint.apply(afterThrowing, f, null, throwable);
+                }
+                else {
+                    afterThrowing.apply(AfterThrowing.of(f.getMethod(), f.getArgs(), throwable));
+                }
+                throw throwable;
             }
         };
     }
@@ -76,7 +90,12 @@ public interface AroundHandler
                 throw e;
             }
             finally {
-                after.apply(After.of(f.getMethod(), f.getArgs(), value, throwable));
+                if (f.isReusable()) {
+                    ReusableJoinPoint.apply(after, f, value, throwable);
+                }
+                else {
+                    after.apply(After.of(f.getMethod(), f.getArgs(), value, throwable));
+                }
             }
         };
     }
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.aopgo;
+
+import com.github.harbby.gadtry.aop.JoinPoint;
+import com.github.harbby.gadtry.aop.model.After;
+import com.github.harbby.gadtry.aop.model.AfterReturning;
+import com.github.harbby.gadtry.aop.model.AfterThrowing;
+import com.github.harbby.gadtry.aop.runtime.ReusableJoinPoint.EscapingAdvice;
+import com.github.harbby.gadtry.function.exception.Consumer;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Future;
+
+import static com.github.harbby.gadtry.base.Throwables.throwsThrowable;
+
+/**
+ * CompletableFuture-aware advice.
+ * <p>
+ * 方法返回 {@link CompletionStage} 时, advice在future完成时执行(异常完成时即afterThrowing), 不阻塞调用线程.
+ * 方法声明的返回类型是CompletableFuture, CompletionStage或Future时,
+ * 返回的是挂接advice后的future, 调用方看到结果时advice已经执行完成, advice抛出的异常也会使返回的future异常完成;
+ * 否则(例如声明为Object)advice挂接在原future上, 原样返回. 返回的future被cancel时会同时cancel原future.
+ * 方法同步返回非future值或同步抛出异常时, 与 {@link AroundHandler} 行为一致.
+ * 无论同步还是异步, advice拿到的异常都去掉了CompletionException包装, 调用方看到的异常不变.
+ * <p>
+ * advice可能在其他线程执行, 因此返回的handler都是 {@link EscapingAdvice}, 不会拿到复用的JoinPoint, 也不使用复用的视图
+ */
+public final class AsyncAroundHandler
+{
+    private AsyncAroundHandler() {}
+
+    public static AroundHandler doAsyncAfterReturning(Consumer<AfterReturning, Exception> afterReturning)
+    {
+        return (AroundHandler & EscapingAdvice) f -> {
+            Method method = f.getMethod();
+            Object[] args = f.getArgs();
+            Object value = f.proceed();
+            if (value instanceof CompletionStage) {
+                return whenComplete(method, (CompletionStage<?>) value, (result, e) -> {
+                    if (e == null) {
+                        afterReturning.apply(AfterReturning.of(method, args, result));
+                    }
+                });
+            }
+            afterReturning.apply(AfterReturning.of(method, args, value));
+            return value;
+        };
+    }
+
+    public static AroundHandler doAsyncAfterThrowing(Consumer<AfterThrowing, Exception> afterThrowing)
+    {
+        return (AroundHandler & EscapingAdvice) f -> {
+            Method method = f.getMethod();
+            Object[] args = f.getArgs();
+            Object value;
+            try {
+                value = f.proceed();
+            }
+            catch (Throwable e) {
+                afterThrowing.apply(AfterThrowing.of(method, args, unwrap(e)));
+                throw e;
+            }
+            if (value instanceof CompletionStage) {
+                return whenComplete(method, (CompletionStage<?>) value, (result, e) -> {
+                    if (e != null) {
+                        afterThrowing.apply(AfterThrowing.of(method, args, e));
+                    }
+                });
+            }
+            return value;
+        };
+    }
+
+    public static AroundHandler doAsyncAfter(Consumer<After, Exception> after)
+    {
+        return (AroundHandler & EscapingAdvice) f -> {
+            Method method = f.getMethod();
+            Object[] args = f.getArgs();
+            Object value;
+            try {
+                value = f.proceed();
+            }
+            catch (Throwable e) {
+                after.apply(After.of(method, args, null, unwrap(e)));
+                throw e;
+            }
+            if (value instanceof CompletionStage) {
+                return whenComplete(method, (CompletionStage<?>) value, (result, e) ->
+                        after.apply(After.of(method, args, result, e)));
+            }
+            after.apply(After.of(method, args, value, null));
+            return value;
+        };
+    }
+
+    private static Object whenComplete(Method method, CompletionStage<?> stage, CompletionCallback callback)
+    {
+        if (!returnsFuture(method)) {
+            //返回类型不是future类型, 原样返回
+            stage.whenComplete((result, e) -> {
+                try {
+                    callback.apply(result, unwrap(e));
+                }
+                catch (Exception adviceException) {
+                    throw throwsThrowable(adviceException);
+                }
+            });
+            return stage;
+        }
+        //与CompletionStage.whenComplete()一致: 原future异常完成时使用原异常, 否则使用advice抛出的异常
+        ForwardingFuture<Object> dependent = new ForwardingFuture<>(stage instanceof Future ? (Future<?>) stage : null);
+        stage.whenComplete((result, e) -> {
+            Throwable failure = e;
+            try {
+                callback.apply(result, unwrap(e));
+            }
+            catch (Throwable adviceException) {
+                if (failure == null) {
+                    failure = adviceException;
+                }
+            }
+            if (failure == null) {
+                dependent.complete(result);
+            }
+            else {
+                dependent.completeExceptionally(failure);
+            }
+        });
+        return dependent;
+    }
+
+    /**
+     * 方法声明的返回类型是否为future类型. 不使用isAssignableFrom(CompletableFuture.class), 声明为Object的方法不是future方法
+     */
+    static boolean returnsFuture(Method method)
+    {
+        Class<?> returnType = method.getReturnType();
+        return returnType == CompletableFuture.class || returnType == CompletionStage.class || returnType == Future.class;
+    }
+
+    /**
+     * advice拿到的是原始异常: 去掉反射调用的InvocationTargetException和future依赖阶段的CompletionException包装
+     */
+    private static Throwable unwrap(Throwable e)
+    {
+        if (e instanceof InvocationTargetException && ((InvocationTargetException) e).getTargetException() != null) {
+            return ((InvocationTargetException) e).getTargetException();
+        }
+        if (e instanceof CompletionException && e.getCause() != null) {
+            return e.getCause();
+        }
+        return e;
+    }
+
+    /**
+     * 返回给调用方的future, cancel时同时cancel原future
+     */
+    private static final class ForwardingFuture<T>
+            extends CompletableFuture<T>
+    {
+        private final Future<?> source;
+
+        private ForwardingFuture(Future<?> source)
+        {
+            this.source = source;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning)
+        {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled && source != null) {
+                source.cancel(mayInterruptIfRunning);
+            }
+            return cancelled;
+        }
+    }
+
+    @FunctionalInterface
+    private interface CompletionCallback
+    {
+        void apply(Object result, Throwable e)
+                throws Exception;
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.aopgo;
+
+import com.github.harbby.gadtry.aop.JoinPoint;
+import com.github.harbby.gadtry.aop.runtime.ReusableJoinPoint.EscapingAdvice;
+import com.github.harbby.gadtry.function.Function1;
+import com.github.harbby.gadtry.function.exception.Function;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.harbby.gadtry.base.MoreObjects.checkState;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Request-collapsing advice.
+ * <p>
+ * 在一个时间窗口内(或攒够maxBatchSize个key时)把并发调用合并成一次bulk调用, 再把结果分发给每个调用方.
+ * 每次调用的key默认取第一个参数, 同一批次中相同的key只查询一次; bulk结果中没有的key返回null, bulk抛出异常时该批次所有调用都抛出该异常.
+ * 方法声明的返回类型是CompletableFuture, CompletionStage或Future时直接返回future, 否则(包括Object)调用线程等待批次完成.
+ * <p>
+ * 调用线程在批次完成前一直持有JoinPoint, 因此它是 {@link EscapingAdvice}, 复用模式的代理不会把复用的JoinPoint传给它.
+ * <p>
+ * 一个BatchAdvice的key空间对应一个方法, 不同方法请使用不同的BatchAdvice. 绑定时检查, pointcut选中多个方法
+ * (或者与之前绑定的方法不同)时抛出IllegalStateException; 同一个方法可以绑定到多个代理对象.
+ * <pre>
+ *     BatchAdvice&lt;Long, User&gt; batch = BatchAdvice.builder(userDao::getUsers)  //Map&lt;Long, User&gt; getUsers(List&lt;Long&gt; ids)
+ *             .maxBatchSize(100)
+ *             .maxDelay(2, TimeUnit.MILLISECONDS)
+ *             .build();
+ *     UserDao proxy = AopGo.proxy(userDao)
+ *             .aop(binder -> binder.doBatch(batch).when().getUser(anyLong()))
+ *             .build();
+ * </pre>
+ */
+public class BatchAdvice<K, V>
+        implements AroundHandler, EscapingAdvice
+{
+    private final Function<List<K>, Map<K, V>, Exception> bulkFunction;
+    private final Function1<Object[], K> keyFunction;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+
+    private Batch current;
+    private Method boundMethod;
+
+    private BatchAdvice(Builder<K, V> builder)
+    {
+        this.bulkFunction = builder.bulkFunction;
+        this.keyFunction = builder.keyFunction;
+        this.maxBatchSize = builder.maxBatchSize;
+        this.maxDelayNanos = builder.maxDelayNanos;
+        this.scheduler = builder.scheduler == null ? DefaultScheduler.SCHEDULER : builder.scheduler;
+        this.executor = builder.executor;
+    }
+
+    public static <K, V> Builder<K, V> builder(Function<List<K>, Map<K, V>, Exception> bulkFunction)
+    {
+        return new Builder<>(bulkFunction);
+    }
+
+    @Override
+    public Object apply(JoinPoint joinPoint)
+            throws Throwable
+    {
+        K key = keyFunction.apply(joinPoint.getArgs());
+        CompletableFuture<Object> future;
+        Batch fullBatch = null;
+        synchronized (this) {
+            Batch batch = this.current;
+            if (batch == null) {
+                batch = new Batch();
+                this.current = batch;
+                Batch timeoutBatch = batch;
+                batch.timer = scheduler.schedule(() -> executor.execute(() -> flush(timeoutBatch)), maxDelayNanos, TimeUnit.NANOSECONDS);
+            }
+            future = batch.futures.computeIfAbsent(key, k -> new CompletableFuture<>());
+            if (batch.futures.size() >= maxBatchSize) {
+                fullBatch = batch;
+            }
+        }
+        if (fullBatch != null) {
+            //攒够一批, 由当前调用线程执行bulk
+            flush(fullBatch);
+        }
+        if (AsyncAroundHandler.returnsFuture(joinPoint.getMethod())) {
+            return future;
+        }
+        try {
+            return future.join();
+        }
+        catch (CompletionException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 绑定时由 {@link PointcutBuilder} 调用, 检查只选中了一个方法
+     */
+    synchronized void bind(List<Method> methods)
+    {
+        for (Method method : methods) {
+            if (boundMethod == null) {
+                boundMethod = method;
+                continue;
+            }
+            //不同代理类的方法表中是不同的Method对象, 按方法签名比较
+            checkState(boundMethod.getName().equals(method.getName()) &&
+                            Arrays.equals(boundMethod.getParameterTypes(), method.getParameterTypes()),
+                    "BatchAdvice can only be bound to one method, found %s and %s", boundMethod, method);
+        }
+    }
+
+    private void flush(Batch batch)
+    {
+        synchronized (this) {
+            if (batch.flushed) {
+                return;
+            }
+            batch.flushed = true;
+            if (this.current == batch) {
+                this.current = null;
+            }
+        }
+        batch.timer.cancel(false);
+        List<K> keys = new ArrayList<>(batch.futures.keySet());
+        try {
+            Map<K, V> result = bulkFunction.apply(keys);
+            for (Map.Entry<K, CompletableFuture<Object>> entry : batch.futures.entrySet()) {
+                entry.getValue().complete(result == null ? null : result.get(entry.getKey()));
+            }
+        }
+        catch (Throwable e) {
+            for (CompletableFuture<Object> future : batch.futures.values()) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private final class Batch
+    {
+        //只在持有BatchAdvice锁时修改
+        private final Map<K, CompletableFuture<Object>> futures = new LinkedHashMap<>();
+        private ScheduledFuture<?> timer;
+        private boolean flushed;
+    }
+
+    private static final class DefaultScheduler
+    {
+        private static final ScheduledExecutorService SCHEDULER = createScheduler();
+
+        private static ScheduledExecutorService createScheduler()
+        {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "gadtry-batch-advice-timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            return scheduler;
+        }
+    }
+
+    public static class Builder<K, V>
+    {
+        private final Function<List<K>, Map<K, V>, Exception> bulkFunction;
+        @SuppressWarnings("unchecked")
+        private Function1<Object[], K> keyFunction = args -> (K) args[0];
+        private int maxBatchSize = 128;
+        private long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(1);
+        private ScheduledExecutorService scheduler;
+        private Executor executor = ForkJoinPool.commonPool();
+
+        private Builder(Function<List<K>, Map<K, V>, Exception> bulkFunction)
+        {
+            this.bulkFunction = requireNonNull(bulkFunction, "bulkFunction is null");
+        }
+
+        /**
+         * @param keyFunction 从方法参数中取出bulk查询的key, 默认为第一个参数
+         */
+        public Builder<K, V> keyFunction(Function1<Object[], K> keyFunction)
+        {
+            this.keyFunction = requireNonNull(keyFunction, "keyFunction is null");
+            return this;
+        }
+
+        public Builder<K, V> maxBatchSize(int maxBatchSize)
+        {
+            checkState(maxBatchSize > 0, "maxBatchSize must > 0");
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        public Builder<K, V> maxDelay(long delay, TimeUnit unit)
+        {
+            checkState(delay >= 0, "delay must >= 0");
+            this.maxDelayNanos = requireNonNull(unit, "unit is null").toNanos(delay);
+            return this;
+        }
+
+        public Builder<K, V> scheduler(ScheduledExecutorService scheduler)
+        {
+            this.scheduler = requireNonNull(scheduler, "scheduler is null");
+            return this;
+        }
+
+        /**
+         * @param executor 窗口到期时执行bulk调用的线程池, 默认为ForkJoinPool.commonPool()
+         */
+        public Builder<K, V> executor(Executor executor)
+        {
+            this.executor = requireNonNull(executor, "executor is null");
+            return this;
+        }
+
+        public BatchAdvice<K, V> build()
+        {
+            return new BatchAdvice<>(this);
+        }
+    }
+}
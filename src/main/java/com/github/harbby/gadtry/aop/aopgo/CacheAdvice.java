@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.aopgo;
+
+import com.github.harbby.gadtry.aop.JoinPoint;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.github.harbby.gadtry.base.MoreObjects.checkState;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Argument-keyed caching advice.
+ * <p>
+ * 以 method + args(Arrays.deepEquals) 为key缓存方法返回值(包括null), 方法抛出的异常不缓存.
+ * 缓存按key的hash分段, 每段是一个access-order的LRU, 总大小不超过maximumSize; 可设置写入后过期时间(TTL).
+ * 淘汰在段内进行, 不是全局LRU: 每段的容量为maximumSize / 段数, 某一段满了时会淘汰该段最久未访问的key,
+ * 即使其他段还有空间. maximumSize小于32时只有一个段, 即精确的LRU.
+ * <p>
+ * 同一个key并发未命中时只有一个线程调用目标方法, 其他线程等待它的结果(计入 {@link #coalescedCount()}, 不计入命中).
+ * 同一个线程在调用目标方法过程中再次以相同的key调用时抛出IllegalStateException, 而不是等待自己.
+ * <pre>
+ *     CacheAdvice cache = CacheAdvice.builder().maximumSize(10_000).expireAfterWrite(5, TimeUnit.MINUTES).build();
+ *     Service proxy = AopGo.proxy(new Service())
+ *             .aop(binder -> binder.doCache(cache).annotated(Cacheable.class))
+ *             .build();
+ * </pre>
+ */
+public class CacheAdvice
+        implements AroundHandler
+{
+    private final Segment[] segments;
+    private final long expireNanos;
+    private final Map<Key, Pending> loading = new ConcurrentHashMap<>();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+
+    private CacheAdvice(int maximumSize, long expireNanos)
+    {
+        int segmentCount = Math.min(16, Integer.highestOneBit(Math.max(1, maximumSize / 16)));
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            //每段的容量之和等于maximumSize
+            int capacity = maximumSize / segmentCount + (i < maximumSize % segmentCount ? 1 : 0);
+            segments[i] = new Segment(capacity);
+        }
+        this.expireNanos = expireNanos;
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    @Override
+    public Object apply(JoinPoint joinPoint)
+            throws Throwable
+    {
+        //查找时直接使用参数数组, 只有写入缓存时才复制
+        Key key = new Key(joinPoint.getMethod(), joinPoint.getArgs());
+        Segment segment = segments[key.hash & (segments.length - 1)];
+        Entry entry = segment.get(key);
+        if (entry != null) {
+            hitCount.increment();
+            return entry.value;
+        }
+        Key storeKey = key.copy();
+        Pending pending = new Pending(Thread.currentThread());
+        Pending running = loading.putIfAbsent(storeKey, pending);
+        if (running != null) {
+            checkState(running.thread != Thread.currentThread(), "Found a recursive call of " + key.method + " with the same arguments while loading it");
+            //合并同一个key的并发未命中
+            coalescedCount.increment();
+            try {
+                return running.future.join();
+            }
+            catch (CompletionException e) {
+                throw e.getCause();
+            }
+        }
+        try {
+            entry = segment.get(key);
+            if (entry == null) {
+                missCount.increment();
+                Object value = joinPoint.proceed();
+                long expireAt = expireNanos > 0 ? System.nanoTime() + expireNanos : 0;
+                entry = new Entry(value, expireAt);
+                segment.put(storeKey, entry);
+            }
+            else {
+                hitCount.increment();
+            }
+            pending.future.complete(entry.value);
+            return entry.value;
+        }
+        catch (Throwable e) {
+            pending.future.completeExceptionally(e);
+            throw e;
+        }
+        finally {
+            loading.remove(storeKey, pending);
+        }
+    }
+
+    public void invalidateAll()
+    {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public long size()
+    {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long hitCount()
+    {
+        return hitCount.sum();
+    }
+
+    public long missCount()
+    {
+        return missCount.sum();
+    }
+
+    /**
+     * @return number of calls that waited for another thread loading the same key
+     */
+    public long coalescedCount()
+    {
+        return coalescedCount.sum();
+    }
+
+    public static class Builder
+    {
+        private int maximumSize = 1024;
+        private long expireNanos = 0;
+
+        /**
+         * @param maximumSize total size of all segments, eviction is per segment (see {@link CacheAdvice})
+         */
+        public Builder maximumSize(int maximumSize)
+        {
+            checkState(maximumSize > 0, "maximumSize must > 0");
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * @param duration 0 means never expire
+         */
+        public Builder expireAfterWrite(long duration, TimeUnit unit)
+        {
+            checkState(duration >= 0, "duration must >= 0");
+            this.expireNanos = requireNonNull(unit, "unit is null").toNanos(duration);
+            return this;
+        }
+
+        public CacheAdvice build()
+        {
+            return new CacheAdvice(maximumSize, expireNanos);
+        }
+    }
+
+    private static final class Segment
+    {
+        private final LinkedHashMap<Key, Entry> map;
+
+        private Segment(int capacity)
+        {
+            this.map = new LinkedHashMap<Key, Entry>(16, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest)
+                {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        private synchronized Entry get(Key key)
+        {
+            Entry entry = map.get(key);
+            if (entry != null && entry.expireAt != 0 && entry.expireAt - System.nanoTime() <= 0) {
+                map.remove(key);
+                return null;
+            }
+            return entry;
+        }
+
+        private synchronized void put(Key key, Entry entry)
+        {
+            map.put(key, entry);
+        }
+
+        private synchronized void clear()
+        {
+            map.clear();
+        }
+
+        private synchronized int size()
+        {
+            return map.size();
+        }
+    }
+
+    private static final class Pending
+    {
+        private final Thread thread;
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        private Pending(Thread thread)
+        {
+            this.thread = thread;
+        }
+    }
+
+    private static final class Entry
+    {
+        private final Object value;
+        private final long expireAt;
+
+        private Entry(Object value, long expireAt)
+        {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private static final class Key
+    {
+        private final Method method;
+        private final Object[] args;
+        private final int hash;
+
+        private Key(Method method, Object[] args)
+        {
+            this.method = method;
+            this.args = args == null ? new Object[0] : args;
+            int h = 31 * method.hashCode() + Arrays.deepHashCode(this.args);
+            this.hash = h ^ (h >>> 16);
+        }
+
+        private Key(Method method, Object[] args, int hash)
+        {
+            this.method = method;
+            this.args = args;
+            this.hash = hash;
+        }
+
+        /**
+         * 写入缓存的key复制参数数组, 调用方之后修改数组不影响key
+         */
+        private Key copy()
+        {
+            return new Key(method, args.length == 0 ? args : args.clone(), hash);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash && method.equals(other.method) && Arrays.deepEquals(args, other.args);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.aopgo;
+
+import com.github.harbby.gadtry.aop.JoinPoint;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Built-in method latency metrics aspect.
+ * <p>
+ * 记录每个方法的调用次数, 异常次数和耗时直方图(按2的幂分桶, 单位ns). 计数使用 {@link LongAdder} 分段累加, 多线程下无锁且不争用同一个cache line.
+ * 方法的recorder按代理类方法表下标( {@link JoinPoint#getMethodIndex()} )存放, 下标未知或被其他代理类占用时退回到Method map.
+ * <pre>
+ *     MethodMetrics metrics = new MethodMetrics();
+ *     Service proxy = AopGo.proxy(new Service())
+ *             .aop(binder -> binder.doMetrics(metrics).allMethod())
+ *             .build();
+ *     List&lt;MethodMetrics.Snapshot&gt; snapshots = metrics.snapshot();
+ * </pre>
+ */
+public class MethodMetrics
+        implements AroundHandler
+{
+    /**
+     * bucket i 记录耗时在 [2^(i-1), 2^i) ns 内的调用, bucket 0 记录耗时为0的调用
+     */
+    public static final int BUCKETS = 64;
+
+    private volatile AtomicReferenceArray<Recorder> recorders = new AtomicReferenceArray<>(16);
+    private final Map<Method, Recorder> otherRecorders = new ConcurrentHashMap<>();
+
+    @Override
+    public Object apply(JoinPoint joinPoint)
+            throws Throwable
+    {
+        Recorder recorder = getRecorder(joinPoint.getMethodIndex(), joinPoint.getMethod());
+        long start = System.nanoTime();
+        try {
+            Object value = joinPoint.proceed();
+            recorder.record(System.nanoTime() - start, false);
+            return value;
+        }
+        catch (Throwable e) {
+            recorder.record(System.nanoTime() - start, true);
+            throw e;
+        }
+    }
+
+    private Recorder getRecorder(int methodIndex, Method method)
+    {
+        if (methodIndex < 0) {
+            return otherRecorders.computeIfAbsent(method, Recorder::new);
+        }
+        AtomicReferenceArray<Recorder> array = this.recorders;
+        if (methodIndex < array.length()) {
+            Recorder recorder = array.get(methodIndex);
+            if (recorder != null && recorder.method == method) {
+                return recorder;
+            }
+        }
+        return createRecorder(methodIndex, method);
+    }
+
+    private synchronized Recorder createRecorder(int methodIndex, Method method)
+    {
+        AtomicReferenceArray<Recorder> array = this.recorders;
+        if (methodIndex >= array.length()) {
+            AtomicReferenceArray<Recorder> newArray = new AtomicReferenceArray<>(Math.max(methodIndex + 1, array.length() * 2));
+            for (int i = 0; i < array.length(); i++) {
+                newArray.set(i, array.get(i));
+            }
+            this.recorders = newArray;
+            array = newArray;
+        }
+        Recorder recorder = array.get(methodIndex);
+        if (recorder == null) {
+            recorder = new Recorder(method);
+            array.set(methodIndex, recorder);
+            return recorder;
+        }
+        if (recorder.method == method) {
+            return recorder;
+        }
+        //同一个下标已被其他代理类的方法占用
+        return otherRecorders.computeIfAbsent(method, Recorder::new);
+    }
+
+    /**
+     * @return snapshot of all called methods, the counters of a snapshot are not read atomically
+     */
+    public List<Snapshot> snapshot()
+    {
+        List<Snapshot> snapshots = new ArrayList<>();
+        AtomicReferenceArray<Recorder> array = this.recorders;
+        for (int i = 0; i < array.length(); i++) {
+            Recorder recorder = array.get(i);
+            if (recorder != null) {
+                snapshots.add(recorder.snapshot());
+            }
+        }
+        for (Recorder recorder : otherRecorders.values()) {
+            snapshots.add(recorder.snapshot());
+        }
+        return Collections.unmodifiableList(snapshots);
+    }
+
+    private static final class Recorder
+    {
+        private final Method method;
+        //每次调用都会计入一个bucket, 调用次数由直方图求和得到
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+        private Recorder(Method method)
+        {
+            this.method = requireNonNull(method, "method is null");
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram[i] = new LongAdder();
+            }
+        }
+
+        private void record(long nanos, boolean error)
+        {
+            if (error) {
+                errors.increment();
+            }
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            histogram[bucket(nanos)].increment();
+        }
+
+        private Snapshot snapshot()
+        {
+            long[] counts = new long[BUCKETS];
+            long calls = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = histogram[i].sum();
+                calls += counts[i];
+            }
+            return new Snapshot(method, calls, errors.sum(), totalNanos.sum(), maxNanos.get(), counts);
+        }
+    }
+
+    static int bucket(long nanos)
+    {
+        if (nanos <= 0) {
+            return 0;
+        }
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    public static class Snapshot
+    {
+        private final Method method;
+        private final long calls;
+        private final long errors;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long[] histogram;
+
+        private Snapshot(Method method, long calls, long errors, long totalNanos, long maxNanos, long[] histogram)
+        {
+            this.method = method;
+            this.calls = calls;
+            this.errors = errors;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.histogram = histogram;
+        }
+
+        public Method getMethod()
+        {
+            return method;
+        }
+
+        public long getCalls()
+        {
+            return calls;
+        }
+
+        public long getErrors()
+        {
+            return errors;
+        }
+
+        public long getTotalNanos()
+        {
+            return totalNanos;
+        }
+
+        public long getMaxNanos()
+        {
+            return maxNanos;
+        }
+
+        public double getMeanNanos()
+        {
+            return calls == 0 ? 0 : (double) totalNanos / calls;
+        }
+
+        /**
+         * @return copy of the latency histogram, see {@link #BUCKETS}
+         */
+        public long[] getHistogram()
+        {
+            return histogram.clone();
+        }
+
+        /**
+         * @param quantile 0.0 - 1.0
+         * @return upper bound(ns) of the bucket that contains the quantile
+         */
+        public long getPercentileNanos(double quantile)
+        {
+            long total = 0;
+            for (long count : histogram) {
+                total += count;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                seen += histogram[i];
+                if (seen >= rank && histogram[i] > 0) {
+                    return i == 0 ? 0 : Math.min(maxNanos, i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1);
+                }
+            }
+            return maxNanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            return method.getName() + "{calls=" + calls + ", errors=" + errors + ", meanNanos=" + getMeanNanos() +
+                    ", p99Nanos=" + getPercentileNanos(0.99) + ", maxNanos=" + maxNanos + "}";
+        }
+    }
+}
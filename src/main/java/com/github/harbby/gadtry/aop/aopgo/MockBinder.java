@@ -28,6 +28,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static java.util.Objects.requireNonNull;
+
 public class MockBinder<T>
 {
     private final AopInvocationHandler aopInvocationHandler;
@@ -61,6 +63,36 @@ public class MockBinder<T>
         return createMethodSelect(AroundHandler.doAfter(after));
     }
 
+    public PointcutBuilder<T> doAsyncAfterReturning(Consumer<AfterReturning, Exception> afterReturning)
+    {
+        return createMethodSelect(AsyncAroundHandler.doAsyncAfterReturning(afterReturning));
+    }
+
+    public PointcutBuilder<T> doAsyncAfterThrowing(Consumer<AfterThrowing, Exception> afterThrowing)
+    {
+        return createMethodSelect(AsyncAroundHandler.doAsyncAfterThrowing(afterThrowing));
+    }
+
+    public PointcutBuilder<T> doAsyncAfter(Consumer<After, Exception> after)
+    {
+        return createMethodSelect(AsyncAroundHandler.doAsyncAfter(after));
+    }
+
+    public PointcutBuilder<T> doMetrics(MethodMetrics metrics)
+    {
+        return createMethodSelect(requireNonNull(metrics, "metrics is null"));
+    }
+
+    public PointcutBuilder<T> doCache(CacheAdvice cache)
+    {
+        return createMethodSelect(requireNonNull(cache, "cache is null"));
+    }
+
+    public PointcutBuilder<T> doBatch(BatchAdvice<?, ?> batch)
+    {
+        return createMethodSelect(requireNonNull(batch, "batch is null"));
+    }
+
     public PointcutBuilder<T> doAround(Function<JoinPoint, Object, Throwable> aroundContext)
     {
         return createMethodSelect(aroundContext);
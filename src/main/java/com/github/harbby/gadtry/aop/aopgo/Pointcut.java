@@ -15,33 +15,23 @@
  */
 package com.github.harbby.gadtry.aop.aopgo;
 
+import com.github.harbby.gadtry.aop.runtime.ProxyRuntime;
 import com.github.harbby.gadtry.function.Function1;
 
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import static com.github.harbby.gadtry.base.Throwables.throwsException;
-
 public interface Pointcut
 {
     public List<Function1<Method, Boolean>> getLocation();
 
     default List<Method> filter(Class<?> proxyClass)
     {
-        return Stream.of(proxyClass.getDeclaredFields())
-                .filter(field -> field.getType() == Method.class && Modifier.isStatic(field.getModifiers()))
-                .map(field -> {
-                    field.setAccessible(true);
-                    try {
-                        return (Method) field.get(null);
-                    }
-                    catch (IllegalAccessException e) {
-                        throw throwsException(e);
-                    }
-                })
+        return Stream.of(ProxyRuntime.getProxyMethods(proxyClass))
+                .filter(Objects::nonNull)
                 .filter(this::methodFilter)
                 .collect(Collectors.toList());
     }
@@ -17,6 +17,8 @@ package com.github.harbby.gadtry.aop.aopgo;
 
 import com.github.harbby.gadtry.aop.JoinPoint;
 import com.github.harbby.gadtry.aop.mock.AopInvocationHandler;
+import com.github.harbby.gadtry.aop.runtime.ProxyRuntime;
+import com.github.harbby.gadtry.aop.runtime.ReusableJoinPoint.EscapingAdvice;
 import com.github.harbby.gadtry.base.JavaTypes;
 import com.github.harbby.gadtry.function.Function1;
 import com.github.harbby.gadtry.function.exception.Function;
@@ -46,9 +48,10 @@ public class PointcutBuilder<T>
 
     public T when()
     {
-        aopInvocationHandler.setHandler((proxy, method, args) -> {
-            filters.add(method1 -> method1 == method);
-            aopInvocationHandler.initHandler();
+        aopInvocationHandler.interceptNextCall((proxy, method, args) -> {
+            //jdk代理类传入的Method与方法表中的不是同一个对象, 统一为方法表中的Method
+            Method tableMethod = ProxyRuntime.getMethodInvoker(proxy.getClass()).getTableMethod(method);
+            filters.add(method1 -> method1 == tableMethod);
             return JavaTypes.getClassInitValue(method.getReturnType());
         });
         return proxy;
@@ -99,17 +102,24 @@ public class PointcutBuilder<T>
 
     Aspect build()
     {
+        Pointcut pointcut = () -> filters;
+        if (function instanceof BatchAdvice) {
+            ((BatchAdvice<?, ?>) function).bind(pointcut.filter(proxy.getClass()));
+        }
         return new Aspect()
         {
             @Override
             public Pointcut getPointcut()
             {
-                return () -> filters;
+                return pointcut;
             }
 
             @Override
             public Advice[] getAdvices()
             {
+                if (function instanceof EscapingAdvice) {
+                    return new Advice[] {(Advice & EscapingAdvice) function::apply};
+                }
                 return new Advice[] {function::apply};
             }
         };
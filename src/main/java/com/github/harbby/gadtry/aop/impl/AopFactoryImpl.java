@@ -17,28 +17,40 @@ package com.github.harbby.gadtry.aop.impl;
 
 import com.github.harbby.gadtry.aop.AopFactory;
 import com.github.harbby.gadtry.aop.JoinPoint;
+import com.github.harbby.gadtry.aop.aopgo.Advice;
+import com.github.harbby.gadtry.aop.model.MethodInfo;
 import com.github.harbby.gadtry.aop.model.Pointcut;
+import com.github.harbby.gadtry.aop.v1.PointcutExpression;
+import com.github.harbby.gadtry.function.Function1;
 import com.github.harbby.gadtry.function.exception.Function;
 
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class AopFactoryImpl
         implements AopFactory
 {
     private final List<Pointcut> pointcuts;
     private final Map<Class<?>, Pointcut> pointcutMap;
+    private final List<Pointcut> expressionPointcuts;
 
     public AopFactoryImpl(List<Pointcut> pointcuts)
     {
         this.pointcuts = pointcuts;
 
         this.pointcutMap = new HashMap<>();
+        this.expressionPointcuts = new ArrayList<>();
         pointcuts.forEach(pointcut -> {
             for (Class<?> aClass : pointcut.getSearchClass()) {
                 pointcutMap.put(aClass, pointcut);
             }
+            if (pointcut.getExpression() != null) {
+                expressionPointcuts.add(pointcut);
+            }
         });
     }
 
@@ -51,20 +63,109 @@ public class AopFactoryImpl
     @Override
     public <T> T proxy(Class<T> driver, T instance)
     {
+        List<Pointcut> matched = new ArrayList<>();
+        List<Function1<MethodInfo, Boolean>> filters = new ArrayList<>();
         Pointcut pointcut = pointcutMap.get(driver);
         if (pointcut == null) {
             pointcut = pointcutMap.get(instance.getClass());
         }
-
         if (pointcut != null) {
-            final Function<JoinPoint, Object, Throwable> handler = pointcut.buildRunHandler();
+            matched.add(pointcut);
+            filters.add(pointcut.getMethodFilter());
+        }
+
+        for (Pointcut expressionPointcut : expressionPointcuts) {
+            if (expressionPointcut == pointcut) {
+                continue;
+            }
+            //表达式的类匹配结果按Class缓存
+            PointcutExpression expression = expressionPointcut.getExpression();
+            Class<?> matchClass = expression.matchesClass(driver) ? driver :
+                    expression.matchesClass(instance.getClass()) ? instance.getClass() : null;
+            if (matchClass != null) {
+                matched.add(expressionPointcut);
+                filters.add(expression.methodFilter(matchClass));
+            }
+        }
+
+        if (matched.isEmpty()) {
+            return instance;
+            //throw new IllegalStateException(String.format("Unable to proxy object %s,ecause no cut point rules are configured", instance));
+        }
+        if (matched.size() == 1) {
+            final Function<JoinPoint, Object, Throwable> handler = matched.get(0).buildRunHandler();
             return AopFactory.proxy(driver)
                     .byInstance(instance)
-                    .whereMethod(pointcut.getMethodFilter())
+                    .whereMethod(filters.get(0))
                     .around(handler);
         }
+        return AopFactory.proxy(driver)
+                .byInstance(instance)
+                .whereMethod(method -> anyMatch(filters, method))
+                .around(new MergedHandler(matched, filters));
+    }
+
+    private static boolean anyMatch(List<Function1<MethodInfo, Boolean>> filters, MethodInfo method)
+    {
+        for (Function1<MethodInfo, Boolean> filter : filters) {
+            if (filter.apply(method)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 多个pointcut作用于同一个方法时组成一条advice链, 先注册的pointcut在外层. {@link LoadTimeWeaver}使用相同的顺序
+     */
+    static Advice chain(List<Function<JoinPoint, Object, Throwable>> handlers)
+    {
+        Advice advice = null;
+        for (Function<JoinPoint, Object, Throwable> handler : handlers) {
+            Advice next = handler instanceof Advice ? (Advice) handler : handler::apply;
+            advice = advice == null ? next : advice.merge(next);
+        }
+        return advice;
+    }
+
+    /**
+     * 多个pointcut选中同一个类时全部生效: 每个方法只执行选中它的pointcut, 先注册的pointcut在外层.
+     * 方法对应的advice链在第一次调用时创建并按Method缓存
+     */
+    private static final class MergedHandler
+            implements Function<JoinPoint, Object, Throwable>
+    {
+        private final Advice[] handlers;
+        private final List<Function1<MethodInfo, Boolean>> filters;
+        private final Map<Method, Advice> methodAdvices = new ConcurrentHashMap<>();
 
-        return instance;
-        //throw new IllegalStateException(String.format("Unable to proxy object %s,ecause no cut point rules are configured", instance));
+        private MergedHandler(List<Pointcut> pointcuts, List<Function1<MethodInfo, Boolean>> filters)
+        {
+            this.handlers = new Advice[pointcuts.size()];
+            for (int i = 0; i < handlers.length; i++) {
+                handlers[i] = pointcuts.get(i).buildRunHandler()::apply;
+            }
+            this.filters = filters;
+        }
+
+        @Override
+        public Object apply(JoinPoint joinPoint)
+                throws Throwable
+        {
+            Advice advice = methodAdvices.computeIfAbsent(joinPoint.getMethod(), this::buildAdvice);
+            return advice.apply(joinPoint);
+        }
+
+        private Advice buildAdvice(Method method)
+        {
+            MethodInfo methodInfo = MethodInfo.of(method);
+            List<Function<JoinPoint, Object, Throwable>> matched = new ArrayList<>();
+            for (int i = 0; i < handlers.length; i++) {
+                if (filters.get(i).apply(methodInfo)) {
+                    matched.add(handlers[i]);
+                }
+            }
+            return matched.isEmpty() ? JoinPoint::proceed : chain(matched);
+        }
     }
 }
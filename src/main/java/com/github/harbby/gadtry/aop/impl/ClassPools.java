@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.impl;
+
+import com.github.harbby.gadtry.function.exception.Function;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.LoaderClassPath;
+import javassist.NotFoundException;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * 每个ClassLoader共享一个ClassPool, 缓存已经解析的父类和接口(java.lang.Object等)的CtClass,
+ * 生成代理类时使用一次性的子ClassPool, 生成的CtClass只存在于子ClassPool中, 不会被其他线程看到.
+ * <p>
+ * 共享的CtClass只读不写. 它们的类文件和成员缓存是第一次使用时延迟解析的, 因此{@link #compile}只在持有共享ClassPool的锁时
+ * 预先解析生成代码要用到的类(父类, 接口及其继承树和方法的参数类型), 之后在子ClassPool中生成字节码时不持有锁, 不同任务可以并发生成.
+ * 生成过程中仍可能遇到未预热的类, javassist对这部分的处理是线程安全的: ClassPool.get0()和CtClassType.getMembers()是同步方法,
+ * 并发解析同一个类文件时只保留第一个结果.
+ * <p>
+ * 共享的ClassPool只持有ClassLoader的弱引用(LoaderClassPath), ClassLoader被回收后对应的ClassPool也会被回收
+ */
+final class ClassPools
+{
+    private static final Map<ClassLoader, SharedClassPool> sharedPools = new WeakHashMap<>();
+
+    private ClassPools() {}
+
+    static byte[] compile(ClassLoader loader, boolean childFirstLookup, Function<ClassPool, CtClass, Exception> generator)
+            throws Exception
+    {
+        return compile(loader, childFirstLookup, Collections.emptyList(), generator);
+    }
+
+    /**
+     * @param warmUpClasses 生成代码主要依赖的类, 在锁内预先解析
+     * @param generator 在子ClassPool中生成CtClass, 返回null表示不生成
+     * @return class bytes, null if generator return null
+     */
+    static byte[] compile(ClassLoader loader, boolean childFirstLookup, List<Class<?>> warmUpClasses, Function<ClassPool, CtClass, Exception> generator)
+            throws Exception
+    {
+        SharedClassPool sharedPool = getSharedPool(loader);
+        if (!warmUpClasses.isEmpty()) {
+            synchronized (sharedPool) {
+                warmUp(sharedPool, warmUpClasses);
+            }
+        }
+        ClassPool childPool = new ClassPool(sharedPool);
+        childPool.childFirstLookup = childFirstLookup;
+        CtClass ctClass = generator.apply(childPool);
+        return ctClass == null ? null : ctClass.toBytecode();
+    }
+
+    private static void warmUp(SharedClassPool sharedPool, List<Class<?>> classes)
+            throws NotFoundException
+    {
+        for (Class<?> aClass : classes) {
+            if (aClass.isPrimitive() || aClass.isArray() || !sharedPool.warmedClasses.add(aClass.getName())) {
+                continue;
+            }
+            //getMethods()会解析整个继承树的类文件并填充成员缓存
+            for (CtMethod method : sharedPool.get(aClass.getName()).getMethods()) {
+                method.getReturnType();
+                method.getParameterTypes();
+            }
+        }
+    }
+
+    static SharedClassPool getSharedPool(ClassLoader loader)
+    {
+        ClassLoader key = loader == null ? ClassLoader.getSystemClassLoader() : loader;
+        synchronized (sharedPools) {
+            return sharedPools.computeIfAbsent(key, k -> {
+                SharedClassPool classPool = new SharedClassPool();
+                classPool.appendClassPath(new LoaderClassPath(k));
+                return classPool;
+            });
+        }
+    }
+
+    static final class SharedClassPool
+            extends ClassPool
+    {
+        //已预热的类, 只在持有该ClassPool的锁时访问
+        private final Set<String> warmedClasses = new HashSet<>();
+
+        private SharedClassPool()
+        {
+            super(true);
+        }
+    }
+}
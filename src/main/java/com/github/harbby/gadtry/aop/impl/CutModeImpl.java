@@ -22,6 +22,9 @@ import com.github.harbby.gadtry.aop.model.AfterReturning;
 import com.github.harbby.gadtry.aop.model.AfterThrowing;
 import com.github.harbby.gadtry.aop.model.Before;
 import com.github.harbby.gadtry.aop.model.MethodInfo;
+import com.github.harbby.gadtry.aop.runtime.MethodInvoker;
+import com.github.harbby.gadtry.aop.runtime.ProxyRuntime;
+import com.github.harbby.gadtry.aop.runtime.ReusableJoinPoint;
 import com.github.harbby.gadtry.base.Lazys;
 import com.github.harbby.gadtry.function.Function1;
 import com.github.harbby.gadtry.function.exception.Consumer;
@@ -39,6 +42,8 @@ public class CutModeImpl<T>
     private final ClassLoader loader;
 
     private final Proxy proxy;
+    //复用JoinPoint和advice视图, 见 ReusableJoinPoint
+    protected boolean reuseView;
     private final Supplier<Function1<MethodInfo, Boolean>> methodFilter =
             Lazys.goLazy(this::getMethodFilter);
 
@@ -74,32 +79,41 @@ public class CutModeImpl<T>
             T instance,
             Function1<MethodInfo, Boolean> filter)
     {
-        InvocationHandler proxyHandler = filter != null ?
-                (InvocationHandler & Serializable) (proxy, method, args) -> {
-                    if (filter.apply(MethodInfo.of(method))) {
-                        return handler.invoke(proxy, method, args);
-                    }
-                    else {
-                        return method.invoke(instance, args);
-                    }
-                }
-                : handler;
-
-        return proxyFactory.getProxy(loader, proxyHandler, interfaces);
+        if (filter == null) {
+            return proxyFactory.getProxy(loader, handler, interfaces);
+        }
+        //按代理类方法表预先计算每个方法是否切入, 调用时不再执行filter
+        FilterDispatchHandler proxyHandler = new FilterDispatchHandler(handler, instance, filter);
+        T proxy = proxyFactory.getProxy(loader, proxyHandler, interfaces);
+        proxyHandler.init(proxy.getClass());
+        return proxy;
     }
 
     @Override
     public T around(Function<JoinPoint, Object, Throwable> aroundHandler)
     {
-        InvocationHandler handler = aroundStatic(aroundHandler, instance);
+        InvocationHandler handler = aroundStatic(aroundHandler, instance, reuseView);
         return this.getProxy(handler, interfaces);
     }
 
-    private static <T> InvocationHandler aroundStatic(Function<JoinPoint, Object, Throwable> aroundHandler, T instance)
+    private static <T> InvocationHandler aroundStatic(Function<JoinPoint, Object, Throwable> aroundHandler, T instance, boolean reuseJoinPoint)
     {
+        boolean reuseView = reuseJoinPoint && ReusableJoinPoint.canReuse(aroundHandler);
         InvocationHandler handler = (InvocationHandler & Serializable) (proxy, method, args) -> {
-            JoinPoint context = JoinPoint.of(instance, method, args);
-            Object returnValue = aroundHandler.apply(context);
+            MethodInvoker invoker = ProxyRuntime.getMethodInvoker(proxy.getClass());
+            Object returnValue;
+            if (reuseView) {
+                ReusableJoinPoint context = ReusableJoinPoint.acquire(invoker, instance, method, args);
+                try {
+                    returnValue = aroundHandler.apply(context);
+                }
+                finally {
+                    context.release();
+                }
+            }
+            else {
+                returnValue = aroundHandler.apply(JoinPoint.of(invoker, instance, method, args));
+            }
             Class<?> returnType = method.getReturnType();
 
             if (returnValue == null && returnType != Void.TYPE && returnType.isPrimitive()) {
@@ -115,15 +129,20 @@ public class CutModeImpl<T>
     @Override
     public T before(Consumer<Before, Exception> runnable)
     {
-        InvocationHandler handler = beforeStatic(runnable, instance);
+        InvocationHandler handler = beforeStatic(runnable, instance, reuseView);
         return getProxy(handler, interfaces);
     }
 
-    private static <T> InvocationHandler beforeStatic(Consumer<Before, Exception> runnable, T instance)
+    private static <T> InvocationHandler beforeStatic(Consumer<Before, Exception> runnable, T instance, boolean reuseView)
     {
         InvocationHandler handler = (InvocationHandler & Serializable) (proxy, method, args) -> {
-            runnable.apply(Before.of(method, args));
-            return method.invoke(instance, args);
+            if (reuseView) {
+                ReusableJoinPoint.apply(runnable, method, args, null, null);
+            }
+            else {
+                runnable.apply(Before.of(method, args));
+            }
+            return ProxyRuntime.getMethodInvoker(proxy.getClass()).invoke(method, instance, args);
         };
         return handler;
     }
@@ -131,15 +150,20 @@ public class CutModeImpl<T>
     @Override
     public T afterReturning(Consumer<AfterReturning, Exception> runnable)
     {
-        InvocationHandler handler = afterReturningStatic(runnable, instance);
+        InvocationHandler handler = afterReturningStatic(runnable, instance, reuseView);
         return getProxy(handler, interfaces);
     }
 
-    private static <T> InvocationHandler afterReturningStatic(Consumer<AfterReturning, Exception> runnable, T instance)
+    private static <T> InvocationHandler afterReturningStatic(Consumer<AfterReturning, Exception> runnable, T instance, boolean reuseView)
     {
         InvocationHandler handler = (InvocationHandler & Serializable) (proxy, method, args) -> {
-            Object value = method.invoke(instance, args);
-            runnable.apply(AfterReturning.of(method, args, value));
+            Object value = ProxyRuntime.getMethodInvoker(proxy.getClass()).invoke(method, instance, args);
+            if (reuseView) {
+                ReusableJoinPoint.apply(runnable, method, args, value, null);
+            }
+            else {
+                runnable.apply(AfterReturning.of(method, args, value));
+            }
             return value;
         };
         return handler;
@@ -148,17 +172,17 @@ public class CutModeImpl<T>
     @Override
     public T after(Consumer<After, Exception> runnable)
     {
-        InvocationHandler handler = afterStatic(runnable, instance);
+        InvocationHandler handler = afterStatic(runnable, instance, reuseView);
         return getProxy(handler, interfaces);
     }
 
-    private static <T> InvocationHandler afterStatic(Consumer<After, Exception> runnable, T instance)
+    private static <T> InvocationHandler afterStatic(Consumer<After, Exception> runnable, T instance, boolean reuseView)
     {
         InvocationHandler handler = (InvocationHandler & Serializable) (proxy, method, args) -> {
             Object value = null;
             Throwable throwable = null;
             try {
-                value = method.invoke(instance, args);
+                value = ProxyRuntime.getMethodInvoker(proxy.getClass()).invoke(method, instance, args);
                 return value;
             }
             catch (Throwable e) {
@@ -166,7 +190,12 @@ public class CutModeImpl<T>
                 throw e;
             }
             finally {
-                runnable.apply(After.of(method, args, value, throwable));
+                if (reuseView) {
+                    ReusableJoinPoint.apply(runnable, method, args, value, throwable);
+                }
+                else {
+                    runnable.apply(After.of(method, args, value, throwable));
+                }
             }
         };
         return handler;
@@ -175,18 +204,23 @@ public class CutModeImpl<T>
     @Override
     public T afterThrowing(Consumer<AfterThrowing, Exception> runnable)
     {
-        InvocationHandler handler = afterThrowingStatic(runnable, instance);
+        InvocationHandler handler = afterThrowingStatic(runnable, instance, reuseView);
         return getProxy(handler, interfaces);
     }
 
-    private static <T> InvocationHandler afterThrowingStatic(Consumer<AfterThrowing, Exception> runnable, T instance)
+    private static <T> InvocationHandler afterThrowingStatic(Consumer<AfterThrowing, Exception> runnable, T instance, boolean reuseView)
     {
         InvocationHandler handler = (InvocationHandler & Serializable) (proxy, method, args) -> {
             try {
-                return method.invoke(instance, args);
+                return ProxyRuntime.getMethodInvoker(proxy.getClass()).invoke(method, instance, args);
             }
-            catch (Exception e) {
-                runnable.apply(AfterThrowing.of(method, args, e));
+            catch (Throwable e) {
+                if (reuseView) {
+                    ReusableJoinPoint.apply(runnable, method, args, null, e);
+                }
+                else {
+                    runnable.apply(AfterThrowing.of(method, args, e));
+                }
                 throw e;
             }
         };
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.impl;
+
+import java.lang.reflect.InvocationHandler;
+
+/**
+ * Handler used by proxy classes generated in direct dispatch mode,
+ * see: {@link com.github.harbby.gadtry.aop.ProxyRequest.Builder#directDispatch()}
+ * <p>
+ * When the handler of the proxy implements this interface, the generated method does not call
+ * {@code handler.invoke(this, _methodN, $args)}, it calls invoke0..invoke3
+ * (chosen by parameter count) with the method index N of the proxy method table, so no {@code Object[]}
+ * is created for methods with up to 3 parameters.
+ * A plain {@link InvocationHandler} is still called by {@code handler.invoke(this, _methodN, $args)},
+ * direct dispatch mode does not make it faster.
+ * The {@link java.lang.reflect.Method} of an index can be got by
+ * {@link com.github.harbby.gadtry.aop.runtime.ProxyRuntime#getProxyMethods(Class)}
+ * <p>
+ * The signature is not typed per method: primitive arguments are boxed before the call and the result
+ * is returned as Object, so a method such as {@code int add(int, int)} still boxes its arguments and return value
+ * (values in the Integer cache range do not allocate).
+ */
+public interface DirectHandler
+        extends InvocationHandler
+{
+    Object invoke0(Object proxy, int methodIndex)
+            throws Throwable;
+
+    Object invoke1(Object proxy, int methodIndex, Object arg0)
+            throws Throwable;
+
+    Object invoke2(Object proxy, int methodIndex, Object arg0, Object arg1)
+            throws Throwable;
+
+    Object invoke3(Object proxy, int methodIndex, Object arg0, Object arg1, Object arg2)
+            throws Throwable;
+
+    Object invokeN(Object proxy, int methodIndex, Object[] args)
+            throws Throwable;
+}
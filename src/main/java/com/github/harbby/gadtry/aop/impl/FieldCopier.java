@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.impl;
+
+import com.github.harbby.gadtry.memory.UnsafeHelper;
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Copies the instance fields of a proxy target into the proxy object.
+ * <p>
+ * 字段偏移量按类计算一次并缓存, 之后每次创建代理对象只是几次Unsafe读写, 不再反射查找字段和setAccessible.
+ * 代理类继承自superclass, 所以同一个字段在target和代理对象中的偏移量相同.
+ */
+final class FieldCopier
+{
+    private static final Unsafe unsafe = UnsafeHelper.getUnsafe();
+    private static final ClassValue<FieldCopier> copiers = new ClassValue<FieldCopier>()
+    {
+        @Override
+        protected FieldCopier computeValue(Class<?> type)
+        {
+            return new FieldCopier(type);
+        }
+    };
+
+    //按存储宽度分组: long/double按8字节复制, int/float按4字节, short/char按2字节, byte/boolean按1字节
+    private final long[] objectOffsets;
+    private final long[] longOffsets;
+    private final long[] intOffsets;
+    private final long[] shortOffsets;
+    private final long[] byteOffsets;
+
+    private FieldCopier(Class<?> type)
+    {
+        Set<Field> fields = new LinkedHashSet<>();
+        fields.addAll(Arrays.asList(type.getDeclaredFields()));
+        fields.addAll(Arrays.asList(type.getFields()));
+        long[][] groups = new long[5][fields.size()];
+        int[] sizes = new int[5];
+        for (Field field : fields) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            int group = group(field.getType());
+            groups[group][sizes[group]++] = unsafe.objectFieldOffset(field);
+        }
+        this.objectOffsets = Arrays.copyOf(groups[0], sizes[0]);
+        this.longOffsets = Arrays.copyOf(groups[1], sizes[1]);
+        this.intOffsets = Arrays.copyOf(groups[2], sizes[2]);
+        this.shortOffsets = Arrays.copyOf(groups[3], sizes[3]);
+        this.byteOffsets = Arrays.copyOf(groups[4], sizes[4]);
+    }
+
+    static void copyObjectFields(Class<?> superclass, Object target, Object proxyObj)
+    {
+        if (superclass.isInterface()) {
+            return;
+        }
+        copiers.get(superclass).copy(target, proxyObj);
+    }
+
+    private void copy(Object from, Object to)
+    {
+        for (long offset : objectOffsets) {
+            unsafe.putObject(to, offset, unsafe.getObject(from, offset));
+        }
+        for (long offset : longOffsets) {
+            unsafe.putLong(to, offset, unsafe.getLong(from, offset));
+        }
+        for (long offset : intOffsets) {
+            unsafe.putInt(to, offset, unsafe.getInt(from, offset));
+        }
+        for (long offset : shortOffsets) {
+            unsafe.putShort(to, offset, unsafe.getShort(from, offset));
+        }
+        for (long offset : byteOffsets) {
+            unsafe.putByte(to, offset, unsafe.getByte(from, offset));
+        }
+    }
+
+    private static int group(Class<?> type)
+    {
+        if (!type.isPrimitive()) {
+            return 0;
+        }
+        else if (type == long.class || type == double.class) {
+            return 1;
+        }
+        else if (type == int.class || type == float.class) {
+            return 2;
+        }
+        else if (type == short.class || type == char.class) {
+            return 3;
+        }
+        else {
+            return 4;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.impl;
+
+import com.github.harbby.gadtry.aop.model.MethodInfo;
+import com.github.harbby.gadtry.aop.runtime.MethodInvoker;
+import com.github.harbby.gadtry.aop.runtime.ProxyRuntime;
+import com.github.harbby.gadtry.function.Function1;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+
+/**
+ * 代理类的每个方法是否需要切入(filter)只在代理对象创建时按方法下标计算一次,
+ * 调用时不再创建MethodInfo和执行filter, 未切入的方法直接通过 {@link MethodInvoker} 调用目标对象
+ */
+final class FilterDispatchHandler
+        implements DirectHandler, Serializable
+{
+    private final InvocationHandler handler;
+    private final Object instance;
+    private final Function1<MethodInfo, Boolean> filter;
+
+    //不参与序列化, 反序列化后第一次调用时重新计算
+    private transient volatile DispatchTable table;
+
+    FilterDispatchHandler(InvocationHandler handler, Object instance, Function1<MethodInfo, Boolean> filter)
+    {
+        this.handler = handler;
+        this.instance = instance;
+        this.filter = filter;
+    }
+
+    void init(Class<?> proxyClass)
+    {
+        this.table = new DispatchTable(proxyClass, filter);
+    }
+
+    private DispatchTable getTable(Class<?> proxyClass)
+    {
+        DispatchTable table = this.table;
+        if (table == null || table.proxyClass != proxyClass) {
+            table = new DispatchTable(proxyClass, filter);
+            this.table = table;
+        }
+        return table;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+            throws Throwable
+    {
+        DispatchTable table = getTable(proxy.getClass());
+        int methodIndex = table.invoker.getIndex(method);
+        if (methodIndex < 0) {
+            //不在代理类方法表中的方法
+            if (filter.apply(MethodInfo.of(method))) {
+                return handler.invoke(proxy, method, args);
+            }
+            return table.invoker.invoke(method, instance, args);
+        }
+        return dispatch(table, proxy, methodIndex, args);
+    }
+
+    @Override
+    public Object invoke0(Object proxy, int methodIndex)
+            throws Throwable
+    {
+        return dispatch(getTable(proxy.getClass()), proxy, methodIndex, new Object[0]);
+    }
+
+    @Override
+    public Object invoke1(Object proxy, int methodIndex, Object arg0)
+            throws Throwable
+    {
+        return dispatch(getTable(proxy.getClass()), proxy, methodIndex, new Object[] {arg0});
+    }
+
+    @Override
+    public Object invoke2(Object proxy, int methodIndex, Object arg0, Object arg1)
+            throws Throwable
+    {
+        return dispatch(getTable(proxy.getClass()), proxy, methodIndex, new Object[] {arg0, arg1});
+    }
+
+    @Override
+    public Object invoke3(Object proxy, int methodIndex, Object arg0, Object arg1, Object arg2)
+            throws Throwable
+    {
+        return dispatch(getTable(proxy.getClass()), proxy, methodIndex, new Object[] {arg0, arg1, arg2});
+    }
+
+    @Override
+    public Object invokeN(Object proxy, int methodIndex, Object[] args)
+            throws Throwable
+    {
+        return dispatch(getTable(proxy.getClass()), proxy, methodIndex, args);
+    }
+
+    private Object dispatch(DispatchTable table, Object proxy, int methodIndex, Object[] args)
+            throws Throwable
+    {
+        if (table.advised[methodIndex]) {
+            return handler.invoke(proxy, table.invoker.getMethod(methodIndex), args);
+        }
+        return table.invoker.invoke(methodIndex, instance, args);
+    }
+
+    private static class DispatchTable
+    {
+        private final Class<?> proxyClass;
+        private final MethodInvoker invoker;
+        private final boolean[] advised;
+
+        private DispatchTable(Class<?> proxyClass, Function1<MethodInfo, Boolean> filter)
+        {
+            this.proxyClass = proxyClass;
+            this.invoker = ProxyRuntime.getMethodInvoker(proxyClass);
+            Method[] methods = ProxyRuntime.getProxyMethods(proxyClass);
+            this.advised = new boolean[methods.length];
+            for (int i = 0; i < methods.length; i++) {
+                advised[i] = methods[i] != null && filter.apply(MethodInfo.of(methods[i]));
+            }
+        }
+    }
+}
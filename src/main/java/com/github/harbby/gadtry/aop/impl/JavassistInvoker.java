@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.impl;
+
+import com.github.harbby.gadtry.aop.mock.MockGoException;
+import com.github.harbby.gadtry.aop.runtime.MethodInvoker;
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.NotFoundException;
+import javassist.bytecode.DuplicateMemberException;
+import javassist.util.proxy.DefineClassHelper;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.github.harbby.gadtry.aop.runtime.ProxyRuntime.METHOD_START;
+
+/**
+ * 为代理类的方法表(_methodN)生成 {@link MethodInvoker}, 生成的invoke方法按方法下标switch后直接调用目标方法:
+ * <pre>
+ *     public Object invoke(int index, Object instance, Object[] args) {
+ *         switch (index) {
+ *             case 0:
+ *                 return java.lang.Integer.valueOf(((Foo) instance).add(((java.lang.Integer) args[0]).intValue()));
+ *             case 1:
+ *                 ((Foo) instance).touch((java.lang.String) args[0]);
+ *                 return null;
+ *             default:
+ *                 return this.invokeReflect(index, instance, args);
+ *         }
+ *     }
+ * </pre>
+ * 参数个数不超过3的方法同时生成在对应的invoke0..invoke3中, 直接使用参数而不创建Object[]:
+ * <pre>
+ *     public Object invoke1(int index, Object instance, Object arg0) {
+ *         switch (index) {
+ *             case 1:
+ *                 ((Foo) instance).touch((java.lang.String) arg0);
+ *                 return null;
+ *             default:
+ *                 return super.invoke1(index, instance, arg0);
+ *         }
+ *     }
+ * </pre>
+ */
+public final class JavassistInvoker
+{
+    private static final AtomicLong number = new AtomicLong(0);
+    private static final String PROXY_INVOKER_NAME = "$GadtryInvoker";
+    //与DirectHandler的invoke0..invoke3一致
+    private static final int MAX_DIRECT_ARGS = 3;
+
+    private JavassistInvoker() {}
+
+    public static MethodInvoker newInvoker(Class<?> proxyClass, Method[] methods)
+    {
+        return newInvoker(proxyClass, methods, true);
+    }
+
+    /**
+     * @param isProxyClass true: aClass是代理类, 它声明的方法按$_xxx()调用(即super.xxx());
+     * false: aClass是织入的类, 它声明的方法(如$_weavedN_name)按原名调用
+     */
+    public static MethodInvoker newInvoker(Class<?> aClass, Method[] methods, boolean isProxyClass)
+    {
+        ClassLoader loader = aClass.getClassLoader();
+        if (loader == null) {
+            return new ReflectMethodInvoker();
+        }
+        try {
+            Class<?> invokerClass = createInvokerClass(aClass, loader, methods, isProxyClass);
+            return (MethodInvoker) invokerClass.newInstance();
+        }
+        catch (Exception e) {
+            throw new MockGoException("create MethodInvoker of " + aClass + " failed, " + e.getMessage(), e);
+        }
+    }
+
+    private static Class<?> createInvokerClass(Class<?> proxyClass, ClassLoader loader, Method[] methods, boolean isProxyClass)
+            throws Exception
+    {
+        String invokerPackage = getInvokerPackage(proxyClass);
+        String simpleName = proxyClass.getName().substring(proxyClass.getName().lastIndexOf('.') + 1);
+        if (simpleName.indexOf('/') > 0) {
+            //vm匿名类的类名为 Xxx/hashCode
+            simpleName = simpleName.substring(0, simpleName.indexOf('/'));
+        }
+        String className = invokerPackage + "." + simpleName + PROXY_INVOKER_NAME + number.getAndIncrement();
+        //代理类和织入的类在共享ClassPool中没有(或是未织入的)字节码, 不预热
+        List<Class<?>> warmUpClasses = new ArrayList<>();
+        warmUpClasses.add(MethodInvoker.class);
+        for (Method method : methods) {
+            if (method != null && method.getDeclaringClass() != proxyClass && !warmUpClasses.contains(method.getDeclaringClass())) {
+                warmUpClasses.add(method.getDeclaringClass());
+            }
+        }
+        //织入的类在ClassPool中能找到未织入的字节码, child first才能在子ClassPool中声明同名的stub类
+        byte[] classBytes = ClassPools.compile(loader, !isProxyClass, warmUpClasses, classPool ->
+                makeInvokerClass(classPool, invokerPackage, className, proxyClass, loader, methods, isProxyClass));
+        return DefineClassHelper.toClass(className, null, loader, proxyClass.getProtectionDomain(), classBytes);
+    }
+
+    private static CtClass makeInvokerClass(ClassPool classPool, String invokerPackage, String className, Class<?> proxyClass,
+            ClassLoader loader, Method[] methods, boolean isProxyClass)
+            throws NotFoundException, CannotCompileException
+    {
+        CtClass invokerClass = classPool.makeClass(className);
+        invokerClass.setSuperclass(classPool.get(MethodInvoker.class.getName()));
+        invokerClass.setModifiers(javassist.Modifier.PUBLIC | javassist.Modifier.FINAL);
+        invokerClass.addConstructor(CtNewConstructor.defaultConstructor(invokerClass));
+
+        //代理类是运行时生成的, ClassPool中找不到它的字节码, 这里只声明$_xxx()方法供编译器解析调用;
+        //织入的类同理, ClassPool中是未织入的字节码, 声明$_weavedN_name()
+        CtClass proxyStub = null;
+        StringBuilder body = new StringBuilder("public Object invoke(int index, Object instance, Object[] args) throws Throwable {\n")
+                .append("switch (index) {\n");
+        StringBuilder[] arityBodies = new StringBuilder[MAX_DIRECT_ARGS + 1];
+        for (int i = 0; i < methods.length; i++) {
+            Method method = methods[i];
+            if (method == null || !isAccessible(method, invokerPackage, loader)) {
+                continue;
+            }
+            String methodName = method.getName();
+            if (method.getDeclaringClass() == proxyClass) {
+                if (isProxyClass) {
+                    // $_xxx()的Method对象名称已被 ProxyRuntime.findProxyClassMethod 去掉了前缀
+                    methodName = METHOD_START + methodName;
+                }
+                if (proxyStub == null) {
+                    proxyStub = classPool.makeClass(proxyClass.getName());
+                }
+                addStubMethod(classPool, proxyStub, method, methodName);
+            }
+            body.append("case ").append(i).append(":\n");
+            appendInvoke(body, method, methodName, false);
+
+            int parameterCount = method.getParameterTypes().length;
+            if (parameterCount <= MAX_DIRECT_ARGS) {
+                if (arityBodies[parameterCount] == null) {
+                    arityBodies[parameterCount] = new StringBuilder();
+                }
+                arityBodies[parameterCount].append("case ").append(i).append(":\n");
+                appendInvoke(arityBodies[parameterCount], method, methodName, true);
+            }
+        }
+        body.append("default:\n    return this.invokeReflect(index, instance, args);\n}\n}");
+        invokerClass.addMethod(CtNewMethod.make(body.toString(), invokerClass));
+
+        //invoke0..invoke3, 没有该参数个数的方法时使用父类的实现
+        for (int parameterCount = 0; parameterCount <= MAX_DIRECT_ARGS; parameterCount++) {
+            if (arityBodies[parameterCount] == null) {
+                continue;
+            }
+            StringBuilder parameters = new StringBuilder("int index, Object instance");
+            StringBuilder arguments = new StringBuilder("index, instance");
+            for (int i = 0; i < parameterCount; i++) {
+                parameters.append(", Object arg").append(i);
+                arguments.append(", arg").append(i);
+            }
+            String arityBody = "public Object invoke" + parameterCount + "(" + parameters + ") throws Throwable {\n" +
+                    "switch (index) {\n" + arityBodies[parameterCount] +
+                    "default:\n    return super.invoke" + parameterCount + "(" + arguments + ");\n}\n}";
+            invokerClass.addMethod(CtNewMethod.make(arityBody, invokerClass));
+        }
+        return invokerClass;
+    }
+
+    /**
+     * @param directArgs true: 参数为arg0..arg2, false: 参数为args[i]
+     */
+    private static void appendInvoke(StringBuilder body, Method method, String methodName, boolean directArgs)
+    {
+        StringBuilder call = new StringBuilder();
+        if (Modifier.isStatic(method.getModifiers())) {
+            //织入后保存原方法体的静态方法 $_weavedN_name
+            call.append(typeName(method.getDeclaringClass())).append(".");
+        }
+        else {
+            call.append("((").append(typeName(method.getDeclaringClass())).append(") instance).");
+        }
+        call.append(methodName).append("(");
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) {
+                call.append(", ");
+            }
+            Class<?> type = parameterTypes[i];
+            String arg = directArgs ? "arg" + i : "args[" + i + "]";
+            if (type.isPrimitive()) {
+                call.append("((").append(wrapperName(type)).append(") ").append(arg).append(").")
+                        .append(type.getName()).append("Value()");
+            }
+            else {
+                call.append("(").append(typeName(type)).append(") ").append(arg);
+            }
+        }
+        call.append(")");
+
+        Class<?> returnType = method.getReturnType();
+        if (returnType == void.class) {
+            body.append("    ").append(call).append(";\n    return null;\n");
+        }
+        else if (returnType.isPrimitive()) {
+            body.append("    return ").append(wrapperName(returnType)).append(".valueOf(").append(call).append(");\n");
+        }
+        else {
+            body.append("    return ").append(call).append(";\n");
+        }
+    }
+
+    private static void addStubMethod(ClassPool classPool, CtClass proxyStub, Method method, String methodName)
+            throws NotFoundException, CannotCompileException
+    {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        CtClass[] ctParameterTypes = new CtClass[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            ctParameterTypes[i] = classPool.get(typeName(parameterTypes[i]));
+        }
+        CtMethod stubMethod = new CtMethod(classPool.get(typeName(method.getReturnType())), methodName, ctParameterTypes, proxyStub);
+        stubMethod.setModifiers(Modifier.isStatic(method.getModifiers()) ? javassist.Modifier.PUBLIC | javassist.Modifier.STATIC :
+                javassist.Modifier.PUBLIC | javassist.Modifier.ABSTRACT);
+        try {
+            proxyStub.addMethod(stubMethod);
+        }
+        catch (DuplicateMemberException e) {
+            //只有返回值不同的$_xxx()(桥接方法), 都是调用super.xxx(), 声明一个即可
+        }
+    }
+
+    /**
+     * 生成的Invoker和代理类在同一个ClassLoader中, jdk Proxy的类包(com.sun.proxy)则换为gadtry.com.sun.proxy
+     */
+    private static String getInvokerPackage(Class<?> proxyClass)
+    {
+        String className = proxyClass.getName();
+        int index = className.lastIndexOf('.');
+        String packageName = index < 0 ? JavassistInvoker.class.getPackage().getName() : className.substring(0, index);
+        if (packageName.startsWith("java.") || packageName.startsWith("com.sun.proxy") || packageName.startsWith("jdk.proxy")) {
+            return "gadtry." + packageName;
+        }
+        return packageName;
+    }
+
+    /**
+     * 生成的Invoker类中不能访问的方法(例如其他包的protected方法或参数类型不可见), 使用反射进行调用
+     */
+    private static boolean isAccessible(Method method, String invokerPackage, ClassLoader loader)
+    {
+        int modifiers = method.getModifiers();
+        if (Modifier.isPrivate(modifiers)) {
+            return false;
+        }
+        if (!isAccessible(method.getDeclaringClass(), invokerPackage, loader) ||
+                !isAccessible(method.getReturnType(), invokerPackage, loader)) {
+            return false;
+        }
+        for (Class<?> type : method.getParameterTypes()) {
+            if (!isAccessible(type, invokerPackage, loader)) {
+                return false;
+            }
+        }
+        return Modifier.isPublic(modifiers) || isSamePackage(method.getDeclaringClass(), invokerPackage, loader);
+    }
+
+    private static boolean isAccessible(Class<?> type, String invokerPackage, ClassLoader loader)
+    {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        if (type.isPrimitive()) {
+            return true;
+        }
+        if (!Modifier.isPublic(type.getModifiers()) && !isSamePackage(type, invokerPackage, loader)) {
+            return false;
+        }
+        //类型必须能被生成类所在的ClassLoader按名称加载到
+        try {
+            return Class.forName(type.getName(), false, loader) == type;
+        }
+        catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static boolean isSamePackage(Class<?> type, String invokerPackage, ClassLoader loader)
+    {
+        String className = type.getName();
+        int index = className.lastIndexOf('.');
+        String packageName = index < 0 ? "" : className.substring(0, index);
+        return type.getClassLoader() == loader && packageName.equals(invokerPackage);
+    }
+
+    private static String typeName(Class<?> type)
+    {
+        StringBuilder arrayDims = new StringBuilder();
+        while (type.isArray()) {
+            arrayDims.append("[]");
+            type = type.getComponentType();
+        }
+        return type.getName() + arrayDims;
+    }
+
+    private static String wrapperName(Class<?> primitiveType)
+    {
+        if (primitiveType == int.class) {
+            return Integer.class.getName();
+        }
+        else if (primitiveType == char.class) {
+            return Character.class.getName();
+        }
+        String name = primitiveType.getName();
+        return "java.lang." + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static class ReflectMethodInvoker
+            extends MethodInvoker
+    {
+        @Override
+        public Object invoke(int methodIndex, Object instance, Object[] args)
+                throws Throwable
+        {
+            return invokeReflect(methodIndex, instance, args);
+        }
+    }
+}
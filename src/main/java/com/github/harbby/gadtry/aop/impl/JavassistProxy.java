@@ -19,7 +19,6 @@ import com.github.harbby.gadtry.aop.ProxyRequest;
 import com.github.harbby.gadtry.aop.mock.MockGoException;
 import com.github.harbby.gadtry.base.Strings;
 import com.github.harbby.gadtry.collection.mutable.MutableList;
-import com.github.harbby.gadtry.collection.mutable.MutableSet;
 import com.github.harbby.gadtry.memory.UnsafeHelper;
 import javassist.CannotCompileException;
 import javassist.ClassPool;
@@ -27,46 +26,109 @@ import javassist.CtClass;
 import javassist.CtConstructor;
 import javassist.CtField;
 import javassist.CtMethod;
-import javassist.LoaderClassPath;
+import javassist.CtPrimitiveType;
 import javassist.Modifier;
 import javassist.NotFoundException;
 import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.AttributeInfo;
+import javassist.bytecode.CodeAttribute;
 import javassist.bytecode.DuplicateMemberException;
+import javassist.bytecode.MethodInfo;
 import javassist.bytecode.annotation.Annotation;
 import javassist.compiler.CompileError;
 import javassist.compiler.Lex;
+import javassist.util.proxy.DefineClassHelper;
 
+import java.io.File;
 import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationHandler;
+import java.security.ProtectionDomain;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static com.github.harbby.gadtry.aop.runtime.ProxyRuntime.METHOD_FIELD_START;
 import static com.github.harbby.gadtry.aop.runtime.ProxyRuntime.METHOD_START;
 import static com.github.harbby.gadtry.base.MoreObjects.checkState;
 import static com.github.harbby.gadtry.base.Throwables.noCatch;
+import static java.util.Objects.requireNonNull;
 
 public class JavassistProxy
         implements Serializable
 {
     private static final Class<?>[] EMPTY_CLASS_ARRAY = new Class[0];
     private static final AtomicLong number = new AtomicLong(0);
-    private static final Map<ClassLoader, ConcurrentMap<KeyX, Class<?>>> proxyCache = new IdentityHashMap<>();
+    private static final ProxyClassRegistry registry = new ProxyClassRegistry();
+    private static volatile ProxyClassDiskCache diskCache;
+    private static volatile boolean anonymousInterfaceProxy = false;
 
     private JavassistProxy() {}
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Enable the on-disk cache of generated proxy classes, later starts load the cached bytecode
+     * instead of generating it again. A cached class is used only while the proxied classes are unchanged.
+     *
+     * @param cacheDir cache directory, null to disable the cache
+     */
+    public static void setDiskCacheDir(File cacheDir)
+    {
+        if (cacheDir == null) {
+            diskCache = null;
+            return;
+        }
+        checkState(cacheDir.isDirectory() || cacheDir.mkdirs(), "create proxy cache dir %s failed", cacheDir);
+        diskCache = new ProxyClassDiskCache(cacheDir);
+    }
+
+    public static File getDiskCacheDir()
+    {
+        ProxyClassDiskCache cache = diskCache;
+        return cache == null ? null : cache.getCacheDir();
+    }
+
+    /**
+     * Globally route interface proxies of {@link Proxy#proxy(ProxyRequest)} to generated anonymous classes
+     * instead of {@link java.lang.reflect.Proxy}, see: {@link ProxyRequest.Builder#anonymousClass()}
+     *
+     * @param enabled true to enable
+     */
+    public static void setAnonymousInterfaceProxy(boolean enabled)
+    {
+        anonymousInterfaceProxy = enabled;
+    }
+
+    public static boolean isAnonymousInterfaceProxy()
+    {
+        return anonymousInterfaceProxy;
+    }
+
     public static <T> T newProxyInstance(ProxyRequest<T> request)
     {
-        Class<?> aClass = getProxyClass(request);
+        return newProxyInstance(request, request.isAnonymousClass());
+    }
+
+    /**
+     * same as {@link #newProxyInstance(ProxyRequest)}, but the interface proxy class is always an anonymous class,
+     * see: {@link ProxyRequest.Builder#anonymousClass()}
+     */
+    public static <T> T newAnonymousProxyInstance(ProxyRequest<T> request)
+    {
+        checkState(request.getSuperclass().isInterface(), "anonymousClass only supports interface, but " + request.getSuperclass());
+        return newProxyInstance(request, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T newProxyInstance(ProxyRequest<T> request, boolean anonymous)
+    {
+        Class<?> aClass = getProxyClass(request, anonymous);
         Object obj;
         try {
             //--存在可能没有无参构造器的问题
@@ -78,7 +140,7 @@ public class JavassistProxy
         ((ProxyHandler) obj).setHandler(request.getHandler());
 
         if (request.getTarget() != null) {
-            copyObjectFields(request.getSuperclass(), obj, request.getTarget());
+            FieldCopier.copyObjectFields(request.getSuperclass(), request.getTarget(), obj);
         }
 
         return (T) obj;
@@ -96,34 +158,48 @@ public class JavassistProxy
         return newProxyInstance(request);
     }
 
-    private static void copyObjectFields(Class<?> superclass, Object proxyObj, Object target)
+    /**
+     * same as {@link #newProxyInstance(ClassLoader, InvocationHandler, Class[])}, but the proxy class uses direct dispatch mode,
+     * see: {@link ProxyRequest.Builder#directDispatch()}
+     */
+    public static <T> T newDirectProxyInstance(ClassLoader loader, InvocationHandler handler, Class<?>... interfaces)
     {
-        if (superclass.isInterface()) {
-            return;
-        }
-        Set<Field> fields = MutableSet.<Field>builder().addAll(superclass.getDeclaredFields())
-                .addAll(superclass.getFields())
+        @SuppressWarnings("unchecked")
+        ProxyRequest<T> request = ProxyRequest.builder((Class<T>) interfaces[0])
+                .setClassLoader(loader)
+                .addInterface(interfaces)
+                .setInvocationHandler(handler)
+                .disableSuperMethod()
+                .directDispatch()
                 .build();
+        return newProxyInstance(request);
+    }
 
-        for (Field field : fields) {
-            if (java.lang.reflect.Modifier.isStatic(field.getModifiers())) {
-                continue;
-            }
-            field.setAccessible(true);
-            try {
-                Object value = field.get(target);
-                field.set(proxyObj, value);
-            }
-            catch (IllegalAccessException e) {
-                throw new MockGoException("init proxy object field " + field, e);
-            }
-        }
+    /**
+     * same as {@link #newDirectProxyInstance(ClassLoader, InvocationHandler, Class[])}, but the proxy class is an anonymous class,
+     * see: {@link ProxyRequest.Builder#anonymousClass()}
+     */
+    public static <T> T newAnonymousProxyInstance(ClassLoader loader, InvocationHandler handler, Class<?>... interfaces)
+    {
+        @SuppressWarnings("unchecked")
+        ProxyRequest<T> request = ProxyRequest.builder((Class<T>) interfaces[0])
+                .setClassLoader(loader)
+                .addInterface(interfaces)
+                .setInvocationHandler(handler)
+                .disableSuperMethod()
+                .anonymousClass()
+                .build();
+        return newProxyInstance(request);
     }
 
     public static boolean isProxyClass(Class<?> cl)
     {
-        return ProxyHandler.class.isAssignableFrom(cl) &&
-                proxyCache.get(cl.getClassLoader()).containsValue(cl);
+        return registry.isProxyClass(cl);
+    }
+
+    public static ProxyClassRegistry getProxyClassRegistry()
+    {
+        return registry;
     }
 
     public static InvocationHandler getInvocationHandler(Object proxy)
@@ -160,6 +236,11 @@ public class JavassistProxy
     }
 
     public static Class<?> getProxyClass(ProxyRequest<?> request)
+    {
+        return getProxyClass(request, request.isAnonymousClass());
+    }
+
+    private static Class<?> getProxyClass(ProxyRequest<?> request, boolean anonymous)
     {
         String basePackage = request.getBasePackage();
         ClassLoader classLoader = request.getClassLoader();
@@ -180,10 +261,32 @@ public class JavassistProxy
             }
         }
 
-        KeyX name = new KeyX(request.isDisableSuperMethod(), validClass.toArray(EMPTY_CLASS_ARRAY)); //interfaces[0].getName();
-        return getClassLoaderProxyCache(loader).computeIfAbsent(name, key -> {
+        final boolean directDispatch = request.isDirectDispatch() || anonymous;
+        KeyX name = new KeyX(request.isDisableSuperMethod(), directDispatch, anonymous, validClass.toArray(EMPTY_CLASS_ARRAY)); //interfaces[0].getName();
+        return registry.computeIfAbsent(loader, name, key -> {
             try {
-                return createProxyClass(proxyPackage, request);
+                if (anonymous) {
+                    Class<?> proxyClass = defineAnonymousProxyClass(proxyPackage, loader, request);
+                    if (proxyClass != null) {
+                        return proxyClass;
+                    }
+                }
+                ProxyClassDiskCache cache = diskCache;
+                String fingerprint = cache == null ? null : cache.fingerprint(proxyPackage, validClass, request, directDispatch, anonymous);
+                if (fingerprint == null) {
+                    String className = proxyPackage + ".$JvstProxy" + number.getAndIncrement() + "$" + request.getSuperclass().getSimpleName();
+                    byte[] classBytes = makeProxyClass(className, request, directDispatch);
+                    return DefineClassHelper.toClass(className, null, loader, request.getSuperclass().getProtectionDomain(), classBytes);
+                }
+                ProtectionDomain protectionDomain = request.getSuperclass().getProtectionDomain();
+                Class<?> proxyClass = cache.load(fingerprint, loader, protectionDomain);
+                if (proxyClass != null) {
+                    return proxyClass;
+                }
+                //使用指纹作为类名, 保证缓存的字节码在每次启动时类名都一致
+                byte[] classBytes = makeProxyClass(proxyPackage + ".$JvstProxy" + fingerprint + "$" + request.getSuperclass().getSimpleName(), request, directDispatch);
+                cache.save(fingerprint, classBytes);
+                return UnsafeHelper.defineClass(classBytes, loader, protectionDomain);
             }
             catch (MockGoException e) {
                 throw e;
@@ -194,34 +297,71 @@ public class JavassistProxy
         });
     }
 
-    private static ConcurrentMap<KeyX, Class<?>> getClassLoaderProxyCache(ClassLoader loader)
+    /**
+     * 代理类定义为接口的vm匿名类, 匿名类只能和host类在同一个包和ClassLoader中,
+     * 不满足时(例如java.*的接口或指定了其他basePackage)返回null, 使用普通的代理类
+     */
+    private static Class<?> defineAnonymousProxyClass(String proxyPackage, ClassLoader loader, ProxyRequest<?> request)
+            throws Exception
     {
-        ConcurrentMap<KeyX, Class<?>> classMap = proxyCache.get(loader);
-        if (classMap != null) {
-            return classMap;
+        Class<?> hostClass = request.getSuperclass();
+        String hostName = hostClass.getName();
+        int index = hostName.lastIndexOf('.');
+        String hostPackage = index < 0 ? "" : hostName.substring(0, index);
+        if (hostClass.getClassLoader() != loader || !hostPackage.equals(proxyPackage)) {
+            return null;
         }
-
-        synchronized (proxyCache) {
-            if (!proxyCache.containsKey(loader)) {
-                ConcurrentMap<KeyX, Class<?>> tmp = new ConcurrentHashMap<>();  //HashMap
-                proxyCache.put(loader, tmp);
-                return tmp;
-            }
-            else {
-                return proxyCache.get(loader);
-            }
+        String className = proxyPackage + ".$JvstProxy" + number.getAndIncrement() + "$" + hostClass.getSimpleName();
+        byte[] classBytes = makeProxyClass(className, request, true);
+        try {
+            return UnsafeHelper.defineAnonymousClass(hostClass, classBytes, null);
+        }
+        catch (NoSuchMethodError e) {
+            //jdk17+ 已移除Unsafe.defineAnonymousClass
+            return UnsafeHelper.defineClass(classBytes, loader);
         }
     }
 
-    private static Class<?> createProxyClass(String basePackage, ProxyRequest<?> request)
+    /**
+     * 批量并发生成代理类, 用于容器启动时预先生成所有已知的代理类型.
+     * 同一个ClassLoader只有预先解析共享CtClass的阶段是串行的(见{@link ClassPools}), 字节码生成, 磁盘缓存加载和类的定义都并发执行
+     *
+     * @param requests proxy requests
+     * @return proxy classes, same order as requests
+     */
+    public static List<Class<?>> prepareAll(List<ProxyRequest<?>> requests)
+    {
+        return prepareAll(requests, ForkJoinPool.commonPool());
+    }
+
+    public static List<Class<?>> prepareAll(List<ProxyRequest<?>> requests, ForkJoinPool pool)
+    {
+        requireNonNull(requests, "requests is null");
+        requireNonNull(pool, "pool is null");
+        //在pool中执行parallelStream, 子任务会fork到该pool上
+        return pool.submit(() -> requests.parallelStream()
+                .map(JavassistProxy::getProxyClass)
+                .collect(Collectors.<Class<?>>toList()))
+                .join();
+    }
+
+    private static byte[] makeProxyClass(String className, ProxyRequest<?> request, boolean directDispatch)
+            throws Exception
+    {
+        List<Class<?>> warmUpClasses = new ArrayList<>();
+        warmUpClasses.add(request.getSuperclass());
+        Collections.addAll(warmUpClasses, request.getInterfaces());
+        warmUpClasses.add(ProxyHandler.class);
+        return ClassPools.compile(request.getClassLoader(), false, warmUpClasses, classPool -> makeProxyClass(classPool, className, request, directDispatch));
+    }
+
+    private static CtClass makeProxyClass(ClassPool classPool, String className, ProxyRequest<?> request, boolean directDispatch)
             throws Exception
     {
         Class<?> superclass = request.getSuperclass();
-        ClassPool classPool = new ClassPool(true);
-        classPool.appendClassPath(new LoaderClassPath(request.getClassLoader()));
 
         // New Create Proxy Class
-        CtClass proxyClass = classPool.makeClass(basePackage + ".$JvstProxy" + number.getAndIncrement() + "$" + superclass.getSimpleName());
+        CtClass proxyClass = classPool.makeClass(className);
         CtClass parentClass = classPool.get(superclass.getName());
         final List<CtClass> ctInterfaces = MutableList.of(parentClass);
 
@@ -258,10 +398,10 @@ public class JavassistProxy
         }
 
         // 添加 ProxyHandler 接口
-        installProxyHandlerInterface(classPool, proxyClass);
+        installProxyHandlerInterface(classPool, proxyClass, directDispatch);
 
         // 添加方法和字段
-        installFieldAndMethod(proxyClass, ctInterfaces, request);
+        installFieldAndMethod(proxyClass, ctInterfaces, request, directDispatch);
 
         // 设置代理类的类修饰符
         proxyClass.setModifiers(Modifier.PUBLIC | Modifier.FINAL);
@@ -273,29 +413,34 @@ public class JavassistProxy
 
         // 持久化class到硬盘, 可以直接反编译查看
         //proxyClass.writeFile("out/.");
-        return proxyClass.toClass(request.getClassLoader(), superclass.getProtectionDomain());
+        return proxyClass;
     }
 
-    private static void installFieldAndMethod(CtClass proxyClass, List<CtClass> ctInterfaces, ProxyRequest<?> request)
+    private static void installFieldAndMethod(CtClass proxyClass, List<CtClass> ctInterfaces, ProxyRequest<?> request, boolean directDispatch)
             throws NotFoundException, CannotCompileException
     {
-        Map<CtMethod, String> methods = new IdentityHashMap<>();
         MutableList.Builder<CtMethod> builder = MutableList.builder(); //不能使用 Set进行去重。否则泛型方法会丢失
         ctInterfaces.forEach(ctClass -> {
             builder.addAll(ctClass.getMethods());
             builder.addAll(ctClass.getDeclaredMethods());
         });
-        List<CtMethod> methodList = builder.build();
-        methodList.stream().filter(ctMethod -> {
+        //按CtMethod对象去重, 并保持类文件中的方法顺序, 使_methodN的下标在每次生成时都稳定
+        Set<CtMethod> exists = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<CtMethod> methods = new ArrayList<>();
+        for (CtMethod ctMethod : builder.build()) {
             //final or private or static 的方法都不会继承和代理
-            return !(Modifier.isFinal(ctMethod.getModifiers()) ||
+            if (Modifier.isFinal(ctMethod.getModifiers()) ||
                     Modifier.isPrivate(ctMethod.getModifiers()) ||
-                    Modifier.isStatic(ctMethod.getModifiers()));
-        }).forEach(ctMethod -> methods.put(ctMethod, ""));
+                    Modifier.isStatic(ctMethod.getModifiers())) {
+                continue;
+            }
+            if (exists.add(ctMethod)) {
+                methods.add(ctMethod);
+            }
+        }
 
-        int methodIndex = 0;
-        for (CtMethod ctMethod : methods.keySet()) {
-            final String methodFieldName = "_method" + methodIndex++;
+        for (int methodIndex = 0; methodIndex < methods.size(); methodIndex++) {
+            CtMethod ctMethod = methods.get(methodIndex);
             if (request.getSuperclass().isInterface() ||
                     ctMethod.getDeclaringClass().isInterface() ||   //接口的方法或default方法无法super.()调用
                     Modifier.isAbstract(ctMethod.getModifiers()) ||  //Abstract方法也无法被super.()调用
@@ -303,43 +448,25 @@ public class JavassistProxy
                     (Modifier.isPackage(ctMethod.getModifiers()) &&  //包内级别的无法super.()调用
                             !ctMethod.getDeclaringClass().getPackageName().equals(proxyClass.getPackageName()))
             ) {
-                addSupperMethod(proxyClass, ctMethod, methodFieldName);
+                addSupperMethod(proxyClass, ctMethod, methodIndex, directDispatch);
             }
             else {
-                addSupperMethod2(proxyClass, ctMethod, methodFieldName); //这里应该全是可以被super.()调用的方法
+                addSupperMethod2(proxyClass, ctMethod, methodIndex, directDispatch); //这里应该全是可以被super.()调用的方法
             }
         }
     }
 
-    private static void addSupperMethod(CtClass proxyClass, CtMethod ctMethod, String methodNewName)
+    private static void addSupperMethod(CtClass proxyClass, CtMethod ctMethod, int methodIndex, boolean directDispatch)
             throws NotFoundException, CannotCompileException
     {
+        final String methodNewName = METHOD_FIELD_START + methodIndex;
         // 添加字段
         String fieldCode = "private static final java.lang.reflect.Method %s = " +
                 "javassist.util.proxy.RuntimeSupport.findSuperClassMethod(%s.class, \"%s\", \"%s\");";
         String fieldSrc = String.format(fieldCode, methodNewName, proxyClass.getName(), ctMethod.getName(), ctMethod.getSignature());
-        CtField ctField;
-        try {
-            ctField = CtField.make(fieldSrc, proxyClass);
-        }
-        catch (CannotCompileException e) {
-            if (e.getCause() instanceof CompileError) {
-                Lex lex = ((CompileError) e.getCause()).getLex();
-                StringBuffer stringBuffer = noCatch(() -> {
-                    Field field = Lex.class.getDeclaredField("textBuffer");
-                    field.setAccessible(true);
-                    return (StringBuffer) field.get(lex);
-                });
-                throw new MockGoException("package name [" + proxyClass.getPackageName() + "] find exists JAVA system keywords " + stringBuffer, e);
-            }
-            throw e;
-        }
+        addMethodField(proxyClass, fieldSrc);
 
-        proxyClass.addField(ctField);
-
-        String code = "return ($r) this.handler.invoke(this, %s, $args);";
-        String methodBodySrc = String.format(code, methodNewName);
-        addProxyMethod(proxyClass, ctMethod, methodBodySrc);
+        addProxyMethod(proxyClass, ctMethod, buildInvokeBody(ctMethod, methodIndex, directDispatch));
     }
 
     /**
@@ -352,9 +479,10 @@ public class JavassistProxy
      *         return super.getAge();
      *     }
      * */
-    private static void addSupperMethod2(CtClass proxyClass, CtMethod ctMethod, String methodNewName)
+    private static void addSupperMethod2(CtClass proxyClass, CtMethod ctMethod, int methodIndex, boolean directDispatch)
             throws NotFoundException, CannotCompileException
     {
+        final String methodNewName = METHOD_FIELD_START + methodIndex;
         // 添加字段
         String fieldCode = "private static final java.lang.reflect.Method %s = " +
                 "com.github.harbby.gadtry.aop.runtime.ProxyRuntime.findProxyClassMethod(%s.class, \"" + METHOD_START + "%s\", %s);";
@@ -370,7 +498,33 @@ public class JavassistProxy
         }
         String fieldSrc = String.format(fieldCode, methodNewName, proxyClass.getName(), ctMethod.getName(),
                 arg);
+        addMethodField(proxyClass, fieldSrc);
+
+        addProxyMethod(proxyClass, ctMethod, buildInvokeBody(ctMethod, methodIndex, directDispatch));
+        //------add _Method()---------- // ctMethod.getLongName();
+        CtMethod m2 = new CtMethod(ctMethod.getReturnType(), METHOD_START + ctMethod.getName(), ctMethod.getParameterTypes(), proxyClass);
+        copyAttributes(ctMethod, m2); //add @注解
+        m2.setBody("return ($r) super." + ctMethod.getName() + "($$);");
+        proxyClass.addMethod(m2);
+    }
+
+    /**
+     * ctMethod属于共享ClassPool中的父类, 只能通过getMethodInfo2()读取(getMethodInfo()会把父类标记为已修改),
+     * 属性复制到代理类的常量池中
+     */
+    private static void copyAttributes(CtMethod ctMethod, CtMethod proxyMethod)
+    {
+        MethodInfo methodInfo = proxyMethod.getMethodInfo();
+        for (AttributeInfo attribute : ctMethod.getMethodInfo2().getAttributes()) {
+            if (!(attribute instanceof CodeAttribute)) {
+                methodInfo.addAttribute(attribute.copy(methodInfo.getConstPool(), null));
+            }
+        }
+    }
 
+    private static void addMethodField(CtClass proxyClass, String fieldSrc)
+            throws CannotCompileException
+    {
         CtField ctField;
         try {
             ctField = CtField.make(fieldSrc, proxyClass);
@@ -387,20 +541,61 @@ public class JavassistProxy
             }
             throw e;
         }
-
         proxyClass.addField(ctField);
+    }
 
-        String code = "return ($r) this.handler.invoke(this, %s, $args);";
-        String methodBodySrc = String.format(code, methodNewName);
-        addProxyMethod(proxyClass, ctMethod, methodBodySrc);
-        //------add _Method()---------- // ctMethod.getLongName();
-        CtMethod m2 = new CtMethod(ctMethod.getReturnType(), METHOD_START + ctMethod.getName(), ctMethod.getParameterTypes(), proxyClass);
-        ctMethod.getMethodInfo().getAttributes().forEach(m2.getMethodInfo()::addAttribute); //add @注解
-        m2.setBody("return ($r) super." + ctMethod.getName() + "($$);");
-        proxyClass.addMethod(m2);
+    /**
+     * handler mode:
+     * <pre>
+     *     return ($r) this.handler.invoke(this, _method5, $args);
+     * </pre>
+     * direct dispatch mode:
+     * <pre>
+     *     com.github.harbby.gadtry.aop.impl.DirectHandler dispatcher = this.dispatcher;
+     *     if (dispatcher != null) {
+     *         return ($r) dispatcher.invoke2(this, 5, java.lang.Integer.valueOf($1), $2);
+     *     }
+     *     return ($r) this.handler.invoke(this, _method5, $args);
+     * </pre>
+     * 只有handler实现了DirectHandler时才走下标分派, 普通InvocationHandler仍然直接调用handler.invoke(), 不再经过适配层多创建一次参数数组.
+     * DirectHandler只有Object参数的invoke0..invoke3/invokeN, 原始类型的参数用valueOf()装箱(($w)会编译为new Integer(),
+     * 每次调用都分配), 返回值由($r)拆箱
+     */
+    private static String buildInvokeBody(CtMethod ctMethod, int methodIndex, boolean directDispatch)
+            throws NotFoundException
+    {
+        if (!directDispatch) {
+            return String.format("return ($r) this.handler.invoke(this, %s, $args);", METHOD_FIELD_START + methodIndex);
+        }
+        CtClass[] parameterTypes = ctMethod.getParameterTypes();
+        int parameterCount = parameterTypes.length;
+        String directHandler = DirectHandler.class.getName();
+        StringBuilder body = new StringBuilder("{\n")
+                .append("    ").append(directHandler).append(" dispatcher = this.dispatcher;\n")
+                .append("    if (dispatcher != null) {\n")
+                .append("        return ($r) dispatcher.");
+        if (parameterCount > 3) {
+            body.append("invokeN(this, ").append(methodIndex).append(", $args);\n");
+        }
+        else {
+            body.append("invoke").append(parameterCount).append("(this, ").append(methodIndex);
+            for (int i = 1; i <= parameterCount; i++) {
+                if (parameterTypes[i - 1].isPrimitive()) {
+                    String wrapperName = ((CtPrimitiveType) parameterTypes[i - 1]).getWrapperName();
+                    body.append(", ").append(wrapperName).append(".valueOf($").append(i).append(")");
+                }
+                else {
+                    body.append(", $").append(i);
+                }
+            }
+            body.append(");\n");
+        }
+        return body.append("    }\n")
+                .append("    return ($r) this.handler.invoke(this, ").append(METHOD_FIELD_START).append(methodIndex).append(", $args);\n")
+                .append("}").toString();
     }
 
-    private static void installProxyHandlerInterface(ClassPool classPool, CtClass proxyClass)
+    private static void installProxyHandlerInterface(ClassPool classPool, CtClass proxyClass, boolean directDispatch)
             throws NotFoundException, CannotCompileException
 
     {
@@ -410,8 +605,19 @@ public class JavassistProxy
         CtField handlerField = CtField.make("private java.lang.reflect.InvocationHandler handler;", proxyClass);
         proxyClass.addField(handlerField);
 
-        //Add Method setHandler
-        addProxyMethod(proxyClass, proxyHandler.getDeclaredMethod("setHandler"), "this.handler = $1;");
+        if (directDispatch) {
+            //dispatcher只在handler实现了DirectHandler时非null, 和handler是同一个对象, 序列化时不会多写一份
+            String directHandler = DirectHandler.class.getName();
+            proxyClass.addField(CtField.make("private " + directHandler + " dispatcher;", proxyClass));
+            addProxyMethod(proxyClass, proxyHandler.getDeclaredMethod("setHandler"), "{\n" +
+                    "    this.handler = $1;\n" +
+                    "    this.dispatcher = $1 instanceof " + directHandler + " ? (" + directHandler + ") $1 : null;\n" +
+                    "}");
+        }
+        else {
+            //Add Method setHandler
+            addProxyMethod(proxyClass, proxyHandler.getDeclaredMethod("setHandler"), "this.handler = $1;");
+        }
         //Add Method getHandler
         addProxyMethod(proxyClass, proxyHandler.getDeclaredMethod("getHandler"), "return this.handler;");
     }
@@ -27,18 +27,45 @@ public final class KeyX
     private final int hash;
     private final WeakReference<Class<?>>[] refs;
     private final boolean isDisableSuperMethod;
+    private final boolean isDirectDispatch;
+    private final boolean isAnonymous;
 
-    @SuppressWarnings("unchecked")
     public KeyX(boolean isDisableSuperMethod, Class<?>[] interfaces)
+    {
+        this(isDisableSuperMethod, false, interfaces);
+    }
+
+    public KeyX(boolean isDisableSuperMethod, boolean isDirectDispatch, Class<?>[] interfaces)
+    {
+        this(isDisableSuperMethod, isDirectDispatch, false, interfaces);
+    }
+
+    @SuppressWarnings("unchecked")
+    public KeyX(boolean isDisableSuperMethod, boolean isDirectDispatch, boolean isAnonymous, Class<?>[] interfaces)
     {
         this.isDisableSuperMethod = isDisableSuperMethod;
-        hash = Arrays.deepHashCode(isDisableSuperMethod, interfaces);
+        this.isDirectDispatch = isDirectDispatch;
+        this.isAnonymous = isAnonymous;
+        hash = Arrays.deepHashCode(isDisableSuperMethod, isDirectDispatch, isAnonymous, interfaces);
         refs = (WeakReference<Class<?>>[]) new WeakReference<?>[interfaces.length];
         for (int i = 0; i < interfaces.length; i++) {
             refs[i] = new WeakReference<>(interfaces[i]);
         }
     }
 
+    public boolean isAnonymous()
+    {
+        return isAnonymous;
+    }
+
+    /**
+     * @return the first class of the key (proxy superclass), null if it has been collected
+     */
+    public Class<?> getHostClass()
+    {
+        return refs.length == 0 ? null : refs[0].get();
+    }
+
     @Override
     public int hashCode()
     {
@@ -61,7 +88,9 @@ public final class KeyX
         if (this.refs.length != other.refs.length) {
             return false;
         }
-        if (this.isDisableSuperMethod != other.isDisableSuperMethod) {
+        if (this.isDisableSuperMethod != other.isDisableSuperMethod ||
+                this.isDirectDispatch != other.isDirectDispatch ||
+                this.isAnonymous != other.isAnonymous) {
             return false;
         }
         for (int i = 0; i < this.refs.length; i++) {
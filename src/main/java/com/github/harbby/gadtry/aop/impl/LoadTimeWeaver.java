@@ -0,0 +1,396 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.impl;
+
+import com.github.harbby.gadtry.aop.Aspect;
+import com.github.harbby.gadtry.aop.Binder;
+import com.github.harbby.gadtry.aop.JoinPoint;
+import com.github.harbby.gadtry.aop.model.Pointcut;
+import com.github.harbby.gadtry.aop.v1.FilterBuilder;
+import com.github.harbby.gadtry.aop.v1.PointcutExpression;
+import com.github.harbby.gadtry.function.exception.Function;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.CtNewMethod;
+import javassist.Modifier;
+import javassist.bytecode.AccessFlag;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.AttributeInfo;
+import javassist.bytecode.Descriptor;
+import javassist.bytecode.annotation.Annotation;
+
+import java.io.ByteArrayInputStream;
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Load-time weaving: 在类加载时把advice直接织入目标类的字节码, 不再创建代理对象.
+ * <p>
+ * 只支持表达式定义的切点 {@link Binder#bind(String, String)}, 表达式按类名/方法签名匹配, 匹配时不加载任何类.
+ * 只对安装之后加载的类生效; 一个方法匹配多个切点时按定义顺序组合, 先定义的切点在最外层(与 {@link AopFactoryImpl} 相同).
+ * 目标类的ClassLoader必须能看到gadtry的 {@link WeavingRuntime}.
+ */
+public class LoadTimeWeaver
+        implements ClassFileTransformer
+{
+    private static final AtomicInteger weavedClassCount = new AtomicInteger();
+
+    private final AtomicInteger failedClassCount = new AtomicInteger();
+    private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+    private final List<Pointcut> pointcuts;
+    private final List<String> excludePackages = new ArrayList<>();
+
+    public LoadTimeWeaver(List<Pointcut> pointcuts)
+    {
+        this.pointcuts = requireNonNull(pointcuts, "pointcuts is null");
+        //不织入jdk, javassist和gadtry自身
+        Collections.addAll(excludePackages, "java/", "javax/", "sun/", "com/sun/", "jdk/", "javassist/", "com/github/harbby/gadtry/");
+    }
+
+    public static LoadTimeWeaver create(Aspect... aspects)
+    {
+        List<Pointcut> pointcuts = new ArrayList<>();
+        Binder binder = new Binder()
+        {
+            @Override
+            public PointBuilder bind(String pointName, String location)
+            {
+                Pointcut pointcut = new Pointcut(pointName);
+                pointcut.setExpression(PointcutExpression.compile(location));
+                pointcut.setSearchClass(Collections.emptySet());
+                pointcuts.add(pointcut);
+                return new PointBuilder(pointcut);
+            }
+
+            @Override
+            public FilterBuilder bind(String pointName)
+            {
+                throw new UnsupportedOperationException("load-time weaving only supports bind(pointName, location)");
+            }
+        };
+        for (Aspect aspect : aspects) {
+            aspect.register(binder);
+        }
+        return new LoadTimeWeaver(pointcuts);
+    }
+
+    public static int getWeavedClassCount()
+    {
+        return weavedClassCount.get();
+    }
+
+    /**
+     * @return number of classes that failed to weave and were loaded unchanged
+     */
+    public int getFailedClassCount()
+    {
+        return failedClassCount.get();
+    }
+
+    /**
+     * @return the first weaving failure, or null if no class failed
+     */
+    public Throwable getFirstFailure()
+    {
+        return firstFailure.get();
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+            ProtectionDomain protectionDomain, byte[] classfileBuffer)
+    {
+        if (loader == null || className == null || classBeingRedefined != null || isExcluded(className)) {
+            //重定义已加载的类时不能增加方法
+            return null;
+        }
+        try {
+            return weave(loader, classfileBuffer);
+        }
+        catch (Throwable e) {
+            //织入失败时保持原类不变, 不能影响类加载; 只保留第一次失败的异常, 之后只计数
+            failedClassCount.incrementAndGet();
+            if (firstFailure.get() == null) {
+                firstFailure.compareAndSet(null, new IllegalStateException("weave class " + className.replace('/', '.') + " failed", e));
+            }
+            return null;
+        }
+    }
+
+    private boolean isExcluded(String className)
+    {
+        for (String excludePackage : excludePackages) {
+            if (className.startsWith(excludePackage)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    byte[] weave(ClassLoader loader, byte[] classfileBuffer)
+            throws Exception
+    {
+        //child first: 类文件同时存在于ClassLoader中, 必须使用正在织入的这个CtClass
+        List<WeavingRuntime.WeavePoint> points = new ArrayList<>();
+        CtClass[] weavedClass = new CtClass[1];
+        byte[] bytes = ClassPools.compile(loader, true, Collections.singletonList(WeavingRuntime.class),
+                classPool -> weavedClass[0] = weave(classPool, classfileBuffer, points));
+        if (bytes == null) {
+            return null;
+        }
+        //所有方法都织入成功后才登记, 类初始化时由织入的类取走
+        WeavingRuntime.register(loader, weavedClass[0].getName(), points.toArray(new WeavingRuntime.WeavePoint[0]));
+        weavedClassCount.incrementAndGet();
+        return bytes;
+    }
+
+    private CtClass weave(ClassPool classPool, byte[] classfileBuffer, List<WeavingRuntime.WeavePoint> points)
+            throws Exception
+    {
+        CtClass ctClass = classPool.makeClass(new ByteArrayInputStream(classfileBuffer));
+        if (ctClass.isInterface() || ctClass.isAnnotation()) {
+            return null;
+        }
+        String[] classAnnotations = annotationNames(ctClass.getClassFile().getAttribute(AnnotationsAttribute.visibleTag));
+        //织入的方法体需要引用该字段, 先添加; 没有织入任何方法时整个CtClass被丢弃
+        addWeavePointsField(ctClass);
+        for (CtMethod method : ctClass.getDeclaredMethods()) {
+            int modifiers = method.getModifiers();
+            int accessFlags = method.getMethodInfo().getAccessFlags();
+            if (Modifier.isAbstract(modifiers) || Modifier.isNative(modifiers) ||
+                    (accessFlags & (AccessFlag.SYNTHETIC | AccessFlag.BRIDGE)) != 0 ||
+                    method.getName().startsWith(WeavingRuntime.WEAVED_METHOD_START)) {
+                continue;
+            }
+            List<Function<JoinPoint, Object, Throwable>> handlers = findHandlers(new BytecodeSignature(ctClass.getName(), classAnnotations, method));
+            if (handlers.isEmpty()) {
+                continue;
+            }
+            Function<JoinPoint, Object, Throwable> advice = handlers.size() == 1 ? handlers.get(0) : AopFactoryImpl.chain(handlers);
+            points.add(weaveMethod(ctClass, method, points.size(), advice));
+        }
+        if (points.isEmpty()) {
+            return null;
+        }
+        return ctClass;
+    }
+
+    private List<Function<JoinPoint, Object, Throwable>> findHandlers(PointcutExpression.MethodSignature signature)
+    {
+        List<Function<JoinPoint, Object, Throwable>> handlers = new ArrayList<>();
+        for (Pointcut pointcut : pointcuts) {
+            if (pointcut.getExpression() != null && pointcut.getExpression().matches(signature)) {
+                handlers.add(pointcut.buildRunHandler());
+            }
+        }
+        return handlers;
+    }
+
+    /**
+     * <pre>
+     * static synthetic WeavingRuntime.WeavePoint[] $_weavePoints;
+     * static { $_weavePoints = WeavingRuntime.bind(Target.class); 原静态初始化 }
+     * </pre>
+     */
+    private static void addWeavePointsField(CtClass ctClass)
+            throws Exception
+    {
+        CtField field = CtField.make(String.format("static %s[] %s;", WeavingRuntime.WeavePoint.class.getName(), WeavingRuntime.WEAVE_POINTS_FIELD), ctClass);
+        field.getFieldInfo().setAccessFlags(field.getFieldInfo().getAccessFlags() | AccessFlag.SYNTHETIC);
+        ctClass.addField(field);
+        ctClass.makeClassInitializer().insertBefore(String.format("%s = %s.bind(%s.class);",
+                WeavingRuntime.WEAVE_POINTS_FIELD, WeavingRuntime.class.getName(), ctClass.getName()));
+    }
+
+    /**
+     * <pre>
+     * synthetic int $_weaved3_add(int a, int b) { 原方法体 }
+     *
+     * public int add(int a, int b) {
+     *     return ($r) WeavingRuntime.invoke($_weavePoints[3], this, $args);
+     * }
+     * </pre>
+     * $_weavedN_name是包可见的, 同包中生成的MethodInvoker可以直接调用它.
+     * 这里不能使用$class: javassist把它编译为按线程ContextClassLoader加载类, 得到的可能是未织入的同名类
+     */
+    private static WeavingRuntime.WeavePoint weaveMethod(CtClass ctClass, CtMethod method, int pointId, Function<JoinPoint, Object, Throwable> advice)
+            throws Exception
+    {
+        String weavedName = WeavingRuntime.weavedMethodName(pointId, method.getName());
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        CtMethod weavedMethod = CtNewMethod.copy(method, weavedName, ctClass, null);
+        weavedMethod.setModifiers(isStatic ? Modifier.STATIC : 0);
+        weavedMethod.getMethodInfo().setAccessFlags(weavedMethod.getMethodInfo().getAccessFlags() | AccessFlag.SYNTHETIC);
+        ctClass.addMethod(weavedMethod);
+        method.setBody(String.format("return ($r) %s.invoke(%s[%s], %s, $args);",
+                WeavingRuntime.class.getName(), WeavingRuntime.WEAVE_POINTS_FIELD, pointId, isStatic ? "null" : "$0"));
+        return new WeavingRuntime.WeavePoint(advice, method.getName(), weavedName);
+    }
+
+    private static String[] annotationNames(AttributeInfo attribute)
+    {
+        if (!(attribute instanceof AnnotationsAttribute)) {
+            return new String[0];
+        }
+        Annotation[] annotations = ((AnnotationsAttribute) attribute).getAnnotations();
+        String[] names = new String[annotations.length];
+        for (int i = 0; i < annotations.length; i++) {
+            names[i] = annotations[i].getTypeName();
+        }
+        return names;
+    }
+
+    /**
+     * 从字节码中读取方法签名, 类型名来自方法描述符, 不需要加载或解析参数类型
+     */
+    private static final class BytecodeSignature
+            implements PointcutExpression.MethodSignature
+    {
+        private final String declaringType;
+        private final String[] classAnnotations;
+        private final CtMethod method;
+
+        private BytecodeSignature(String declaringType, String[] classAnnotations, CtMethod method)
+        {
+            this.declaringType = declaringType;
+            this.classAnnotations = classAnnotations;
+            this.method = method;
+        }
+
+        @Override
+        public String getDeclaringType()
+        {
+            return declaringType;
+        }
+
+        @Override
+        public String[] getClassAnnotations()
+        {
+            return classAnnotations;
+        }
+
+        @Override
+        public String getName()
+        {
+            return method.getName();
+        }
+
+        @Override
+        public int getModifiers()
+        {
+            return method.getModifiers();
+        }
+
+        @Override
+        public String getReturnType()
+        {
+            String descriptor = method.getSignature();
+            return typeName(descriptor, descriptor.indexOf(')') + 1);
+        }
+
+        @Override
+        public String[] getParameterTypes()
+        {
+            String descriptor = method.getSignature();
+            int count = Descriptor.numOfParameters(descriptor);
+            String[] types = new String[count];
+            int pos = 1;
+            for (int i = 0; i < count; i++) {
+                int end = typeEnd(descriptor, pos);
+                types[i] = typeName(descriptor, pos);
+                pos = end;
+            }
+            return types;
+        }
+
+        @Override
+        public String[] getAnnotations()
+        {
+            return annotationNames(method.getMethodInfo().getAttribute(AnnotationsAttribute.visibleTag));
+        }
+
+        private static int typeEnd(String descriptor, int pos)
+        {
+            while (descriptor.charAt(pos) == '[') {
+                pos++;
+            }
+            if (descriptor.charAt(pos) == 'L') {
+                return descriptor.indexOf(';', pos) + 1;
+            }
+            return pos + 1;
+        }
+
+        /**
+         * jvm descriptor to {@link Class#getTypeName()}, e.g. [Ljava/lang/String; to java.lang.String[]
+         */
+        private static String typeName(String descriptor, int pos)
+        {
+            int dims = 0;
+            while (descriptor.charAt(pos) == '[') {
+                dims++;
+                pos++;
+            }
+            StringBuilder builder = new StringBuilder();
+            char c = descriptor.charAt(pos);
+            switch (c) {
+                case 'L':
+                    builder.append(descriptor.substring(pos + 1, descriptor.indexOf(';', pos)).replace('/', '.'));
+                    break;
+                case 'Z':
+                    builder.append("boolean");
+                    break;
+                case 'B':
+                    builder.append("byte");
+                    break;
+                case 'C':
+                    builder.append("char");
+                    break;
+                case 'S':
+                    builder.append("short");
+                    break;
+                case 'I':
+                    builder.append("int");
+                    break;
+                case 'J':
+                    builder.append("long");
+                    break;
+                case 'F':
+                    builder.append("float");
+                    break;
+                case 'D':
+                    builder.append("double");
+                    break;
+                case 'V':
+                    builder.append("void");
+                    break;
+                default:
+                    throw new IllegalStateException("bad descriptor " + descriptor);
+            }
+            for (int i = 0; i < dims; i++) {
+                builder.append("[]");
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -32,7 +32,10 @@ public interface Proxy
         Class<?> superclass = request.getSuperclass();
 
         Class<?>[] interfaces = Arrays.asArray(superclass, request.getInterfaces(), Class.class);
-        if (superclass.isInterface() && request.getBasePackage() == null) {
+        if (superclass.isInterface() && request.getBasePackage() == null && !request.isDirectDispatch()) {
+            if (JavassistProxy.isAnonymousInterfaceProxy()) {
+                return JavassistProxy.newAnonymousProxyInstance(request);
+            }
             return JdkProxy.newProxyInstance(request.getClassLoader(), request.getHandler(), interfaces);
         }
         else {
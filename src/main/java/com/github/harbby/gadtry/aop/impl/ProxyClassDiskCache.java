@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.impl;
+
+import com.github.harbby.gadtry.aop.ProxyRequest;
+import com.github.harbby.gadtry.io.IOUtils;
+import com.github.harbby.gadtry.memory.UnsafeHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.ProtectionDomain;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.github.harbby.gadtry.base.Throwables.throwsThrowable;
+
+/**
+ * 生成的代理类字节码磁盘缓存, 重启后直接加载缓存的字节码, 跳过javassist编译.
+ * <p>
+ * 缓存key(指纹)包含: 被代理类及其所有父类和接口的字节码, disableSuperMethod, directDispatch, anonymous, 代理类包名,
+ * 以及生成器(JavassistProxy)本身的字节码和javassist, java版本. 被代理类发生变化后指纹随之改变, 旧的缓存不再被使用.
+ */
+final class ProxyClassDiskCache
+{
+    private static final String CACHE_FILE_SUFFIX = ".class";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final byte[] generatorBytes = readGeneratorBytes();
+
+    private final File cacheDir;
+
+    ProxyClassDiskCache(File cacheDir)
+    {
+        this.cacheDir = cacheDir;
+    }
+
+    File getCacheDir()
+    {
+        return cacheDir;
+    }
+
+    /**
+     * @return fingerprint, null if some class bytecode can not be found (e.g. runtime generated class)
+     */
+    String fingerprint(String proxyPackage, List<Class<?>> validClass, ProxyRequest<?> request, boolean directDispatch, boolean anonymous)
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw throwsThrowable(e);
+        }
+        update(digest, System.getProperty("java.version"));
+        update(digest, javassist.CtClass.version);
+        digest.update(generatorBytes);
+        update(digest, proxyPackage);
+        //与registry的KeyX保持一致, 否则不同key的代理类会使用相同的类名
+        update(digest, request.isDisableSuperMethod() + "," + directDispatch + "," + anonymous);
+
+        Set<Class<?>> classes = new LinkedHashSet<>();
+        for (Class<?> aClass : validClass) {
+            addHierarchy(classes, aClass);
+        }
+        for (Class<?> aClass : classes) {
+            update(digest, aClass.getName());
+            if (aClass.getClassLoader() == null) {
+                //jdk class, java.version already in fingerprint
+                continue;
+            }
+            byte[] bytes = readClassBytes(aClass);
+            if (bytes == null) {
+                return null;
+            }
+            digest.update(bytes);
+        }
+        byte[] hash = digest.digest();
+        char[] chars = new char[32];
+        for (int i = 0; i < chars.length / 2; i++) {
+            chars[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return cached proxy class, null if cache miss
+     */
+    Class<?> load(String fingerprint, ClassLoader loader, ProtectionDomain protectionDomain)
+    {
+        File file = new File(cacheDir, fingerprint + CACHE_FILE_SUFFIX);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            return UnsafeHelper.defineClass(bytes, loader, protectionDomain);
+        }
+        catch (Exception | LinkageError e) {
+            //损坏的缓存文件, 删除后重新生成
+            file.delete();
+            return null;
+        }
+    }
+
+    void save(String fingerprint, byte[] classBytes)
+    {
+        File file = new File(cacheDir, fingerprint + CACHE_FILE_SUFFIX);
+        try {
+            File tmp = File.createTempFile(fingerprint, ".tmp", cacheDir);
+            Files.write(tmp.toPath(), classBytes);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            //缓存写入失败不影响代理类的创建, 下次启动时重新生成
+        }
+    }
+
+    private static void addHierarchy(Set<Class<?>> classes, Class<?> aClass)
+    {
+        if (aClass == null || !classes.add(aClass)) {
+            return;
+        }
+        addHierarchy(classes, aClass.getSuperclass());
+        for (Class<?> it : aClass.getInterfaces()) {
+            addHierarchy(classes, it);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value)
+    {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static byte[] readClassBytes(Class<?> aClass)
+    {
+        String resource = aClass.getName().replace('.', '/') + CACHE_FILE_SUFFIX;
+        ClassLoader loader = aClass.getClassLoader();
+        try (InputStream inputStream = loader == null ? ClassLoader.getSystemResourceAsStream(resource) : loader.getResourceAsStream(resource)) {
+            return inputStream == null ? null : IOUtils.readAllBytes(inputStream);
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static byte[] readGeneratorBytes()
+    {
+        byte[] bytes = readClassBytes(JavassistProxy.class);
+        return bytes == null ? new byte[0] : bytes;
+    }
+}
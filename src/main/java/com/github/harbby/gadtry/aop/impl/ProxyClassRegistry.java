@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.impl;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static com.github.harbby.gadtry.base.Throwables.throwsThrowable;
+
+/**
+ * Registry of generated proxy classes.
+ * <p>
+ * ClassLoader作为弱引用key, 代理类只以弱引用保存(代理类的生命周期和定义它的ClassLoader一致),
+ * 因此registry不会阻止插件ClassLoader被卸载.
+ * vm匿名代理类不被ClassLoader引用, 只有弱引用时会被回收然后重新生成, 因此额外保存在宿主接口的ClassValue上,
+ * 宿主接口和匿名类在同一个ClassLoader中, 不会延长ClassLoader的生命周期.
+ * 是否为代理类的标记保存在代理类自身的ClassValue上, isProxyClass是O(1)的.
+ */
+public final class ProxyClassRegistry
+{
+    private final Map<ClassLoader, LoaderCache> caches = new WeakHashMap<>();
+    private final ClassValue<ProxyMark> proxyMarks = new ClassValue<ProxyMark>()
+    {
+        @Override
+        protected ProxyMark computeValue(Class<?> type)
+        {
+            return new ProxyMark();
+        }
+    };
+    private final ClassValue<ConcurrentMap<KeyX, Class<?>>> hostedClasses = new ClassValue<ConcurrentMap<KeyX, Class<?>>>()
+    {
+        @Override
+        protected ConcurrentMap<KeyX, Class<?>> computeValue(Class<?> type)
+        {
+            return new ConcurrentHashMap<>();
+        }
+    };
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    ProxyClassRegistry() {}
+
+    /**
+     * 代理类在ConcurrentHashMap.compute之外生成(不持有map的bin锁), 同一个key并发请求时只有一个线程生成, 其他线程等待其结果
+     */
+    Class<?> computeIfAbsent(ClassLoader loader, KeyX key, Function<KeyX, Class<?>> mappingFunction)
+    {
+        LoaderCache cache = getClassLoaderCache(loader);
+        Class<?> proxyClass = cache.get(key);
+        if (proxyClass != null) {
+            hitCount.increment();
+            return proxyClass;
+        }
+        CompletableFuture<Class<?>> future = new CompletableFuture<>();
+        CompletableFuture<Class<?>> running = cache.pending.putIfAbsent(key, future);
+        if (running != null) {
+            hitCount.increment();
+            try {
+                return running.join();
+            }
+            catch (CompletionException e) {
+                throw throwsThrowable(e.getCause());
+            }
+        }
+        try {
+            //双重检查: 其他线程可能在get()之后刚刚生成完成并移除了pending
+            proxyClass = cache.get(key);
+            if (proxyClass != null) {
+                hitCount.increment();
+            }
+            else {
+                proxyClass = mappingFunction.apply(key);
+                proxyMarks.get(proxyClass).registered = true;
+                Class<?> hostClass = key.getHostClass();
+                if (key.isAnonymous() && hostClass != null && hostClass.getClassLoader() == proxyClass.getClassLoader()) {
+                    hostedClasses.get(hostClass).put(key, proxyClass);
+                }
+                cache.classes.put(key, new WeakReference<>(proxyClass));
+                missCount.increment();
+            }
+            future.complete(proxyClass);
+            return proxyClass;
+        }
+        catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw e;
+        }
+        finally {
+            cache.pending.remove(key, future);
+        }
+    }
+
+    private LoaderCache getClassLoaderCache(ClassLoader loader)
+    {
+        synchronized (caches) {
+            return caches.computeIfAbsent(loader, k -> new LoaderCache());
+        }
+    }
+
+    public boolean isProxyClass(Class<?> cl)
+    {
+        return ProxyHandler.class.isAssignableFrom(cl) && proxyMarks.get(cl).registered;
+    }
+
+    /**
+     * @return number of live proxy classes
+     */
+    public int size()
+    {
+        int size = 0;
+        synchronized (caches) {
+            for (LoaderCache cache : caches.values()) {
+                for (WeakReference<Class<?>> ref : cache.classes.values()) {
+                    if (ref.get() != null) {
+                        size++;
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return number of live ClassLoaders holding proxy classes
+     */
+    public int classLoaderCount()
+    {
+        synchronized (caches) {
+            return caches.size();
+        }
+    }
+
+    public long hitCount()
+    {
+        return hitCount.sum();
+    }
+
+    public long missCount()
+    {
+        return missCount.sum();
+    }
+
+    private static class ProxyMark
+    {
+        private volatile boolean registered;
+    }
+
+    private static class LoaderCache
+    {
+        private final ConcurrentMap<KeyX, WeakReference<Class<?>>> classes = new ConcurrentHashMap<>();
+        private final ConcurrentMap<KeyX, CompletableFuture<Class<?>>> pending = new ConcurrentHashMap<>();
+
+        private Class<?> get(KeyX key)
+        {
+            WeakReference<Class<?>> ref = classes.get(key);
+            return ref == null ? null : ref.get();
+        }
+    }
+}
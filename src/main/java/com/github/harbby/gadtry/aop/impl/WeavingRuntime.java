@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.impl;
+
+import com.github.harbby.gadtry.aop.JoinPoint;
+import com.github.harbby.gadtry.aop.runtime.MethodInvoker;
+import com.github.harbby.gadtry.aop.runtime.ProxyRuntime;
+import com.github.harbby.gadtry.function.exception.Function;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.github.harbby.gadtry.base.MoreObjects.checkState;
+
+/**
+ * Runtime entry of the methods woven by {@link LoadTimeWeaver}.
+ * <p>
+ * 织入时为每个类生成一组WeavePoint, 织入后的类在静态初始化时通过 {@link #bind(Class)} 取走它们并保存在自己的静态字段中:
+ * <pre>
+ * static WeavingRuntime.WeavePoint[] $_weavePoints;   //static { $_weavePoints = WeavingRuntime.bind(Target.class); }
+ *
+ * public int add(int a, int b) {
+ *     return ($r) WeavingRuntime.invoke($_weavePoints[0], this, $args);
+ * }
+ * </pre>
+ * WeavePoint(advice, Method和生成的MethodInvoker)只被织入的类引用, 不再保存在全局数组中, 类和它的ClassLoader可以被回收.
+ * 原方法体被移到包可见的方法 {@code $_weavedN_name} 中, 第一次调用时为它生成 {@link MethodInvoker},
+ * JoinPoint.proceed() 通过它直接调用该方法, 不使用反射. 因为advice在目标类内部执行, 类内部的自调用同样会被拦截.
+ */
+public final class WeavingRuntime
+{
+    static final String WEAVED_METHOD_START = "$_weaved";
+    static final String WEAVE_POINTS_FIELD = "$_weavePoints";
+
+    //已织入但还未初始化的类, 类初始化时移除; 按ClassLoader弱引用保存, 织入结果没有被定义时不会阻止ClassLoader被回收
+    private static final Map<ClassLoader, Map<String, WeavePoint[]>> pendingPoints = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private WeavingRuntime() {}
+
+    /**
+     * 织入成功后登记该类的WeavePoint
+     */
+    static void register(ClassLoader loader, String className, WeavePoint[] points)
+    {
+        pendingPoints.computeIfAbsent(loader, k -> new ConcurrentHashMap<>()).put(className, points);
+    }
+
+    static String weavedMethodName(int pointId, String methodName)
+    {
+        return WEAVED_METHOD_START + pointId + "_" + methodName;
+    }
+
+    /**
+     * 织入的类在静态初始化时调用
+     */
+    public static WeavePoint[] bind(Class<?> weavedClass)
+    {
+        Map<String, WeavePoint[]> loaderPoints = pendingPoints.get(weavedClass.getClassLoader());
+        WeavePoint[] points = loaderPoints == null ? null : loaderPoints.remove(weavedClass.getName());
+        checkState(points != null, "weave points of %s not found", weavedClass);
+        for (WeavePoint point : points) {
+            point.declaringClass = weavedClass;
+        }
+        return points;
+    }
+
+    /**
+     * @param self null if the method is static
+     */
+    public static Object invoke(WeavePoint point, Object self, Object[] args)
+            throws Throwable
+    {
+        MethodInvoker invoker = point.invoker;
+        if (invoker == null) {
+            invoker = point.resolve();
+        }
+        return point.advice.apply(new WeavedJoinPoint(invoker, point.method, self, args));
+    }
+
+    private static final class WeavedJoinPoint
+            implements JoinPoint
+    {
+        private final MethodInvoker invoker;
+        private final Method method;
+        private final Object self;
+        private final Object[] args;
+
+        private WeavedJoinPoint(MethodInvoker invoker, Method method, Object self, Object[] args)
+        {
+            this.invoker = invoker;
+            this.method = method;
+            this.self = self;
+            this.args = args;
+        }
+
+        @Override
+        public Method getMethod()
+        {
+            return method;
+        }
+
+        @Override
+        public Object[] getArgs()
+        {
+            return args;
+        }
+
+        @Override
+        public Object proceed(Object[] args)
+                throws Throwable
+        {
+            return invoker.invoke(0, self, args);
+        }
+    }
+
+    /**
+     * 一个被织入的方法, 只被织入的类的静态字段引用
+     */
+    public static final class WeavePoint
+    {
+        private final Function<JoinPoint, Object, Throwable> advice;
+        private final String methodName;
+        private final String weavedName;
+        private volatile Class<?> declaringClass;
+        private volatile Method method;
+        private volatile MethodInvoker invoker;
+
+        WeavePoint(Function<JoinPoint, Object, Throwable> advice, String methodName, String weavedName)
+        {
+            this.advice = advice;
+            this.methodName = methodName;
+            this.weavedName = weavedName;
+        }
+
+        /**
+         * 第一次调用时查找原方法, 并为保存原方法体的 $_weavedN_name 生成invoker
+         */
+        private synchronized MethodInvoker resolve()
+                throws NoSuchMethodException
+        {
+            if (invoker != null) {
+                return invoker;
+            }
+            Method weaved = null;
+            for (Method m : declaringClass.getDeclaredMethods()) {
+                if (m.getName().equals(weavedName)) {
+                    weaved = m;
+                    break;
+                }
+            }
+            if (weaved == null) {
+                throw new NoSuchMethodException(declaringClass.getName() + "." + weavedName);
+            }
+            this.method = declaringClass.getDeclaredMethod(methodName, weaved.getParameterTypes());
+            //生成的invoker不能调用时使用反射
+            weaved.setAccessible(true);
+            this.invoker = ProxyRuntime.newMethodInvoker(declaringClass, new Method[] {weaved});
+            return invoker;
+        }
+    }
+}
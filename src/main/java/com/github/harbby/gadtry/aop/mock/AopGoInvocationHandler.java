@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.mock;
+
+import com.github.harbby.gadtry.aop.JoinPoint;
+import com.github.harbby.gadtry.aop.runtime.ReusableJoinPoint;
+import com.github.harbby.gadtry.function.exception.Function;
+
+import java.lang.reflect.Method;
+
+import static com.github.harbby.gadtry.base.JavaTypes.getClassInitValue;
+
+/**
+ * AopGo代理使用的handler: 调用时不再记录MockGo.when(mock.method())需要的最后调用方法,
+ * 该代理只能通过 doXXX().when(proxy) 的方式注册advice.
+ * <p>
+ * direct dispatch代理按方法下标从冻结的advice数组中取advice, 不再查找mockMethods.
+ * 没有advice的方法直接使用invoke0..invoke3的参数调用目标方法, 不创建Object[]; 有advice时JoinPoint需要参数数组.
+ * doXXX().when(proxy)正在选择方法或开启了调用记录时, 走父类的完整调用路径.
+ */
+public final class AopGoInvocationHandler
+        extends AopInvocationHandler
+{
+    public AopGoInvocationHandler(Object target)
+    {
+        super(target);
+    }
+
+    public AopGoInvocationHandler(Object target, boolean reuseView)
+    {
+        super(target, reuseView);
+    }
+
+    /**
+     * Externalizable
+     */
+    public AopGoInvocationHandler()
+    {
+        super();
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+            throws Throwable
+    {
+        return dispatch(proxy, method, args);
+    }
+
+    @Override
+    public Object invoke0(Object proxy, int methodIndex)
+            throws Throwable
+    {
+        AdviceTable table = getDirectTable(proxy, methodIndex);
+        if (table == null) {
+            return invokeN(proxy, methodIndex, EMPTY_ARGS);
+        }
+        return table.invoker.invoke0(methodIndex, table.selfMethods[methodIndex] ? proxy : target);
+    }
+
+    @Override
+    public Object invoke1(Object proxy, int methodIndex, Object arg0)
+            throws Throwable
+    {
+        AdviceTable table = getDirectTable(proxy, methodIndex);
+        if (table == null) {
+            return invokeN(proxy, methodIndex, new Object[] {arg0});
+        }
+        return table.invoker.invoke1(methodIndex, table.selfMethods[methodIndex] ? proxy : target, arg0);
+    }
+
+    @Override
+    public Object invoke2(Object proxy, int methodIndex, Object arg0, Object arg1)
+            throws Throwable
+    {
+        AdviceTable table = getDirectTable(proxy, methodIndex);
+        if (table == null) {
+            return invokeN(proxy, methodIndex, new Object[] {arg0, arg1});
+        }
+        return table.invoker.invoke2(methodIndex, table.selfMethods[methodIndex] ? proxy : target, arg0, arg1);
+    }
+
+    @Override
+    public Object invoke3(Object proxy, int methodIndex, Object arg0, Object arg1, Object arg2)
+            throws Throwable
+    {
+        AdviceTable table = getDirectTable(proxy, methodIndex);
+        if (table == null) {
+            return invokeN(proxy, methodIndex, new Object[] {arg0, arg1, arg2});
+        }
+        return table.invoker.invoke3(methodIndex, table.selfMethods[methodIndex] ? proxy : target, arg0, arg1, arg2);
+    }
+
+    @Override
+    public Object invokeN(Object proxy, int methodIndex, Object[] args)
+            throws Throwable
+    {
+        AdviceTable table = getAdviceTable(proxy.getClass());
+        if (pendingCalls > 0 || handler != defaultHandler) {
+            //doXXX().when(proxy)正在选择方法
+            return invoke(proxy, table.methods[methodIndex], args);
+        }
+        Function<JoinPoint, Object, Throwable> userCode = table.advices[methodIndex];
+        Method method = table.methods[methodIndex];
+        InvocationRecorder recorder = this.recorder;
+        if (recorder != null) {
+            recorder.record(method, args);
+        }
+        if (target == null) {
+            if (userCode == null) {
+                return getClassInitValue(method.getReturnType());
+            }
+            return userCode.apply(JoinPoint.of(method, args));
+        }
+        Object instance = table.selfMethods[methodIndex] ? proxy : target;
+        if (userCode == null) {
+            return table.invoker.invoke(methodIndex, instance, args);
+        }
+        if (table.reuseViews[methodIndex]) {
+            ReusableJoinPoint joinPoint = ReusableJoinPoint.acquire(table.invoker, methodIndex, instance, method, args);
+            try {
+                return userCode.apply(joinPoint);
+            }
+            finally {
+                joinPoint.release();
+            }
+        }
+        return userCode.apply(JoinPoint.of(table.invoker, methodIndex, instance, method, args));
+    }
+
+    /**
+     * @return null if the call needs the args array: the method has advice, a recorder is enabled,
+     * doXXX().when(proxy) is selecting a method or the proxy has no target
+     */
+    private AdviceTable getDirectTable(Object proxy, int methodIndex)
+    {
+        if (pendingCalls > 0 || handler != defaultHandler || recorder != null || target == null) {
+            return null;
+        }
+        AdviceTable table = getAdviceTable(proxy.getClass());
+        return table.advices[methodIndex] == null ? table : null;
+    }
+}
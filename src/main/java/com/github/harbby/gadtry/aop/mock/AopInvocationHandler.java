@@ -16,9 +16,11 @@
 package com.github.harbby.gadtry.aop.mock;
 
 import com.github.harbby.gadtry.aop.JoinPoint;
-import com.github.harbby.gadtry.aop.aopgo.Pointcut;
+import com.github.harbby.gadtry.aop.impl.DirectHandler;
+import com.github.harbby.gadtry.aop.runtime.MethodInvoker;
+import com.github.harbby.gadtry.aop.runtime.ProxyRuntime;
+import com.github.harbby.gadtry.aop.runtime.ReusableJoinPoint;
 import com.github.harbby.gadtry.collection.tuple.Tuple2;
-import com.github.harbby.gadtry.collection.tuple.Tuple3;
 import com.github.harbby.gadtry.function.exception.Function;
 
 import java.io.Externalizable;
@@ -29,11 +31,7 @@ import java.io.Serializable;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.IdentityHashMap;
-import java.util.List;
 import java.util.Map;
 
 import static com.github.harbby.gadtry.aop.mock.MockGo.LAST_MOCK_BY_WHEN_METHOD;
@@ -43,18 +41,35 @@ import static java.util.Objects.requireNonNull;
 /**
  * AopGo 代理核心，mockMethods选择Method 时间复杂度为 O(1) + log(m)
  * 性能将比AopFactory List(Method Select) O(n) 高效很多。 在方法较多时性能差异将非常显著
+ * <p>
+ * AopGo使用子类 {@link AopGoInvocationHandler}, 调用时不再写入MockGo的ThreadLocal
+ * <p>
+ * 线程安全: mockMethods是copy on write的, 调用时无锁读取; doXXX().when(proxy)的方法选择只拦截当前线程的下一次调用,
+ * 不会影响其他线程对同一个代理对象的调用.
  */
 public class AopInvocationHandler
-        implements InvocationHandler, Externalizable
+        implements DirectHandler, Externalizable
 {
-    private final InvocationHandler defaultHandler;
-    private InvocationHandler handler;
+    static final Object[] EMPTY_ARGS = new Object[0];
+    private static final ThreadLocal<PendingCall> PENDING_CALL = new ThreadLocal<>();
+
+    final InvocationHandler defaultHandler;
+    volatile InvocationHandler handler;
+    //正在等待被interceptNextCall()拦截的线程数, 为0时调用路径不读取ThreadLocal
+    transient volatile int pendingCalls;
+    //opt-in, 为null时不记录调用
+    transient volatile InvocationRecorder recorder;
     private Class<?> proxyClass;   //需要序列化时会用到
+    Object target;
+    private transient volatile AdviceTable adviceTable;
+    //复用JoinPoint模式, 只对代理对象生效, 不参与序列化
+    final transient boolean reuseView;
 
     /**
      * 因为 mockMethods对象中Method 不可序列化 导致不能使用常规Serializable方式进行序列化
+     * copy on write: 只在register()中持有锁替换整个map, 读取无锁
      */
-    private final Map<Method, Function<JoinPoint, Object, Throwable>> mockMethods = new IdentityHashMap<>();
+    private volatile Map<Method, Function<JoinPoint, Object, Throwable>> mockMethods = new IdentityHashMap<>();
 
     @Override
     public void writeExternal(ObjectOutput out)
@@ -65,18 +80,22 @@ public class AopInvocationHandler
         }
         out.writeObject(handler);
         out.writeObject(proxyClass);
+        out.writeObject(target);
         //-------------------------------
-        List<Tuple3<String, Class<?>[], Function<JoinPoint, Object, Throwable>>> mappings = new ArrayList<>(mockMethods.size());
+        //compact form: 只写入advice在代理类方法表中的下标, 方法名只用于读取时校验方法表一致
+        MethodInvoker invoker = ProxyRuntime.getMethodInvoker(proxyClass);
+        Map<Method, Function<JoinPoint, Object, Throwable>> mockMethods = this.mockMethods;
+        out.writeInt(mockMethods.size());
         for (Map.Entry<Method, Function<JoinPoint, Object, Throwable>> entry : mockMethods.entrySet()) {
-            Method method = entry.getKey();
-            String methodName = method.getName();
-            Class<?>[] parameterTypes = method.getParameterTypes();
-            //Class<?> methodClass = method.getDeclaringClass();
-
-            Function<JoinPoint, Object, Throwable> value = entry.getValue();
-            mappings.add(new Tuple3<>(methodName, parameterTypes, value));
+            //jdk代理类的Method按签名找到方法表中的下标
+            int index = invoker.getIndex(entry.getKey());
+            if (index < 0) {
+                throw new MockGoException("Gadtry aopGo proxy object not be serializable. found advice method not in proxy class " + proxyClass);
+            }
+            out.writeInt(index);
+            out.writeUTF(entry.getKey().getName());
+            out.writeObject(entry.getValue());
         }
-        out.writeObject(mappings);
     }
 
     @Override
@@ -85,65 +104,86 @@ public class AopInvocationHandler
     {
         this.handler = (InvocationHandler) in.readObject();
         this.proxyClass = (Class<?>) in.readObject();
+        this.target = in.readObject();
         if (proxyClass == null) {
             throw new MockGoException("Gadtry aopGo proxy object serializable failed. proxyClass is null");
         }
         //--------------------------------
-        List<Tuple3<String, Class<?>[], Function<JoinPoint, Object, Throwable>>> mockMethodLoader =
-                (List<Tuple3<String, Class<?>[], Function<JoinPoint, Object, Throwable>>>) in.readObject();
-        for (Tuple3<String, Class<?>[], Function<JoinPoint, Object, Throwable>> tp : mockMethodLoader) {
-            String methodName = tp.f1();
-            Class<?>[] parameterTypes = tp.f2();
-            Function<JoinPoint, Object, Throwable> value = tp.f3();
-
-            Pointcut pointcut = Collections::emptyList;
-            Method[] methods = pointcut.filter(this.proxyClass).toArray(new Method[0]);
-            Method findMethod = searchMethods(methods, methodName, parameterTypes);
-            mockMethods.put(findMethod, value);
-        }
-    }
-
-    private static Method searchMethods(Method[] methods,
-                                        String name,
-                                        Class<?>[] parameterTypes)
-    {
-        Method res = null;
-        for (int i = 0; i < methods.length; i++) {
-            Method m = methods[i];
-            if (m.getName().equals(name) &&
-                    Arrays.deepEquals(parameterTypes, m.getParameterTypes()) &&
-                    (res == null ||
-                            res.getReturnType().isAssignableFrom(m.getReturnType()))) {
-                res = m;
+        Method[] methods = ProxyRuntime.getProxyMethods(proxyClass);
+        Map<Method, Function<JoinPoint, Object, Throwable>> mockMethods = new IdentityHashMap<>();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            int index = in.readInt();
+            String methodName = in.readUTF();
+            @SuppressWarnings("unchecked")
+            Function<JoinPoint, Object, Throwable> advice = (Function<JoinPoint, Object, Throwable>) in.readObject();
+            if (index >= methods.length || methods[index] == null || !methods[index].getName().equals(methodName)) {
+                throw new MockGoException("Gadtry aopGo proxy object serializable failed. proxy class " + proxyClass +
+                        " method table changed, not found method " + methodName + " at " + index);
             }
+            mockMethods.put(methods[index], advice);
         }
-
-        return res;
+        this.mockMethods = mockMethods;
     }
 
     public AopInvocationHandler(Object target)
+    {
+        this(target, false);
+    }
+
+    /**
+     * @param reuseView pass {@link ReusableJoinPoint} to the advices, except {@link ReusableJoinPoint.EscapingAdvice}
+     */
+    public AopInvocationHandler(Object target, boolean reuseView)
     {
         requireNonNull(target, "instance is null");
+        this.target = target;
+        this.reuseView = reuseView;
         this.defaultHandler = (InvocationHandler & Serializable) (proxy, method, args) -> {
             boolean v2 = method.getDeclaringClass() == proxy.getClass();
             Object instance = v2 ? proxy : target;
+            MethodInvoker invoker = ProxyRuntime.getMethodInvoker(proxy.getClass());
 
-            Function<JoinPoint, Object, Throwable> userCode = mockMethods.get(method);
+            Function<JoinPoint, Object, Throwable> userCode = getAdvice(proxy, method);
             if (userCode != null) {
-                JoinPoint joinPoint = JoinPoint.of(instance, method, args);
+                if (reuseView && ReusableJoinPoint.canReuse(userCode)) {
+                    ReusableJoinPoint joinPoint = ReusableJoinPoint.acquire(invoker, instance, method, args);
+                    try {
+                        return userCode.apply(joinPoint);
+                    }
+                    finally {
+                        joinPoint.release();
+                    }
+                }
+                JoinPoint joinPoint = JoinPoint.of(invoker, instance, method, args);
                 return userCode.apply(joinPoint);
             }
             else {
-                return method.invoke(instance, args);
+                return invoker.invoke(method, instance, args);
             }
         };
         this.initHandler();
     }
 
+    private Function<JoinPoint, Object, Throwable> getAdvice(Object proxy, Method method)
+    {
+        Map<Method, Function<JoinPoint, Object, Throwable>> mockMethods = this.mockMethods;
+        Function<JoinPoint, Object, Throwable> userCode = mockMethods.get(method);
+        if (userCode == null && !mockMethods.isEmpty()) {
+            //jdk代理类传入的Method与Pointcut.filter()返回的方法表中的Method不是同一个对象
+            Method tableMethod = ProxyRuntime.getMethodInvoker(proxy.getClass()).getTableMethod(method);
+            if (tableMethod != method) {
+                userCode = mockMethods.get(tableMethod);
+            }
+        }
+        return userCode;
+    }
+
     public AopInvocationHandler()
     {
+        this.reuseView = false;
         this.defaultHandler = (InvocationHandler & Serializable) (proxy, method, args) -> {
-            Function<JoinPoint, Object, Throwable> userCode = mockMethods.get(method);
+            Function<JoinPoint, Object, Throwable> userCode = getAdvice(proxy, method);
             if (userCode != null) {
                 return userCode.apply(JoinPoint.of(method, args));
             }
@@ -170,12 +210,83 @@ public class AopInvocationHandler
         this.handler = requireNonNull(defaultHandler, "defaultHandler is null");
     }
 
+    /**
+     * 当前线程对该代理对象的下一次调用交给callHandler处理(用于doXXX().when(proxy).method()选择方法),
+     * 其他线程的调用不受影响
+     */
+    public void interceptNextCall(InvocationHandler callHandler)
+    {
+        requireNonNull(callHandler, "callHandler is null");
+        PendingCall pending = PENDING_CALL.get();
+        if (pending != null) {
+            //上一次when(proxy)之后没有调用方法
+            pending.owner.pendingCallDone();
+        }
+        synchronized (this) {
+            pendingCalls++;
+        }
+        PENDING_CALL.set(new PendingCall(this, callHandler));
+    }
+
+    private synchronized void pendingCallDone()
+    {
+        pendingCalls--;
+    }
+
+    private InvocationHandler takePendingCall()
+    {
+        PendingCall pending = PENDING_CALL.get();
+        if (pending == null || pending.owner != this) {
+            return null;
+        }
+        PENDING_CALL.remove();
+        pendingCallDone();
+        return pending.handler;
+    }
+
+    /**
+     * 开启调用记录, 已开启时返回现有的recorder
+     */
+    public synchronized InvocationRecorder enableRecording(int capacity)
+    {
+        if (recorder == null) {
+            recorder = new InvocationRecorder(capacity);
+        }
+        return recorder;
+    }
+
+    public InvocationRecorder getRecorder()
+    {
+        return recorder;
+    }
+
+    void discardLastInvocation(Method method)
+    {
+        InvocationRecorder recorder = this.recorder;
+        if (recorder != null) {
+            recorder.discardLast(method);
+        }
+    }
+
+    /**
+     * 一次替换注册多个advice, 只复制一次mockMethods
+     */
+    public synchronized void registerAll(Map<Method, Function<JoinPoint, Object, Throwable>> advices)
+    {
+        Map<Method, Function<JoinPoint, Object, Throwable>> newMockMethods = new IdentityHashMap<>(mockMethods);
+        newMockMethods.putAll(advices);
+        this.mockMethods = newMockMethods;
+    }
+
     /**
      * WhenThen register
      */
-    public void register(Method method, Function<JoinPoint, Object, Throwable> advice)
+    public synchronized void register(Method method, Function<JoinPoint, Object, Throwable> advice)
     {
-        mockMethods.put(method, advice);
+        //copy on write, 调用线程下次读取时按新map重建advice数组
+        Map<Method, Function<JoinPoint, Object, Throwable>> newMockMethods = new IdentityHashMap<>(mockMethods);
+        newMockMethods.put(method, advice);
+        this.mockMethods = newMockMethods;
     }
 
     @Override
@@ -183,12 +294,123 @@ public class AopInvocationHandler
             throws Throwable
     {
         LAST_MOCK_BY_WHEN_METHOD.set(Tuple2.of(proxy, method));
+        return dispatch(proxy, method, args);
+    }
+
+    final Object dispatch(Object proxy, Method method, Object[] args)
+            throws Throwable
+    {
+        InvocationHandler callHandler = pendingCalls > 0 ? takePendingCall() : null;
+        InvocationRecorder recorder = this.recorder;
+        if (callHandler == null && recorder != null) {
+            recorder.record(method, args);
+        }
         try {
             //method.setAccessible(true);  //todo: 如果未来需要默认开启所有访问权限时。设置此处为 true 即可
-            return this.handler.invoke(proxy, method, args);
+            return (callHandler != null ? callHandler : this.handler).invoke(proxy, method, args);
         }
         catch (InvocationTargetException e) {
             throw e.getTargetException();
         }
+        finally {
+            if (callHandler != null) {
+                //doXXX().when(proxy)按方法选择, 选择时登记的参数匹配器不再使用
+                MockGoArgument.clearMatchers();
+            }
+        }
+    }
+
+    @Override
+    public Object invoke0(Object proxy, int methodIndex)
+            throws Throwable
+    {
+        return invokeN(proxy, methodIndex, EMPTY_ARGS);
+    }
+
+    @Override
+    public Object invoke1(Object proxy, int methodIndex, Object arg0)
+            throws Throwable
+    {
+        return invokeN(proxy, methodIndex, new Object[] {arg0});
+    }
+
+    @Override
+    public Object invoke2(Object proxy, int methodIndex, Object arg0, Object arg1)
+            throws Throwable
+    {
+        return invokeN(proxy, methodIndex, new Object[] {arg0, arg1});
+    }
+
+    @Override
+    public Object invoke3(Object proxy, int methodIndex, Object arg0, Object arg1, Object arg2)
+            throws Throwable
+    {
+        return invokeN(proxy, methodIndex, new Object[] {arg0, arg1, arg2});
+    }
+
+    @Override
+    public Object invokeN(Object proxy, int methodIndex, Object[] args)
+            throws Throwable
+    {
+        return invoke(proxy, getAdviceTable(proxy.getClass()).methods[methodIndex], args);
+    }
+
+    final AdviceTable getAdviceTable(Class<?> proxyClass)
+    {
+        AdviceTable table = this.adviceTable;
+        Map<Method, Function<JoinPoint, Object, Throwable>> mockMethods = this.mockMethods;
+        if (table == null || table.proxyClass != proxyClass || table.mockMethods != mockMethods) {
+            table = new AdviceTable(proxyClass, mockMethods, reuseView);
+            this.adviceTable = table;
+        }
+        return table;
+    }
+
+    private static final class PendingCall
+    {
+        private final AopInvocationHandler owner;
+        private final InvocationHandler handler;
+
+        private PendingCall(AopInvocationHandler owner, InvocationHandler handler)
+        {
+            this.owner = owner;
+            this.handler = handler;
+        }
+    }
+
+    /**
+     * 按代理类方法下标冻结的advice数组, mockMethods被替换后重新创建
+     */
+    static final class AdviceTable
+    {
+        private final Class<?> proxyClass;
+        private final Map<Method, Function<JoinPoint, Object, Throwable>> mockMethods;
+        final Method[] methods;
+        final MethodInvoker invoker;
+        final Function<JoinPoint, Object, Throwable>[] advices;
+        final boolean[] selfMethods;
+        //按方法预先判断是否传入复用的JoinPoint, 调用时不再检查advice的类型
+        final boolean[] reuseViews;
+
+        @SuppressWarnings("unchecked")
+        AdviceTable(Class<?> proxyClass, Map<Method, Function<JoinPoint, Object, Throwable>> mockMethods, boolean reuseView)
+        {
+            this.proxyClass = proxyClass;
+            this.mockMethods = mockMethods;
+            this.methods = ProxyRuntime.getProxyMethods(proxyClass);
+            this.invoker = ProxyRuntime.getMethodInvoker(proxyClass);
+            this.advices = new Function[methods.length];
+            this.selfMethods = new boolean[methods.length];
+            this.reuseViews = new boolean[methods.length];
+            for (int i = 0; i < methods.length; i++) {
+                //方法表的下标可能不连续
+                if (methods[i] == null) {
+                    continue;
+                }
+                advices[i] = mockMethods.get(methods[i]);
+                selfMethods[i] = methods[i].getDeclaringClass() == proxyClass;
+                reuseViews[i] = reuseView && advices[i] != null && ReusableJoinPoint.canReuse(advices[i]);
+            }
+        }
     }
 }
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.mock;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.github.harbby.gadtry.base.MoreObjects.checkState;
+
+/**
+ * Invocation recorder of a mock, see: {@link MockGo#record(Object)}
+ * <p>
+ * 每个方法的调用次数精确累计; 调用明细(method, args, 线程id, 时间)写入固定大小的无锁环形缓冲区, 只保留最近capacity条.
+ * 每次调用创建一个不可变的 {@link Invocation} 并整体写入槽位, 序号相差capacity的两个写入者竞争同一个槽位时只会有一个完整的记录胜出,
+ * 不会出现字段交错. 非空的args复制一份快照, 之后advice或调用方修改参数数组不会改变已记录的调用.
+ */
+public final class InvocationRecorder
+{
+    private static final Object[] EMPTY_ARGS = new Object[0];
+
+    private final int mask;
+    private final AtomicReferenceArray<Invocation> slots;
+    private final AtomicLong cursor = new AtomicLong();
+    private final Map<Method, LongAdder> counts = new ConcurrentHashMap<>();
+
+    InvocationRecorder(int capacity)
+    {
+        checkState(capacity > 0, "capacity must > 0");
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        checkState(size > 0, "capacity %s too large", capacity);
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+    }
+
+    void record(Method method, Object[] callArgs)
+    {
+        LongAdder count = counts.get(method);
+        if (count == null) {
+            count = counts.computeIfAbsent(method, k -> new LongAdder());
+        }
+        count.increment();
+
+        long seq = cursor.getAndIncrement();
+        Invocation invocation = new Invocation(seq, method, callArgs == null || callArgs.length == 0 ? EMPTY_ARGS : callArgs.clone(),
+                Thread.currentThread().getId(), System.nanoTime());
+        slots.set((int) (seq & mask), invocation);
+    }
+
+    /**
+     * when(mock.method())中对mock的调用是选择方法, 不算作一次调用
+     */
+    void discardLast(Method method)
+    {
+        LongAdder count = counts.get(method);
+        if (count == null) {
+            return;
+        }
+        count.decrement();
+        long threadId = Thread.currentThread().getId();
+        long end = cursor.get();
+        for (long seq = end - 1; seq >= Math.max(0, end - slots.length()); seq--) {
+            int slot = (int) (seq & mask);
+            Invocation invocation = slots.get(slot);
+            if (invocation != null && invocation.seq == seq && invocation.method == method && invocation.threadId == threadId) {
+                //记录由当前线程写入, 如果已被覆盖则不需要再删除
+                slots.compareAndSet(slot, invocation, null);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the number of recorded invocations of the method, not limited by capacity
+     */
+    public long count(Method method)
+    {
+        LongAdder count = counts.get(method);
+        return count == null ? 0 : count.sum();
+    }
+
+    public long totalCount()
+    {
+        long sum = 0;
+        for (LongAdder count : counts.values()) {
+            sum += count.sum();
+        }
+        return sum;
+    }
+
+    public int capacity()
+    {
+        return slots.length();
+    }
+
+    /**
+     * @return the latest recorded invocations (at most capacity), ordered by call sequence
+     */
+    public List<Invocation> getInvocations()
+    {
+        long end = cursor.get();
+        List<Invocation> invocations = new ArrayList<>();
+        for (long seq = Math.max(0, end - slots.length()); seq < end; seq++) {
+            Invocation invocation = slots.get((int) (seq & mask));
+            //跳过已丢弃, 还未写入或已被覆盖的槽位
+            if (invocation != null && invocation.seq == seq) {
+                invocations.add(invocation);
+            }
+        }
+        return invocations;
+    }
+
+    public List<Invocation> getInvocations(Method method)
+    {
+        List<Invocation> invocations = new ArrayList<>();
+        for (Invocation invocation : getInvocations()) {
+            if (invocation.getMethod() == method) {
+                invocations.add(invocation);
+            }
+        }
+        return invocations;
+    }
+
+    public void clear()
+    {
+        counts.clear();
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, null);
+        }
+    }
+
+    public static final class Invocation
+    {
+        private final long seq;
+        private final Method method;
+        private final Object[] args;
+        private final long threadId;
+        private final long timestampNanos;
+
+        private Invocation(long seq, Method method, Object[] args, long threadId, long timestampNanos)
+        {
+            this.seq = seq;
+            this.method = method;
+            this.args = args;
+            this.threadId = threadId;
+            this.timestampNanos = timestampNanos;
+        }
+
+        public Method getMethod()
+        {
+            return method;
+        }
+
+        /**
+         * @return args snapshot at invocation time, do not modify it
+         */
+        public Object[] getArgs()
+        {
+            return args;
+        }
+
+        public long getThreadId()
+        {
+            return threadId;
+        }
+
+        /**
+         * @return {@link System#nanoTime()} at invocation time
+         */
+        public long getTimestampNanos()
+        {
+            return timestampNanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            return method.getName() + Arrays.deepToString(args) + " thread: " + threadId;
+        }
+    }
+}
@@ -20,6 +20,7 @@ import com.github.harbby.gadtry.aop.ProxyRequest;
 import com.github.harbby.gadtry.aop.impl.JdkProxy;
 import com.github.harbby.gadtry.aop.impl.Proxy;
 import com.github.harbby.gadtry.aop.impl.ProxyHandler;
+import com.github.harbby.gadtry.aop.mock.MockGoArgument.ArgumentMatcher;
 import com.github.harbby.gadtry.base.JavaTypes;
 import com.github.harbby.gadtry.collection.tuple.Tuple2;
 import com.github.harbby.gadtry.function.exception.Function;
@@ -27,6 +28,10 @@ import com.github.harbby.gadtry.memory.UnsafeHelper;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongPredicate;
+import java.util.stream.Collectors;
 
 import static com.github.harbby.gadtry.base.MoreObjects.checkState;
 import static com.github.harbby.gadtry.base.Strings.lowerFirst;
@@ -38,6 +43,7 @@ import static com.github.harbby.gadtry.base.Throwables.throwsThrowable;
 public class MockGo
 {
     static final ThreadLocal<Tuple2<Object, Method>> LAST_MOCK_BY_WHEN_METHOD = new ThreadLocal<>();
+    private static final int DEFAULT_RECORD_CAPACITY = 1 << 16;
 
     private MockGo() {}
 
@@ -85,6 +91,47 @@ public class MockGo
         return proxy;
     }
 
+    /**
+     * 开启mock对象的调用记录, 之后才能使用 {@link #verify(Object)}
+     */
+    public static <T> T record(T mock)
+    {
+        return record(mock, DEFAULT_RECORD_CAPACITY);
+    }
+
+    /**
+     * @param capacity 保留调用明细的最大条数, 调用次数的统计不受该值限制
+     */
+    public static <T> T record(T mock, int capacity)
+    {
+        getMockInvocationHandler(mock).enableRecording(capacity);
+        return mock;
+    }
+
+    public static InvocationRecorder getRecorder(Object mock)
+    {
+        InvocationRecorder recorder = getMockInvocationHandler(mock).getRecorder();
+        if (recorder == null) {
+            throw new MockGoException("mock " + mock.getClass() + " is not recording, please use MockGo.record(mock) first");
+        }
+        return recorder;
+    }
+
+    /**
+     * Example of:
+     * <pre>
+     *     MockGo.verify(mock).times(2).add(anyInt(), anyInt());
+     *     MockGo.verify(mock).times(1).add(1, 2);
+     *     MockGo.verify(mock).never().add(eq(1), anyInt());
+     * </pre>
+     * 参数按equals或 {@link MockGoArgument} 的匹配器匹配. 参数全为anyXxx()时使用精确的调用次数;
+     * 否则在最近capacity条调用明细中匹配, 明细已被覆盖时抛出MockGoException
+     */
+    public static <T> VerifyBuilder<T> verify(T mock)
+    {
+        return new VerifyBuilder<>(mock);
+    }
+
     public static void initMocks(Object testObject)
     {
         MockAnnotations.initMocks(testObject);
@@ -130,8 +177,7 @@ public class MockGo
         public <T> T when(T instance)
         {
             AopInvocationHandler aopInvocationHandler = getMockInvocationHandler(instance);
-            aopInvocationHandler.setHandler((proxy, method, args) -> {
-                aopInvocationHandler.initHandler();
+            aopInvocationHandler.interceptNextCall((proxy, method, args) -> {
                 aopInvocationHandler.register(method, function);
                 return JavaTypes.getClassInitValue(method.getReturnType());
             });
@@ -149,6 +195,107 @@ public class MockGo
         return new DoBuilder(f -> { throw e; });
     }
 
+    public static class VerifyBuilder<T>
+    {
+        private final T mock;
+        private final InvocationRecorder recorder;
+
+        private VerifyBuilder(T mock)
+        {
+            this.mock = mock;
+            this.recorder = getRecorder(mock);
+        }
+
+        public T times(int wanted)
+        {
+            return check(count -> count == wanted, String.valueOf(wanted));
+        }
+
+        public T never()
+        {
+            return times(0);
+        }
+
+        public T atLeast(int wanted)
+        {
+            return check(count -> count >= wanted, "at least " + wanted);
+        }
+
+        public T atMost(int wanted)
+        {
+            return check(count -> count <= wanted, "at most " + wanted);
+        }
+
+        private T check(LongPredicate predicate, String wanted)
+        {
+            //verify(mock)之前残留的匹配器不属于这次校验
+            MockGoArgument.clearMatchers();
+            getMockInvocationHandler(mock).interceptNextCall((proxy, method, args) -> {
+                List<ArgumentMatcher> matchers = argumentMatchers(method, args, MockGoArgument.pullMatchers());
+                long count = count(method, matchers);
+                if (!predicate.test(count)) {
+                    String arguments = matchers.stream().map(ArgumentMatcher::toString).collect(Collectors.joining(", "));
+                    throw new MockGoException(String.format("%s.%s(%s) wanted %s invocations, but was %s",
+                            method.getDeclaringClass().getSimpleName(), method.getName(), arguments, wanted, count));
+                }
+                return JavaTypes.getClassInitValue(method.getReturnType());
+            });
+            return mock;
+        }
+
+        /**
+         * 没有使用匹配器时按equals匹配每个参数
+         */
+        private static List<ArgumentMatcher> argumentMatchers(Method method, Object[] args, List<ArgumentMatcher> matchers)
+        {
+            int length = args == null ? 0 : args.length;
+            if (matchers.isEmpty()) {
+                List<ArgumentMatcher> equalMatchers = new ArrayList<>(length);
+                for (int i = 0; i < length; i++) {
+                    equalMatchers.add(ArgumentMatcher.equalTo(args[i]));
+                }
+                return equalMatchers;
+            }
+            if (matchers.size() != length) {
+                throw new MockGoException(String.format("Invalid use of argument matchers in verify %s.%s(): %s matchers for %s arguments, " +
+                        "when one argument uses a matcher(anyXxx(), eq(), same()) all arguments must use matchers",
+                        method.getDeclaringClass().getSimpleName(), method.getName(), matchers.size(), length));
+            }
+            return matchers;
+        }
+
+        private long count(Method method, List<ArgumentMatcher> matchers)
+        {
+            long total = recorder.count(method);
+            if (matchers.stream().allMatch(matcher -> matcher == ArgumentMatcher.ANY)) {
+                //不限制参数时使用精确的计数, 不受环形缓冲区容量的限制
+                return total;
+            }
+            long recorded = 0;
+            long matched = 0;
+            for (InvocationRecorder.Invocation invocation : recorder.getInvocations()) {
+                if (!invocation.getMethod().equals(method)) {
+                    continue;
+                }
+                recorded++;
+                Object[] args = invocation.getArgs();
+                boolean match = true;
+                for (int i = 0; i < args.length && match; i++) {
+                    match = matchers.get(i).matches(args[i]);
+                }
+                if (match) {
+                    matched++;
+                }
+            }
+            if (recorded < total) {
+                throw new MockGoException(String.format("%s.%s() was called %s times but only the latest %s invocations are kept, " +
+                                "use MockGo.record(mock, capacity) with a larger capacity to verify by arguments",
+                        method.getDeclaringClass().getSimpleName(), method.getName(), total, recorded));
+            }
+            return matched;
+        }
+    }
+
     public static class WhenThenBuilder<T>
     {
         private final Tuple2<Object, Method> lastWhenMethod;
@@ -162,6 +309,9 @@ public class MockGo
                         "Example of: \n" +
                         " when(someMethod(any...)).then...()");
             }
+            //when()只按方法选择, 不使用参数匹配器
+            MockGoArgument.clearMatchers();
+            getMockInvocationHandler(lastWhenMethod.f1()).discardLastInvocation(lastWhenMethod.f2());
         }
 
         public void thenReturn(T value)
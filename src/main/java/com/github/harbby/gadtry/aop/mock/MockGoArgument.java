@@ -17,103 +17,143 @@ package com.github.harbby.gadtry.aop.mock;
 
 import com.github.harbby.gadtry.base.Iterators;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.function.Predicate;
 
 import static com.github.harbby.gadtry.base.JavaTypes.getPrimitiveClassInitValue;
 
+/**
+ * 参数匹配器: 每次调用anyXxx(), eq(), same()都会在当前线程按顺序登记一个匹配器.
+ * {@link MockGo#verify(Object)} 按登记的匹配器匹配记录的调用参数; when()只按方法选择, 选择方法后登记的匹配器被丢弃.
+ * 一次调用中只要有一个参数使用了匹配器, 所有参数都必须使用匹配器.
+ */
 public class MockGoArgument
 {
+    private static final ThreadLocal<List<ArgumentMatcher>> MATCHERS = ThreadLocal.withInitial(ArrayList::new);
+
     private MockGoArgument() {}
 
+    private static <T> T register(ArgumentMatcher matcher, T value)
+    {
+        MATCHERS.get().add(matcher);
+        return value;
+    }
+
+    private static <T> T any(T value)
+    {
+        return register(ArgumentMatcher.ANY, value);
+    }
+
+    /**
+     * @return the matchers registered by the current thread since the last call, the registry is cleared
+     */
+    static List<ArgumentMatcher> pullMatchers()
+    {
+        List<ArgumentMatcher> matchers = MATCHERS.get();
+        if (matchers.isEmpty()) {
+            return any(Collections.emptyList());
+        }
+        List<ArgumentMatcher> copy = new ArrayList<>(matchers);
+        matchers.clear();
+        return copy;
+    }
+
+    static void clearMatchers()
+    {
+        MATCHERS.get().clear();
+    }
+
     public static <T> T any()
     {
-        return null;
+        return any(null);
     }
 
     public static int anyInt()
     {
-        return getPrimitiveClassInitValue(int.class);
+        return any(getPrimitiveClassInitValue(int.class));
     }
 
     public static byte anyByte()
     {
-        return getPrimitiveClassInitValue(byte.class);
+        return any(getPrimitiveClassInitValue(byte.class));
     }
 
     public static short anyShort()
     {
-        return getPrimitiveClassInitValue(short.class);
+        return any(getPrimitiveClassInitValue(short.class));
     }
 
     public static long anyLong()
     {
-        return getPrimitiveClassInitValue(long.class);
+        return any(getPrimitiveClassInitValue(long.class));
     }
 
     public static double anyDouble()
     {
-        return getPrimitiveClassInitValue(double.class);
+        return any(getPrimitiveClassInitValue(double.class));
     }
 
     public static char anyChar()
     {
-        return getPrimitiveClassInitValue(char.class);
+        return any(getPrimitiveClassInitValue(char.class));
     }
 
     public static float anyFloat()
     {
-        return getPrimitiveClassInitValue(float.class);
+        return any(getPrimitiveClassInitValue(float.class));
     }
 
     public static boolean anyBoolean()
     {
-        return getPrimitiveClassInitValue(boolean.class);
+        return any(getPrimitiveClassInitValue(boolean.class));
     }
 
     public static String anyString()
     {
-        return "";
+        return any("");
     }
 
     public static <K, V> Map<K, V> anyMap()
     {
-        return Collections.emptyMap();
+        return any(Collections.emptyMap());
     }
 
     public static <V> List<V> anyList()
     {
-        return Collections.emptyList();
+        return any(Collections.emptyList());
     }
 
     public static <V> Set<V> anySet()
     {
-        return Collections.emptySet();
+        return any(Collections.emptySet());
     }
 
     public static <E> Iterator<E> anyIterator()
     {
-        return Iterators.empty();
+        return any(Iterators.empty());
     }
 
     public static <E> Iterable<E> anyIterable()
     {
-        return Iterators.emptyIterable();
+        return any(Iterators.emptyIterable());
     }
 
     /**
-     * e.equals(input)
+     * e.equals(input), arrays are compared by content
      *
      * @param e equals e
      * @return e;
      */
     public static <E> E eq(E e)
     {
-        throw new UnsupportedOperationException("this method have't support!");
-        //return e;
+        return register(new ArgumentMatcher("eq(" + ArgumentMatcher.describe(e) + ")", input -> Objects.deepEquals(e, input)), e);
     }
 
     /**
@@ -124,7 +164,42 @@ public class MockGoArgument
      */
     public static <E> E same(E e)
     {
-        throw new UnsupportedOperationException("this method have't support!");
-        //return e;
+        return register(new ArgumentMatcher("same(" + ArgumentMatcher.describe(e) + ")", input -> input == e), e);
+    }
+
+    static final class ArgumentMatcher
+    {
+        static final ArgumentMatcher ANY = new ArgumentMatcher("any", input -> true);
+
+        private final String description;
+        private final Predicate<Object> predicate;
+
+        ArgumentMatcher(String description, Predicate<Object> predicate)
+        {
+            this.description = description;
+            this.predicate = predicate;
+        }
+
+        static ArgumentMatcher equalTo(Object value)
+        {
+            return new ArgumentMatcher(describe(value), input -> Objects.deepEquals(value, input));
+        }
+
+        boolean matches(Object input)
+        {
+            return predicate.test(input);
+        }
+
+        static String describe(Object value)
+        {
+            String string = Arrays.deepToString(new Object[] {value});
+            return string.substring(1, string.length() - 1);
+        }
+
+        @Override
+        public String toString()
+        {
+            return description;
+        }
     }
 }
@@ -16,6 +16,8 @@
 package com.github.harbby.gadtry.aop.model;
 
 import com.github.harbby.gadtry.aop.JoinPoint;
+import com.github.harbby.gadtry.aop.runtime.ReusableJoinPoint;
+import com.github.harbby.gadtry.aop.v1.PointcutExpression;
 import com.github.harbby.gadtry.function.Function1;
 import com.github.harbby.gadtry.function.exception.Consumer;
 import com.github.harbby.gadtry.function.exception.Function;
@@ -37,6 +39,7 @@ public class Pointcut
     private final String pointName;
     private Function1<MethodInfo, Boolean> methodFilter;
     private Set<Class<?>> searchClass;
+    private PointcutExpression expression;
 
     public Pointcut(String pointName)
     {
@@ -68,6 +71,19 @@ public class Pointcut
         return searchClass;
     }
 
+    /**
+     * location expression, see: {@link com.github.harbby.gadtry.aop.Binder#bind(String, String)}
+     */
+    public void setExpression(PointcutExpression expression)
+    {
+        this.expression = expression;
+    }
+
+    public PointcutExpression getExpression()
+    {
+        return expression;
+    }
+
     public Consumer<AfterThrowing, Exception> getAfterThrowing()
     {
         return afterThrowing;
@@ -121,8 +137,15 @@ public class Pointcut
     public Function<JoinPoint, Object, Throwable> buildRunHandler()
     {
         return (proxyContext) -> {
+            boolean reuseView = proxyContext.isReusable();
             if (this.getBefore() != null) {
-                this.getBefore().apply(Before.of(proxyContext.getMethod(), proxyContext.getArgs()));
+                //before不能拿到JoinPoint调用proceed(), 复用模式下使用只读视图
+                if (reuseView) {
+                    ReusableJoinPoint.apply(this.getBefore(), proxyContext, null, null);
+                }
+                else {
+                    this.getBefore().apply(Before.of(proxyContext.getMethod(), proxyContext.getArgs()));
+                }
             }
 
             Object value = null;
@@ -130,16 +153,26 @@ public class Pointcut
             try {
                 value = this.getAround().apply(proxyContext);
                 if (this.getAfterReturning() != null) {
-                    this.getAfterReturning().apply(AfterReturning.of(proxyContext.getMethod(),
-                            proxyContext.getArgs(), value));
+                    if (reuseView) {
+                        ReusableJoinPoint.apply(this.getAfterReturning(), proxyContext, value, null);
+                    }
+                    else {
+                        this.getAfterReturning().apply(AfterReturning.of(proxyContext.getMethod(),
+                                proxyContext.getArgs(), value));
+                    }
                 }
                 return value;
             }
             catch (Exception e) {
                 throwable = e;
                 if (this.getAfterThrowing() != null) {
-                    this.getAfterThrowing().apply(AfterThrowing.of(proxyContext.getMethod(),
-                            proxyContext.getArgs(), e));
+                    if (reuseView) {
+                        ReusableJoinPoint.apply(this.getAfterThrowing(), proxyContext, null, e);
+                    }
+                    else {
+                        this.getAfterThrowing().apply(AfterThrowing.of(proxyContext.getMethod(),
+                                proxyContext.getArgs(), e));
+                    }
                 }
                 if (e instanceof InvocationTargetException) {
                     throw throwsThrowable(((InvocationTargetException) e).getTargetException());
@@ -150,8 +183,13 @@ public class Pointcut
             }
             finally {
                 if (this.getAfter() != null) {
-                    this.getAfter().apply(After.of(proxyContext.getMethod(),
-                            proxyContext.getArgs(), value, throwable));
+                    if (reuseView) {
+                        ReusableJoinPoint.apply(this.getAfter(), proxyContext, value, throwable);
+                    }
+                    else {
+                        this.getAfter().apply(After.of(proxyContext.getMethod(),
+                                proxyContext.getArgs(), value, throwable));
+                    }
                 }
             }
         };
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.runtime;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * FastClass style invoker of a proxy class method table.
+ * <p>
+ * The implementation is generated by {@link com.github.harbby.gadtry.aop.impl.JavassistInvoker},
+ * {@link #invoke(int, Object, Object[])} is a switch on the method index that calls the method directly.
+ * invoke0..invoke3 take the arguments one by one, so no {@code Object[]} is created for methods with up to 3 parameters;
+ * an index whose method has a different parameter count falls back to {@link #invoke(int, Object, Object[])}.
+ * Methods that can not be called from the generated class (not accessible) use reflection.
+ * Unlike {@link Method#invoke(Object, Object...)}, exceptions thrown by the method are not wrapped by
+ * {@link InvocationTargetException}
+ */
+public abstract class MethodInvoker
+{
+    private static final Object[] EMPTY_ARGS = new Object[0];
+
+    private Method[] methods;
+    private Map<Method, Integer> indexes;
+    //jdk代理类传给InvocationHandler的Method与方法表中的不是同一个对象(声明类也可能是父接口), 按方法签名查找并缓存
+    private ConcurrentMap<Method, Integer> signatureIndexes;
+
+    protected MethodInvoker() {}
+
+    final void init(Method[] methods, boolean matchSignature)
+    {
+        Map<Method, Integer> indexes = new IdentityHashMap<>(methods.length);
+        for (int i = 0; i < methods.length; i++) {
+            if (methods[i] != null) {
+                indexes.put(methods[i], i);
+            }
+        }
+        this.methods = methods;
+        this.indexes = indexes;
+        this.signatureIndexes = matchSignature ? new ConcurrentHashMap<>() : null;
+    }
+
+    public abstract Object invoke(int methodIndex, Object instance, Object[] args)
+            throws Throwable;
+
+    public Object invoke0(int methodIndex, Object instance)
+            throws Throwable
+    {
+        return invoke(methodIndex, instance, EMPTY_ARGS);
+    }
+
+    public Object invoke1(int methodIndex, Object instance, Object arg0)
+            throws Throwable
+    {
+        return invoke(methodIndex, instance, new Object[] {arg0});
+    }
+
+    public Object invoke2(int methodIndex, Object instance, Object arg0, Object arg1)
+            throws Throwable
+    {
+        return invoke(methodIndex, instance, new Object[] {arg0, arg1});
+    }
+
+    public Object invoke3(int methodIndex, Object instance, Object arg0, Object arg1, Object arg2)
+            throws Throwable
+    {
+        return invoke(methodIndex, instance, new Object[] {arg0, arg1, arg2});
+    }
+
+    public final Object invoke(Method method, Object instance, Object[] args)
+            throws Throwable
+    {
+        int methodIndex = getIndex(method);
+        if (methodIndex < 0) {
+            return invokeReflect(method, instance, args);
+        }
+        return invoke(methodIndex, instance, args);
+    }
+
+    public final Method getMethod(int methodIndex)
+    {
+        return methods[methodIndex];
+    }
+
+    /**
+     * @param method method of the proxy method table
+     * @return method index, -1 if the method is not in the method table
+     */
+    public final int getIndex(Method method)
+    {
+        Integer methodIndex = indexes.get(method);
+        if (methodIndex == null && signatureIndexes != null) {
+            methodIndex = signatureIndexes.get(method);
+            if (methodIndex == null) {
+                methodIndex = signatureIndexes.computeIfAbsent(method, this::findIndexBySignature);
+            }
+        }
+        return methodIndex == null ? -1 : methodIndex;
+    }
+
+    /**
+     * @param method method of the proxy class
+     * @return the same signature method of the proxy method table, or the method itself if not found
+     */
+    public final Method getTableMethod(Method method)
+    {
+        int methodIndex = getIndex(method);
+        return methodIndex < 0 ? method : methods[methodIndex];
+    }
+
+    private int findIndexBySignature(Method method)
+    {
+        for (int i = 0; i < methods.length; i++) {
+            Method tableMethod = methods[i];
+            if (tableMethod != null && tableMethod.getName().equals(method.getName()) &&
+                    tableMethod.getReturnType() == method.getReturnType() &&
+                    Arrays.equals(tableMethod.getParameterTypes(), method.getParameterTypes())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    protected final Object invokeReflect(int methodIndex, Object instance, Object[] args)
+            throws Throwable
+    {
+        return invokeReflect(methods[methodIndex], instance, args);
+    }
+
+    private static Object invokeReflect(Method method, Object instance, Object[] args)
+            throws Throwable
+    {
+        try {
+            return method.invoke(instance, args);
+        }
+        catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
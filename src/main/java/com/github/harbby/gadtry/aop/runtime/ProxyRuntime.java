@@ -15,11 +15,19 @@
  */
 package com.github.harbby.gadtry.aop.runtime;
 
+import com.github.harbby.gadtry.aop.impl.JavassistInvoker;
 import com.github.harbby.gadtry.base.Throwables;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
+import static com.github.harbby.gadtry.base.Throwables.throwsThrowable;
 import static java.util.Objects.requireNonNull;
 
 public final class ProxyRuntime
@@ -29,8 +37,106 @@ public final class ProxyRuntime
     }
 
     public static final String METHOD_START = "$_";
+    public static final String METHOD_FIELD_START = "_method";
     private static final Field methodNameField;
 
+    private static final ClassValue<Method[]> proxyMethods = new ClassValue<Method[]>()
+    {
+        @Override
+        protected Method[] computeValue(Class<?> proxyClass)
+        {
+            if (java.lang.reflect.Proxy.isProxyClass(proxyClass)) {
+                //jdk16+ 不允许反射访问jdk.proxy*模块中代理类的m0..mN字段, 这里按接口方法构建方法表
+                return createJdkProxyMethods(proxyClass);
+            }
+            List<Method> methods = new ArrayList<>();
+            for (Field field : proxyClass.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) || field.getType() != Method.class ||
+                        !field.getName().startsWith(METHOD_FIELD_START)) {
+                    continue;
+                }
+                int index;
+                try {
+                    index = Integer.parseInt(field.getName().substring(METHOD_FIELD_START.length()));
+                }
+                catch (NumberFormatException e) {
+                    continue;
+                }
+                while (methods.size() <= index) {
+                    methods.add(null);
+                }
+                field.setAccessible(true);
+                try {
+                    methods.set(index, (Method) field.get(null));
+                }
+                catch (IllegalAccessException e) {
+                    throw throwsThrowable(e);
+                }
+            }
+            return methods.toArray(new Method[0]);
+        }
+    };
+
+    /**
+     * jdk代理类的方法表: Object的hashCode, equals, toString, 然后是接口方法(相同签名只保留一个), 按签名排序使下标在每次运行时都稳定.
+     * 这里的Method对象与jdk代理类传给InvocationHandler的mN不是同一个对象, 查找时按方法签名匹配
+     */
+    private static Method[] createJdkProxyMethods(Class<?> proxyClass)
+    {
+        List<Method> objectMethods = new ArrayList<>();
+        try {
+            objectMethods.add(Object.class.getMethod("hashCode"));
+            objectMethods.add(Object.class.getMethod("equals", Object.class));
+            objectMethods.add(Object.class.getMethod("toString"));
+        }
+        catch (NoSuchMethodException e) {
+            throw throwsThrowable(e);
+        }
+        Map<String, Method> methods = new TreeMap<>();
+        for (Method method : objectMethods) {
+            methods.put(getSignature(method), method);
+        }
+        for (Class<?> anInterface : proxyClass.getInterfaces()) {
+            for (Method method : anInterface.getMethods()) {
+                if (Modifier.isStatic(method.getModifiers())) {
+                    continue;
+                }
+                String signature = getSignature(method);
+                Method old = methods.get(signature);
+                //子接口重新声明的方法优先, Object的方法不被接口中的声明替换
+                if (old == null || (old.getDeclaringClass().isInterface() &&
+                        old.getDeclaringClass().isAssignableFrom(method.getDeclaringClass()))) {
+                    methods.put(signature, trySetAccessible(method));
+                }
+            }
+        }
+        List<Method> table = new ArrayList<>(objectMethods);
+        for (Method method : methods.values()) {
+            if (method.getDeclaringClass() != Object.class) {
+                table.add(method);
+            }
+        }
+        return table.toArray(new Method[0]);
+    }
+
+    private static String getSignature(Method method)
+    {
+        return method.getName() + Arrays.toString(method.getParameterTypes()) + method.getReturnType().getName();
+    }
+
+    private static Method trySetAccessible(Method method)
+    {
+        if (!Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+            try {
+                method.setAccessible(true);
+            }
+            catch (RuntimeException ignored) {
+                //不可访问时反射调用会失败, 与直接使用jdk代理时一致
+            }
+        }
+        return method;
+    }
+
     static {
         Field field;
         try {
@@ -69,4 +175,56 @@ public final class ProxyRuntime
         methodNameField.set(method, method.getName().substring(2));
         return method;
     }
+
+    /**
+     * proxy method table of a javassist proxy class, the array index is the N of field _methodN.
+     * The table of a jdk proxy class is built from its interfaces (Object methods first), its Method
+     * objects are not the same as the ones passed to the InvocationHandler, use
+     * {@link MethodInvoker#getIndex(Method)} to find them
+     *
+     * @param proxyClass javassist or jdk proxy class
+     * @return Method[], do not modify it
+     */
+    public static Method[] getProxyMethods(Class<?> proxyClass)
+    {
+        return proxyMethods.get(proxyClass);
+    }
+
+    private static final ClassValue<MethodInvoker> methodInvokers = new ClassValue<MethodInvoker>()
+    {
+        @Override
+        protected MethodInvoker computeValue(Class<?> proxyClass)
+        {
+            Method[] methods = getProxyMethods(proxyClass);
+            MethodInvoker invoker = JavassistInvoker.newInvoker(proxyClass, methods);
+            invoker.init(methods, java.lang.reflect.Proxy.isProxyClass(proxyClass));
+            return invoker;
+        }
+    };
+
+    /**
+     * generated invoker of methods of a normal (not proxy) class, e.g. the $_weavedN_name methods of a woven class.
+     * the result is not cached
+     *
+     * @param aClass the invoker is defined in the package and ClassLoader of this class
+     * @param methods method table, the method index is the index in this array
+     * @return MethodInvoker
+     */
+    public static MethodInvoker newMethodInvoker(Class<?> aClass, Method[] methods)
+    {
+        MethodInvoker invoker = JavassistInvoker.newInvoker(aClass, methods, false);
+        invoker.init(methods, false);
+        return invoker;
+    }
+
+    /**
+     * generated invoker of the proxy method table, cached with the proxy class
+     *
+     * @param proxyClass javassist or jdk proxy class
+     * @return MethodInvoker
+     */
+    public static MethodInvoker getMethodInvoker(Class<?> proxyClass)
+    {
+        return methodInvokers.get(proxyClass);
+    }
 }
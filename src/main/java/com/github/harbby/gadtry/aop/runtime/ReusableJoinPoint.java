@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.runtime;
+
+import com.github.harbby.gadtry.aop.JoinPoint;
+import com.github.harbby.gadtry.aop.model.After;
+import com.github.harbby.gadtry.aop.model.Before;
+import com.github.harbby.gadtry.function.exception.Consumer;
+import com.github.harbby.gadtry.function.exception.Function;
+
+import java.lang.reflect.Method;
+
+import static com.github.harbby.gadtry.base.JavaTypes.getClassInitValue;
+
+/**
+ * Advice execution mode that reuses the JoinPoint and advice views instead of allocating them per call.
+ * <p>
+ * 每个调用深度复用一个 {@link JoinPoint} 和一个只读的 {@link Before}, {@link After}, AfterReturning, AfterThrowing 视图,
+ * 按线程和调用深度复用(支持advice内再调用代理方法), 开启后advice执行时不再分配JoinPoint和Before.of/After.of等对象.
+ * 只读视图不能转换为JoinPoint, before/after advice不能调用proceed().
+ * <p>
+ * 视图只在advice执行期间有效, advice返回后会被同一线程的下一次调用复用, 不能保存它或传递给其他线程.
+ * <p>
+ * 复用模式按代理开启, 例如 {@code AopGo.proxy(target).reuseJoinPoint()}, 其他代理不受影响.
+ * advice通过 {@link JoinPoint#isReusable()} 得知当前调用是否处于复用模式.
+ * 可能在调用返回后或在其他线程中使用JoinPoint的advice需要实现 {@link EscapingAdvice}, 代理不会把复用的JoinPoint传给它.
+ */
+public final class ReusableJoinPoint
+        implements JoinPoint
+{
+    private static final ThreadLocal<Stack> stacks = ThreadLocal.withInitial(Stack::new);
+
+    private final Stack stack;
+    private final View view = new View(this);
+    private MethodInvoker invoker;
+    private int methodIndex;
+    private Object instance;
+    private Method method;
+    private Object[] args;
+    private Object value;
+    private Throwable throwable;
+
+    private ReusableJoinPoint(Stack stack)
+    {
+        this.stack = stack;
+    }
+
+    /**
+     * @return true if the proxy in reuse mode can pass a reused JoinPoint to the advice
+     */
+    public static boolean canReuse(Function<JoinPoint, Object, Throwable> advice)
+    {
+        return !(advice instanceof EscapingAdvice);
+    }
+
+    /**
+     * @param invoker  method invoker of the proxy class, null when instance is null
+     * @param instance target instance, null for mock (proceed returns the default value of the return type)
+     * @param method   method
+     * @param args     method args
+     * @return view of the current thread, must be released by {@link #release()}
+     */
+    public static ReusableJoinPoint acquire(MethodInvoker invoker, Object instance, Method method, Object[] args)
+    {
+        return acquire(invoker, invoker == null ? -1 : invoker.getIndex(method), instance, method, args);
+    }
+
+    /**
+     * @param methodIndex index of the method in the proxy method table, -1 if unknown
+     */
+    public static ReusableJoinPoint acquire(MethodInvoker invoker, int methodIndex, Object instance, Method method, Object[] args)
+    {
+        ReusableJoinPoint joinPoint = stacks.get().push();
+        joinPoint.invoker = invoker;
+        joinPoint.methodIndex = methodIndex;
+        joinPoint.instance = instance;
+        joinPoint.method = method;
+        joinPoint.args = args;
+        return joinPoint;
+    }
+
+    public void release()
+    {
+        this.invoker = null;
+        this.instance = null;
+        this.method = null;
+        this.args = null;
+        this.value = null;
+        this.throwable = null;
+        stack.pop(this);
+    }
+
+    public ReusableJoinPoint setResult(Object value, Throwable throwable)
+    {
+        this.value = value;
+        this.throwable = throwable;
+        return this;
+    }
+
+    /**
+     * @return read-only view of this point for before/after advice, it can not proceed the method
+     */
+    public After getView()
+    {
+        return view;
+    }
+
+    /**
+     * Run after/afterReturning/afterThrowing advice with a reused view of the point.
+     * If the point is a {@link ReusableJoinPoint}, it is used as the view.
+     */
+    public static void apply(Consumer<? super After, Exception> advice, Before point, Object value, Throwable throwable)
+            throws Exception
+    {
+        if (point instanceof ReusableJoinPoint) {
+            advice.apply(((ReusableJoinPoint) point).setResult(value, throwable).view);
+            return;
+        }
+        apply(advice, point.getMethod(), point.getArgs(), value, throwable);
+    }
+
+    public static void apply(Consumer<? super After, Exception> advice, Method method, Object[] args, Object value, Throwable throwable)
+            throws Exception
+    {
+        ReusableJoinPoint joinPoint = acquire(null, null, method, args);
+        try {
+            advice.apply(joinPoint.setResult(value, throwable).view);
+        }
+        finally {
+            joinPoint.release();
+        }
+    }
+
+    @Override
+    public Method getMethod()
+    {
+        return method;
+    }
+
+    @Override
+    public Object[] getArgs()
+    {
+        return args;
+    }
+
+    @Override
+    public Object proceed(Object[] args)
+            throws Throwable
+    {
+        if (instance == null) {
+            //@Mock
+            return getClassInitValue(method.getReturnType());
+        }
+        if (methodIndex >= 0) {
+            return invoker.invoke(methodIndex, instance, args);
+        }
+        return invoker.invoke(method, instance, args);
+    }
+
+    @Override
+    public int getMethodIndex()
+    {
+        return methodIndex;
+    }
+
+    @Override
+    public boolean isReusable()
+    {
+        return true;
+    }
+
+    /**
+     * Marker of the advice that may use the JoinPoint after the call returns or in another thread,
+     * e.g. async advice and request batching. It never gets a reused JoinPoint.
+     */
+    public interface EscapingAdvice {}
+
+    private static final class Stack
+    {
+        private ReusableJoinPoint[] joinPoints = new ReusableJoinPoint[4];
+        private int depth;
+
+        private ReusableJoinPoint push()
+        {
+            if (depth == joinPoints.length) {
+                ReusableJoinPoint[] newArray = new ReusableJoinPoint[depth * 2];
+                System.arraycopy(joinPoints, 0, newArray, 0, depth);
+                joinPoints = newArray;
+            }
+            ReusableJoinPoint joinPoint = joinPoints[depth];
+            if (joinPoint == null) {
+                joinPoint = new ReusableJoinPoint(this);
+                joinPoints[depth] = joinPoint;
+            }
+            depth++;
+            return joinPoint;
+        }
+
+        private void pop(ReusableJoinPoint joinPoint)
+        {
+            //按调用深度后进先出释放
+            if (depth > 0 && joinPoints[depth - 1] == joinPoint) {
+                depth--;
+                return;
+            }
+            //乱序或重复释放: 深度回退到该视图的位置(它之上未释放的视图一并作废), 然后立即失败, 避免仍在使用的视图被复用
+            for (int i = depth - 2; i >= 0; i--) {
+                if (joinPoints[i] == joinPoint) {
+                    int leaked = depth - 1 - i;
+                    depth = i;
+                    throw new IllegalStateException("ReusableJoinPoint released out of order, " + leaked + " view(s) above it not released");
+                }
+            }
+            throw new IllegalStateException("ReusableJoinPoint already released");
+        }
+    }
+
+    private static final class View
+            implements After
+    {
+        private final ReusableJoinPoint joinPoint;
+
+        private View(ReusableJoinPoint joinPoint)
+        {
+            this.joinPoint = joinPoint;
+        }
+
+        @Override
+        public Method getMethod()
+        {
+            return joinPoint.method;
+        }
+
+        @Override
+        public Object[] getArgs()
+        {
+            return joinPoint.args;
+        }
+
+        @Override
+        public Object getValue()
+        {
+            return joinPoint.value;
+        }
+
+        @Override
+        public Throwable getThrowable()
+        {
+            return joinPoint.throwable;
+        }
+
+        @Override
+        public boolean isSuccess()
+        {
+            return joinPoint.throwable == null;
+        }
+    }
+}
@@ -0,0 +1,544 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.v1;
+
+import com.github.harbby.gadtry.aop.model.MethodInfo;
+import com.github.harbby.gadtry.function.Function1;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.regex.Pattern;
+
+import static com.github.harbby.gadtry.base.MoreObjects.checkState;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Pointcut expression, parsed once and compiled into matchers.
+ * <p>
+ * 支持的语法(AspectJ execution风格的子集):
+ * <pre>
+ *     execution([modifiers] returnType [declaringType.]methodName(params))
+ *     within(typePattern)
+ *     &#64;annotation(com.example.MethodAnnotation)
+ *     &#64;within(com.example.ClassAnnotation)
+ *     expr &amp;&amp; expr, expr || expr, !expr, (expr)
+ * </pre>
+ * typePattern中 {@code *} 匹配不含'.'的任意字符, {@code ..} 匹配任意层子包; 不含'.'的类型名同时匹配simpleName(如 String, int).
+ * params中 {@code ..} 匹配任意个参数, {@code *} 匹配一个任意参数.
+ * 泛型参数按擦除后的类型匹配, 如 {@code Map<String, Integer>} 等同于 {@code Map}; 类型参数内的','和空格不会拆分参数.
+ * 例如: {@code execution(* com.github.harbby..*Service.get*(..)) && !@annotation(com.example.Ignore)}
+ * <p>
+ * 精确的名字直接比较字符串, {@code prefix..*} 形式的包匹配只做前缀比较, 其他通配符模式先比较字面量前缀再使用正则.
+ * 类级别的匹配结果(该类是否有被选中的方法)按Class缓存.
+ */
+public final class PointcutExpression
+{
+    private final String expression;
+    private final Node root;
+    private final ClassValue<Boolean> classMatches = new ClassValue<Boolean>()
+    {
+        @Override
+        protected Boolean computeValue(Class<?> aClass)
+        {
+            for (Method method : aClass.getMethods()) {
+                if (root.matches(new ReflectSignature(aClass, MethodInfo.of(method)))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    };
+
+    private PointcutExpression(String expression, Node root)
+    {
+        this.expression = expression;
+        this.root = root;
+    }
+
+    public static PointcutExpression compile(String expression)
+    {
+        requireNonNull(expression, "expression is null");
+        Parser parser = new Parser(expression);
+        Node root = parser.parseOr();
+        parser.skipWhitespace();
+        checkState(parser.pos == expression.length(), "Unexpected '%s' at %s in pointcut expression: %s",
+                expression.substring(Math.min(parser.pos, expression.length())), parser.pos, expression);
+        return new PointcutExpression(expression, root);
+    }
+
+    /**
+     * @param aClass proxied class
+     * @return true if any public method of the class is selected, the result is cached per class
+     */
+    public boolean matchesClass(Class<?> aClass)
+    {
+        return classMatches.get(aClass);
+    }
+
+    public boolean matches(Class<?> aClass, MethodInfo method)
+    {
+        return root.matches(new ReflectSignature(aClass, method));
+    }
+
+    /**
+     * match by names only, the classes of the method do not need to be loaded
+     */
+    public boolean matches(MethodSignature signature)
+    {
+        return root.matches(signature);
+    }
+
+    /**
+     * @param aClass proxied class, used by the declaring type part of the expression
+     * @return method filter of the class
+     */
+    public Function1<MethodInfo, Boolean> methodFilter(Class<?> aClass)
+    {
+        requireNonNull(aClass, "aClass is null");
+        return method -> root.matches(new ReflectSignature(aClass, method));
+    }
+
+    @Override
+    public String toString()
+    {
+        return expression;
+    }
+
+    private interface Node
+    {
+        boolean matches(MethodSignature signature);
+    }
+
+    /**
+     * Name-based view of a method, type names are in the form of {@link Class#getTypeName()}
+     */
+    public interface MethodSignature
+    {
+        String getDeclaringType();
+
+        String[] getClassAnnotations();
+
+        String getName();
+
+        int getModifiers();
+
+        String getReturnType();
+
+        String[] getParameterTypes();
+
+        String[] getAnnotations();
+    }
+
+    private static final class ReflectSignature
+            implements MethodSignature
+    {
+        private final Class<?> aClass;
+        private final MethodInfo method;
+
+        private ReflectSignature(Class<?> aClass, MethodInfo method)
+        {
+            this.aClass = aClass;
+            this.method = method;
+        }
+
+        @Override
+        public String getDeclaringType()
+        {
+            return aClass.getTypeName();
+        }
+
+        @Override
+        public String[] getClassAnnotations()
+        {
+            return annotationNames(aClass.getAnnotations());
+        }
+
+        @Override
+        public String getName()
+        {
+            return method.getName();
+        }
+
+        @Override
+        public int getModifiers()
+        {
+            return method.getModifiers();
+        }
+
+        @Override
+        public String getReturnType()
+        {
+            return method.getReturnType().getTypeName();
+        }
+
+        @Override
+        public String[] getParameterTypes()
+        {
+            Class<?>[] types = method.getParameterTypes();
+            String[] names = new String[types.length];
+            for (int i = 0; i < types.length; i++) {
+                names[i] = types[i].getTypeName();
+            }
+            return names;
+        }
+
+        @Override
+        public String[] getAnnotations()
+        {
+            return annotationNames(method.getAnnotations());
+        }
+
+        private static String[] annotationNames(Annotation[] annotations)
+        {
+            String[] names = new String[annotations.length];
+            for (int i = 0; i < annotations.length; i++) {
+                names[i] = annotations[i].annotationType().getName();
+            }
+            return names;
+        }
+    }
+
+    private static final class Parser
+    {
+        private final String text;
+        private int pos;
+
+        private Parser(String text)
+        {
+            this.text = text;
+        }
+
+        private Node parseOr()
+        {
+            Node left = parseAnd();
+            while (consume("||")) {
+                Node l = left;
+                Node r = parseAnd();
+                left = signature -> l.matches(signature) || r.matches(signature);
+            }
+            return left;
+        }
+
+        private Node parseAnd()
+        {
+            Node left = parseUnary();
+            while (consume("&&")) {
+                Node l = left;
+                Node r = parseUnary();
+                left = signature -> l.matches(signature) && r.matches(signature);
+            }
+            return left;
+        }
+
+        private Node parseUnary()
+        {
+            if (consume("!")) {
+                Node node = parseUnary();
+                return signature -> !node.matches(signature);
+            }
+            if (consume("(")) {
+                Node node = parseOr();
+                checkState(consume(")"), "Missing ')' at %s in pointcut expression: %s", pos, text);
+                return node;
+            }
+            if (consume("execution")) {
+                return execution(body());
+            }
+            if (consume("within")) {
+                TypePattern type = TypePattern.of(body());
+                return signature -> type.matches(signature.getDeclaringType());
+            }
+            if (consume("@annotation")) {
+                String annotation = body();
+                return signature -> hasAnnotation(signature.getAnnotations(), annotation);
+            }
+            if (consume("@within")) {
+                String annotation = body();
+                return signature -> hasAnnotation(signature.getClassAnnotations(), annotation);
+            }
+            throw new IllegalStateException(String.format("Unexpected '%s' at %s in pointcut expression: %s",
+                    text.substring(pos), pos, text));
+        }
+
+        /**
+         * 读取designator括号内的内容, 支持嵌套括号
+         */
+        private String body()
+        {
+            checkState(consume("("), "Missing '(' at %s in pointcut expression: %s", pos, text);
+            int start = pos;
+            int depth = 1;
+            for (; pos < text.length(); pos++) {
+                char c = text.charAt(pos);
+                if (c == '(') {
+                    depth++;
+                }
+                else if (c == ')' && --depth == 0) {
+                    String body = text.substring(start, pos).trim();
+                    pos++;
+                    return body;
+                }
+            }
+            throw new IllegalStateException("Missing ')' in pointcut expression: " + text);
+        }
+
+        private boolean consume(String token)
+        {
+            skipWhitespace();
+            if (text.startsWith(token, pos)) {
+                pos += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        private void skipWhitespace()
+        {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private Node execution(String body)
+        {
+            int paramsStart = body.indexOf('(');
+            checkState(paramsStart > 0 && body.endsWith(")"), "execution(%s) is not a method pattern", body);
+            String[] head = erasure(body.substring(0, paramsStart)).trim().split("\\s+");
+            checkState(head.length >= 2, "execution(%s) missing return type", body);
+            int modifiers = 0;
+            for (int i = 0; i < head.length - 2; i++) {
+                modifiers |= modifier(head[i]);
+            }
+            TypePattern returnType = TypePattern.of(head[head.length - 2]);
+            String name = head[head.length - 1];
+            int split = name.lastIndexOf('.');
+            TypePattern declaringType;
+            NamePattern methodName;
+            if (split < 0) {
+                declaringType = TypePattern.ANY;
+                methodName = NamePattern.of(name);
+            }
+            else {
+                String type = name.substring(0, split);
+                //com.example..*(..) 中最后的'.'之前是 com.example. , 补回'.*'得到 com.example..*
+                declaringType = TypePattern.of(type.endsWith(".") ? type + ".*" : type);
+                methodName = NamePattern.of(name.substring(split + 1));
+            }
+            TypePattern[] params = parameters(body.substring(paramsStart + 1, body.length() - 1).trim());
+            int requiredModifiers = modifiers;
+            return signature -> (signature.getModifiers() & requiredModifiers) == requiredModifiers &&
+                    methodName.matches(signature.getName()) &&
+                    declaringType.matches(signature.getDeclaringType()) &&
+                    returnType.matches(signature.getReturnType()) &&
+                    matchParameters(params, 0, signature.getParameterTypes(), 0);
+        }
+
+        private static int modifier(String name)
+        {
+            switch (name) {
+                case "public":
+                    return Modifier.PUBLIC;
+                case "protected":
+                    return Modifier.PROTECTED;
+                case "private":
+                    return Modifier.PRIVATE;
+                case "static":
+                    return Modifier.STATIC;
+                case "final":
+                    return Modifier.FINAL;
+                case "synchronized":
+                    return Modifier.SYNCHRONIZED;
+                default:
+                    throw new IllegalStateException("Unsupported modifier " + name);
+            }
+        }
+
+        private static TypePattern[] parameters(String params)
+        {
+            if (params.isEmpty()) {
+                return new TypePattern[0];
+            }
+            String[] split = erasure(params).split(",");
+            TypePattern[] patterns = new TypePattern[split.length];
+            for (int i = 0; i < split.length; i++) {
+                String param = split[i].trim();
+                patterns[i] = "..".equals(param) ? null : TypePattern.of(param);  //null is '..'
+            }
+            return patterns;
+        }
+
+        /**
+         * 去掉类型参数, 如 {@code java.util.Map<String, List<Integer>>} 得到 {@code java.util.Map},
+         * 签名中的类型名是擦除后的名字, 因此只按擦除类型匹配
+         */
+        private static String erasure(String pattern)
+        {
+            StringBuilder builder = new StringBuilder(pattern.length());
+            int depth = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '<') {
+                    if (depth++ == 0) {
+                        //Map <String, Integer> 中'<'前的空格属于类型参数
+                        int end = builder.length();
+                        while (end > 0 && Character.isWhitespace(builder.charAt(end - 1))) {
+                            end--;
+                        }
+                        builder.setLength(end);
+                    }
+                }
+                else if (c == '>') {
+                    checkState(--depth >= 0, "Unbalanced '>' in type pattern: %s", pattern);
+                }
+                else if (depth == 0) {
+                    builder.append(c);
+                }
+            }
+            checkState(depth == 0, "Unbalanced '<' in type pattern: %s", pattern);
+            return builder.toString();
+        }
+    }
+
+    private static boolean matchParameters(TypePattern[] patterns, int i, String[] types, int j)
+    {
+        if (i == patterns.length) {
+            return j == types.length;
+        }
+        if (patterns[i] == null) {
+            //'..' 匹配任意个参数
+            for (int k = j; k <= types.length; k++) {
+                if (matchParameters(patterns, i + 1, types, k)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return j < types.length && patterns[i].matches(types[j]) && matchParameters(patterns, i + 1, types, j + 1);
+    }
+
+    private static boolean hasAnnotation(String[] annotations, String annotationName)
+    {
+        for (String annotation : annotations) {
+            if (annotation.equals(annotationName) || simpleName(annotation).equals(annotationName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String simpleName(String typeName)
+    {
+        return typeName.substring(Math.max(typeName.lastIndexOf('.'), typeName.lastIndexOf('$')) + 1);
+    }
+
+    private static final class TypePattern
+    {
+        private static final TypePattern ANY = new TypePattern(NamePattern.of("*"), false);
+
+        private final NamePattern pattern;
+        private final boolean simpleName;
+
+        private TypePattern(NamePattern pattern, boolean simpleName)
+        {
+            this.pattern = pattern;
+            this.simpleName = simpleName;
+        }
+
+        private static TypePattern of(String pattern)
+        {
+            if ("*".equals(pattern)) {
+                return ANY;
+            }
+            return new TypePattern(NamePattern.of(pattern), pattern.indexOf('.') < 0);
+        }
+
+        private boolean matches(String typeName)
+        {
+            if (this == ANY) {
+                return true;
+            }
+            //内部类 a.b.Outer$Inner 也可以写成 a.b.Outer.Inner
+            return pattern.matches(typeName) ||
+                    (simpleName && pattern.matches(simpleName(typeName))) ||
+                    (typeName.indexOf('$') >= 0 && pattern.matches(typeName.replace('$', '.')));
+        }
+    }
+
+    private static final class NamePattern
+    {
+        private final String literal;     //没有通配符时的名字
+        private final String prefix;      //通配符前的字面量前缀
+        private final boolean prefixOnly; //prefix..* 形式只需比较前缀
+        private final Pattern regex;
+
+        private NamePattern(String literal, String prefix, boolean prefixOnly, Pattern regex)
+        {
+            this.literal = literal;
+            this.prefix = prefix;
+            this.prefixOnly = prefixOnly;
+            this.regex = regex;
+        }
+
+        private static NamePattern of(String pattern)
+        {
+            int wildcard = pattern.indexOf('*');
+            int anyPackage = pattern.indexOf("..");
+            if (wildcard < 0 && anyPackage < 0) {
+                return new NamePattern(pattern.intern(), null, false, null);
+            }
+            int first = wildcard < 0 ? anyPackage : anyPackage < 0 ? wildcard : Math.min(wildcard, anyPackage);
+            String prefix = pattern.substring(0, first);
+            if (pattern.equals(prefix + "..*")) {
+                return new NamePattern(null, prefix + ".", true, null);
+            }
+            return new NamePattern(null, prefix, false, Pattern.compile(toRegex(pattern)));
+        }
+
+        private static String toRegex(String pattern)
+        {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '.' && pattern.startsWith("..", i)) {
+                    builder.append("\\.(?:.*\\.)?");
+                    i++;
+                }
+                else if (c == '*') {
+                    builder.append("[^.]*");
+                }
+                else if (Character.isLetterOrDigit(c) || c == '_') {
+                    builder.append(c);
+                }
+                else {
+                    builder.append('\\').append(c);
+                }
+            }
+            return builder.toString();
+        }
+
+        private boolean matches(String name)
+        {
+            if (literal != null) {
+                return literal.equals(name);
+            }
+            if (!name.startsWith(prefix)) {
+                return false;
+            }
+            return prefixOnly || regex.matcher(name).matches();
+        }
+    }
+}
@@ -15,12 +15,13 @@
  */
 package com.github.harbby.gadtry.ioc;
 
-import com.github.harbby.gadtry.base.Lazys;
-import com.github.harbby.gadtry.collection.mutable.MutableMap;
 import com.github.harbby.gadtry.function.Creator;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 
 import static com.github.harbby.gadtry.base.MoreObjects.checkState;
 import static java.util.Objects.requireNonNull;
@@ -36,6 +37,24 @@ public interface BindMapping
 
     public <T> Map<Class<?>, Creator<?>> getAllBeans();
 
+    /**
+     * @return the keys bound as singletons, in binding order
+     */
+    default Set<Class<?>> getSingletons()
+    {
+        return Collections.emptySet();
+    }
+
+    /**
+     * @param type bound key
+     * @return the class the container instantiates for the key (the bean class or the Creator class),
+     * null if the value is provided by user code (instance or Creator lambda)
+     */
+    default Class<?> getImplementation(Class<?> type)
+    {
+        return null;
+    }
+
     static Builder builder()
     {
         return new Builder();
@@ -44,6 +63,8 @@ public interface BindMapping
     static class Builder
     {
         private final Map<Class<?>, Creator<?>> bindMapping = new HashMap<>();
+        private final Map<Class<?>, Class<?>> implementations = new HashMap<>();
+        private final Set<Class<?>> singletons = new LinkedHashSet<>();
 
         public <T> Builder bind(Class<T> type, Creator<? extends T> creator)
         {
@@ -61,29 +82,23 @@ public interface BindMapping
             bindMapping.put(type, creator);
         }
 
-        public BindMapping build()
+        void bindImplementation(Class<?> type, Class<?> implementation)
         {
-            return new BindMapping()
-            {
-                @SuppressWarnings("unchecked")
-                @Override
-                public <T> Creator<T> getOrDefault(Class<T> type, Creator<T> defaultValue)
-                {
-                    return (Creator<T>) bindMapping.getOrDefault(type, defaultValue);
-                }
+            implementations.put(type, implementation);
+        }
 
-                @Override
-                public Map<Class<?>, Creator<?>> getAllBeans()
-                {
-                    return MutableMap.copy(bindMapping);
-                }
+        void markSingleton(Class<?> type)
+        {
+            singletons.add(type);
+        }
 
-                @Override
-                public String toString()
-                {
-                    return bindMapping.toString();
-                }
-            };
+        /**
+         * @return a table backed by this builder, lookups use the builder's map until {@link BindingTable#freeze()}
+         * builds the immutable lookup table
+         */
+        public BindingTable build()
+        {
+            return new BindingTable(bindMapping, implementations, singletons);
         }
     }
 
@@ -96,13 +111,16 @@ public interface BindMapping
     {
         requireNonNull(proxyHandler, "proxyHandler is null");
         final BindMapping.Builder builder = BindMapping.builder();
-        final InternalContext context = InternalContext.of(builder.build(), (x) -> null);
+        final BindingTable bindMapping = builder.build();
+        final DependencyValidator validator = new DependencyValidator(bindMapping);
+        final InternalContext context = InternalContext.of(bindMapping, validator, (x) -> null);
         final Binder binder = new Binder()
         {
             @Override
             public <T> void bind(Class<T> key, T instance)
             {
-                builder.bind(key, Lazys.goLazy(() -> proxyHandler.replace(key, instance)));
+                builder.bind(key, new SingletonCreator<>(key, () -> proxyHandler.replace(key, instance)));
+                builder.markSingleton(key);
             }
 
             @Override
@@ -115,7 +133,9 @@ public interface BindMapping
                     {
                         checkState(!key.isInterface(), key + "key is Interface");
                         Creator<T> creator = () -> proxyHandler.replace(key, context.getByNew(key));
-                        builder.bind(key, Lazys.goLazy(creator));
+                        builder.bind(key, new SingletonCreator<>(key, creator));
+                        builder.bindImplementation(key, key);
+                        builder.markSingleton(key);
                     }
 
                     @Override
@@ -124,6 +144,7 @@ public interface BindMapping
                         checkState(!key.isInterface(), key + "key is Interface");
                         Creator<T> creator = () -> proxyHandler.replace(key, context.getByNew(key));
                         builder.bind(key, creator);
+                        builder.bindImplementation(key, key);
                     }
 
                     @Override
@@ -131,13 +152,18 @@ public interface BindMapping
                     {
                         Creator<T> creator = () -> proxyHandler.replace(key, context.getByNew(createClass));
                         builder.bind(key, creator);
-                        return () -> builder.bindUpdate(key, Lazys.goLazy(creator));
+                        builder.bindImplementation(key, createClass);
+                        return () -> {
+                            builder.bindUpdate(key, new SingletonCreator<>(key, creator));
+                            builder.markSingleton(key);
+                        };
                     }
 
                     @Override
                     public void byInstance(T instance)
                     {
-                        builder.bind(key, Lazys.goLazy(() -> proxyHandler.replace(key, instance)));
+                        builder.bind(key, new SingletonCreator<>(key, () -> proxyHandler.replace(key, instance)));
+                        builder.markSingleton(key);
                     }
 
                     @Override
@@ -145,7 +171,10 @@ public interface BindMapping
                     {
                         Creator<? extends T> proxyCreator = () -> proxyHandler.replace(key, creator.get());
                         builder.bind(key, proxyCreator);
-                        return () -> builder.bindUpdate(key, Lazys.goLazy(proxyCreator));
+                        return () -> {
+                            builder.bindUpdate(key, new SingletonCreator<>(key, proxyCreator));
+                            builder.markSingleton(key);
+                        };
                     }
 
                     @Override
@@ -153,7 +182,11 @@ public interface BindMapping
                     {
                         Creator<? extends T> proxyCreator = () -> proxyHandler.replace(key, context.getByNew(creatorClass).get());
                         builder.bind(key, proxyCreator);
-                        return () -> builder.bindUpdate(key, Lazys.goLazy(proxyCreator));
+                        builder.bindImplementation(key, creatorClass);
+                        return () -> {
+                            builder.bindUpdate(key, new SingletonCreator<>(key, proxyCreator));
+                            builder.markSingleton(key);
+                        };
                     }
                 };
             }
@@ -162,7 +195,8 @@ public interface BindMapping
         for (Bean bean : beans) {
             bean.configure(binder);
         }
-
-        return builder.build();
+        bindMapping.freeze();
+        validator.validateAll();
+        return bindMapping;
     }
 }
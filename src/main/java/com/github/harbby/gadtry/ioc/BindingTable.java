@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.ioc;
+
+import com.github.harbby.gadtry.collection.mutable.MutableMap;
+import com.github.harbby.gadtry.function.Creator;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link BindMapping} backed by an identity open-addressing table: 绑定配置完成后({@link #freeze()})按key集合一次性构建不可变的查找表,
+ * 之后的查找只比较Class的identity hash和引用, 不再计算hashCode也不查HashMap.
+ * <p>
+ * 不使用ClassValue: ClassValue的值缓存在被绑定的Class上, 而creator引用了factory的context,
+ * 会导致每个创建过的IocFactory(连同它的单例)在被绑定的类卸载前都无法回收.
+ * 冻结之前(配置和校验阶段)的查找直接使用HashMap.
+ */
+final class BindingTable
+        implements BindMapping
+{
+    private final Map<Class<?>, Creator<?>> creators;
+    private final Map<Class<?>, Class<?>> implementations;
+    private final Set<Class<?>> singletons;
+    private volatile Table table;
+
+    BindingTable(Map<Class<?>, Creator<?>> creators, Map<Class<?>, Class<?>> implementations, Set<Class<?>> singletons)
+    {
+        this.creators = creators;
+        this.implementations = implementations;
+        this.singletons = singletons;
+    }
+
+    /**
+     * 所有绑定都已配置完成, 构建不可变的查找表
+     */
+    void freeze()
+    {
+        this.table = new Table(creators);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> Creator<T> getOrDefault(Class<T> type, Creator<T> defaultValue)
+    {
+        Table table = this.table;
+        Creator<?> creator = table == null ? creators.get(type) : table.get(type);
+        return creator == null ? defaultValue : (Creator<T>) creator;
+    }
+
+    private static final class Table
+    {
+        private final int mask;
+        private final Class<?>[] keys;
+        private final Creator<?>[] values;
+
+        private Table(Map<Class<?>, Creator<?>> creators)
+        {
+            //负载因子不超过0.5, 线性探测
+            int size = Integer.highestOneBit(Math.max(creators.size(), 1) * 4 - 1);
+            this.mask = size - 1;
+            this.keys = new Class<?>[size];
+            this.values = new Creator<?>[size];
+            for (Map.Entry<Class<?>, Creator<?>> entry : creators.entrySet()) {
+                int i = System.identityHashCode(entry.getKey()) & mask;
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = entry.getKey();
+                values[i] = entry.getValue();
+            }
+        }
+
+        private Creator<?> get(Class<?> type)
+        {
+            int i = System.identityHashCode(type) & mask;
+            Class<?> key;
+            while ((key = keys[i]) != null) {
+                if (key == type) {
+                    return values[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public Map<Class<?>, Creator<?>> getAllBeans()
+    {
+        return MutableMap.copy(creators);
+    }
+
+    @Override
+    public Set<Class<?>> getSingletons()
+    {
+        return Collections.unmodifiableSet(singletons);
+    }
+
+    @Override
+    public Class<?> getImplementation(Class<?> type)
+    {
+        return implementations.get(type);
+    }
+
+    @Override
+    public String toString()
+    {
+        return creators.toString();
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.ioc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 类之间的依赖图, 节点按加入顺序编号, 使用Tarjan强连通分量算法一次找出所有循环依赖.
+ */
+final class DependencyGraph
+{
+    private final Map<Class<?>, Integer> ids = new HashMap<>();
+    private final List<Class<?>> nodes = new ArrayList<>();
+    private final List<List<Integer>> edges = new ArrayList<>();
+
+    boolean contains(Class<?> type)
+    {
+        return ids.containsKey(type);
+    }
+
+    int addNode(Class<?> type)
+    {
+        Integer id = ids.get(type);
+        if (id == null) {
+            id = nodes.size();
+            ids.put(type, id);
+            nodes.add(type);
+            edges.add(new ArrayList<>());
+        }
+        return id;
+    }
+
+    void addEdge(Class<?> from, Class<?> to)
+    {
+        int fromId = addNode(from);
+        int toId = addNode(to);
+        edges.get(fromId).add(toId);
+    }
+
+    /**
+     * @return every strongly connected component that contains a cycle (more than one node, or a node depending on itself),
+     * the nodes of a component are in discovery order
+     */
+    List<List<Class<?>>> findCycles()
+    {
+        int[][] adjacency = new int[nodes.size()][];
+        for (int i = 0; i < adjacency.length; i++) {
+            adjacency[i] = edges.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+        List<List<Class<?>>> cycles = new ArrayList<>();
+        for (int[] component : new Tarjan(adjacency).run()) {
+            List<Class<?>> cycle = new ArrayList<>(component.length);
+            for (int id : component) {
+                cycle.add(nodes.get(id));
+            }
+            cycles.add(cycle);
+        }
+        return cycles;
+    }
+
+    static String format(List<List<Class<?>>> cycles)
+    {
+        return cycles.stream()
+                .map(cycle -> cycle.stream().map(Class::getName).collect(Collectors.joining(" -> ", "[", " -> " + cycle.get(0).getName() + "]")))
+                .collect(Collectors.joining("\n"));
+    }
+
+    private static final class Tarjan
+    {
+        private final int[][] adjacency;
+        private final int[] index;
+        private final int[] lowLink;
+        private final boolean[] onStack;
+        private final int[] stack;
+        private final List<int[]> components = new ArrayList<>();
+        private int stackSize;
+        private int counter;
+
+        private Tarjan(int[][] adjacency)
+        {
+            this.adjacency = adjacency;
+            this.index = new int[adjacency.length];
+            this.lowLink = new int[adjacency.length];
+            this.onStack = new boolean[adjacency.length];
+            this.stack = new int[adjacency.length];
+            Arrays.fill(index, -1);
+        }
+
+        private List<int[]> run()
+        {
+            for (int v = 0; v < adjacency.length; v++) {
+                if (index[v] == -1) {
+                    strongConnect(v);
+                }
+            }
+            return components;
+        }
+
+        private void strongConnect(int v)
+        {
+            index[v] = counter;
+            lowLink[v] = counter;
+            counter++;
+            stack[stackSize++] = v;
+            onStack[v] = true;
+            for (int w : adjacency[v]) {
+                if (index[w] == -1) {
+                    strongConnect(w);
+                    lowLink[v] = Math.min(lowLink[v], lowLink[w]);
+                }
+                else if (onStack[w]) {
+                    lowLink[v] = Math.min(lowLink[v], index[w]);
+                }
+            }
+            if (lowLink[v] != index[v]) {
+                return;
+            }
+            //v是分量的根, 栈中v及其之上的节点组成一个强连通分量
+            int start = stackSize;
+            do {
+                start--;
+                onStack[stack[start]] = false;
+            }
+            while (stack[start] != v);
+            int[] component = Arrays.copyOfRange(stack, start, stackSize);
+            stackSize = start;
+            if (component.length > 1 || dependsOnItself(v)) {
+                components.add(component);
+            }
+        }
+
+        private boolean dependsOnItself(int v)
+        {
+            for (int w : adjacency[v]) {
+                if (w == v) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.ioc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import static com.github.harbby.gadtry.base.MoreObjects.checkState;
+
+/**
+ * 构造器循环依赖检查.
+ * <p>
+ * 图的节点是容器需要new的类, 边是构造器参数最终对应的类(绑定的实现类, 未绑定时为参数类型本身; 绑定为实例或Creator lambda时没有边).
+ * 创建IocFactory时 {@link #validateAll()} 一次检查所有绑定并报告全部循环;
+ * 运行时第一次new某个未绑定的类时检查它可达的子图, 结果按类缓存, 之后每次解析不再做任何检查.
+ * <p>
+ * 字段注入在构造完成之后进行, 不在此检查, 见 {@link IocFactory#analysis()}.
+ */
+final class DependencyValidator
+{
+    private final BindMapping binds;
+    private final ClassValue<Boolean> checkedClasses = new ClassValue<Boolean>()
+    {
+        @Override
+        protected Boolean computeValue(Class<?> type)
+        {
+            //抛出异常时不缓存, 下次new该类时会再次报错
+            List<List<Class<?>>> cycles = constructorGraph(Collections.singletonList(type)).findCycles();
+            checkState(cycles.isEmpty(), "Found a circular dependency involving " + type + ", and circular dependencies are disabled.\n" +
+                    DependencyGraph.format(cycles));
+            return true;
+        }
+    };
+
+    DependencyValidator(BindMapping binds)
+    {
+        this.binds = binds;
+    }
+
+    /**
+     * @throws InjectorException if any constructor circular dependency is found, the message lists all of them
+     */
+    void validateAll()
+    {
+        List<Class<?>> roots = new ArrayList<>();
+        for (Class<?> key : binds.getAllBeans().keySet()) {
+            Class<?> implementation = binds.getImplementation(key);
+            if (implementation != null) {
+                roots.add(implementation);
+            }
+        }
+        List<List<Class<?>>> cycles = constructorGraph(roots).findCycles();
+        if (!cycles.isEmpty()) {
+            throw new InjectorException(" Unable to create IocFactory, see the following errors:\n" +
+                    "Found circular dependencies, and circular dependencies are disabled:\n" + DependencyGraph.format(cycles));
+        }
+    }
+
+    /**
+     * @param type the class that the container is going to new
+     * @throws IllegalStateException if the constructor dependencies of the type contain a cycle
+     */
+    void check(Class<?> type)
+    {
+        checkedClasses.get(type);
+    }
+
+    private DependencyGraph constructorGraph(Collection<Class<?>> roots)
+    {
+        DependencyGraph graph = new DependencyGraph();
+        Deque<Class<?>> queue = new ArrayDeque<>();
+        for (Class<?> root : roots) {
+            if (!graph.contains(root)) {
+                graph.addNode(root);
+                queue.add(root);
+            }
+        }
+        while (!queue.isEmpty()) {
+            Class<?> type = queue.poll();
+            for (Class<?> parameterType : parameterTypes(type)) {
+                Class<?> dependency = constructedClass(parameterType);
+                if (dependency == null) {
+                    continue;
+                }
+                if (!graph.contains(dependency)) {
+                    queue.add(dependency);
+                }
+                graph.addEdge(type, dependency);
+            }
+        }
+        return graph;
+    }
+
+    private static Class<?>[] parameterTypes(Class<?> type)
+    {
+        try {
+            return InjectionPlan.of(type).getParameterTypes();
+        }
+        catch (RuntimeException e) {
+            //不能实例化的类型, 创建时会报告错误
+            return new Class<?>[0];
+        }
+    }
+
+    /**
+     * @return the class the container news to resolve the type, null if the value is provided by user code
+     */
+    private Class<?> constructedClass(Class<?> type)
+    {
+        if (binds.get(type) == null) {
+            return type;
+        }
+        return binds.getImplementation(type);
+    }
+}
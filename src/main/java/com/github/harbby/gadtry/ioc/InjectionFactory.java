@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.ioc;
+
+/**
+ * Creates and injects instances of one class without reflection.
+ * <p>
+ * 由 {@link IocFactoryProcessor} 在编译期为使用了@Autowired的类生成, 类名为 {@code 类的binary name + "$GadtryFactory"}.
+ * 运行时 {@link InjectionPlan} 优先使用生成的factory, 找不到时使用反射.
+ */
+public interface InjectionFactory<T>
+{
+    String CLASS_NAME_SUFFIX = "$GadtryFactory";
+
+    /**
+     * @return the parameter types of the selected constructor, do not modify it
+     */
+    Class<?>[] getParameterTypes();
+
+    T newInstance(Object[] args);
+
+    /**
+     * @return the types of the @Autowired fields, do not modify it
+     */
+    Class<?>[] getFieldTypes();
+
+    void setField(int index, T instance, Object value);
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.ioc;
+
+import com.github.harbby.gadtry.function.Creator;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.harbby.gadtry.base.MoreObjects.checkState;
+import static com.github.harbby.gadtry.base.Throwables.throwsThrowable;
+
+/**
+ * 按类缓存的注入计划: 优先使用编译期生成的 {@link InjectionFactory};
+ * 没有生成的factory时, 选中的构造器, 构造器参数类型和@Autowired字段只在第一次创建该类时通过反射查找,
+ * 之后每次创建实例只调用预先生成的MethodHandle.
+ */
+final class InjectionPlan<T>
+{
+    private static final ClassValue<InjectionPlan<?>> plans = new ClassValue<InjectionPlan<?>>()
+    {
+        @Override
+        protected InjectionPlan<?> computeValue(Class<?> type)
+        {
+            return new InjectionPlan<>(type);
+        }
+    };
+
+    private final InjectionFactory<T> factory;
+    private final boolean generated;
+
+    private InjectionPlan(Class<T> driver)
+    {
+        InjectionFactory<T> generatedFactory = loadGeneratedFactory(driver);
+        this.generated = generatedFactory != null;
+        this.factory = generated ? generatedFactory : new MethodHandleFactory<>(driver);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> InjectionPlan<T> of(Class<T> driver)
+    {
+        return (InjectionPlan<T>) plans.get(driver);
+    }
+
+    Class<?>[] getParameterTypes()
+    {
+        return factory.getParameterTypes();
+    }
+
+    /**
+     * @return the types of the @Autowired fields, the index is same as {@link #setField(int, Object, Object)}
+     */
+    Class<?>[] getFieldTypes()
+    {
+        return factory.getFieldTypes();
+    }
+
+    T newInstance(Object[] args)
+    {
+        return factory.newInstance(args);
+    }
+
+    void setField(int index, T instance, Object value)
+    {
+        factory.setField(index, instance, value);
+    }
+
+    boolean isGenerated()
+    {
+        return generated;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> InjectionFactory<T> loadGeneratedFactory(Class<T> driver)
+    {
+        ClassLoader classLoader = driver.getClassLoader();
+        if (classLoader == null) {
+            return null;
+        }
+        Class<?> factoryClass;
+        try {
+            factoryClass = Class.forName(driver.getName() + InjectionFactory.CLASS_NAME_SUFFIX, true, classLoader);
+        }
+        catch (ClassNotFoundException e) {
+            return null;
+        }
+        if (!InjectionFactory.class.isAssignableFrom(factoryClass)) {
+            return null;
+        }
+        try {
+            return (InjectionFactory<T>) factoryClass.newInstance();
+        }
+        catch (InstantiationException | IllegalAccessException e) {
+            throw throwsThrowable(e);
+        }
+    }
+
+    private static final class MethodHandleFactory<T>
+            implements InjectionFactory<T>
+    {
+        private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class, Object[].class);
+        private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+        private final Class<?>[] parameterTypes;
+        private final MethodHandle constructor;
+        private final Class<?>[] fieldTypes;
+        private final MethodHandle[] fieldSetters;
+
+        private MethodHandleFactory(Class<T> driver)
+        {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            Constructor<T> constructor = selectConstructor(driver);
+            constructor.setAccessible(true);
+            this.parameterTypes = constructor.getParameterTypes();
+            List<Field> fields = new ArrayList<>();
+            for (Field field : driver.getDeclaredFields()) {
+                if (field.getAnnotation(Autowired.class) != null) {
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+            this.fieldTypes = new Class<?>[fields.size()];
+            this.fieldSetters = new MethodHandle[fields.size()];
+            try {
+                this.constructor = lookup.unreflectConstructor(constructor)
+                        .asSpreader(Object[].class, parameterTypes.length)
+                        .asType(CONSTRUCTOR_TYPE);
+                for (int i = 0; i < fields.size(); i++) {
+                    Field field = fields.get(i);
+                    fieldTypes[i] = field.getType();
+                    MethodHandle setter = lookup.unreflectSetter(field);
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        //静态字段的setter没有实例参数, 补一个忽略的实例参数, 与反射field.set(instance, value)的行为一致
+                        setter = MethodHandles.dropArguments(setter, 0, Object.class);
+                    }
+                    fieldSetters[i] = setter.asType(SETTER_TYPE);
+                }
+            }
+            catch (IllegalAccessException e) {
+                throw throwsThrowable(e);
+            }
+        }
+
+        @Override
+        public Class<?>[] getParameterTypes()
+        {
+            return parameterTypes;
+        }
+
+        @Override
+        public Class<?>[] getFieldTypes()
+        {
+            return fieldTypes;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T newInstance(Object[] args)
+        {
+            try {
+                return (T) (Object) constructor.invokeExact(args);
+            }
+            catch (Throwable e) {
+                throw throwsThrowable(e);
+            }
+        }
+
+        @Override
+        public void setField(int index, T instance, Object value)
+        {
+            try {
+                fieldSetters[index].invokeExact((Object) instance, value);
+            }
+            catch (Throwable e) {
+                throw throwsThrowable(e);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Constructor<T> selectConstructor(Class<T> driver)
+    {
+        Constructor<T>[] constructors;
+        if (Creator.class.isAssignableFrom(driver)) {
+            constructors = (Constructor<T>[]) driver.getDeclaredConstructors();
+        }
+        else {
+            if (driver.isInterface() || Modifier.isAbstract(driver.getModifiers())) {
+                throw new IllegalStateException(driver + " cannot be instantiated, No binding entity class");
+            }
+            constructors = (Constructor<T>[]) driver.getConstructors(); //public
+        }
+
+        Constructor<T> noParameter = null;
+        for (Constructor<T> constructor : constructors) {
+            Autowired autowired = constructor.getAnnotation(Autowired.class);
+            if (autowired != null) {
+                return constructor;
+            }
+            if (constructor.getParameterCount() == 0) {
+                //find 'no parameter' Constructor, using class.newInstance()";
+                noParameter = constructor;
+            }
+        }
+
+        if (noParameter != null) {
+            return noParameter;
+        }
+
+        checkState(constructors.length == 1, String.format("%s has multiple public constructors, please ensure that there is only one", driver));
+        return constructors[0];
+    }
+}
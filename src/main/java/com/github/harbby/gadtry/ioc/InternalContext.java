@@ -18,14 +18,7 @@ package com.github.harbby.gadtry.ioc;
 import com.github.harbby.gadtry.function.Creator;
 import com.github.harbby.gadtry.function.exception.Function;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Modifier;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
 
 import static com.github.harbby.gadtry.base.MoreObjects.checkState;
 import static com.github.harbby.gadtry.base.Throwables.throwsException;
@@ -33,41 +26,42 @@ import static com.github.harbby.gadtry.base.Throwables.throwsThrowable;
 
 class InternalContext
 {
-    private final ThreadLocal<Set<Class<?>>> deps = ThreadLocal.withInitial(HashSet::new);
     private final Function<Class<?>, ?, Exception> userCreator;
     private final BindMapping binds;
+    private final DependencyValidator validator;
 
-    private InternalContext(BindMapping binds, Function<Class<?>, ?, Exception> userCreator)
+    private InternalContext(BindMapping binds, DependencyValidator validator, Function<Class<?>, ?, Exception> userCreator)
     {
         this.binds = binds;
+        this.validator = validator;
         this.userCreator = userCreator;
     }
 
     public static InternalContext of(BindMapping binds, Function<Class<?>, ?, Exception> userCreator)
     {
-        return new InternalContext(binds, userCreator);
+        return new InternalContext(binds, new DependencyValidator(binds), userCreator);
     }
 
-    public <T> T get(Class<T> driver)
+    public static InternalContext of(BindMapping binds, DependencyValidator validator, Function<Class<?>, ?, Exception> userCreator)
     {
-        Set<Class<?>> depCLass = deps.get();
-        depCLass.clear();
-        depCLass.add(driver);
+        return new InternalContext(binds, validator, userCreator);
+    }
 
-        T t = getInstance(driver);
-        depCLass.clear();
-        return t;
+    public <T> T get(Class<T> driver)
+    {
+        Creator<T> creator = binds.getOrDefault(driver, null);
+        if (creator != null) {
+            //绑定的类在创建IocFactory时已经检查过
+            return creator.get();
+        }
+        validator.check(driver);
+        return getNewInstance(driver);
     }
 
     public <T> T getByNew(Class<T> driver)
     {
-        Set<Class<?>> depCLass = deps.get();
-        depCLass.clear();
-        depCLass.add(driver);
-
-        T t = getNewInstance(driver);
-        depCLass.clear();
-        return t;
+        validator.check(driver);
+        return getNewInstance(driver);
     }
 
     private <T> T getInstance(Class<T> driver)
@@ -90,79 +84,33 @@ class InternalContext
         }
     }
 
-    private boolean check(Class<?> type)
-    {
-        return !deps.get().contains(type);
-    }
-
     private <T> T newInstance(Class<T> driver)
-            throws Exception
     {
-        final Constructor<T> constructor = selectConstructor(driver);
-        constructor.setAccessible(true);
-
-        List<Object> builder = new ArrayList<>();
-        for (Class<?> argType : constructor.getParameterTypes()) {
-            checkState(argType != driver && check(argType), "Found a circular dependency involving " + driver + ", and circular dependencies are disabled.");
-
+        InjectionPlan<T> plan = InjectionPlan.of(driver);
+        Class<?>[] parameterTypes = plan.getParameterTypes();
+        Object[] args = new Object[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Class<?> argType = parameterTypes[i];
             Object value = getInstance(argType);
             checkState(value != null, String.format("Could not find a suitable constructor in [%s]. Classes must have either one (and only one) constructor annotated with @Autowired or a constructor that is not private(and only one).", argType));
-            builder.add(value);
+            args[i] = value;
         }
 
-        T instance = constructor.newInstance(builder.toArray());
-        return buildAnnotationFields(driver, instance);
-    }
-
-    private <T> T buildAnnotationFields(Class<T> driver, T instance)
-            throws IllegalAccessException
-    {
-        for (Field field : driver.getDeclaredFields()) {
-            Autowired autowired = field.getAnnotation(Autowired.class);
-            if (autowired != null) {
-                field.setAccessible(true);
-                if (field.getType() == driver) {
-                    field.set(instance, instance);
-                }
-                else {
-                    field.set(instance, getInstance(field.getType()));
-                }
-            }
-        }
-        return instance;
+        T instance = plan.newInstance(args);
+        return buildAnnotationFields(driver, plan, instance);
     }
 
-    @SuppressWarnings("unchecked")
-    private static <T> Constructor<T> selectConstructor(Class<T> driver)
+    private <T> T buildAnnotationFields(Class<T> driver, InjectionPlan<T> plan, T instance)
     {
-        Constructor<T>[] constructors;
-        if (Creator.class.isAssignableFrom(driver)) {
-            constructors = (Constructor<T>[]) driver.getDeclaredConstructors();
-        }
-        else {
-            if (driver.isInterface() || Modifier.isAbstract(driver.getModifiers())) {
-                throw new IllegalStateException(driver + " cannot be instantiated, No binding entity class");
+        Class<?>[] fieldTypes = plan.getFieldTypes();
+        for (int i = 0; i < fieldTypes.length; i++) {
+            if (fieldTypes[i] == driver) {
+                plan.setField(i, instance, instance);
             }
-            constructors = (Constructor<T>[]) driver.getConstructors(); //public
-        }
-
-        Constructor<T> noParameter = null;
-        for (Constructor<T> constructor : constructors) {
-            Autowired autowired = constructor.getAnnotation(Autowired.class);
-            if (autowired != null) {
-                return constructor;
-            }
-            if (constructor.getParameterCount() == 0) {
-                //find 'no parameter' Constructor, using class.newInstance()";
-                noParameter = constructor;
+            else {
+                plan.setField(i, instance, getInstance(fieldTypes[i]));
             }
         }
-
-        if (noParameter != null) {
-            return noParameter;
-        }
-
-        checkState(constructors.length == 1, String.format("%s has multiple public constructors, please ensure that there is only one", driver));
-        return constructors[0];
+        return instance;
     }
 }
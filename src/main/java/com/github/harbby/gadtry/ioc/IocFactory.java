@@ -19,6 +19,11 @@ import com.github.harbby.gadtry.function.Creator;
 import com.github.harbby.gadtry.function.exception.Function;
 import com.github.harbby.gadtry.graph.Graph;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+import static java.util.Objects.requireNonNull;
+
 /**
  * harbby ioc
  */
@@ -56,6 +61,34 @@ public interface IocFactory
         return new IocFactoryImpl(bindMapping, beans);
     }
 
+    /**
+     * same as {@link #create(Bean...)}, but all singletons are created before return,
+     * independent singletons are created concurrently on {@link ForkJoinPool#commonPool()}
+     *
+     * @param beans beans
+     * @return IocFactory
+     * @throws InjectorException Injector error
+     */
+    public static IocFactory createEager(Bean... beans)
+    {
+        return createEager(ForkJoinPool.commonPool(), beans);
+    }
+
+    /**
+     * @param executor executor used to create the singletons, following the dependency graph.
+     * it is an ExecutorService rather than a functional Executor, so that createEager(binder -&gt; ...) stays unambiguous
+     * @param beans beans
+     * @return IocFactory
+     * @throws InjectorException Injector error
+     */
+    public static IocFactory createEager(ExecutorService executor, Bean... beans)
+    {
+        requireNonNull(executor, "executor is null");
+        BindMapping bindMapping = BindMapping.create(beans);
+        SingletonInitializer.initAll(bindMapping, executor);
+        return new IocFactoryImpl(bindMapping, beans);
+    }
+
     public interface ReplaceHandler
     {
         <T> T replace(Class<T> key, T instance);
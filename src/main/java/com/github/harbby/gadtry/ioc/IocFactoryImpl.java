@@ -22,6 +22,7 @@ import com.github.harbby.gadtry.graph.Graph;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 public class IocFactoryImpl
@@ -29,11 +30,21 @@ public class IocFactoryImpl
 {
     private final BindMapping binds;
     private final Bean[] beans;
+    private final DependencyValidator validator;
+    private final InternalContext context;
 
     public IocFactoryImpl(BindMapping binds, Bean[] beans)
     {
         this.binds = binds;
         this.beans = beans;
+        this.validator = new DependencyValidator(binds);
+        this.context = InternalContext.of(binds, validator, driverClass -> null);
+    }
+
+    @Override
+    public <T> T getInstance(Class<T> driver)
+    {
+        return context.get(driver);
     }
 
     /**
@@ -41,13 +52,13 @@ public class IocFactoryImpl
      */
     public <T> T getInstance(Class<T> driver, Function<Class<?>, ?, Exception> userCreator)
     {
-        return InternalContext.of(binds, userCreator).get(driver);
+        return InternalContext.of(binds, validator, userCreator).get(driver);
     }
 
     @Override
     public <T> Creator<T> getCreator(Class<T> driver)
     {
-        return () -> getInstance(driver, driverClass -> null);
+        return () -> context.get(driver);
     }
 
     @Override
@@ -60,6 +71,7 @@ public class IocFactoryImpl
     public Graph<Void, Void> analysis()
     {
         Graph.GraphBuilder<Void, Void> builder = Graph.builder();
+        final DependencyGraph dependencyGraph = new DependencyGraph();
         final Set<Class> parserClass = new HashSet<>();
         Binder binder = new Binder()
         {
@@ -117,6 +129,7 @@ public class IocFactoryImpl
                                 builder.addNode(key.toString());
                                 builder.addNode(type.toString());
                                 builder.addEdge(key.toString(), type.toString());
+                                dependencyGraph.addEdge(key, type);
                             }
                         }
                     }
@@ -128,6 +141,7 @@ public class IocFactoryImpl
                         builder.addNode(key.toString());
                         builder.addNode(field.getType().toString());
                         builder.addEdge(key.toString(), field.getType().toString());
+                        dependencyGraph.addEdge(key, field.getType());
                         if (parserClass.add(key)) {
                             parserDep(field.getType(), field.getType());
                         }
@@ -139,17 +153,11 @@ public class IocFactoryImpl
         for (Bean bean : beans) {
             bean.configure(binder);
         }
-        Graph<Void, Void> graph = builder.create();
-        if (parserClass.isEmpty()) {
-            return graph;
+        //一次检查所有节点, 报告全部循环
+        List<List<Class<?>>> cycles = dependencyGraph.findCycles();
+        if (!cycles.isEmpty()) {
+            throw new IllegalArgumentException("Find Circular dependency\n" + DependencyGraph.format(cycles));
         }
-        String begin = parserClass.iterator().next().toString();
-        graph.searchRuleRoute(begin, route -> {
-            if (route.findDeadLoop()) {
-                throw new IllegalArgumentException("Find Circular dependency" + route.getIds());
-            }
-            return true;
-        });
-        return graph;
+        return builder.create();
     }
 }
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.ioc;
+
+import com.github.harbby.gadtry.function.Creator;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Annotation processor, 编译期为每个使用了@Autowired的类生成 {@link InjectionFactory},
+ * 运行时创建该类的实例不再需要反射.
+ * <p>
+ * 构造器的选择规则与运行时相同. 选中的构造器或@Autowired字段是private(或final, static)时不生成, 运行时使用反射.
+ * <p>
+ * 处理器随gadtry jar注册(META-INF/services), 但默认不生成任何代码, 避免依赖gadtry的项目编译时被动生成类;
+ * 需要时使用编译参数 {@code -Agadtry.ioc.generateFactory=true} 开启.
+ */
+public class IocFactoryProcessor
+        extends AbstractProcessor
+{
+    public static final String GENERATE_OPTION = "gadtry.ioc.generateFactory";
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes()
+    {
+        return Collections.singleton(Autowired.class.getName());
+    }
+
+    @Override
+    public Set<String> getSupportedOptions()
+    {
+        return Collections.singleton(GENERATE_OPTION);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+    {
+        if (!"true".equalsIgnoreCase(processingEnv.getOptions().get(GENERATE_OPTION))) {
+            return false;
+        }
+        Set<TypeElement> types = new LinkedHashSet<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(Autowired.class)) {
+            Element enclosing = element.getEnclosingElement();
+            if (enclosing instanceof TypeElement &&
+                    (element.getKind() == ElementKind.CONSTRUCTOR || element.getKind() == ElementKind.FIELD)) {
+                types.add((TypeElement) enclosing);
+            }
+        }
+        for (TypeElement type : types) {
+            String source = generate(type);
+            if (source == null) {
+                continue;
+            }
+            String factoryName = processingEnv.getElementUtils().getBinaryName(type) + InjectionFactory.CLASS_NAME_SUFFIX;
+            try (Writer writer = processingEnv.getFiler().createSourceFile(factoryName, type).openWriter()) {
+                writer.write(source);
+            }
+            catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "generate " + factoryName + " failed: " + e, type);
+            }
+        }
+        return false;
+    }
+
+    private String generate(TypeElement type)
+    {
+        if (!isAccessible(type)) {
+            return null;
+        }
+        ExecutableElement constructor = selectConstructor(type);
+        if (constructor == null || constructor.getModifiers().contains(Modifier.PRIVATE)) {
+            return null;
+        }
+        List<VariableElement> fields = new ArrayList<>();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            if (field.getAnnotation(Autowired.class) == null) {
+                continue;
+            }
+            Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL) || modifiers.contains(Modifier.STATIC)) {
+                return null;
+            }
+            fields.add(field);
+        }
+
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)) +
+                InjectionFactory.CLASS_NAME_SUFFIX;
+        String typeName = erasure(type.asType());
+        List<? extends VariableElement> parameters = constructor.getParameters();
+
+        StringBuilder builder = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            builder.append("package ").append(packageName).append(";\n\n");
+        }
+        builder.append("/**\n * Generated by ").append(IocFactoryProcessor.class.getName()).append(", do not edit.\n */\n")
+                .append("public final class ").append(simpleName).append("\n")
+                .append("        implements ").append(InjectionFactory.class.getName()).append("<").append(typeName).append(">\n{\n");
+        builder.append("    private static final Class<?>[] PARAMETER_TYPES = new Class<?>[] {");
+        for (int i = 0; i < parameters.size(); i++) {
+            builder.append(i == 0 ? "" : ", ").append(erasure(parameters.get(i).asType())).append(".class");
+        }
+        builder.append("};\n");
+        builder.append("    private static final Class<?>[] FIELD_TYPES = new Class<?>[] {");
+        for (int i = 0; i < fields.size(); i++) {
+            builder.append(i == 0 ? "" : ", ").append(erasure(fields.get(i).asType())).append(".class");
+        }
+        builder.append("};\n\n");
+
+        builder.append("    @Override\n    public Class<?>[] getParameterTypes()\n    {\n        return PARAMETER_TYPES;\n    }\n\n");
+        builder.append("    @Override\n    public Class<?>[] getFieldTypes()\n    {\n        return FIELD_TYPES;\n    }\n\n");
+
+        builder.append("    @Override\n    public ").append(typeName).append(" newInstance(Object[] args)\n    {\n")
+                .append("        return new ").append(typeName).append("(");
+        for (int i = 0; i < parameters.size(); i++) {
+            builder.append(i == 0 ? "" : ", ").append("(").append(erasure(parameters.get(i).asType())).append(") args[").append(i).append("]");
+        }
+        builder.append(");\n    }\n\n");
+
+        builder.append("    @Override\n    public void setField(int index, ").append(typeName).append(" instance, Object value)\n    {\n")
+                .append("        switch (index) {\n");
+        for (int i = 0; i < fields.size(); i++) {
+            VariableElement field = fields.get(i);
+            builder.append("            case ").append(i).append(":\n")
+                    .append("                instance.").append(field.getSimpleName()).append(" = (")
+                    .append(erasure(field.asType())).append(") value;\n")
+                    .append("                return;\n");
+        }
+        builder.append("            default:\n")
+                .append("                throw new IndexOutOfBoundsException(\"field index \" + index);\n")
+                .append("        }\n    }\n}\n");
+        return builder.toString();
+    }
+
+    /**
+     * 与运行时 {@link InjectionPlan} 的构造器选择规则相同, 无法确定时返回null(运行时使用反射并报告错误)
+     */
+    private ExecutableElement selectConstructor(TypeElement type)
+    {
+        boolean isCreator = processingEnv.getTypeUtils().isAssignable(
+                processingEnv.getTypeUtils().erasure(type.asType()),
+                processingEnv.getTypeUtils().erasure(processingEnv.getElementUtils().getTypeElement(Creator.class.getName()).asType()));
+        List<ExecutableElement> constructors = new ArrayList<>();
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (isCreator || constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                constructors.add(constructor);
+            }
+        }
+        ExecutableElement autowired = null;
+        ExecutableElement noParameter = null;
+        for (ExecutableElement constructor : constructors) {
+            if (constructor.getAnnotation(Autowired.class) != null) {
+                if (autowired != null) {
+                    return null;
+                }
+                autowired = constructor;
+            }
+            if (constructor.getParameters().isEmpty()) {
+                noParameter = constructor;
+            }
+        }
+        if (autowired != null) {
+            return autowired;
+        }
+        if (noParameter != null) {
+            return noParameter;
+        }
+        return constructors.size() == 1 ? constructors.get(0) : null;
+    }
+
+    /**
+     * 生成的factory与目标类在同一个包中, 目标类及其外部类都不能是private, 内部类必须是static
+     */
+    private static boolean isAccessible(TypeElement type)
+    {
+        Set<Modifier> modifiers = type.getModifiers();
+        if (type.getKind() != ElementKind.CLASS || modifiers.contains(Modifier.ABSTRACT) || modifiers.contains(Modifier.PRIVATE)) {
+            return false;
+        }
+        if (!type.getTypeParameters().isEmpty()) {
+            return false;
+        }
+        Element element = type;
+        while (element instanceof TypeElement && ((TypeElement) element).getNestingKind() == NestingKind.MEMBER) {
+            if (element.getModifiers().contains(Modifier.PRIVATE) ||
+                    (element.getKind() == ElementKind.CLASS && !element.getModifiers().contains(Modifier.STATIC))) {
+                return false;
+            }
+            element = element.getEnclosingElement();
+        }
+        return element instanceof TypeElement && ((TypeElement) element).getNestingKind() == NestingKind.TOP_LEVEL;
+    }
+
+    private String erasure(TypeMirror type)
+    {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.ioc;
+
+import com.github.harbby.gadtry.function.Creator;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import static com.github.harbby.gadtry.base.MoreObjects.checkState;
+import static com.github.harbby.gadtry.base.Throwables.throwsThrowable;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * 单例的holder.
+ * <p>
+ * 创建完成后get()只读一次volatile字段, 不加锁. 第一次创建时通过CAS选出唯一执行创建的线程,
+ * 其他线程等待它的结果; 创建失败时不缓存异常, 下次get()重新创建.
+ * 同一个线程在创建过程中再次获取该单例(例如字段循环依赖)时抛出IllegalStateException.
+ */
+final class SingletonCreator<T>
+        implements Creator<T>
+{
+    private static final long serialVersionUID = 0L;
+    private static final Object UNINITIALIZED = new Object();
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<SingletonCreator, Pending> PENDING =
+            AtomicReferenceFieldUpdater.newUpdater(SingletonCreator.class, Pending.class, "pending");
+
+    private final Class<?> key;
+    private final Creator<? extends T> delegate;
+    private transient volatile Object value = UNINITIALIZED;
+    private transient volatile Pending pending;
+
+    SingletonCreator(Class<?> key, Creator<? extends T> delegate)
+    {
+        this.key = requireNonNull(key, "key is null");
+        this.delegate = requireNonNull(delegate, "delegate is null");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T get()
+    {
+        Object v = value;
+        if (v != UNINITIALIZED) {
+            return (T) v;
+        }
+        return initialize();
+    }
+
+    @SuppressWarnings("unchecked")
+    private T initialize()
+    {
+        Pending running = pending;
+        if (running == null) {
+            Pending newPending = new Pending(Thread.currentThread());
+            if (PENDING.compareAndSet(this, null, newPending)) {
+                return create(newPending);
+            }
+            running = pending;
+        }
+        checkState(running.thread != Thread.currentThread(), "Found a circular dependency involving " + key + ", and circular dependencies are disabled.");
+        try {
+            return (T) running.future.join();
+        }
+        catch (CompletionException e) {
+            throw throwsThrowable(e.getCause());
+        }
+    }
+
+    private T create(Pending owner)
+    {
+        T instance;
+        try {
+            instance = delegate.get();
+        }
+        catch (Throwable e) {
+            //允许之后重试
+            pending = null;
+            owner.future.completeExceptionally(e);
+            throw e;
+        }
+        //先发布value, pending保留已完成的future, 读到旧value的线程从future取结果
+        value = instance;
+        owner.future.complete(instance);
+        return instance;
+    }
+
+    private Object readResolve()
+    {
+        //反序列化后重新创建单例, 与Lazys.goLazy相同
+        return new SingletonCreator<>(key, delegate);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Singleton(" + delegate + ")";
+    }
+
+    private static final class Pending
+    {
+        private final Thread thread;
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        private Pending(Thread thread)
+        {
+            this.thread = thread;
+        }
+    }
+}
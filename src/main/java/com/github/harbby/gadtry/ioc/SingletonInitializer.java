@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.ioc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import static com.github.harbby.gadtry.base.Throwables.throwsThrowable;
+
+/**
+ * Eagerly creates all singletons of a {@link BindMapping}.
+ * <p>
+ * 单例之间的依赖来自 {@link InjectionPlan}(构造器参数和@Autowired字段, 经过非单例的依赖时继续向下查找),
+ * 一个单例在它依赖的单例都创建完成后提交到executor, 没有依赖关系的单例并发创建, 总耗时约等于依赖图的关键路径.
+ * 循环依赖的回边被忽略, 与getInstance()时一样由单例自身的lazy保证只创建一次.
+ */
+final class SingletonInitializer
+{
+    private final BindMapping binds;
+    private final Executor executor;
+    private final Map<Class<?>, CompletableFuture<Void>> futures = new HashMap<>();
+    private final Set<Class<?>> visiting = new HashSet<>();
+
+    private SingletonInitializer(BindMapping binds, Executor executor)
+    {
+        this.binds = binds;
+        this.executor = executor;
+    }
+
+    static void initAll(BindMapping binds, Executor executor)
+    {
+        SingletonInitializer initializer = new SingletonInitializer(binds, executor);
+        for (Class<?> key : binds.getSingletons()) {
+            initializer.schedule(key);
+        }
+        try {
+            CompletableFuture.allOf(initializer.futures.values().toArray(new CompletableFuture[0])).join();
+        }
+        catch (CompletionException e) {
+            throw throwsThrowable(e.getCause());
+        }
+    }
+
+    private CompletableFuture<Void> schedule(Class<?> key)
+    {
+        CompletableFuture<Void> future = futures.get(key);
+        if (future != null) {
+            return future;
+        }
+        visiting.add(key);
+        List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+        for (Class<?> dependency : singletonDependencies(key)) {
+            if (!visiting.contains(dependency)) {
+                dependencies.add(schedule(dependency));
+            }
+        }
+        visiting.remove(key);
+        future = CompletableFuture.allOf(dependencies.toArray(new CompletableFuture[0]))
+                .thenRunAsync(() -> binds.get(key).get(), executor);
+        futures.put(key, future);
+        return future;
+    }
+
+    /**
+     * @return the singletons the key directly depends on, looking through non-singleton dependencies
+     */
+    private Set<Class<?>> singletonDependencies(Class<?> key)
+    {
+        Set<Class<?>> dependencies = new LinkedHashSet<>();
+        Class<?> implementation = binds.getImplementation(key);
+        if (implementation != null) {
+            Set<Class<?>> visited = new HashSet<>();
+            visited.add(key);
+            collect(implementation, dependencies, visited);
+        }
+        dependencies.remove(key);
+        return dependencies;
+    }
+
+    private void collect(Class<?> type, Set<Class<?>> dependencies, Set<Class<?>> visited)
+    {
+        InjectionPlan<?> plan;
+        try {
+            plan = InjectionPlan.of(type);
+        }
+        catch (RuntimeException e) {
+            //不能实例化的类型, 创建时会报告错误
+            return;
+        }
+        List<Class<?>> types = new ArrayList<>();
+        types.addAll(Arrays.asList(plan.getParameterTypes()));
+        types.addAll(Arrays.asList(plan.getFieldTypes()));
+        for (Class<?> dependency : types) {
+            if (dependency == type || !visited.add(dependency)) {
+                continue;
+            }
+            if (binds.getSingletons().contains(dependency)) {
+                dependencies.add(dependency);
+            }
+            else if (binds.get(dependency) == null) {
+                //未绑定的类直接new
+                collect(dependency, dependencies, visited);
+            }
+            else if (binds.getImplementation(dependency) != null) {
+                collect(binds.getImplementation(dependency), dependencies, visited);
+            }
+        }
+    }
+}
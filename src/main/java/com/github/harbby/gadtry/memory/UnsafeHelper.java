@@ -56,7 +56,8 @@ public final class UnsafeHelper
 
     private static final Supplier<Method> classLoaderDefineClassMethod = Lazys.goLazy(() -> {
         try {
-            Method defineClass = ClassLoader.class.getDeclaredMethod("defineClass", String.class, byte[].class, int.class, int.class);
+            Method defineClass = ClassLoader.class.getDeclaredMethod("defineClass", String.class, byte[].class, int.class, int.class,
+                    java.security.ProtectionDomain.class);
             defineClass.setAccessible(true);
             return defineClass;
         }
@@ -83,19 +84,27 @@ public final class UnsafeHelper
     /**
      * only jdk8 support
      */
-    @SuppressWarnings("unchecked")
     public static <T> Class<T> defineClass(byte[] classBytes, ClassLoader classLoader)
+    {
+        return defineClass(classBytes, classLoader, classLoader.getClass().getProtectionDomain());
+    }
+
+    /**
+     * only jdk8 support
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Class<T> defineClass(byte[] classBytes, ClassLoader classLoader, java.security.ProtectionDomain protectionDomain)
     {
         try {
             try {
                 Method defineClass = unsafeDefineClassMethod.get();
                 Throwables.throwsThrowable(NoSuchMethodException.class);
                 return (Class<T>) defineClass.invoke(_UNSAFE, null, classBytes, 0,
-                        classBytes.length, classLoader, classLoader.getClass().getProtectionDomain());
+                        classBytes.length, classLoader, protectionDomain);
             }
             catch (NoSuchMethodException e) {
                 Method defineClass = classLoaderDefineClassMethod.get();
-                return (Class<T>) defineClass.invoke(classLoader, null, classBytes, 0, classBytes.length);
+                return (Class<T>) defineClass.invoke(classLoader, null, classBytes, 0, classBytes.length, protectionDomain);
             }
         }
         catch (InvocationTargetException | IllegalAccessException e1) {
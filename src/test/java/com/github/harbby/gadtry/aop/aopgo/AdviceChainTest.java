@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.aopgo;
+
+import com.github.harbby.gadtry.aop.AopGo;
+import com.github.harbby.gadtry.aop.JoinPoint;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.github.harbby.gadtry.aop.mock.MockGoArgument.anyInt;
+
+public class AdviceChainTest
+{
+    @Test
+    public void aspectOrderTest()
+    {
+        List<String> actions = new ArrayList<>();
+        Service proxy = AopGo.proxy(new Service())
+                .aop(binder -> {
+                    binder.doAround(joinPoint -> {
+                        actions.add("tracing_start");
+                        Object value = joinPoint.proceed();
+                        actions.add("tracing_end");
+                        return value;
+                    }).when().add(anyInt(), anyInt());
+                    binder.doBefore(before -> actions.add("auth")).when().add(anyInt(), anyInt());
+                    binder.doAfter(after -> actions.add("metrics_" + after.getValue())).when().add(anyInt(), anyInt());
+                })
+                .build();
+        Assert.assertEquals(3, proxy.add(1, 2));
+        Assert.assertEquals(Arrays.asList("tracing_start", "auth", "metrics_3", "tracing_end"), actions);
+    }
+
+    @Test
+    public void mergeIsFlatTest()
+            throws Throwable
+    {
+        List<String> actions = new ArrayList<>();
+        Advice a1 = joinPoint -> {
+            actions.add("a1");
+            return joinPoint.proceed();
+        };
+        Advice a2 = joinPoint -> {
+            actions.add("a2");
+            return joinPoint.proceed(new Object[] {10});
+        };
+        Advice a3 = joinPoint -> {
+            actions.add("a3_" + joinPoint.getArgument(0));
+            //多次调用proceed()
+            return (int) joinPoint.proceed() + (int) joinPoint.proceed();
+        };
+        Advice merged = a1.merge(a2).merge(a3);
+        Assert.assertTrue(merged instanceof AdviceChain);
+
+        Object value = merged.apply(joinPoint(new Object[] {1}, actions));
+        Assert.assertEquals(22, value);
+        Assert.assertEquals(Arrays.asList("a1", "a2", "a3_10", "target_10", "target_10"), actions);
+    }
+
+    private static JoinPoint joinPoint(Object[] args, List<String> actions)
+    {
+        return new JoinPoint()
+        {
+            @Override
+            public Object proceed(Object[] args)
+            {
+                actions.add("target_" + args[0]);
+                return (int) args[0] + 1;
+            }
+
+            @Override
+            public Method getMethod()
+            {
+                return null;
+            }
+
+            @Override
+            public Object[] getArgs()
+            {
+                return args;
+            }
+        };
+    }
+
+    public static class Service
+    {
+        public int add(int a, int b)
+        {
+            return a + b;
+        }
+    }
+}
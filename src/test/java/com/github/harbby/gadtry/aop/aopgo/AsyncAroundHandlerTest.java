@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.aopgo;
+
+import com.github.harbby.gadtry.aop.AopGo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static com.github.harbby.gadtry.aop.mock.MockGoArgument.anyInt;
+
+public class AsyncAroundHandlerTest
+{
+    @Test
+    public void asyncAfterReturningTest()
+    {
+        List<String> actions = Collections.synchronizedList(new ArrayList<>());
+        Service service = new Service();
+        Service proxy = AopGo.proxy(service)
+                .aop(binder -> binder.doAsyncAfterReturning(returning -> actions.add("returning_" + returning.getValue()))
+                        .when().call(anyInt()))
+                .build();
+        CompletableFuture<Integer> future = proxy.call(1);
+        //future未完成时advice不执行, 也不阻塞调用线程
+        Assert.assertTrue(actions.isEmpty());
+        service.pending.complete(10);
+        Assert.assertEquals(11, (int) future.join());
+        Assert.assertEquals(Collections.singletonList("returning_11"), actions);
+    }
+
+    @Test
+    public void asyncAfterThrowingTest()
+    {
+        List<String> actions = Collections.synchronizedList(new ArrayList<>());
+        Service service = new Service();
+        Service proxy = AopGo.proxy(service)
+                .aop(binder -> binder.doAsyncAfterThrowing(throwing -> actions.add("throwing_" + throwing.getThrowable().getMessage()))
+                        .when().call(anyInt()))
+                .build();
+        CompletableFuture<Integer> future = proxy.call(1);
+        Assert.assertTrue(actions.isEmpty());
+        service.pending.completeExceptionally(new IllegalStateException("failed"));
+        try {
+            future.join();
+            Assert.fail();
+        }
+        catch (CompletionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        Assert.assertEquals(Collections.singletonList("throwing_failed"), actions);
+    }
+
+    @Test
+    public void asyncAfterTest()
+    {
+        List<String> actions = Collections.synchronizedList(new ArrayList<>());
+        Service service = new Service();
+        Service proxy = AopGo.proxy(service).build();
+        AopGo.doAsyncAfter(after -> actions.add(after.getName() + "_" + after.isSuccess() + "_" + after.getValue()))
+                .when(proxy).call(anyInt());
+        AopGo.doAsyncAfter(after -> actions.add(after.getName() + "_" + after.isSuccess() + "_" + after.getValue()))
+                .when(proxy).name();
+
+        CompletableFuture<Integer> future = proxy.call(2);
+        Assert.assertEquals("service", proxy.name());
+        Assert.assertEquals(Collections.singletonList("name_true_service"), actions);
+        service.pending.complete(1);
+        Assert.assertEquals(3, (int) future.join());
+        Assert.assertEquals("call_true_3", actions.get(1));
+    }
+
+    @Test
+    public void cancelForwardToOriginalFutureTest()
+    {
+        List<String> actions = Collections.synchronizedList(new ArrayList<>());
+        Service service = new Service();
+        Service proxy = AopGo.proxy(service)
+                .aop(binder -> binder.doAsyncAfterThrowing(throwing -> actions.add(throwing.getThrowable().getClass().getSimpleName()))
+                        .when().pending())
+                .build();
+        CompletableFuture<Integer> future = proxy.pending();
+        Assert.assertNotSame(service.pending, future);
+        Assert.assertTrue(future.cancel(true));
+        Assert.assertTrue(future.isCancelled());
+        Assert.assertTrue(service.pending.isCancelled());
+        Assert.assertEquals(Collections.singletonList("CancellationException"), actions);
+    }
+
+    @Test
+    public void objectReturnTypeReturnOriginalFutureTest()
+    {
+        List<String> actions = Collections.synchronizedList(new ArrayList<>());
+        Service service = new Service();
+        Service proxy = AopGo.proxy(service)
+                .aop(binder -> binder.doAsyncAfterReturning(returning -> actions.add("returning_" + returning.getValue()))
+                        .when().pendingObject())
+                .build();
+        //声明为Object时不替换返回值, advice挂接在原future上
+        Assert.assertSame(service.pending, proxy.pendingObject());
+        service.pending.complete(1);
+        Assert.assertEquals(Collections.singletonList("returning_1"), actions);
+    }
+
+    @Test
+    public void adviceFailedTest()
+    {
+        Service service = new Service();
+        Service proxy = AopGo.proxy(service)
+                .aop(binder -> binder.doAsyncAfterReturning(returning -> {
+                    throw new IllegalStateException("advice failed");
+                }).when().pending())
+                .build();
+        CompletableFuture<Integer> future = proxy.pending();
+        service.pending.complete(1);
+        try {
+            future.join();
+            Assert.fail();
+        }
+        catch (CompletionException e) {
+            Assert.assertEquals("advice failed", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void syncCompletionExceptionUnwrapTest()
+    {
+        List<String> actions = Collections.synchronizedList(new ArrayList<>());
+        Service proxy = AopGo.proxy(new Service())
+                .aop(binder -> binder.doAsyncAfter(after -> actions.add("after_" + after.getThrowable().getMessage()))
+                                .when().join(),
+                        binder -> binder.doAsyncAfterThrowing(throwing -> actions.add("throwing_" + throwing.getThrowable().getMessage()))
+                                .when().join())
+                .build();
+        try {
+            proxy.join();
+            Assert.fail();
+        }
+        catch (CompletionException e) {
+            //调用方看到的异常不变, advice拿到的是原始异常
+            Assert.assertEquals("join failed", e.getCause().getMessage());
+        }
+        Assert.assertEquals(2, actions.size());
+        Assert.assertTrue(actions.contains("after_join failed"));
+        Assert.assertTrue(actions.contains("throwing_join failed"));
+    }
+
+    public static class Service
+    {
+        private final CompletableFuture<Integer> pending = new CompletableFuture<>();
+
+        public CompletableFuture<Integer> call(int a)
+        {
+            return pending.thenApply(x -> x + a);
+        }
+
+        public CompletableFuture<Integer> pending()
+        {
+            return pending;
+        }
+
+        public Object pendingObject()
+        {
+            return pending;
+        }
+
+        public int join()
+        {
+            throw new CompletionException(new IllegalStateException("join failed"));
+        }
+
+        public String name()
+        {
+            return "service";
+        }
+    }
+}
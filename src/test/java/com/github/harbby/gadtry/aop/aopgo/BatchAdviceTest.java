@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.aopgo;
+
+import com.github.harbby.gadtry.aop.AopGo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.harbby.gadtry.aop.mock.MockGoArgument.anyInt;
+
+public class BatchAdviceTest
+{
+    @Test
+    public void collapseConcurrentCallsTest()
+            throws Exception
+    {
+        UserDao dao = new UserDao();
+        BatchAdvice<Integer, String> batch = BatchAdvice.builder(dao::getUsers)
+                .maxBatchSize(8)
+                .maxDelay(1, TimeUnit.SECONDS)
+                .build();
+        UserDao proxy = AopGo.proxy(dao)
+                .aop(binder -> binder.doBatch(batch).when().getUser(anyInt()))
+                .build();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                int id = i;
+                futures.add(pool.submit(() -> proxy.getUser(id)));
+            }
+            for (int i = 0; i < 8; i++) {
+                Assert.assertEquals("user_" + i, futures.get(i).get(10, TimeUnit.SECONDS));
+            }
+            //攒够8个key后合并成一次bulk调用
+            Assert.assertEquals(1, dao.bulkCalls.size());
+            Assert.assertEquals(8, dao.bulkCalls.get(0).size());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void flushByDelayTest()
+    {
+        UserDao dao = new UserDao();
+        BatchAdvice<Integer, String> batch = BatchAdvice.builder(dao::getUsers)
+                .maxDelay(5, TimeUnit.MILLISECONDS)
+                .build();
+        UserDao proxy = AopGo.proxy(dao)
+                .aop(binder -> binder.doBatch(batch).when().getUserAsync(anyInt()))
+                .build();
+        CompletableFuture<String> f1 = proxy.getUserAsync(1);
+        CompletableFuture<String> f2 = proxy.getUserAsync(2);
+        CompletableFuture<String> f3 = proxy.getUserAsync(1);
+        Assert.assertEquals("user_1", f1.join());
+        Assert.assertEquals("user_2", f2.join());
+        Assert.assertSame(f1, f3);
+        Assert.assertEquals(Collections.singletonList(java.util.Arrays.asList(1, 2)), dao.bulkCalls);
+        //窗口到期后开始新的批次
+        Assert.assertEquals("user_3", proxy.getUserAsync(3).join());
+        Assert.assertEquals(2, dao.bulkCalls.size());
+    }
+
+    @Test
+    public void objectReturnTypeWaitBatchTest()
+    {
+        UserDao dao = new UserDao();
+        BatchAdvice<Integer, String> batch = BatchAdvice.builder(dao::getUsers).maxBatchSize(1).build();
+        UserDao proxy = AopGo.proxy(dao)
+                .aop(binder -> binder.doBatch(batch).when().getUserObject(anyInt()))
+                .build();
+        //声明为Object的方法返回结果而不是future
+        Assert.assertEquals("user_1", proxy.getUserObject(1));
+    }
+
+    @Test
+    public void bindMoreThanOneMethodTest()
+    {
+        UserDao dao = new UserDao();
+        BatchAdvice<Integer, String> batch = BatchAdvice.builder(dao::getUsers).build();
+        try {
+            AopGo.proxy(dao)
+                    .aop(binder -> binder.doBatch(batch).whereMethod(method -> method.getName().startsWith("getUser")))
+                    .build();
+            Assert.fail();
+        }
+        catch (IllegalStateException e) {
+            Assert.assertTrue(e.getMessage().startsWith("BatchAdvice can only be bound to one method"));
+        }
+    }
+
+    @Test
+    public void bindSameMethodToTwoProxiesTest()
+    {
+        UserDao dao = new UserDao();
+        BatchAdvice<Integer, String> batch = BatchAdvice.builder(dao::getUsers).maxBatchSize(1).build();
+        UserDao proxy1 = AopGo.proxy(dao)
+                .aop(binder -> binder.doBatch(batch).when().getUser(anyInt()))
+                .build();
+        UserDao proxy2 = AopGo.proxy(UserDao.class).byInstance(dao)
+                .aop(binder -> binder.doBatch(batch).when().getUser(anyInt()))
+                .build();
+        Assert.assertEquals("user_1", proxy1.getUser(1));
+        Assert.assertEquals("user_2", proxy2.getUser(2));
+        try {
+            AopGo.proxy(dao)
+                    .aop(binder -> binder.doBatch(batch).when().getUserAsync(anyInt()))
+                    .build();
+            Assert.fail();
+        }
+        catch (IllegalStateException ignored) {
+        }
+    }
+
+    @Test
+    public void bulkFailedTest()
+    {
+        BatchAdvice<Integer, String> batch = BatchAdvice.<Integer, String>builder(keys -> {
+            throw new IllegalStateException("bulk failed");
+        }).maxBatchSize(1).build();
+        UserDao proxy = AopGo.proxy(new UserDao())
+                .aop(binder -> binder.doBatch(batch).when().getUser(anyInt()))
+                .build();
+        try {
+            proxy.getUser(1);
+            Assert.fail();
+        }
+        catch (IllegalStateException e) {
+            Assert.assertEquals("bulk failed", e.getMessage());
+        }
+    }
+
+    public static class UserDao
+    {
+        final List<List<Integer>> bulkCalls = Collections.synchronizedList(new ArrayList<>());
+
+        public String getUser(int id)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public CompletableFuture<String> getUserAsync(int id)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public Object getUserObject(int id)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public Map<Integer, String> getUsers(List<Integer> ids)
+        {
+            bulkCalls.add(ids);
+            Map<Integer, String> users = new HashMap<>();
+            for (Integer id : ids) {
+                users.put(id, "user_" + id);
+            }
+            return users;
+        }
+    }
+}
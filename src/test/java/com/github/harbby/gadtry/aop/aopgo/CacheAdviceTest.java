@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.aopgo;
+
+import com.github.harbby.gadtry.aop.AopGo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CacheAdviceTest
+{
+    @Test
+    public void argumentKeyedCacheTest()
+    {
+        Service service = new Service();
+        CacheAdvice cache = CacheAdvice.builder().build();
+        Service proxy = AopGo.proxy(service)
+                .aop(binder -> binder.doCache(cache).whereMethod(method -> method.getName().equals("find")))
+                .build();
+        Assert.assertEquals("user_1", proxy.find(1));
+        Assert.assertEquals("user_1", proxy.find(1));
+        Assert.assertEquals("user_2", proxy.find(2));
+        Assert.assertEquals(2, service.calls.get());
+        Assert.assertEquals(1, cache.hitCount());
+        Assert.assertEquals(2, cache.missCount());
+        //未选中的方法不缓存
+        proxy.other(1);
+        proxy.other(1);
+        Assert.assertEquals(4, service.calls.get());
+    }
+
+    @Test
+    public void lruEvictionTest()
+    {
+        Service service = new Service();
+        CacheAdvice cache = CacheAdvice.builder().maximumSize(2).build();
+        Service proxy = AopGo.proxy(service)
+                .aop(binder -> binder.doCache(cache).whereMethod(method -> method.getName().equals("find")))
+                .build();
+        proxy.find(1);
+        proxy.find(2);
+        proxy.find(1);  //1 最近访问
+        proxy.find(3);  //淘汰 2
+        Assert.assertEquals(2, cache.size());
+        proxy.find(1);
+        Assert.assertEquals(3, service.calls.get());
+        proxy.find(2);
+        Assert.assertEquals(4, service.calls.get());
+    }
+
+    @Test
+    public void expireAfterWriteTest()
+            throws InterruptedException
+    {
+        Service service = new Service();
+        CacheAdvice cache = CacheAdvice.builder().expireAfterWrite(10, TimeUnit.MILLISECONDS).build();
+        Service proxy = AopGo.proxy(service)
+                .aop(binder -> binder.doCache(cache).whereMethod(method -> method.getName().equals("find")))
+                .build();
+        proxy.find(1);
+        proxy.find(1);
+        Assert.assertEquals(1, service.calls.get());
+        TimeUnit.MILLISECONDS.sleep(20);
+        proxy.find(1);
+        Assert.assertEquals(2, service.calls.get());
+    }
+
+    @Test(timeout = 10_000)
+    public void coalesceConcurrentMissTest()
+            throws Exception
+    {
+        CountDownLatch latch = new CountDownLatch(1);
+        BlockingService service = new BlockingService(latch);
+        CacheAdvice cache = CacheAdvice.builder().build();
+        BlockingService proxy = AopGo.proxy(service)
+                .aop(binder -> binder.doCache(cache).whereMethod(method -> method.getName().equals("find")))
+                .build();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(pool.submit(() -> proxy.find(7)));
+            }
+            //等待其他3个线程都在等待第一个线程的加载结果
+            while (cache.coalescedCount() < 3) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            latch.countDown();
+            for (Future<String> future : futures) {
+                Assert.assertEquals("user_7", future.get());
+            }
+            Assert.assertEquals(1, service.calls.get());
+            //等待其他线程加载结果的调用不计入命中
+            Assert.assertEquals(1, cache.missCount());
+            Assert.assertEquals(0, cache.hitCount());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void recursiveSameKeyTest()
+    {
+        RecursiveService service = new RecursiveService();
+        CacheAdvice cache = CacheAdvice.builder().build();
+        RecursiveService proxy = AopGo.proxy(service)
+                .aop(binder -> binder.doCache(cache).whereMethod(method -> method.getName().equals("find")))
+                .build();
+        try {
+            proxy.find(1);
+            Assert.fail();
+        }
+        catch (IllegalStateException e) {
+            Assert.assertTrue(e.getMessage().contains("recursive call"));
+        }
+        //失败的加载不影响之后的调用
+        Assert.assertEquals("user_1", proxy.find(1));
+        Assert.assertEquals("user_1", proxy.find(1));
+        Assert.assertEquals(1, service.calls.get());
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void exceptionNotCachedTest()
+    {
+        Service service = new Service();
+        CacheAdvice cache = CacheAdvice.builder().build();
+        Service proxy = AopGo.proxy(service)
+                .aop(binder -> binder.doCache(cache).whereMethod(method -> method.getName().equals("find")))
+                .build();
+        for (int i = 0; i < 2; i++) {
+            try {
+                proxy.find(-1);
+                Assert.fail();
+            }
+            catch (IllegalArgumentException ignored) {
+            }
+        }
+        Assert.assertEquals(2, service.calls.get());
+        Assert.assertEquals(0, cache.size());
+    }
+
+    public static class Service
+    {
+        final AtomicInteger calls = new AtomicInteger();
+
+        public String find(int id)
+        {
+            calls.incrementAndGet();
+            if (id < 0) {
+                throw new IllegalArgumentException("id " + id);
+            }
+            return "user_" + id;
+        }
+
+        public String other(int id)
+        {
+            calls.incrementAndGet();
+            return "other_" + id;
+        }
+    }
+
+    public static class BlockingService
+    {
+        //代理对象只复制被代理类自身声明的字段
+        private final AtomicInteger calls = new AtomicInteger();
+        private final CountDownLatch latch;
+
+        public BlockingService(CountDownLatch latch)
+        {
+            this.latch = latch;
+        }
+
+        public String find(int id)
+        {
+            try {
+                latch.await();
+            }
+            catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            calls.incrementAndGet();
+            return "user_" + id;
+        }
+    }
+
+    public static class RecursiveService
+    {
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger depth = new AtomicInteger();
+
+        public String find(int id)
+        {
+            if (depth.incrementAndGet() == 1) {
+                //加载过程中以相同的key再次调用, 不能等待自己的结果
+                return this.find(id);
+            }
+            calls.incrementAndGet();
+            return "user_" + id;
+        }
+    }
+}
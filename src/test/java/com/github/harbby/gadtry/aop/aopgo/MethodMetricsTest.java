@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.aopgo;
+
+import com.github.harbby.gadtry.aop.AopGo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+public class MethodMetricsTest
+{
+    @Test
+    public void metricsTest()
+    {
+        MethodMetrics metrics = new MethodMetrics();
+        Service proxy = AopGo.proxy(new Service())
+                .aop(binder -> binder.doMetrics(metrics).allMethod())
+                .build();
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(i + 1, proxy.add(i, 1));
+        }
+        for (int i = 0; i < 3; i++) {
+            try {
+                proxy.fail();
+                Assert.fail();
+            }
+            catch (IllegalStateException ignored) {
+            }
+        }
+        Map<String, MethodMetrics.Snapshot> snapshots = metrics.snapshot().stream()
+                .collect(Collectors.toMap(x -> x.getMethod().getName(), Function.identity()));
+        MethodMetrics.Snapshot add = snapshots.get("add");
+        Assert.assertEquals(10, add.getCalls());
+        Assert.assertEquals(0, add.getErrors());
+        Assert.assertEquals(10, LongStream.of(add.getHistogram()).sum());
+        Assert.assertTrue(add.getPercentileNanos(0.99) <= add.getMaxNanos());
+
+        MethodMetrics.Snapshot fail = snapshots.get("fail");
+        Assert.assertEquals(3, fail.getCalls());
+        Assert.assertEquals(3, fail.getErrors());
+    }
+
+    @Test
+    public void multiThreadTest()
+            throws InterruptedException
+    {
+        MethodMetrics metrics = new MethodMetrics();
+        Service proxy = AopGo.proxy(new Service())
+                .aop(binder -> binder.doMetrics(metrics).when().add(1, 1))
+                .build();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; i++) {
+            pool.execute(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    proxy.add(1, 1);
+                }
+            });
+        }
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+        List<MethodMetrics.Snapshot> snapshots = metrics.snapshot();
+        Assert.assertEquals(1, snapshots.size());
+        Assert.assertEquals(4000, snapshots.get(0).getCalls());
+    }
+
+    @Test
+    public void bucketTest()
+    {
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 2, 3, 63),
+                Arrays.asList(MethodMetrics.bucket(0), MethodMetrics.bucket(1), MethodMetrics.bucket(2),
+                        MethodMetrics.bucket(3), MethodMetrics.bucket(4), MethodMetrics.bucket(Long.MAX_VALUE)));
+    }
+
+    public static class Service
+    {
+        public int add(int a, int b)
+        {
+            return a + b;
+        }
+
+        public void fail()
+        {
+            throw new IllegalStateException("fail");
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.impl;
+
+import com.github.harbby.gadtry.aop.AopFactory;
+import com.github.harbby.gadtry.aop.ProxyRequest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+public class AnonymousProxyTest
+{
+    @Test
+    public void anonymousInterfaceProxyTest()
+    {
+        Service service = new ServiceImpl();
+        InvocationHandler handler = (proxy, method, args) -> method.invoke(service, args);
+        Service proxy = JavassistProxy.newProxyInstance(ProxyRequest.builder(Service.class)
+                .setClassLoader(Service.class.getClassLoader())
+                .setInvocationHandler(handler)
+                .anonymousClass()
+                .build());
+
+        Assert.assertFalse(java.lang.reflect.Proxy.isProxyClass(proxy.getClass()));
+        Assert.assertTrue(JavassistProxy.isProxyClass(proxy.getClass()));
+        Assert.assertTrue(handler == JavassistProxy.getInvocationHandler(proxy));
+        Assert.assertEquals("service", proxy.name());
+        Assert.assertEquals(3, proxy.add(1, 2));
+        Assert.assertSame(proxy.getClass(), JavassistProxy.getProxyClass(ProxyRequest.builder(Service.class)
+                .setClassLoader(Service.class.getClassLoader())
+                .anonymousClass()
+                .build()));
+    }
+
+    @Test
+    public void anonymousProxyClassNotCollectedTest()
+            throws InterruptedException
+    {
+        String className = JavassistProxy.getProxyClass(anonymousRequest()).getName();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        //vm匿名类不被ClassLoader引用, registry必须持有它, 否则会被回收后重新生成
+        Assert.assertEquals(className, JavassistProxy.getProxyClass(anonymousRequest()).getName());
+    }
+
+    private static ProxyRequest<Service> anonymousRequest()
+    {
+        return ProxyRequest.builder(Service.class)
+                .setClassLoader(Service.class.getClassLoader())
+                .anonymousClass()
+                .build();
+    }
+
+    @Test
+    public void anonymousClassOnlySupportInterfaceTest()
+    {
+        try {
+            ProxyRequest.builder(ServiceImpl.class).anonymousClass();
+            Assert.fail();
+        }
+        catch (IllegalStateException e) {
+            Assert.assertTrue(e.getMessage().startsWith("anonymousClass only supports interface"));
+        }
+    }
+
+    @Test
+    public void javaInterfaceFallbackTest()
+    {
+        Supplier<String> proxy = JavassistProxy.newAnonymousProxyInstance(null, (proxy1, method, args) -> "hello", Supplier.class);
+        Assert.assertEquals("hello", proxy.get());
+        Assert.assertTrue(JavassistProxy.isProxyClass(proxy.getClass()));
+    }
+
+    @Test
+    public void globalAnonymousInterfaceProxyTest()
+    {
+        List<String> actions = new ArrayList<>();
+        JavassistProxy.setAnonymousInterfaceProxy(true);
+        try {
+            Service proxy = AopFactory.proxy(Service.class)
+                    .byInstance(new ServiceImpl())
+                    .before(before -> actions.add(before.getName()));
+            Assert.assertTrue(JavassistProxy.isProxyClass(proxy.getClass()));
+            Assert.assertEquals(3, proxy.add(1, 2));
+            Assert.assertEquals("service", proxy.name());
+            Assert.assertEquals(2, actions.size());
+
+            Service requestProxy = Proxy.proxy(ProxyRequest.builder(Service.class)
+                    .setInvocationHandler((proxy1, method, args) -> "proxy")
+                    .setClassLoader(Service.class.getClassLoader())
+                    .build());
+            Assert.assertTrue(JavassistProxy.isProxyClass(requestProxy.getClass()));
+            Assert.assertEquals("proxy", requestProxy.name());
+        }
+        finally {
+            JavassistProxy.setAnonymousInterfaceProxy(false);
+        }
+    }
+
+    public interface Service
+    {
+        String name();
+
+        int add(int a, int b);
+    }
+
+    public static class ServiceImpl
+            implements Service
+    {
+        @Override
+        public String name()
+        {
+            return "service";
+        }
+
+        @Override
+        public int add(int a, int b)
+        {
+            return a + b;
+        }
+    }
+}
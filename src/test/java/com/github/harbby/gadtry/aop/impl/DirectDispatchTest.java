@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.impl;
+
+import com.github.harbby.gadtry.aop.ProxyRequest;
+import com.github.harbby.gadtry.aop.runtime.ProxyRuntime;
+import com.github.harbby.gadtry.base.Serializables;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+public class DirectDispatchTest
+{
+    @Test
+    public void directHandlerTest()
+    {
+        List<String> actions = new ArrayList<>();
+        DirectHandler handler = new DirectHandler()
+        {
+            @Override
+            public Object invoke0(Object proxy, int methodIndex)
+            {
+                Method method = ProxyRuntime.getProxyMethods(proxy.getClass())[methodIndex];
+                actions.add(method.getName());
+                return "direct";
+            }
+
+            @Override
+            public Object invoke1(Object proxy, int methodIndex, Object arg0)
+            {
+                return invokeN(proxy, methodIndex, new Object[] {arg0});
+            }
+
+            @Override
+            public Object invoke2(Object proxy, int methodIndex, Object arg0, Object arg1)
+            {
+                Assert.assertEquals("add", ProxyRuntime.getProxyMethods(proxy.getClass())[methodIndex].getName());
+                return (int) arg0 + (int) arg1 + 1;
+            }
+
+            @Override
+            public Object invoke3(Object proxy, int methodIndex, Object arg0, Object arg1, Object arg2)
+            {
+                return invokeN(proxy, methodIndex, new Object[] {arg0, arg1, arg2});
+            }
+
+            @Override
+            public Object invokeN(Object proxy, int methodIndex, Object[] args)
+            {
+                Method method = ProxyRuntime.getProxyMethods(proxy.getClass())[methodIndex];
+                actions.add(method.getName() + args.length);
+                return 0.0d;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+        Service proxy = JavassistProxy.newProxyInstance(ProxyRequest.builder(Service.class)
+                .setInvocationHandler(handler)
+                .setClassLoader(Service.class.getClassLoader())
+                .directDispatch()
+                .build());
+
+        Assert.assertEquals("direct", proxy.name());
+        Assert.assertEquals(4, proxy.add(1, 2));
+        proxy.touch("a");
+        proxy.avg(1, 2, 3, 4);
+        Assert.assertEquals(Arrays.asList("name", "touch1", "avg4"), actions);
+    }
+
+    @Test
+    public void invocationHandlerTest()
+    {
+        Service service = new Service();
+        InvocationHandler handler = (proxy, method, args) -> method.invoke(service, args);
+        Service proxy = JavassistProxy.newProxyInstance(ProxyRequest.builder(Service.class)
+                .setInvocationHandler(handler)
+                .setClassLoader(Service.class.getClassLoader())
+                .disableSuperMethod()
+                .directDispatch()
+                .build());
+
+        Assert.assertEquals("service", proxy.name());
+        Assert.assertEquals(3, proxy.add(1, 2));
+        Assert.assertEquals(6L, proxy.sum(1L, 2L, 3L));
+        Assert.assertEquals(2.5d, proxy.avg(1, 2, 3, 4), 0.0d);
+        proxy.touch("a");
+        Assert.assertEquals("a", service.touched);
+        Assert.assertTrue(handler == JavassistProxy.getInvocationHandler(proxy));
+    }
+
+    @Test
+    public void setHandlerSwitchDispatchTest()
+    {
+        List<String> actions = new ArrayList<>();
+        DirectHandler directHandler = new DirectHandler()
+        {
+            @Override
+            public Object invoke0(Object proxy, int methodIndex)
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Object invoke1(Object proxy, int methodIndex, Object arg0)
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Object invoke2(Object proxy, int methodIndex, Object arg0, Object arg1)
+            {
+                actions.add("direct");
+                return 1;
+            }
+
+            @Override
+            public Object invoke3(Object proxy, int methodIndex, Object arg0, Object arg1, Object arg2)
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Object invokeN(Object proxy, int methodIndex, Object[] args)
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+        //普通handler不经过下标分派, 直接收到代理方法和参数数组
+        InvocationHandler handler = (proxy, method, args) -> {
+            Assert.assertEquals("add", method.getName());
+            Assert.assertArrayEquals(new Object[] {1, 2}, args);
+            actions.add("handler");
+            return 2;
+        };
+        Service proxy = JavassistProxy.newProxyInstance(ProxyRequest.builder(Service.class)
+                .setInvocationHandler(handler)
+                .setClassLoader(Service.class.getClassLoader())
+                .disableSuperMethod()
+                .directDispatch()
+                .build());
+        Assert.assertEquals(2, proxy.add(1, 2));
+
+        ((ProxyHandler) proxy).setHandler(directHandler);
+        Assert.assertEquals(1, proxy.add(1, 2));
+
+        ((ProxyHandler) proxy).setHandler(handler);
+        Assert.assertEquals(2, proxy.add(1, 2));
+        Assert.assertEquals(Arrays.asList("handler", "direct", "handler"), actions);
+    }
+
+    @Test
+    public void interfaceUseJavassistProxyTest()
+    {
+        Supplier<String> proxy = Proxy.proxy(ProxyRequest.builder(Supplier.class)
+                .setInvocationHandler((proxy1, method, args) -> "hello")
+                .setClassLoader(Supplier.class.getClassLoader())
+                .directDispatch()
+                .build());
+        Assert.assertTrue(JavassistProxy.isProxyClass(proxy.getClass()));
+        Assert.assertEquals("hello", proxy.get());
+    }
+
+    @Test
+    public void methodIndexStableTest()
+    {
+        Class<?> handlerProxyClass = JavassistProxy.getProxyClass(ProxyRequest.builder(Service.class)
+                .setClassLoader(Service.class.getClassLoader())
+                .disableSuperMethod()
+                .build());
+        Class<?> directProxyClass = JavassistProxy.getProxyClass(ProxyRequest.builder(Service.class)
+                .setClassLoader(Service.class.getClassLoader())
+                .disableSuperMethod()
+                .directDispatch()
+                .build());
+        Assert.assertTrue(handlerProxyClass != directProxyClass);
+        Assert.assertEquals(methodNames(handlerProxyClass), methodNames(directProxyClass));
+    }
+
+    @Test
+    public void serializeTest()
+            throws Exception
+    {
+        Service proxy = JavassistProxy.newProxyInstance(ProxyRequest.builder(Service.class)
+                .setInvocationHandler((InvocationHandler & Serializable) (proxy1, method, args) -> "serialized")
+                .setClassLoader(Service.class.getClassLoader())
+                .directDispatch()
+                .build());
+        Assert.assertEquals("serialized", proxy.name());
+
+        Service serialized = Serializables.byteToObject(Serializables.serialize((Serializable) proxy));
+        Assert.assertEquals("serialized", serialized.name());
+    }
+
+    private static List<String> methodNames(Class<?> proxyClass)
+    {
+        return Arrays.stream(ProxyRuntime.getProxyMethods(proxyClass))
+                .map(method -> method.getName() + Arrays.toString(method.getParameterTypes()))
+                .collect(Collectors.toList());
+    }
+
+    public static class Service
+    {
+        private String touched;
+
+        public String name()
+        {
+            return "service";
+        }
+
+        public int add(int a, int b)
+        {
+            return a + b;
+        }
+
+        public long sum(long a, long b, long c)
+        {
+            return a + b + c;
+        }
+
+        public double avg(int a, int b, int c, int d)
+        {
+            return (a + b + c + d) / 4.0d;
+        }
+
+        public void touch(String value)
+        {
+            this.touched = value;
+        }
+    }
+}
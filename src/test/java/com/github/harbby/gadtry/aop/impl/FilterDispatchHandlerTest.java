@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.impl;
+
+import com.github.harbby.gadtry.aop.AopFactory;
+import com.github.harbby.gadtry.base.Serializables;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+public class FilterDispatchHandlerTest
+{
+    private static final AtomicInteger filterCount = new AtomicInteger();
+
+    @Test
+    public void filterOnlyRunOnceTest()
+    {
+        List<String> actions = new ArrayList<>();
+        Dao proxy = AopFactory.proxy(Dao.class).byInstance(new Dao())
+                .whereMethod(methodInfo -> {
+                    filterCount.incrementAndGet();
+                    return methodInfo.getReturnType() == String.class;
+                })
+                .before(before -> actions.add(before.getName()));
+        Assert.assertTrue(JavassistProxy.isProxyClass(proxy.getClass()));
+        int count = filterCount.get();
+
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(3, proxy.add(1, 2));
+            Assert.assertEquals("dao", proxy.name());
+        }
+        Assert.assertEquals(count, filterCount.get());
+        Assert.assertEquals(10, actions.size());
+        Assert.assertTrue(actions.stream().allMatch("name"::equals));
+    }
+
+    @Test
+    public void jdkProxyFilterTest()
+    {
+        List<String> actions = new ArrayList<>();
+        Function<String, Integer> proxy = AopFactory.proxy(Function.class)
+                .byInstance((Function<String, Integer>) String::length)
+                .whereMethod(methodInfo -> methodInfo.getName().equals("apply"))
+                .before(before -> actions.add(before.getName()));
+        Assert.assertEquals(3, (int) proxy.apply("abc"));
+        Assert.assertNotNull(proxy.toString());
+        Assert.assertEquals(Arrays.asList("apply"), actions);
+    }
+
+    @Test
+    public void serializeTest()
+            throws Exception
+    {
+        Function<String, Integer> proxy = AopFactory.proxy(Function.class)
+                .byInstance((Serializable & Function<String, Integer>) String::length)
+                .whereMethod(methodInfo -> methodInfo.getName().equals("apply"))
+                .around(joinPoint -> (int) joinPoint.proceed() + 1);
+        Function<String, Integer> serialized = Serializables.byteToObject(Serializables.serialize((Serializable) proxy));
+        Assert.assertEquals(4, (int) serialized.apply("abc"));
+    }
+
+    public static class Dao
+    {
+        public int add(int a, int b)
+        {
+            return a + b;
+        }
+
+        public String name()
+        {
+            return "dao";
+        }
+    }
+}
@@ -53,6 +53,52 @@ public class JavassistProxyFieldTest
         Assert.assertEquals(proxy.list, proxy.getList());
     }
 
+    @Test
+    public void copyAllFieldTypesTest()
+    {
+        Values values = new Values();
+        values.l = Long.MIN_VALUE;
+        values.d = 3.14d;
+        values.i = -7;
+        values.f = 2.5f;
+        values.s = Short.MAX_VALUE;
+        values.c = 'c';
+        values.b = (byte) 0x7f;
+        values.z = true;
+        values.o = "object";
+        ProxyRequest<Values> request = ProxyRequest.builder(Values.class)
+                .setInvocationHandler((proxy, method, args) -> method.invoke(values, args))
+                .setClassLoader(getClass().getClassLoader())
+                .setTarget(values)
+                .build();
+        for (int i = 0; i < 2; i++) {
+            //第二次使用缓存的字段偏移量
+            Values proxy = JavassistProxy.newProxyInstance(request);
+            Assert.assertEquals(Long.MIN_VALUE, proxy.l);
+            Assert.assertEquals(3.14d, proxy.d, 0);
+            Assert.assertEquals(-7, proxy.i);
+            Assert.assertEquals(2.5f, proxy.f, 0);
+            Assert.assertEquals(Short.MAX_VALUE, proxy.s);
+            Assert.assertEquals('c', proxy.c);
+            Assert.assertEquals((byte) 0x7f, proxy.b);
+            Assert.assertTrue(proxy.z);
+            Assert.assertSame(values.o, proxy.o);
+        }
+    }
+
+    public static class Values
+    {
+        long l;
+        double d;
+        int i;
+        float f;
+        short s;
+        char c;
+        byte b;
+        boolean z;
+        Object o;
+    }
+
     public static class PeopleA
             extends People
     {
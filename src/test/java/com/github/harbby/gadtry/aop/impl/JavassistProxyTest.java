@@ -15,11 +15,13 @@
  */
 package com.github.harbby.gadtry.aop.impl;
 
+import com.github.harbby.gadtry.aop.ProxyRequest;
 import com.github.harbby.gadtry.aop.mock.MockGoException;
 import com.github.harbby.gadtry.base.Streams;
 import com.github.harbby.gadtry.memory.UnsafeHelper;
 import javassist.ClassPool;
 import javassist.CtClass;
+import javassist.CtNewMethod;
 import org.junit.Assert;
 import org.junit.Test;
 import sun.misc.Unsafe;
@@ -28,10 +30,16 @@ import java.io.File;
 import java.io.Serializable;
 import java.lang.reflect.InvocationHandler;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
@@ -182,6 +190,89 @@ public class JavassistProxyTest
         Assert.assertEquals(proxy.get(), "hello");
     }
 
+    @Test
+    public void prepareAllTest()
+    {
+        List<ProxyRequest<?>> requests = new ArrayList<>();
+        Stream.of(Runnable.class, Callable.class, Supplier.class, GenericProxyClass.class, HashMap.class, HashSet.class)
+                .forEach(x -> requests.add(ProxyRequest.builder(x).disableSuperMethod().build()));
+
+        List<Class<?>> proxyClasses = JavassistProxy.prepareAll(requests);
+        Assert.assertEquals(requests.size(), proxyClasses.size());
+        for (int i = 0; i < requests.size(); i++) {
+            Assert.assertTrue(requests.get(i).getSuperclass().isAssignableFrom(proxyClasses.get(i)));
+            Assert.assertSame(proxyClasses.get(i), JavassistProxy.getProxyClass(requests.get(i)));
+        }
+    }
+
+    @Test
+    public void sharedClassPoolTest()
+            throws Exception
+    {
+        ClassLoader loader = JavassistProxyTest.class.getClassLoader();
+        Assert.assertSame(ClassPools.getSharedPool(loader), ClassPools.getSharedPool(loader));
+        Assert.assertSame(ClassPools.getSharedPool(null), ClassPools.getSharedPool(ClassLoader.getSystemClassLoader()));
+
+        ClassPool[] childPool = new ClassPool[1];
+        byte[] classBytes = ClassPools.compile(loader, false, classPool -> {
+            childPool[0] = classPool;
+            return classPool.makeClass("gadtry.test.SharedClassPoolTest");
+        });
+        Assert.assertTrue(classBytes.length > 0);
+        Assert.assertNotSame(ClassPools.getSharedPool(loader), childPool[0]);
+        Assert.assertNull(ClassPools.getSharedPool(loader).getOrNull("gadtry.test.SharedClassPoolTest"));
+        Assert.assertNull(ClassPools.compile(loader, false, classPool -> null));
+    }
+
+    @Test(timeout = 30_000)
+    public void concurrentCompileTest()
+            throws Exception
+    {
+        ClassLoader loader = JavassistProxyTest.class.getClassLoader();
+        //两个生成任务必须同时处于generator中才能完成, 生成时持有共享ClassPool的锁会超时
+        CountDownLatch latch = new CountDownLatch(2);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<byte[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                String className = "gadtry.test.ConcurrentCompileTest" + i;
+                futures.add(pool.submit(() -> ClassPools.compile(loader, false, Collections.singletonList(Runnable.class), classPool -> {
+                    latch.countDown();
+                    Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+                    CtClass ctClass = classPool.makeClass(className);
+                    ctClass.addInterface(classPool.get(Runnable.class.getName()));
+                    ctClass.addMethod(CtNewMethod.make("public void run() {}", ctClass));
+                    return ctClass;
+                })));
+            }
+            for (Future<byte[]> future : futures) {
+                Assert.assertTrue(future.get().length > 0);
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void sharedCtClassNotModifiedTest()
+            throws Exception
+    {
+        ClassLoader loader = JavassistProxyTest.class.getClassLoader();
+        JavassistProxy.getProxyClass(ProxyRequest.builder(AnnotatedService.class).setClassLoader(loader).build());
+        //生成代理类只读取共享ClassPool中的父类, 不能把它标记为已修改
+        Assert.assertFalse(ClassPools.getSharedPool(loader).get(AnnotatedService.class.getName()).isModified());
+    }
+
+    public static class AnnotatedService
+    {
+        @Deprecated
+        public String name()
+        {
+            return "service";
+        }
+    }
+
     public static class GenericProxyClass
             implements Supplier<String>, Provider<String>
     {
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.impl;
+
+import com.github.harbby.gadtry.aop.JoinPoint;
+import com.github.harbby.gadtry.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class LoadTimeWeaverTest
+{
+    private static final String EXPRESSION = "within(com.github.harbby.gadtry.aop.impl.LoadTimeWeaverTest.Target) && " +
+            "(execution(int add(int, int)) || execution(static String hello(..)))";
+
+    @Test
+    public void weaveTest()
+            throws Exception
+    {
+        List<String> actions = new ArrayList<>();
+        LoadTimeWeaver weaver = LoadTimeWeaver.create(binder -> binder.bind("test", EXPRESSION)
+                .around(joinPoint -> {
+                    actions.add(joinPoint.getMethod().getName());
+                    Object value = joinPoint.proceed();
+                    return value instanceof Integer ? (int) value + 1 : "aop:" + value;
+                }));
+        Class<?> aClass = weaveAndLoad(weaver, Target.class);
+        Assert.assertNotSame(Target.class, aClass);
+
+        Object target = aClass.newInstance();
+        Assert.assertEquals(4, aClass.getMethod("add", int.class, int.class).invoke(target, 1, 2));
+        Assert.assertEquals("aop:hello gadtry", aClass.getMethod("hello", String.class).invoke(null, "gadtry"));
+        Assert.assertEquals("noAop", aClass.getMethod("name").invoke(target));
+        Assert.assertEquals(actions.toString(), "[add, hello]");
+    }
+
+    @Test
+    public void selfInvocationTest()
+            throws Exception
+    {
+        List<String> actions = new ArrayList<>();
+        LoadTimeWeaver weaver = LoadTimeWeaver.create(binder -> binder.bind("test", EXPRESSION)
+                .around(joinPoint -> {
+                    actions.add(joinPoint.getMethod().getName());
+                    return joinPoint.proceed();
+                }));
+        Class<?> aClass = weaveAndLoad(weaver, Target.class);
+
+        //代理模式下this.add()不会被拦截, 织入后每次内部调用都经过advice
+        Object target = aClass.newInstance();
+        Assert.assertEquals(6, aClass.getMethod("addTwice", int.class, int.class).invoke(target, 1, 2));
+        Assert.assertEquals(actions.toString(), "[add, add]");
+    }
+
+    @Test
+    public void proceedArgsAndThrowTest()
+            throws Exception
+    {
+        LoadTimeWeaver weaver = LoadTimeWeaver.create(binder -> binder.bind("test", EXPRESSION)
+                .around(joinPoint -> {
+                    if ("add".equals(joinPoint.getMethod().getName())) {
+                        return joinPoint.proceed(new Object[] {10, 20});
+                    }
+                    throw new IllegalStateException("hello error");
+                }));
+        Class<?> aClass = weaveAndLoad(weaver, Target.class);
+        Object target = aClass.newInstance();
+        Assert.assertEquals(30, aClass.getMethod("add", int.class, int.class).invoke(target, 1, 2));
+        try {
+            aClass.getMethod("hello", String.class).invoke(null, "gadtry");
+            Assert.fail();
+        }
+        catch (InvocationTargetException e) {
+            Assert.assertTrue(e.getTargetException() instanceof IllegalStateException);
+            Assert.assertEquals("hello error", e.getTargetException().getMessage());
+        }
+    }
+
+    @Test
+    public void notMatchReturnNullTest()
+            throws Exception
+    {
+        LoadTimeWeaver weaver = LoadTimeWeaver.create(binder -> binder.bind("test", "execution(* com.example..*(..))"));
+        Assert.assertNull(weaver.weave(getClass().getClassLoader(), readClassBytes(Target.class)));
+        //gadtry自身和jdk的类不织入
+        LoadTimeWeaver all = LoadTimeWeaver.create(binder -> binder.bind("test", "execution(* *(..))"));
+        Assert.assertNull(all.transform(getClass().getClassLoader(), Target.class.getName().replace('.', '/'),
+                null, null, readClassBytes(Target.class)));
+        Assert.assertNull(all.transform(getClass().getClassLoader(), "java/util/ArrayList", null, null, new byte[0]));
+    }
+
+    @Test
+    public void proceedWithoutReflectionTest()
+            throws Exception
+    {
+        LoadTimeWeaver weaver = LoadTimeWeaver.create(binder -> binder.bind("test",
+                "within(com.github.harbby.gadtry.aop.impl.LoadTimeWeaverTest.Target) && execution(String caller())")
+                .around(joinPoint -> joinPoint.proceed()));
+        Class<?> aClass = weaveAndLoad(weaver, Target.class);
+        //原方法体由生成的MethodInvoker直接调用, 不经过Method.invoke
+        String caller = (String) aClass.getMethod("caller").invoke(aClass.newInstance());
+        Assert.assertTrue(caller, caller.contains("$GadtryInvoker"));
+    }
+
+    @Test
+    public void weaveFailedTest()
+    {
+        LoadTimeWeaver weaver = LoadTimeWeaver.create(binder -> binder.bind("test", "execution(* *(..))"));
+        Assert.assertNull(weaver.transform(getClass().getClassLoader(), "com/example/BadClass", null, null, new byte[] {1, 2, 3}));
+        Assert.assertNull(weaver.transform(getClass().getClassLoader(), "com/example/BadClass2", null, null, new byte[] {1, 2, 3}));
+        Assert.assertEquals(2, weaver.getFailedClassCount());
+        Assert.assertTrue(weaver.getFirstFailure().getMessage().contains("com.example.BadClass "));
+    }
+
+    @Test
+    public void multiplePointcutTest()
+            throws Exception
+    {
+        List<String> actions = new ArrayList<>();
+        LoadTimeWeaver weaver = LoadTimeWeaver.create(binder -> {
+            binder.bind("first", EXPRESSION).around(joinPoint -> {
+                actions.add("first");
+                return (int) joinPoint.proceed() * 10;
+            });
+            binder.bind("second", "execution(int com.github.harbby.gadtry.aop.impl.LoadTimeWeaverTest.Target.add(int, int))")
+                    .around(joinPoint -> {
+                        actions.add("second");
+                        return (int) joinPoint.proceed() + 1;
+                    });
+        });
+        Class<?> aClass = weaveAndLoad(weaver, Target.class);
+        //先定义的切点在最外层: (1 + 2 + 1) * 10
+        Assert.assertEquals(40, aClass.getMethod("add", int.class, int.class).invoke(aClass.newInstance(), 1, 2));
+        Assert.assertEquals(actions.toString(), "[first, second]");
+    }
+
+    @Test
+    public void weavePointsHeldByClassTest()
+            throws Exception
+    {
+        LoadTimeWeaver weaver = LoadTimeWeaver.create(binder -> binder.bind("test", EXPRESSION).around(JoinPoint::proceed));
+        Class<?> aClass = weaveAndLoad(weaver, Target.class);
+        Field field = aClass.getDeclaredField(WeavingRuntime.WEAVE_POINTS_FIELD);
+        Assert.assertTrue(field.isSynthetic());
+        field.setAccessible(true);
+        Assert.assertEquals(2, ((Object[]) field.get(null)).length);
+        Assert.assertEquals(3, aClass.getMethod("add", int.class, int.class).invoke(aClass.newInstance(), 1, 2));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void onlySupportExpressionPointcutTest()
+    {
+        LoadTimeWeaver.create(binder -> binder.bind("test").classes(Target.class));
+    }
+
+    private static Class<?> weaveAndLoad(LoadTimeWeaver weaver, Class<?> aClass)
+            throws Exception
+    {
+        byte[][] bytes = new byte[1][];
+        ClassLoader loader = new ClassLoader(aClass.getClassLoader())
+        {
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve)
+                    throws ClassNotFoundException
+            {
+                if (!name.equals(aClass.getName())) {
+                    return super.loadClass(name, resolve);
+                }
+                synchronized (getClassLoadingLock(name)) {
+                    Class<?> loaded = findLoadedClass(name);
+                    return loaded != null ? loaded : defineClass(name, bytes[0], 0, bytes[0].length);
+                }
+            }
+        };
+        //与transform()相同, 使用定义该类的ClassLoader织入
+        bytes[0] = weaver.weave(loader, readClassBytes(aClass));
+        Assert.assertNotNull(bytes[0]);
+        return loader.loadClass(aClass.getName());
+    }
+
+    private static byte[] readClassBytes(Class<?> aClass)
+            throws IOException
+    {
+        String resource = "/" + aClass.getName().replace('.', '/') + ".class";
+        try (InputStream inputStream = aClass.getResourceAsStream(resource)) {
+            return IOUtils.readAllBytes(inputStream);
+        }
+    }
+
+    public static class Target
+    {
+        public int add(int a, int b)
+        {
+            return a + b;
+        }
+
+        public int addTwice(int a, int b)
+        {
+            return add(a, b) + add(a, b);
+        }
+
+        public String name()
+        {
+            return "noAop";
+        }
+
+        public String caller()
+        {
+            return new Throwable().getStackTrace()[1].getClassName();
+        }
+
+        public static String hello(String name)
+        {
+            return "hello " + name;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.impl;
+
+import com.github.harbby.gadtry.aop.ProxyRequest;
+import com.github.harbby.gadtry.base.Files;
+import com.github.harbby.gadtry.memory.UnsafeHelper;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+
+public class ProxyClassDiskCacheTest
+{
+    private File cacheDir;
+
+    @Before
+    public void setUp()
+    {
+        cacheDir = new File(System.getProperty("java.io.tmpdir"), "gadtry_proxy_cache_" + System.nanoTime());
+        JavassistProxy.setDiskCacheDir(cacheDir);
+    }
+
+    @After
+    public void tearDown()
+    {
+        JavassistProxy.setDiskCacheDir(null);
+        deleteDir(cacheDir);
+    }
+
+    @Test
+    public void loadFromDiskCacheTest()
+            throws Exception
+    {
+        Assert.assertEquals(cacheDir, JavassistProxy.getDiskCacheDir());
+        //每次使用新的ClassLoader, 模拟jvm重启
+        long start = System.nanoTime();
+        Class<?> generated = JavassistProxy.getProxyClass(request(newClassLoader()));
+        long generateTime = System.nanoTime() - start;
+        Assert.assertEquals(1, cacheFiles().size());
+
+        int hitCount = 10;
+        start = System.nanoTime();
+        Class<?> cached = null;
+        for (int i = 0; i < hitCount; i++) {
+            cached = JavassistProxy.getProxyClass(request(newClassLoader()));
+        }
+        long loadTime = (System.nanoTime() - start) / hitCount;
+        System.out.printf("proxy class generate: %.3fms, load from disk cache: %.3fms%n", generateTime / 1e6, loadTime / 1e6);
+
+        Assert.assertTrue(generated != cached);
+        Assert.assertEquals(generated.getName(), cached.getName());
+        Assert.assertEquals(1, cacheFiles().size());
+
+        InvocationHandler handler = (proxy, method, args) -> "cached";
+        Service service = JavassistProxy.newProxyInstance(ProxyRequest.builder(Service.class)
+                .setInvocationHandler(handler)
+                .setClassLoader(cached.getClassLoader())
+                .build());
+        Assert.assertTrue(service.getClass() == cached);
+        Assert.assertEquals("cached", service.name());
+    }
+
+    @Test
+    public void targetClassChangedTest()
+            throws Exception
+    {
+        ClassLoader v1 = versionClassLoader("v1", false);
+        ClassLoader v2 = versionClassLoader("v2", true);
+
+        Class<?> proxyClass1 = JavassistProxy.getProxyClass(ProxyRequest.builder(v1.loadClass(FOO_CLASS))
+                .setClassLoader(v1).build());
+        Class<?> proxyClass2 = JavassistProxy.getProxyClass(ProxyRequest.builder(v2.loadClass(FOO_CLASS))
+                .setClassLoader(v2).build());
+        Assert.assertNotEquals(proxyClass1.getName(), proxyClass2.getName());
+        Assert.assertEquals(2, cacheFiles().size());
+
+        Object foo2 = JavassistProxy.newProxyInstance(ProxyRequest.builder(v2.loadClass(FOO_CLASS))
+                .setClassLoader(v2)
+                .setInvocationHandler((proxy, method, args) -> method.getName())
+                .build());
+        Method version = foo2.getClass().getMethod("version");
+        Assert.assertEquals("version", version.invoke(foo2));
+    }
+
+    @Test
+    public void corruptCacheFileTest()
+            throws Exception
+    {
+        JavassistProxy.getProxyClass(request(newClassLoader()));
+        File cacheFile = cacheFiles().get(0);
+        java.nio.file.Files.write(cacheFile.toPath(), new byte[] {1, 2, 3});
+
+        Class<?> proxyClass = JavassistProxy.getProxyClass(request(newClassLoader()));
+        Service service = (Service) UnsafeHelper.allocateInstance(proxyClass);
+        ((ProxyHandler) service).setHandler((proxy, method, args) -> "regenerated");
+        Assert.assertEquals("regenerated", service.name());
+        Assert.assertTrue(cacheFile.length() > 3);
+    }
+
+    @Test
+    public void anonymousFlagFingerprintTest()
+    {
+        ProxyClassDiskCache cache = new ProxyClassDiskCache(cacheDir);
+        ProxyRequest<Service> request = request(newClassLoader());
+        List<Class<?>> validClass = java.util.Collections.singletonList(Service.class);
+        String fingerprint = cache.fingerprint("a.b", validClass, request, true, false);
+        Assert.assertEquals(fingerprint, cache.fingerprint("a.b", validClass, request, true, false));
+        //匿名代理类回退到普通代理类时也是directDispatch, 指纹仍然不能相同
+        Assert.assertNotEquals(fingerprint, cache.fingerprint("a.b", validClass, request, true, true));
+    }
+
+    @Test
+    public void protectionDomainTest()
+    {
+        Class<?> proxyClass = JavassistProxy.getProxyClass(request(newClassLoader()));
+        Assert.assertSame(Service.class.getProtectionDomain(), proxyClass.getProtectionDomain());
+        Class<?> cached = JavassistProxy.getProxyClass(request(newClassLoader()));
+        Assert.assertSame(Service.class.getProtectionDomain(), cached.getProtectionDomain());
+    }
+
+    private static final String FOO_CLASS = "com.github.harbby.gadtry.aop.impl.cachetest.Foo";
+
+    private ClassLoader versionClassLoader(String version, boolean addMethod)
+            throws Exception
+    {
+        ClassPool classPool = new ClassPool(true);
+        CtClass foo = classPool.makeClass(FOO_CLASS);
+        foo.addMethod(CtNewMethod.make("public String name() { return \"" + version + "\"; }", foo));
+        if (addMethod) {
+            foo.addMethod(CtNewMethod.make("public String version() { return \"" + version + "\"; }", foo));
+        }
+        File classDir = new File(cacheDir, "classes_" + version);
+        foo.writeFile(classDir.getPath());
+        return new URLClassLoader(new URL[] {classDir.toURI().toURL()}, ProxyClassDiskCacheTest.class.getClassLoader());
+    }
+
+    private static ProxyRequest<Service> request(ClassLoader loader)
+    {
+        return ProxyRequest.builder(Service.class)
+                .setClassLoader(loader)
+                .build();
+    }
+
+    private static ClassLoader newClassLoader()
+    {
+        return new URLClassLoader(new URL[0], ProxyClassDiskCacheTest.class.getClassLoader());
+    }
+
+    private List<File> cacheFiles()
+    {
+        return Files.listFiles(cacheDir, false, file -> file.getName().endsWith(".class"));
+    }
+
+    private static void deleteDir(File file)
+    {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File it : files) {
+                deleteDir(it);
+            }
+        }
+        file.delete();
+    }
+
+    public static class Service
+    {
+        public String name()
+        {
+            return "service";
+        }
+    }
+}
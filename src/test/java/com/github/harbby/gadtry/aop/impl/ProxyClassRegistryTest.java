@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.impl;
+
+import com.github.harbby.gadtry.aop.ProxyRequest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+public class ProxyClassRegistryTest
+{
+    @Test
+    public void isProxyClassTest()
+    {
+        Class<?> proxyClass = JavassistProxy.getProxyClass(ProxyClassRegistryTest.class.getClassLoader(), Service.class);
+        Assert.assertTrue(JavassistProxy.isProxyClass(proxyClass));
+        Assert.assertFalse(JavassistProxy.isProxyClass(Service.class));
+        Assert.assertFalse(JavassistProxy.isProxyClass(FakeProxy.class));
+    }
+
+    @Test
+    public void hitAndMissCountTest()
+    {
+        ProxyClassRegistry registry = JavassistProxy.getProxyClassRegistry();
+        ClassLoader loader = newClassLoader();
+        long hitCount = registry.hitCount();
+        long missCount = registry.missCount();
+        int size = registry.size();
+
+        Class<?> proxyClass = JavassistProxy.getProxyClass(request(loader));
+        Assert.assertSame(proxyClass, JavassistProxy.getProxyClass(request(loader)));
+        Assert.assertSame(proxyClass, JavassistProxy.getProxyClass(request(loader)));
+
+        Assert.assertEquals(missCount + 1, registry.missCount());
+        Assert.assertEquals(hitCount + 2, registry.hitCount());
+        Assert.assertTrue(registry.size() > size);
+    }
+
+    @Test
+    public void concurrentComputeOnceTest()
+            throws Exception
+    {
+        ProxyClassRegistry registry = new ProxyClassRegistry();
+        ClassLoader loader = newClassLoader();
+        KeyX key = new KeyX(false, false, false, new Class<?>[] {Service.class});
+        AtomicInteger generateCount = new AtomicInteger();
+        CountDownLatch generating = new CountDownLatch(1);
+        Function<KeyX, Class<?>> slowGenerator = k -> {
+            generateCount.incrementAndGet();
+            generating.countDown();
+            try {
+                Thread.sleep(100);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return JavassistProxy.getProxyClass(request(loader));
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<Class<?>> first = pool.submit(() -> registry.computeIfAbsent(loader, key, slowGenerator));
+            generating.await();
+            //生成过程中同一个key的请求等待结果, 不能再次生成; 其他key不被阻塞
+            Future<Class<?>> second = pool.submit(() -> registry.computeIfAbsent(loader, key, slowGenerator));
+            KeyX other = new KeyX(true, false, false, new Class<?>[] {Service.class});
+            Assert.assertSame(Service.class, registry.computeIfAbsent(loader, other, k -> Service.class));
+            Assert.assertSame(first.get(), second.get());
+            Assert.assertEquals(1, generateCount.get());
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void releaseClassLoaderTest()
+            throws InterruptedException
+    {
+        WeakReference<ClassLoader> loaderRef = createProxyOnNewClassLoader();
+        for (int i = 0; i < 50 && loaderRef.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        Assert.assertNull("ClassLoader is retained by proxy registry", loaderRef.get());
+    }
+
+    private static WeakReference<ClassLoader> createProxyOnNewClassLoader()
+    {
+        ClassLoader loader = newClassLoader();
+        Service service = JavassistProxy.newProxyInstance(ProxyRequest.builder(Service.class)
+                .setClassLoader(loader)
+                .setInvocationHandler((proxy, method, args) -> "proxy")
+                .build());
+        Assert.assertEquals("proxy", service.name());
+        Assert.assertSame(loader, service.getClass().getClassLoader());
+        return new WeakReference<>(loader);
+    }
+
+    private static ProxyRequest<Service> request(ClassLoader loader)
+    {
+        return ProxyRequest.builder(Service.class)
+                .setClassLoader(loader)
+                .build();
+    }
+
+    private static ClassLoader newClassLoader()
+    {
+        return new URLClassLoader(new URL[0], ProxyClassRegistryTest.class.getClassLoader());
+    }
+
+    public static class Service
+    {
+        public String name()
+        {
+            return "service";
+        }
+    }
+
+    public static class FakeProxy
+            implements ProxyHandler
+    {
+        @Override
+        public void setHandler(InvocationHandler handler) {}
+
+        @Override
+        public InvocationHandler getHandler()
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.mock;
+
+import com.github.harbby.gadtry.aop.AopGo;
+import com.github.harbby.gadtry.aop.impl.ProxyHandler;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.github.harbby.gadtry.aop.mock.MockGoArgument.anyInt;
+
+public class AopInvocationHandlerTest
+{
+    @Test
+    public void aopGoProductionModeTest()
+    {
+        Service proxy = AopGo.proxy(new Service())
+                .aop(binder -> binder.doAround(joinPoint -> (int) joinPoint.proceed() * 10).when().add(anyInt(), anyInt()))
+                .build();
+        Assert.assertTrue(((ProxyHandler) proxy).getHandler() instanceof AopGoInvocationHandler);
+
+        MockGo.LAST_MOCK_BY_WHEN_METHOD.remove();
+        Assert.assertEquals(30, proxy.add(1, 2));
+        Assert.assertEquals("service", proxy.name());
+        //production mode不再记录MockGo.when()需要的最后调用方法
+        Assert.assertNull(MockGo.LAST_MOCK_BY_WHEN_METHOD.get());
+    }
+
+    @Test
+    public void registerAfterFirstCallTest()
+    {
+        Service proxy = AopGo.proxy(new Service()).build();
+        Assert.assertEquals("service", proxy.name());
+        //冻结的advice数组在register后重建
+        AopGo.doAround(joinPoint -> "aop_" + joinPoint.proceed()).when(proxy).name();
+        Assert.assertEquals("aop_service", proxy.name());
+        Assert.assertEquals(3, proxy.add(1, 2));
+    }
+
+    @Test
+    public void aopGoDirectArgsTest()
+    {
+        Service proxy = AopGo.proxy(new Service())
+                .aop(binder -> binder.doAround(joinPoint -> (int) joinPoint.proceed() * 10).when().add(anyInt(), anyInt()))
+                .build();
+        //没有advice的方法按参数个数直接调用目标方法
+        Assert.assertEquals("service", proxy.name());
+        Assert.assertEquals(2L, proxy.inc(1L));
+        Assert.assertEquals("a1b", proxy.join("a", 1, 'b'));
+        Assert.assertEquals(10, proxy.sum(1, 2, 3, 4));
+        Assert.assertEquals(30, proxy.add(1, 2));
+
+        InvocationRecorder recorder = ((AopInvocationHandler) ((ProxyHandler) proxy).getHandler()).enableRecording(8);
+        Assert.assertEquals(2L, proxy.inc(1L));
+        Assert.assertEquals(1, recorder.totalCount());
+    }
+
+    @Test
+    public void adviceTableMethodIndexGapTest()
+    {
+        //方法表下标不连续时对应位置为null
+        AopInvocationHandler.AdviceTable table = new AopInvocationHandler.AdviceTable(GapMethodTable.class, new IdentityHashMap<>(), true);
+        Assert.assertEquals(3, table.methods.length);
+        Assert.assertNull(table.methods[1]);
+        Assert.assertNull(table.advices[1]);
+        Assert.assertFalse(table.selfMethods[1]);
+        Assert.assertFalse(table.reuseViews[1]);
+    }
+
+    @Test
+    public void spyIsNotProductionModeTest()
+    {
+        Service proxy = MockGo.spy(new Service());
+        MockGo.when(proxy.name()).thenReturn("spy");
+        Assert.assertEquals("spy", proxy.name());
+    }
+
+    @Test
+    public void stubbingOnlyInterceptsCurrentThreadTest()
+            throws Exception
+    {
+        Service proxy = MockGo.spy(new Service());
+        Service selector = MockGo.doReturn("stub").when(proxy);
+        //其他线程的调用不会被当前线程的when(proxy)拦截
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Assert.assertEquals("service", executor.submit(proxy::name).get());
+        }
+        finally {
+            executor.shutdown();
+        }
+        selector.name();
+        Assert.assertEquals("stub", proxy.name());
+    }
+
+    @Test
+    public void concurrentStubbingAndInvokeTest()
+            throws Exception
+    {
+        Service proxy = AopGo.proxy(new Service()).build();
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                int id = i;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < 1000; j++) {
+                        if (id % 2 == 0) {
+                            AopGo.doAround(joinPoint -> "aop_" + joinPoint.proceed()).when(proxy).name();
+                        }
+                        else {
+                            Assert.assertEquals(3, proxy.add(1, 2));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals("aop_service", proxy.name());
+    }
+
+    public static class Service
+    {
+        public int add(int a, int b)
+        {
+            return a + b;
+        }
+
+        public String name()
+        {
+            return "service";
+        }
+
+        public long inc(long a)
+        {
+            return a + 1;
+        }
+
+        public String join(String a, int b, char c)
+        {
+            return a + b + c;
+        }
+
+        public int sum(int a, int b, int c, int d)
+        {
+            return a + b + c + d;
+        }
+    }
+
+    public static class GapMethodTable
+    {
+        private static final Method _method0 = getMethod("toString");
+        private static final Method _method2 = getMethod("hashCode");
+
+        private static Method getMethod(String name)
+        {
+            try {
+                return Object.class.getMethod(name);
+            }
+            catch (NoSuchMethodException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.mock;
+
+import com.github.harbby.gadtry.aop.AopGo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.github.harbby.gadtry.aop.mock.MockGoArgument.anyInt;
+import static com.github.harbby.gadtry.aop.mock.MockGoArgument.anyString;
+import static com.github.harbby.gadtry.aop.mock.MockGoArgument.eq;
+
+public class InvocationRecorderTest
+{
+    @Test
+    public void verifyTimesTest()
+    {
+        Dao dao = MockGo.record(MockGo.mock(Dao.class));
+        MockGo.when(dao.add(anyInt(), anyInt())).thenReturn(7);
+        Assert.assertEquals(7, dao.add(1, 2));
+        Assert.assertEquals(7, dao.add(3, 4));
+
+        //when(dao.add())中的调用不计数
+        MockGo.verify(dao).times(2).add(anyInt(), anyInt());
+        MockGo.verify(dao).atLeast(1).add(anyInt(), anyInt());
+        MockGo.verify(dao).atMost(2).add(anyInt(), anyInt());
+        MockGo.verify(dao).never().name();
+        //verify中的调用也不计数
+        MockGo.verify(dao).times(2).add(anyInt(), anyInt());
+    }
+
+    @Test
+    public void verifyFailedTest()
+    {
+        Dao dao = MockGo.record(MockGo.mock(Dao.class));
+        dao.name();
+        try {
+            MockGo.verify(dao).times(2).name();
+            Assert.fail();
+        }
+        catch (MockGoException e) {
+            Assert.assertEquals("Dao.name() wanted 2 invocations, but was 1", e.getMessage());
+        }
+    }
+
+    @Test
+    public void verifyArgumentsTest()
+    {
+        Dao dao = MockGo.record(MockGo.mock(Dao.class));
+        dao.add(1, 2);
+        dao.add(1, 3);
+        dao.get("b");
+
+        MockGo.verify(dao).times(1).add(1, 2);
+        MockGo.verify(dao).times(2).add(eq(1), anyInt());
+        MockGo.verify(dao).never().add(2, 2);
+        MockGo.verify(dao).times(1).get("b");
+        MockGo.verify(dao).times(1).get(anyString());
+        try {
+            MockGo.verify(dao).times(1).get("a");
+            Assert.fail();
+        }
+        catch (MockGoException e) {
+            Assert.assertEquals("Dao.get(a) wanted 1 invocations, but was 0", e.getMessage());
+        }
+    }
+
+    @Test
+    public void verifyMixedMatchersTest()
+    {
+        Dao dao = MockGo.record(MockGo.mock(Dao.class));
+        dao.add(1, 2);
+        try {
+            MockGo.verify(dao).times(1).add(1, anyInt());
+            Assert.fail();
+        }
+        catch (MockGoException e) {
+            Assert.assertTrue(e.getMessage().contains("1 matchers for 2 arguments"));
+        }
+    }
+
+    @Test
+    public void verifyArgumentsBeyondCapacityTest()
+    {
+        Dao dao = MockGo.record(MockGo.mock(Dao.class), 2);
+        for (int i = 0; i < 4; i++) {
+            dao.add(i, i);
+        }
+        //不限制参数时计数不受容量限制
+        MockGo.verify(dao).times(4).add(anyInt(), anyInt());
+        try {
+            MockGo.verify(dao).times(1).add(0, 0);
+            Assert.fail();
+        }
+        catch (MockGoException e) {
+            Assert.assertTrue(e.getMessage().contains("larger capacity"));
+        }
+    }
+
+    @Test(expected = MockGoException.class)
+    public void notRecordingTest()
+    {
+        MockGo.verify(MockGo.mock(Dao.class));
+    }
+
+    @Test
+    public void aopGoProxyRecordTest()
+    {
+        DaoImpl proxy = MockGo.record(AopGo.proxy(new DaoImpl())
+                .aop(binder -> binder.doAround(joinPoint -> (int) joinPoint.proceed() * 10).when().add(anyInt(), anyInt()))
+                .build());
+        Assert.assertEquals(30, proxy.add(1, 2));
+        Assert.assertEquals("dao", proxy.name());
+        MockGo.verify(proxy).times(1).add(anyInt(), anyInt());
+        MockGo.verify(proxy).times(1).name();
+    }
+
+    @Test
+    public void ringBufferKeepLatestInvocationsTest()
+    {
+        Dao dao = MockGo.record(MockGo.mock(Dao.class), 4);
+        for (int i = 0; i < 10; i++) {
+            dao.add(i, i);
+        }
+        InvocationRecorder recorder = MockGo.getRecorder(dao);
+        Assert.assertEquals(4, recorder.capacity());
+        Assert.assertEquals(10, recorder.totalCount());
+        List<InvocationRecorder.Invocation> invocations = recorder.getInvocations();
+        Assert.assertEquals(4, invocations.size());
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals("add", invocations.get(i).getMethod().getName());
+            Assert.assertEquals(Arrays.asList(6 + i, 6 + i), Arrays.asList(invocations.get(i).getArgs()));
+            Assert.assertEquals(Thread.currentThread().getId(), invocations.get(i).getThreadId());
+        }
+        recorder.clear();
+        Assert.assertEquals(0, recorder.totalCount());
+        Assert.assertTrue(recorder.getInvocations().isEmpty());
+    }
+
+    @Test
+    public void argsSnapshotTest()
+            throws Exception
+    {
+        InvocationRecorder recorder = new InvocationRecorder(4);
+        Method method = Dao.class.getMethod("add", int.class, int.class);
+        Object[] args = new Object[] {1, 2};
+        recorder.record(method, args);
+        //记录之后修改参数数组不影响已记录的调用
+        args[0] = 100;
+        Assert.assertEquals(Arrays.asList(1, 2), Arrays.asList(recorder.getInvocations().get(0).getArgs()));
+    }
+
+    @Test
+    public void concurrentRecordTest()
+            throws Exception
+    {
+        Dao dao = MockGo.record(MockGo.mock(Dao.class), 1024);
+        int threads = 8;
+        int calls = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < calls; j++) {
+                        dao.add(j, j);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        MockGo.verify(dao).times(threads * calls).add(anyInt(), anyInt());
+        List<InvocationRecorder.Invocation> invocations = MockGo.getRecorder(dao).getInvocations();
+        Assert.assertEquals(1024, invocations.size());
+    }
+
+    @Test
+    public void concurrentSameSlotTest()
+            throws Exception
+    {
+        //capacity为1, 所有写入者竞争同一个槽位, 读到的记录中method, args和线程必须属于同一次调用
+        InvocationRecorder recorder = new InvocationRecorder(1);
+        Method[] methods = {Dao.class.getMethod("add", int.class, int.class), Dao.class.getMethod("name")};
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                Method method = methods[i % 2];
+                futures.add(executor.submit(() -> {
+                    long threadId = Thread.currentThread().getId();
+                    for (int j = 0; j < 100_000; j++) {
+                        recorder.record(method, new Object[] {method.getName(), threadId});
+                    }
+                }));
+            }
+            for (int i = 0; i < 10_000; i++) {
+                for (InvocationRecorder.Invocation invocation : recorder.getInvocations()) {
+                    Assert.assertEquals(invocation.getMethod().getName(), invocation.getArgs()[0]);
+                    Assert.assertEquals(invocation.getThreadId(), invocation.getArgs()[1]);
+                }
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(threads * 100_000, recorder.totalCount());
+    }
+
+    public interface Dao
+    {
+        int add(int a, int b);
+
+        String name();
+
+        String get(String key);
+    }
+
+    public static class DaoImpl
+    {
+        public int add(int a, int b)
+        {
+            return a + b;
+        }
+
+        public String name()
+        {
+            return "dao";
+        }
+    }
+}
@@ -19,9 +19,26 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Collections;
+import java.util.List;
 
 public class MockGoArgumentTest
 {
+    @Test
+    public void eqAndSame()
+    {
+        MockGoArgument.clearMatchers();
+        String value = "a";
+        Assert.assertSame(value, MockGoArgument.eq(value));
+        Assert.assertSame(value, MockGoArgument.same(value));
+        Assert.assertEquals(0, MockGoArgument.anyInt());
+        List<MockGoArgument.ArgumentMatcher> matchers = MockGoArgument.pullMatchers();
+        Assert.assertEquals("[eq(a), same(a), any]", matchers.toString());
+        Assert.assertTrue(matchers.get(0).matches(new String("a")));
+        Assert.assertFalse(matchers.get(1).matches(new String("a")));
+        Assert.assertTrue(matchers.get(2).matches(1));
+        Assert.assertTrue(MockGoArgument.pullMatchers().isEmpty());
+    }
+
     @Test
     public void any()
     {
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.runtime;
+
+import com.github.harbby.gadtry.aop.AopFactory;
+import com.github.harbby.gadtry.aop.AopGo;
+import com.github.harbby.gadtry.aop.ProxyRequest;
+import com.github.harbby.gadtry.aop.impl.JavassistProxy;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+public class MethodInvokerTest
+{
+    @Test
+    public void javassistProxySuperMethodTest()
+            throws Throwable
+    {
+        Service proxy = JavassistProxy.newProxyInstance(ProxyRequest.builder(Service.class)
+                .setInvocationHandler((proxy1, method, args) -> null)
+                .setClassLoader(Service.class.getClassLoader())
+                .build());
+        MethodInvoker invoker = ProxyRuntime.getMethodInvoker(proxy.getClass());
+        Assert.assertSame(invoker, ProxyRuntime.getMethodInvoker(proxy.getClass()));
+
+        Method add = findMethod(proxy.getClass(), "add");
+        Assert.assertEquals(3, invoker.invoke(add, proxy, new Object[] {1, 2}));
+        Assert.assertEquals(6L, invoker.invoke(findMethod(proxy.getClass(), "sum"), proxy, new Object[] {1L, 2L, 3L}));
+        Assert.assertNull(invoker.invoke(findMethod(proxy.getClass(), "touch"), proxy, new Object[] {"a"}));
+        Assert.assertEquals("a", proxy.touched);
+        Assert.assertEquals("[1, 2]", invoker.invoke(findMethod(proxy.getClass(), "join"), proxy, new Object[] {new int[] {1, 2}}));
+    }
+
+    @Test
+    public void invokeByArityTest()
+            throws Throwable
+    {
+        Service proxy = JavassistProxy.newProxyInstance(ProxyRequest.builder(Service.class)
+                .setInvocationHandler((proxy1, method, args) -> null)
+                .setClassLoader(Service.class.getClassLoader())
+                .disableSuperMethod()
+                .build());
+        Service service = new Service();
+        MethodInvoker invoker = ProxyRuntime.getMethodInvoker(proxy.getClass());
+        Method[] methods = ProxyRuntime.getProxyMethods(proxy.getClass());
+        int add = Arrays.asList(methods).indexOf(findMethod(proxy.getClass(), "add"));
+        int sum = Arrays.asList(methods).indexOf(findMethod(proxy.getClass(), "sum"));
+        int touch = Arrays.asList(methods).indexOf(findMethod(proxy.getClass(), "touch"));
+        int fail = Arrays.asList(methods).indexOf(findMethod(proxy.getClass(), "fail"));
+
+        Assert.assertEquals(3, invoker.invoke2(add, service, 1, 2));
+        Assert.assertEquals(6L, invoker.invoke3(sum, service, 1L, 2L, 3L));
+        Assert.assertNull(invoker.invoke1(touch, service, "a"));
+        Assert.assertEquals("a", service.touched);
+        try {
+            invoker.invoke0(fail, service);
+            Assert.fail();
+        }
+        catch (IOException e) {
+            Assert.assertEquals("fail", e.getMessage());
+        }
+        //参数个数与方法不一致时回退到invoke(int, Object, Object[])
+        try {
+            invoker.invoke1(add, service, 1);
+            Assert.fail();
+        }
+        catch (ArrayIndexOutOfBoundsException ignored) {
+        }
+    }
+
+    @Test
+    public void notReflectInvokeTest()
+            throws Throwable
+    {
+        Service proxy = JavassistProxy.newProxyInstance(ProxyRequest.builder(Service.class)
+                .setInvocationHandler((proxy1, method, args) -> null)
+                .setClassLoader(Service.class.getClassLoader())
+                .disableSuperMethod()
+                .build());
+        Service service = new Service();
+        MethodInvoker invoker = ProxyRuntime.getMethodInvoker(proxy.getClass());
+        StackTraceElement[] stackTrace = (StackTraceElement[]) invoker.invoke(findMethod(proxy.getClass(), "stackTrace"), service, new Object[0]);
+        //stackTrace[0] is Service.stackTrace(), the caller must be the generated invoker
+        Assert.assertTrue(stackTrace[1].getClassName().contains("$GadtryInvoker"));
+    }
+
+    @Test
+    public void throwRawExceptionTest()
+            throws Throwable
+    {
+        Service proxy = JavassistProxy.newProxyInstance(ProxyRequest.builder(Service.class)
+                .setInvocationHandler((proxy1, method, args) -> null)
+                .setClassLoader(Service.class.getClassLoader())
+                .disableSuperMethod()
+                .build());
+        MethodInvoker invoker = ProxyRuntime.getMethodInvoker(proxy.getClass());
+        try {
+            invoker.invoke(findMethod(proxy.getClass(), "fail"), new Service(), new Object[0]);
+            Assert.fail();
+        }
+        catch (IOException e) {
+            Assert.assertEquals("fail", e.getMessage());
+        }
+    }
+
+    @Test
+    public void jdkProxyTest()
+            throws Throwable
+    {
+        Callable<String> proxy = (Callable<String>) Proxy.newProxyInstance(Callable.class.getClassLoader(), new Class[] {Callable.class},
+                (proxy1, method, args) -> null);
+        MethodInvoker invoker = ProxyRuntime.getMethodInvoker(proxy.getClass());
+        Method call = Callable.class.getMethod("call");
+        int index = Arrays.asList(ProxyRuntime.getProxyMethods(proxy.getClass())).indexOf(call);
+        Assert.assertTrue(index >= 0);
+        Assert.assertEquals("jdk", invoker.invoke(invoker.getMethod(index), (Callable<String>) () -> "jdk", null));
+    }
+
+    @Test
+    public void jdkProxyHandlerMethodIndexTest()
+            throws Throwable
+    {
+        Method[] handlerMethod = new Method[1];
+        Callable<String> proxy = (Callable<String>) Proxy.newProxyInstance(Callable.class.getClassLoader(), new Class[] {Callable.class},
+                (proxy1, method, args) -> {
+                    handlerMethod[0] = method;
+                    return "hashCode".equals(method.getName()) ? 1 : "proxy";
+                });
+        Assert.assertEquals("proxy", proxy.call());
+        //jdk代理类传入的Method与方法表中的不是同一个对象, 仍然需要找到下标
+        MethodInvoker invoker = ProxyRuntime.getMethodInvoker(proxy.getClass());
+        int index = invoker.getIndex(handlerMethod[0]);
+        Assert.assertTrue(index >= 0);
+        Assert.assertEquals(handlerMethod[0], ProxyRuntime.getProxyMethods(proxy.getClass())[index]);
+        Assert.assertEquals("jdk", invoker.invoke(handlerMethod[0], (Callable<String>) () -> "jdk", null));
+
+        proxy.hashCode();
+        Assert.assertEquals(0, invoker.getIndex(handlerMethod[0]));
+    }
+
+    @Test
+    public void aopFactoryJdkProxyTest()
+    {
+        Supplier<String> proxy = AopFactory.proxy(Supplier.class).byInstance((Supplier<String>) () -> "hello")
+                .whereMethod(methodInfo -> "get".equals(methodInfo.getName()))
+                .around(joinPoint -> joinPoint.proceed() + " world");
+        Assert.assertTrue(Proxy.isProxyClass(proxy.getClass()));
+        Assert.assertEquals("hello world", proxy.get());
+    }
+
+    @Test
+    public void notProxyMethodTest()
+            throws Throwable
+    {
+        Service proxy = JavassistProxy.newProxyInstance(ProxyRequest.builder(Service.class)
+                .setInvocationHandler((proxy1, method, args) -> null)
+                .setClassLoader(Service.class.getClassLoader())
+                .disableSuperMethod()
+                .build());
+        MethodInvoker invoker = ProxyRuntime.getMethodInvoker(proxy.getClass());
+        Method method = Object.class.getMethod("toString");
+        Assert.assertEquals(-1, invoker.getIndex(method));
+        Assert.assertEquals("service", invoker.invoke(method, "service", new Object[0]));
+    }
+
+    @Test
+    public void aopGoProceedTest()
+    {
+        Supplier<String> supplier = () -> "hello";
+        Supplier<String> proxy = AopGo.proxy(Supplier.class).byInstance(supplier)
+                .aop(binder -> binder.doAround(joinPoint -> joinPoint.proceed() + " world").allMethod())
+                .build();
+        Assert.assertEquals("hello world", proxy.get());
+    }
+
+    private static Method findMethod(Class<?> proxyClass, String name)
+    {
+        return Arrays.stream(ProxyRuntime.getProxyMethods(proxyClass))
+                .filter(method -> method.getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("not found method " + name));
+    }
+
+    public static class Service
+    {
+        private String touched;
+
+        public int add(int a, int b)
+        {
+            return a + b;
+        }
+
+        public long sum(long a, long b, long c)
+        {
+            return a + b + c;
+        }
+
+        public void touch(String value)
+        {
+            this.touched = value;
+        }
+
+        public String join(int[] values)
+        {
+            return Arrays.toString(values);
+        }
+
+        public StackTraceElement[] stackTrace()
+        {
+            return new Throwable().getStackTrace();
+        }
+
+        public String fail()
+                throws IOException
+        {
+            throw new IOException("fail");
+        }
+    }
+}
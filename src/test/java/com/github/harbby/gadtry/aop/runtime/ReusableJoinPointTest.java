@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.runtime;
+
+import com.github.harbby.gadtry.aop.AopFactory;
+import com.github.harbby.gadtry.aop.AopGo;
+import com.github.harbby.gadtry.aop.JoinPoint;
+import com.github.harbby.gadtry.aop.aopgo.AroundHandler;
+import com.github.harbby.gadtry.aop.aopgo.BatchAdvice;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.github.harbby.gadtry.aop.mock.MockGoArgument.anyInt;
+
+public class ReusableJoinPointTest
+{
+    @Test
+    public void aopGoReuseViewTest()
+    {
+        List<String> actions = new ArrayList<>();
+        List<Object> views = new ArrayList<>();
+        Service proxy = AopGo.proxy(new Service())
+                .reuseJoinPoint()
+                .aop(binder -> {
+                    binder.doBefore(before -> {
+                        views.add(before);
+                        actions.add("before_" + before.getName() + "_" + before.getArgument(0));
+                    }).when().add(anyInt(), anyInt());
+                    binder.doAfterReturning(returning -> {
+                        views.add(returning);
+                        actions.add("returning_" + returning.getName() + "_" + returning.getValue());
+                    }).when().name();
+                    binder.doAfter(after -> {
+                        views.add(after);
+                        actions.add("after_" + after.getName() + "_" + after.isSuccess() + "_" + after.getThrowable().getMessage());
+                    }).when().fail(anyInt());
+                })
+                .build();
+
+        Assert.assertEquals(3, proxy.add(1, 2));
+        Assert.assertEquals(3, proxy.add(1, 2));
+        Assert.assertEquals("service", proxy.name());
+        try {
+            proxy.fail(1);
+            Assert.fail();
+        }
+        catch (IllegalStateException e) {
+            Assert.assertEquals("fail1", e.getMessage());
+        }
+        Assert.assertEquals(java.util.Arrays.asList("before_add_1", "before_add_1", "returning_name_service", "after_fail_false_fail1"), actions);
+        //同一线程中的调用复用同一个只读视图对象
+        Assert.assertTrue(views.stream().noneMatch(x -> x instanceof com.github.harbby.gadtry.aop.JoinPoint));
+        Assert.assertTrue(views.stream().allMatch(x -> x == views.get(0)));
+    }
+
+    @Test
+    public void reentrantAdviceTest()
+    {
+        List<String> actions = new ArrayList<>();
+        Service service = new Service();
+        Service[] holder = new Service[1];
+        holder[0] = AopFactory.proxy(Service.class)
+                .byInstance(service)
+                .reuseJoinPoint()
+                .after(after -> {
+                    if ("name".equals(after.getName())) {
+                        //advice中再调用代理方法, 外层视图不能被覆盖
+                        holder[0].add(3, 4);
+                    }
+                    actions.add(after.getName() + "_" + after.getValue());
+                });
+        Assert.assertEquals("service", holder[0].name());
+        Assert.assertEquals(java.util.Arrays.asList("add_7", "name_service"), actions);
+    }
+
+    @Test
+    public void acquireAndReleaseTest()
+    {
+        ReusableJoinPoint first = ReusableJoinPoint.acquire(null, null, null, new Object[0]);
+        ReusableJoinPoint second = ReusableJoinPoint.acquire(null, null, null, new Object[0]);
+        Assert.assertNotSame(first, second);
+        second.release();
+        first.release();
+
+        ReusableJoinPoint reused = ReusableJoinPoint.acquire(null, null, null, new Object[0]);
+        Assert.assertSame(first, reused);
+        Assert.assertNull(reused.getView().getValue());
+        reused.release();
+    }
+
+    @Test
+    public void releaseOutOfOrderTest()
+    {
+        ReusableJoinPoint first = ReusableJoinPoint.acquire(null, null, null, new Object[0]);
+        ReusableJoinPoint.acquire(null, null, null, new Object[0]);
+        try {
+            first.release();
+            Assert.fail();
+        }
+        catch (IllegalStateException e) {
+            Assert.assertTrue(e.getMessage().contains("out of order"));
+        }
+        //深度已回退, 不会泄漏
+        Assert.assertSame(first, ReusableJoinPoint.acquire(null, null, null, new Object[0]));
+        first.release();
+        try {
+            first.release();
+            Assert.fail();
+        }
+        catch (IllegalStateException e) {
+            Assert.assertEquals("ReusableJoinPoint already released", e.getMessage());
+        }
+    }
+
+    @Test
+    public void beforeReadOnlyViewTest()
+    {
+        List<com.github.harbby.gadtry.aop.model.Before> views = new ArrayList<>();
+        Service proxy = AopGo.proxy(new Service())
+                .reuseJoinPoint()
+                .aop(binder -> binder.doBefore(views::add).when().name())
+                .build();
+        Service proxy2 = AopGo.proxy(new Service())
+                .aop(binder -> binder.doBefore(views::add).when().name())
+                .build();
+        Assert.assertEquals("service", proxy.name());
+        Assert.assertEquals("service", proxy2.name());
+        //before拿到的视图不能转换为JoinPoint调用proceed()
+        Assert.assertEquals(2, views.size());
+        Assert.assertTrue(views.stream().noneMatch(x -> x instanceof JoinPoint));
+    }
+
+    @Test
+    public void reuseModePerProxyTest()
+    {
+        List<Object> views = new ArrayList<>();
+        Service reuseProxy = AopGo.proxy(new Service())
+                .reuseJoinPoint()
+                .aop(binder -> binder.doAfterReturning(views::add).when().name())
+                .build();
+        Service proxy = AopGo.proxy(new Service())
+                .aop(binder -> binder.doAfterReturning(views::add).when().name())
+                .build();
+        reuseProxy.name();
+        reuseProxy.name();
+        proxy.name();
+        proxy.name();
+        Assert.assertSame(views.get(0), views.get(1));
+        //没有开启复用模式的代理每次调用创建新的视图
+        Assert.assertNotSame(views.get(2), views.get(3));
+        Assert.assertNotSame(views.get(0), views.get(2));
+    }
+
+    @Test
+    public void escapingAdviceNotReusedTest()
+    {
+        List<JoinPoint> points = new ArrayList<>();
+        List<Object> views = new ArrayList<>();
+        BatchAdvice<Integer, Integer> batch = BatchAdvice.<Integer, Integer>builder(keys -> Collections.singletonMap(keys.get(0), 10))
+                .maxBatchSize(1)
+                .build();
+        Service proxy = AopGo.proxy(new Service())
+                .reuseJoinPoint()
+                .aop(binder -> {
+                    binder.doAround((AroundHandler & ReusableJoinPoint.EscapingAdvice) joinPoint -> {
+                        points.add(joinPoint);
+                        return joinPoint.proceed();
+                    }).when().name();
+                    //与EscapingAdvice在同一条链中的advice也不使用复用的视图
+                    binder.doAfterReturning(views::add).when().name();
+                    binder.doAsyncAfterReturning(views::add).when().add(anyInt(), anyInt());
+                    binder.doBatch(batch).when().get(anyInt());
+                })
+                .build();
+        proxy.name();
+        proxy.name();
+        Assert.assertEquals(2, points.size());
+        Assert.assertNotSame(points.get(0), points.get(1));
+        Assert.assertTrue(points.stream().noneMatch(JoinPoint::isReusable));
+        Assert.assertNotSame(views.get(0), views.get(1));
+
+        Assert.assertEquals(3, proxy.add(1, 2));
+        Assert.assertEquals(10, proxy.get(1));
+        Assert.assertFalse(ReusableJoinPoint.canReuse(batch));
+    }
+
+    public static class Service
+    {
+        public int add(int a, int b)
+        {
+            return a + b;
+        }
+
+        public String name()
+        {
+            return "service";
+        }
+
+        public int get(int key)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public void fail(int code)
+        {
+            throw new IllegalStateException("fail" + code);
+        }
+    }
+}
@@ -269,4 +269,25 @@ public class AopGoSerializeTest
         byte[] bytes = Serializables.serialize((Serializable) proxy);
         Assert.assertTrue(Serializables.byteToObject(bytes) instanceof Function);
     }
+
+    @Test
+    public void serializeByMethodIndexTest()
+            throws Exception
+    {
+        AbstractClass proxy = AopGo.proxy(AbstractClass.class)
+                .byInstance(new AbstractClass.ExtendsClass())
+                .aop(binder -> {
+                    binder.doAround(joinPoint -> "aop_" + joinPoint.proceed()).when().getName();
+                    binder.doAround(joinPoint -> (int) joinPoint.proceed() + 1).when().getAge();
+                }).build();
+
+        AbstractClass serialized = Serializables.byteToObject(Serializables.serialize(proxy));
+        Assert.assertEquals("aop_" + new AbstractClass.ExtendsClass().getName(), serialized.getName());
+        Assert.assertEquals(19, serialized.getAge());
+        Assert.assertEquals("desc", serialized.getDesc());
+        //反序列化后的advice绑定到同一个代理类方法表中的Method上
+        AopInvocationHandler handler = (AopInvocationHandler) ((ProxyHandler) serialized).getHandler();
+        Assert.assertEquals(getAopInvocationHandlerMethodMap((AopInvocationHandler) ((ProxyHandler) proxy).getHandler()).keySet(),
+                getAopInvocationHandlerMethodMap(handler).keySet());
+    }
 }
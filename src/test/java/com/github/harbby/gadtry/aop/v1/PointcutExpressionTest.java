@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.aop.v1;
+
+import com.github.harbby.gadtry.aop.AopFactory;
+import com.github.harbby.gadtry.aop.model.MethodInfo;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class PointcutExpressionTest
+{
+    private static boolean matches(String expression, Class<?> aClass, String methodName, Class<?>... parameterTypes)
+            throws NoSuchMethodException
+    {
+        return PointcutExpression.compile(expression)
+                .matches(aClass, MethodInfo.of(aClass.getMethod(methodName, parameterTypes)));
+    }
+
+    @Test
+    public void executionTest()
+            throws NoSuchMethodException
+    {
+        Assert.assertTrue(matches("execution(* java.util..*Set.add(..))", HashSet.class, "add", Object.class));
+        Assert.assertTrue(matches("execution(boolean java.util.*.add*(Object))", HashSet.class, "add", Object.class));
+        Assert.assertTrue(matches("execution(public * *(*))", HashSet.class, "add", Object.class));
+        Assert.assertFalse(matches("execution(* java.util..*Map.add(..))", HashSet.class, "add", Object.class));
+        Assert.assertFalse(matches("execution(void java.util.HashSet.add(..))", HashSet.class, "add", Object.class));
+        Assert.assertFalse(matches("execution(* java.util.HashSet.add())", HashSet.class, "add", Object.class));
+        Assert.assertTrue(matches("execution(* java..*(..))", HashMap.class, "put", Object.class, Object.class));
+        Assert.assertTrue(matches("execution(* *.put(Object, ..))", HashMap.class, "put", Object.class, Object.class));
+        Assert.assertFalse(matches("execution(* *.put(String, ..))", HashMap.class, "put", Object.class, Object.class));
+    }
+
+    @Test
+    public void genericParametersTest()
+            throws NoSuchMethodException
+    {
+        Assert.assertTrue(matches("execution(* *(java.util.Map<String, Integer>, ..))", PointcutExpressionTest.class, "generic", Map.class, List.class));
+        Assert.assertTrue(matches("execution(java.util.Map<String, List<Integer>> generic(Map<String, Integer>, List<Map<String, Integer>>))",
+                PointcutExpressionTest.class, "generic", Map.class, List.class));
+        Assert.assertTrue(matches("execution(Map <String, List<Integer>> *.generic(*, List))", PointcutExpressionTest.class, "generic", Map.class, List.class));
+        Assert.assertFalse(matches("execution(* *(Map<String, Integer>))", PointcutExpressionTest.class, "generic", Map.class, List.class));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unbalancedGenericTest()
+    {
+        PointcutExpression.compile("execution(* *(Map<String, Integer))");
+    }
+
+    @Test
+    public void booleanExpressionTest()
+            throws NoSuchMethodException
+    {
+        String expression = "within(java.util..*) && (execution(* get*(..)) || execution(* put(..))) && !execution(* *(int))";
+        Assert.assertTrue(matches(expression, HashMap.class, "get", Object.class));
+        Assert.assertTrue(matches(expression, HashMap.class, "put", Object.class, Object.class));
+        Assert.assertFalse(matches(expression, HashMap.class, "remove", Object.class));
+        Assert.assertFalse(matches(expression, ArrayList.class, "get", int.class));
+        Assert.assertFalse(matches(expression, PointcutExpressionTest.class, "get"));
+    }
+
+    @Test
+    public void annotationTest()
+            throws NoSuchMethodException
+    {
+        Assert.assertTrue(matches("@annotation(org.junit.Ignore)", PointcutExpressionTest.class, "get"));
+        Assert.assertTrue(matches("@annotation(Ignore) && execution(String *())", PointcutExpressionTest.class, "get"));
+        Assert.assertFalse(matches("@annotation(org.junit.Test)", PointcutExpressionTest.class, "get"));
+    }
+
+    @Test
+    public void matchesClassTest()
+    {
+        PointcutExpression expression = PointcutExpression.compile("execution(* java.util.*Set.add(..))");
+        Assert.assertTrue(expression.matchesClass(HashSet.class));
+        Assert.assertFalse(expression.matchesClass(HashMap.class));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void badExpressionTest()
+    {
+        PointcutExpression.compile("execution(* *(..)) &&");
+    }
+
+    @Test
+    public void aopFactoryBindTest()
+    {
+        List<String> actions = new ArrayList<>();
+        AopFactory aopFactory = AopFactory.create(binder -> {
+            binder.bind("addMethod", "execution(boolean java.util..*Set.add(..))")
+                    .before(before -> actions.add("before_" + before.getName()));
+        });
+        Set<String> set = aopFactory.proxy(Set.class, new HashSet<>());
+        set.add("a");
+        set.isEmpty();
+        Assert.assertEquals(java.util.Arrays.asList("before_add"), actions);
+
+        Map<String, String> map = aopFactory.proxy(Map.class, new HashMap<>());
+        Assert.assertFalse(java.lang.reflect.Proxy.isProxyClass(map.getClass()));
+    }
+
+    @Test
+    public void aopFactoryMergeTest()
+    {
+        List<String> actions = new ArrayList<>();
+        AopFactory aopFactory = AopFactory.create(binder -> {
+            binder.bind("addMethod", "execution(boolean java.util..*Set.add(..))")
+                    .before(before -> actions.add("add_" + before.getName()));
+            binder.bind("allMethod", "within(java.util.HashSet)")
+                    .around(joinPoint -> {
+                        actions.add("around_" + joinPoint.getMethod().getName());
+                        return joinPoint.proceed();
+                    });
+        });
+        Set<String> set = aopFactory.proxy(Set.class, new HashSet<>());
+        Assert.assertTrue(set.add("a"));
+        Assert.assertFalse(set.isEmpty());
+        Assert.assertEquals(java.util.Arrays.asList("add_add", "around_add", "around_isEmpty"), actions);
+    }
+
+    public static Map<String, List<Integer>> generic(Map<String, Integer> map, List<Map<String, Integer>> list)
+    {
+        return null;
+    }
+
+    @Ignore
+    public String get()
+    {
+        return "hello";
+    }
+}
@@ -19,9 +19,11 @@ import com.github.harbby.gadtry.aop.AopFactory;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.lang.ref.WeakReference;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 public class BindMappingTest
 {
@@ -35,6 +37,45 @@ public class BindMappingTest
         });
     }
 
+    @Test(timeout = 30_000)
+    public void factoryNotRetainedAfterLookupTest()
+            throws InterruptedException
+    {
+        //查找结果不能缓存在被绑定的Class上, 否则factory和它的单例在类卸载前都不能回收
+        WeakReference<Object> singleton = createAndLookup();
+        while (singleton.get() != null) {
+            System.gc();
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    private static WeakReference<Object> createAndLookup()
+    {
+        IocFactory iocFactory = IocFactory.create(binder -> binder.bind(LeakService.class).withSingle());
+        Assert.assertNull(iocFactory.getAllBeans().get(HashMap.class));
+        return new WeakReference<>(iocFactory.getInstance(LeakService.class));
+    }
+
+    @Test
+    public void lookupTest()
+    {
+        BindMapping bindMapping = BindMapping.create(binder -> {
+            binder.bind(HashMap.class).withSingle();
+            binder.bind(Map.class, new HashMap());
+            binder.bind(Properties.class).noScope();
+            binder.bind(LeakService.class).withSingle();
+        });
+        Assert.assertNotNull(bindMapping.get(HashMap.class));
+        Assert.assertNotNull(bindMapping.get(Map.class));
+        Assert.assertNotNull(bindMapping.get(Properties.class));
+        Assert.assertNotNull(bindMapping.get(LeakService.class));
+        Assert.assertNull(bindMapping.get(String.class));
+    }
+
+    public static class LeakService
+    {
+    }
+
     @Test
     public void bindMappingToString()
     {
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.ioc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class DependencyGraphTest
+{
+    @Test
+    public void findAllCyclesTest()
+    {
+        DependencyGraph graph = new DependencyGraph();
+        //Integer -> Long -> Short -> Integer, Double -> Double, String -> Integer 不在环中
+        graph.addEdge(Integer.class, Long.class);
+        graph.addEdge(Long.class, Short.class);
+        graph.addEdge(Short.class, Integer.class);
+        graph.addEdge(String.class, Integer.class);
+        graph.addEdge(Double.class, Double.class);
+        graph.addEdge(Float.class, Byte.class);
+
+        List<List<Class<?>>> cycles = graph.findCycles();
+        Assert.assertEquals(2, cycles.size());
+        Assert.assertEquals(Arrays.asList(Integer.class, Long.class, Short.class), cycles.get(0));
+        Assert.assertEquals(Arrays.asList(Double.class), cycles.get(1));
+        Assert.assertEquals("[java.lang.Double -> java.lang.Double]", DependencyGraph.format(cycles.subList(1, 2)));
+    }
+
+    @Test
+    public void acyclicGraphTest()
+    {
+        DependencyGraph graph = new DependencyGraph();
+        graph.addEdge(Integer.class, Long.class);
+        graph.addEdge(Integer.class, Short.class);
+        graph.addEdge(Long.class, Short.class);
+        graph.addNode(String.class);
+        Assert.assertTrue(graph.findCycles().isEmpty());
+    }
+}
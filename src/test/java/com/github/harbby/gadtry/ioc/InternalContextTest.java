@@ -15,6 +15,7 @@
  */
 package com.github.harbby.gadtry.ioc;
 
+import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
@@ -67,6 +68,82 @@ public class InternalContextTest
         context.get(DeadDependency3.class);
     }
 
+    @Test
+    public void injectionPlanTest()
+    {
+        BindMapping bindMapping = BindMapping.create(binder -> {});
+        InternalContext context = InternalContext.of(bindMapping, aClass -> null);
+        Service service1 = context.getByNew(Service.class);
+        Service service2 = context.getByNew(Service.class);
+        Assert.assertNotSame(service1, service2);
+        Assert.assertNotNull(service1.hashSet);
+        Assert.assertNotNull(service1.dependency);
+        Assert.assertSame(service1, service1.self);
+        //构造器和@Autowired字段只在第一次创建时查找
+        Assert.assertSame(InjectionPlan.of(Service.class), InjectionPlan.of(Service.class));
+        Assert.assertEquals(1, InjectionPlan.of(Service.class).getParameterTypes().length);
+        Assert.assertEquals(2, InjectionPlan.of(Service.class).getFieldTypes().length);
+    }
+
+    @Test
+    public void staticAutowiredFieldTest()
+    {
+        BindMapping bindMapping = BindMapping.create(binder -> {});
+        InternalContext context = InternalContext.of(bindMapping, aClass -> null);
+        StaticFieldService.dependency = null;
+        StaticFieldService service = context.getByNew(StaticFieldService.class);
+        Assert.assertNotNull(service);
+        Assert.assertNotNull(StaticFieldService.dependency);
+        Assert.assertFalse(InjectionPlan.of(StaticFieldService.class).isGenerated());
+    }
+
+    @Test
+    public void constructorExceptionTest()
+    {
+        BindMapping bindMapping = BindMapping.create(binder -> {});
+        InternalContext context = InternalContext.of(bindMapping, aClass -> null);
+        try {
+            context.get(ErrorService.class);
+            Assert.fail();
+        }
+        catch (UnsupportedOperationException e) {
+            Assert.assertEquals("error service", e.getMessage());
+        }
+    }
+
+    public static class Service
+    {
+        private final HashSet<?> hashSet;
+        @Autowired
+        private Dependency dependency;
+        @Autowired
+        private Service self;
+
+        @Autowired
+        public Service(HashSet<?> hashSet)
+        {
+            this.hashSet = hashSet;
+        }
+    }
+
+    public static class Dependency
+    {
+    }
+
+    public static class StaticFieldService
+    {
+        @Autowired
+        private static Dependency dependency;
+    }
+
+    public static class ErrorService
+    {
+        public ErrorService()
+        {
+            throw new UnsupportedOperationException("error service");
+        }
+    }
+
     public static class DeadDependency1
     {
         @Autowired
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.ioc;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+
+public class IocFactoryProcessorTest
+{
+    private static final String SOURCE = "package gadtry.ioc.gen;\n" +
+            "\n" +
+            "import com.github.harbby.gadtry.ioc.Autowired;\n" +
+            "import java.util.HashSet;\n" +
+            "\n" +
+            "public class GenService\n" +
+            "{\n" +
+            "    @Autowired\n" +
+            "    Dependency dependency;\n" +
+            "    @Autowired\n" +
+            "    GenService self;\n" +
+            "    private final HashSet<String> set;\n" +
+            "    private final int age;\n" +
+            "\n" +
+            "    @Autowired\n" +
+            "    public GenService(HashSet<String> set, Integer age)\n" +
+            "    {\n" +
+            "        this.set = set;\n" +
+            "        this.age = age;\n" +
+            "    }\n" +
+            "\n" +
+            "    public static class Dependency {}\n" +
+            "\n" +
+            "    public static class PrivateField\n" +
+            "    {\n" +
+            "        @Autowired\n" +
+            "        private Dependency dependency;\n" +
+            "    }\n" +
+            "}\n";
+
+    @Test
+    public void generateFactoryTest()
+            throws Exception
+    {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assume.assumeNotNull(compiler);
+        File dir = Files.createTempDirectory("gadtry-ioc-gen").toFile();
+        File sourceFile = new File(dir, "gadtry/ioc/gen/GenService.java");
+        Assert.assertTrue(sourceFile.getParentFile().mkdirs());
+        Files.write(sourceFile.toPath(), SOURCE.getBytes(StandardCharsets.UTF_8));
+
+        int code = compiler.run(null, null, null,
+                "-d", dir.getPath(),
+                "-classpath", System.getProperty("java.class.path"),
+                "-processor", IocFactoryProcessor.class.getName(),
+                "-A" + IocFactoryProcessor.GENERATE_OPTION + "=true",
+                sourceFile.getPath());
+        Assert.assertEquals(0, code);
+        Assert.assertTrue(new File(dir, "gadtry/ioc/gen/GenService" + InjectionFactory.CLASS_NAME_SUFFIX + ".class").exists());
+        //private字段不能在生成的代码中注入, 使用反射
+        Assert.assertFalse(new File(dir, "gadtry/ioc/gen/GenService$PrivateField" + InjectionFactory.CLASS_NAME_SUFFIX + ".class").exists());
+
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[] {dir.toURI().toURL()}, getClass().getClassLoader())) {
+            Class<?> serviceClass = classLoader.loadClass("gadtry.ioc.gen.GenService");
+            Assert.assertTrue(InjectionPlan.of(serviceClass).isGenerated());
+            Assert.assertFalse(InjectionPlan.of(classLoader.loadClass("gadtry.ioc.gen.GenService$PrivateField")).isGenerated());
+
+            InternalContext context = InternalContext.of(BindMapping.create(binder -> binder.bind(Integer.class, 18)), aClass -> null);
+            Object service = context.get(serviceClass);
+            Assert.assertTrue(getField(service, "set") instanceof HashSet);
+            Assert.assertEquals(18, getField(service, "age"));
+            Assert.assertNotNull(getField(service, "dependency"));
+            Assert.assertSame(service, getField(service, "self"));
+        }
+    }
+
+    @Test
+    public void disabledByDefaultTest()
+            throws Exception
+    {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assume.assumeNotNull(compiler);
+        File dir = Files.createTempDirectory("gadtry-ioc-gen").toFile();
+        File sourceFile = new File(dir, "gadtry/ioc/gen/GenService.java");
+        Assert.assertTrue(sourceFile.getParentFile().mkdirs());
+        Files.write(sourceFile.toPath(), SOURCE.getBytes(StandardCharsets.UTF_8));
+
+        //没有 -Agadtry.ioc.generateFactory=true 时不生成factory
+        int code = compiler.run(null, null, null,
+                "-d", dir.getPath(),
+                "-classpath", System.getProperty("java.class.path"),
+                "-processor", IocFactoryProcessor.class.getName(),
+                sourceFile.getPath());
+        Assert.assertEquals(0, code);
+        Assert.assertTrue(new File(dir, "gadtry/ioc/gen/GenService.class").exists());
+        Assert.assertFalse(new File(dir, "gadtry/ioc/gen/GenService" + InjectionFactory.CLASS_NAME_SUFFIX + ".class").exists());
+    }
+
+    private static Object getField(Object instance, String name)
+            throws Exception
+    {
+        Field field = instance.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(instance);
+    }
+}
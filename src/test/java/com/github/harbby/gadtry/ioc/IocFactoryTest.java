@@ -71,6 +71,77 @@ public class IocFactoryTest
         }
     }
 
+    @Test
+    public void createReportsAllConstructorCyclesTest()
+    {
+        try {
+            IocFactory.create(binder -> {
+                binder.bind(CycleA.class).withSingle();
+                binder.bind(CycleC.class).noScope();
+                binder.bind(SelfCycle.class).withSingle();
+            });
+            Assert.fail();
+        }
+        catch (InjectorException e) {
+            Assert.assertTrue(e.getMessage().contains(CycleA.class.getName() + " -> " + CycleB.class.getName() + " -> " + CycleA.class.getName()));
+            Assert.assertTrue(e.getMessage().contains(CycleC.class.getName() + " -> " + CycleD.class.getName() + " -> " + CycleC.class.getName()));
+            Assert.assertTrue(e.getMessage().contains(SelfCycle.class.getName() + " -> " + SelfCycle.class.getName()));
+        }
+    }
+
+    @Test
+    public void createCycleCutByInstanceBindingTest()
+    {
+        CycleB cycleB = new CycleB(null);
+        IocFactory iocFactory = IocFactory.create(binder -> {
+            binder.bind(CycleA.class).withSingle();
+            binder.bind(CycleB.class, cycleB);
+        });
+        Assert.assertSame(cycleB, iocFactory.getInstance(CycleA.class).cycleB);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void getNotRegisteredCycleReturnError()
+    {
+        IocFactory iocFactory = IocFactory.create();
+        iocFactory.getInstance(CycleC.class);
+    }
+
+    public static class CycleA
+    {
+        private final CycleB cycleB;
+
+        @Autowired
+        public CycleA(CycleB cycleB)
+        {
+            this.cycleB = cycleB;
+        }
+    }
+
+    public static class CycleB
+    {
+        @Autowired
+        public CycleB(CycleA cycleA) {}
+    }
+
+    public static class CycleC
+    {
+        @Autowired
+        public CycleC(HashSet<?> hashSet, CycleD cycleD) {}
+    }
+
+    public static class CycleD
+    {
+        @Autowired
+        public CycleD(CycleC cycleC) {}
+    }
+
+    public static class SelfCycle
+    {
+        @Autowired
+        public SelfCycle(SelfCycle selfCycle) {}
+    }
+
     public static class DeadDependency1
     {
         @Autowired private DeadDependency2 deadDependency2;
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.ioc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SingletonCreatorTest
+{
+    @Test
+    public void concurrentGetCreatesOnceTest()
+            throws Exception
+    {
+        AtomicInteger createCount = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        SingletonCreator<Object> creator = new SingletonCreator<>(Object.class, () -> {
+            createCount.incrementAndGet();
+            return new Object();
+        });
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return creator.get();
+                }));
+            }
+            start.countDown();
+            Object instance = creator.get();
+            for (Future<Object> future : futures) {
+                Assert.assertSame(instance, future.get());
+            }
+            Assert.assertEquals(1, createCount.get());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void nullValueIsCachedTest()
+    {
+        AtomicInteger createCount = new AtomicInteger();
+        SingletonCreator<Object> creator = new SingletonCreator<>(Object.class, () -> {
+            createCount.incrementAndGet();
+            return null;
+        });
+        Assert.assertNull(creator.get());
+        Assert.assertNull(creator.get());
+        Assert.assertEquals(1, createCount.get());
+    }
+
+    @Test
+    public void failedCreateRetriesTest()
+    {
+        AtomicInteger createCount = new AtomicInteger();
+        SingletonCreator<String> creator = new SingletonCreator<>(String.class, () -> {
+            if (createCount.incrementAndGet() == 1) {
+                throw new UnsupportedOperationException("first create failed");
+            }
+            return "done";
+        });
+        try {
+            creator.get();
+            Assert.fail();
+        }
+        catch (UnsupportedOperationException e) {
+            Assert.assertEquals("first create failed", e.getMessage());
+        }
+        Assert.assertEquals("done", creator.get());
+        Assert.assertEquals("done", creator.get());
+        Assert.assertEquals(2, createCount.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void reentrantGetReturnErrorTest()
+    {
+        AtomicReference<SingletonCreator<Object>> self = new AtomicReference<>();
+        self.set(new SingletonCreator<>(Object.class, () -> self.get().get()));
+        self.get().get();
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.ioc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class SingletonInitializerTest
+{
+    private static final List<String> created = Collections.synchronizedList(new ArrayList<>());
+    private static volatile CountDownLatch latch;
+
+    @Test
+    public void parallelEagerInitTest()
+    {
+        created.clear();
+        //Cache和Pool互相不依赖, 只有并发创建时两者的构造器才能都通过latch
+        latch = new CountDownLatch(2);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            IocFactory iocFactory = IocFactory.createEager(executor, binder -> {
+                binder.bind(Service.class).withSingle();
+                binder.bind(Cache.class).withSingle();
+                binder.bind(Pool.class).withSingle();
+            });
+            Assert.assertEquals(3, created.size());
+            //Service依赖的单例先创建
+            Assert.assertEquals("service", created.get(2));
+            Assert.assertTrue(created.containsAll(Arrays.asList("cache", "pool")));
+
+            Service service = iocFactory.getInstance(Service.class);
+            Assert.assertSame(service, iocFactory.getInstance(Service.class));
+            Assert.assertSame(iocFactory.getInstance(Cache.class), service.cache);
+            Assert.assertSame(iocFactory.getInstance(Pool.class), service.worker.pool);
+            Assert.assertEquals(3, created.size());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void eagerInitErrorTest()
+    {
+        try {
+            IocFactory.createEager(binder -> binder.bind(ErrorBean.class).withSingle());
+            Assert.fail();
+        }
+        catch (UnsupportedOperationException e) {
+            Assert.assertEquals("init failed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void lazyByDefaultTest()
+    {
+        created.clear();
+        IocFactory iocFactory = IocFactory.create(binder -> binder.bind(Cache.class).withSingle());
+        Assert.assertTrue(created.isEmpty());
+        Assert.assertEquals(Collections.singleton(Cache.class), iocFactory.getAllBeans().getSingletons());
+    }
+
+    private static void await()
+    {
+        CountDownLatch latch = SingletonInitializerTest.latch;
+        if (latch == null) {
+            return;
+        }
+        latch.countDown();
+        try {
+            Assert.assertTrue("singletons are not created concurrently", latch.await(10, TimeUnit.SECONDS));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static class Cache
+    {
+        public Cache()
+        {
+            await();
+            created.add("cache");
+        }
+    }
+
+    public static class Pool
+    {
+        public Pool()
+        {
+            await();
+            created.add("pool");
+        }
+    }
+
+    /**
+     * 非单例, Service通过它间接依赖Pool
+     */
+    public static class Worker
+    {
+        private final Pool pool;
+
+        @Autowired
+        public Worker(Pool pool)
+        {
+            this.pool = pool;
+        }
+    }
+
+    public static class Service
+    {
+        private final Cache cache;
+        @Autowired
+        private Worker worker;
+
+        @Autowired
+        public Service(Cache cache)
+        {
+            this.cache = cache;
+            created.add("service");
+        }
+    }
+
+    public static class ErrorBean
+    {
+        public ErrorBean()
+        {
+            throw new UnsupportedOperationException("init failed");
+        }
+    }
+}
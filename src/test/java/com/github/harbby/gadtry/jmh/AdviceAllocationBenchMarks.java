@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jmh;
+
+import com.github.harbby.gadtry.aop.AopGo;
+import com.github.harbby.gadtry.aop.aopgo.AopBuilder;
+import com.github.harbby.gadtry.aop.runtime.ReusableJoinPoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.github.harbby.gadtry.aop.mock.MockGoArgument.anyInt;
+
+/**
+ * 对比每种advice在普通模式和 {@link ReusableJoinPoint} 复用模式下的开销, 使用gc profiler查看 gc.alloc.rate.norm (bytes/op)
+ * <p>
+ * jdk8, 单核, -f 1 -wi 3 -i 5 -prof gc (ns/op, B/op):
+ * <pre>
+ * reuseView        false               true
+ * before           18.236 ± 10.538 24   28.142 ± 11.313 24
+ * after            20.897 ±  6.933 56   30.197 ± 20.762 24
+ * afterReturning   21.149 ± 13.973 24   23.414 ±  5.298 24
+ * afterThrowing    17.965 ±  3.793 56   27.995 ± 29.247 24
+ * </pre>
+ * 复用模式去掉了After/AfterThrowing的模型对象(32 B/op), 剩余的24 B/op不是advice视图分配的,
+ * 来自代理方法调用本身. 在单核机器上耗时的差异在误差范围内
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AdviceAllocationBenchMarks
+{
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(AdviceAllocationBenchMarks.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .shouldFailOnError(true)
+                .build();
+        new Runner(opt).run();
+    }
+
+    public static class Dao
+    {
+        public int before(int a)
+        {
+            return a;
+        }
+
+        public int after(int a)
+        {
+            return a;
+        }
+
+        public int afterReturning(int a)
+        {
+            return a;
+        }
+
+        public int afterThrowing(int a)
+        {
+            return a;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan
+    {
+        @Param({"false", "true"})
+        public boolean reuseView;
+        public Dao proxy;
+        public long counter;
+        public int a = 1;
+
+        @Setup
+        public void setUp()
+        {
+            AopBuilder<Dao> builder = AopGo.proxy(new Dao());
+            if (reuseView) {
+                builder.reuseJoinPoint();
+            }
+            proxy = builder.aop(binder -> {
+                binder.doBefore(before -> counter++).when().before(anyInt());
+                binder.doAfter(after -> counter++).when().after(anyInt());
+                binder.doAfterReturning(returning -> counter++).when().afterReturning(anyInt());
+                binder.doAfterThrowing(throwing -> counter++).when().afterThrowing(anyInt());
+            }).build();
+        }
+    }
+
+    @Benchmark
+    public int before(ExecutionPlan plan)
+    {
+        return plan.proxy.before(plan.a);
+    }
+
+    @Benchmark
+    public int after(ExecutionPlan plan)
+    {
+        return plan.proxy.after(plan.a);
+    }
+
+    @Benchmark
+    public int afterReturning(ExecutionPlan plan)
+    {
+        return plan.proxy.afterReturning(plan.a);
+    }
+
+    @Benchmark
+    public int afterThrowing(ExecutionPlan plan)
+    {
+        return plan.proxy.afterThrowing(plan.a);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jmh;
+
+import com.github.harbby.gadtry.aop.AopGo;
+import com.github.harbby.gadtry.aop.mock.MockGo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.github.harbby.gadtry.aop.mock.MockGoArgument.anyInt;
+
+/**
+ * AopGo({@link com.github.harbby.gadtry.aop.mock.AopGoInvocationHandler}) 与 MockGo.spy 的调用开销对比
+ * <p>
+ * jdk8, 单核, -f 1 -wi 3 -i 5 -prof gc (ns/op, gc.alloc.rate.norm B/op):
+ * <pre>
+ * aopGoAround      19.528 ±  5.080   24
+ * aopGoNoAdvice     9.980 ±  2.184   ≈0
+ * mockGoAround     49.658 ± 13.931   80
+ * mockGoNoAdvice   52.273 ± 24.866   64
+ * </pre>
+ * aopGoNoAdvice不再创建参数数组, 参数也不再由($w)装箱为new Integer(); aopGoAround剩余的24 B/op是JoinPoint需要的参数数组
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AopGoVsMockGoBenchMarks
+{
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(AopGoVsMockGoBenchMarks.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .shouldFailOnError(true)
+                .build();
+        new Runner(opt).run();
+    }
+
+    public static class Dao
+    {
+        public int add(int a, int b)
+        {
+            return a + b;
+        }
+
+        public int plain(int a)
+        {
+            return a;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan
+    {
+        public Dao aopGo;
+        public Dao mockGo;
+        public int a = 1;
+
+        @Setup
+        public void setUp()
+        {
+            aopGo = AopGo.proxy(new Dao())
+                    .aop(binder -> binder.doAround(joinPoint -> joinPoint.proceed()).when().add(anyInt(), anyInt()))
+                    .build();
+            mockGo = MockGo.spy(new Dao());
+            MockGo.doAround(joinPoint -> joinPoint.proceed()).when(mockGo).add(anyInt(), anyInt());
+        }
+    }
+
+    @Benchmark
+    public int aopGoAround(ExecutionPlan plan)
+    {
+        return plan.aopGo.add(plan.a, plan.a);
+    }
+
+    @Benchmark
+    public int mockGoAround(ExecutionPlan plan)
+    {
+        return plan.mockGo.add(plan.a, plan.a);
+    }
+
+    @Benchmark
+    public int aopGoNoAdvice(ExecutionPlan plan)
+    {
+        return plan.aopGo.plain(plan.a);
+    }
+
+    @Benchmark
+    public int mockGoNoAdvice(ExecutionPlan plan)
+    {
+        return plan.mockGo.plain(plan.a);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jmh;
+
+import com.github.harbby.gadtry.aop.AopFactory;
+import com.github.harbby.gadtry.aop.impl.JdkProxy;
+import com.github.harbby.gadtry.aop.model.MethodInfo;
+import com.github.harbby.gadtry.aop.v1.MethodFilter;
+import com.github.harbby.gadtry.function.Function1;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.InvocationHandler;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AopFactory 代理对象中未被切入(filter不匹配)方法的调用开销:
+ * perCallFilter 为每次调用都执行 MethodInfo.of(method) + filter + method.invoke 的旧实现
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CutModeFilterBenchMarks
+{
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(CutModeFilterBenchMarks.class.getSimpleName())
+                .shouldFailOnError(true)
+                .build();
+        new Runner(opt).run();
+    }
+
+    public interface Dao
+    {
+        int add(int a, int b);
+
+        String name();
+    }
+
+    public static class DaoImpl
+            implements Dao
+    {
+        @Override
+        public int add(int a, int b)
+        {
+            return a + b;
+        }
+
+        @Override
+        public String name()
+        {
+            return "dao";
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan
+    {
+        public final DaoImpl target = new DaoImpl();
+        public Dao perCallFilterProxy;
+        public Dao interfaceProxy;
+        public DaoImpl classProxy;
+        public int a = 1;
+        public int b = 2;
+
+        @Setup
+        public void setUp()
+        {
+            @SuppressWarnings("unchecked")
+            Function1<MethodInfo, Boolean> filter = MethodFilter.buildMethodFilter(new Class[] {Deprecated.class}, new Class[] {String.class}, null);
+            InvocationHandler advice = (proxy, method, args) -> method.invoke(target, args);
+            perCallFilterProxy = JdkProxy.newProxyInstance(Dao.class.getClassLoader(), (proxy, method, args) -> {
+                if (filter.apply(MethodInfo.of(method))) {
+                    return advice.invoke(proxy, method, args);
+                }
+                return method.invoke(target, args);
+            }, Dao.class);
+
+            interfaceProxy = AopFactory.proxy(Dao.class).byInstance(target)
+                    .methodAnnotated(Deprecated.class)
+                    .returnType(String.class)
+                    .before(before -> {});
+            classProxy = AopFactory.proxy(DaoImpl.class).byInstance(target)
+                    .methodAnnotated(Deprecated.class)
+                    .returnType(String.class)
+                    .before(before -> {});
+        }
+    }
+
+    @Benchmark
+    public int direct(ExecutionPlan plan)
+    {
+        return plan.target.add(plan.a, plan.b);
+    }
+
+    @Benchmark
+    public int perCallFilter(ExecutionPlan plan)
+    {
+        return plan.perCallFilterProxy.add(plan.a, plan.b);
+    }
+
+    @Benchmark
+    public int interfaceProxyUnadvised(ExecutionPlan plan)
+    {
+        return plan.interfaceProxy.add(plan.a, plan.b);
+    }
+
+    @Benchmark
+    public int classProxyUnadvised(ExecutionPlan plan)
+    {
+        return plan.classProxy.add(plan.a, plan.b);
+    }
+}
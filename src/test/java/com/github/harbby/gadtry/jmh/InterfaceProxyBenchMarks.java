@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jmh;
+
+import com.github.harbby.gadtry.aop.impl.JavassistProxy;
+import com.github.harbby.gadtry.aop.impl.JdkProxy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.InvocationHandler;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比接口代理 jdk Proxy 与 javassist生成的匿名类(direct dispatch) 的创建和调用开销
+ * <p>
+ * jdk8, 单核, -f 1 -wi 3 -i 5 (ns/op):
+ * <pre>
+ * anonymousProxyCreate  280.305 ±  98.180
+ * anonymousProxyInvoke   13.050 ±   3.368
+ * jdkProxyCreate         54.113 ±   5.552
+ * jdkProxyInvoke         14.491 ±   6.024
+ * </pre>
+ * handler是普通的InvocationHandler时, 匿名类和jdk Proxy一样调用handler.invoke()并创建参数数组, 调用开销在误差范围内相同,
+ * 创建时还要经过registry查找代理类和拷贝handler. 只有handler实现了DirectHandler时调用才按方法下标分派, 省去参数数组(最多3个参数)
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InterfaceProxyBenchMarks
+{
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(InterfaceProxyBenchMarks.class.getSimpleName())
+                .shouldFailOnError(true)
+                .build();
+        new Runner(opt).run();
+    }
+
+    public interface Dao
+    {
+        int add(int a, int b);
+    }
+
+    public static class DaoImpl
+            implements Dao
+    {
+        @Override
+        public int add(int a, int b)
+        {
+            return a + b;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan
+    {
+        public final Dao target = new DaoImpl();
+        public final InvocationHandler handler = (proxy, method, args) -> method.invoke(target, args);
+        public Dao jdkProxy;
+        public Dao anonymousProxy;
+        public int a = 1;
+        public int b = 2;
+
+        @Setup
+        public void setUp()
+        {
+            ClassLoader loader = Dao.class.getClassLoader();
+            jdkProxy = JdkProxy.newProxyInstance(loader, handler, Dao.class);
+            anonymousProxy = JavassistProxy.newAnonymousProxyInstance(loader, handler, Dao.class);
+        }
+    }
+
+    @Benchmark
+    public Dao jdkProxyCreate(ExecutionPlan plan)
+    {
+        return JdkProxy.newProxyInstance(Dao.class.getClassLoader(), plan.handler, Dao.class);
+    }
+
+    @Benchmark
+    public Dao anonymousProxyCreate(ExecutionPlan plan)
+    {
+        return JavassistProxy.newAnonymousProxyInstance(Dao.class.getClassLoader(), plan.handler, Dao.class);
+    }
+
+    @Benchmark
+    public int jdkProxyInvoke(ExecutionPlan plan)
+    {
+        return plan.jdkProxy.add(plan.a, plan.b);
+    }
+
+    @Benchmark
+    public int anonymousProxyInvoke(ExecutionPlan plan)
+    {
+        return plan.anonymousProxy.add(plan.a, plan.b);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jmh;
+
+import com.github.harbby.gadtry.aop.AopGo;
+import com.github.harbby.gadtry.aop.aopgo.MethodMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MethodMetrics} 在多线程下每次调用增加的开销, metrics 与 noMetrics 的差值即为记录开销
+ * <p>
+ * jdk8, 单核机器, -f 1 -wi 3 -i 5 (ns/op):
+ * <pre>
+ *              -t 1               -t 8(默认)
+ * metrics      101.841 ± 14.728   998.534 ± 92.121
+ * noMetrics     16.958 ± 12.271   186.553 ± 73.889
+ * </pre>
+ * 单线程每次调用约增加85ns, 其中两次System.nanoTime()约80ns(该机器上每次约40ns), 计数本身的开销很小.
+ * 单核上8个线程只是轮流执行, 不能反映多核下的争用情况, 多核机器上需要重新测量
+ */
+@Fork(1)
+@Threads(8)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MethodMetricsBenchMarks
+{
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(MethodMetricsBenchMarks.class.getSimpleName())
+                .shouldFailOnError(true)
+                .build();
+        new Runner(opt).run();
+    }
+
+    public static class Dao
+    {
+        public int add(int a, int b)
+        {
+            return a + b;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan
+    {
+        public final MethodMetrics metrics = new MethodMetrics();
+        public Dao metricsProxy;
+        public Dao noMetricsProxy;
+        public int a = 1;
+
+        @Setup
+        public void setUp()
+        {
+            metricsProxy = AopGo.proxy(new Dao())
+                    .aop(binder -> binder.doMetrics(metrics).allMethod())
+                    .build();
+            noMetricsProxy = AopGo.proxy(new Dao())
+                    .aop(binder -> binder.doAround(joinPoint -> joinPoint.proceed()).allMethod())
+                    .build();
+        }
+    }
+
+    @Benchmark
+    public int metrics(ExecutionPlan plan)
+    {
+        return plan.metricsProxy.add(plan.a, plan.a);
+    }
+
+    @Benchmark
+    public int noMetrics(ExecutionPlan plan)
+    {
+        return plan.noMetricsProxy.add(plan.a, plan.a);
+    }
+}
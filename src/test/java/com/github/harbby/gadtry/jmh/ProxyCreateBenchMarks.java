@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jmh;
+
+import com.github.harbby.gadtry.aop.AopGo;
+import com.github.harbby.gadtry.aop.ProxyRequest;
+import com.github.harbby.gadtry.aop.impl.JavassistProxy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 带target的代理对象(spy/AopGo)的创建开销, 主要是把target的字段复制到代理对象
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProxyCreateBenchMarks
+{
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(ProxyCreateBenchMarks.class.getSimpleName())
+                .shouldFailOnError(true)
+                .build();
+        new Runner(opt).run();
+    }
+
+    public static class Service
+    {
+        private final String name = "service";
+        private final long createTime = System.currentTimeMillis();
+        private int count = 8;
+        private double ratio = 0.5;
+        private boolean enabled = true;
+        private final Object lock = new Object();
+
+        public int add(int a, int b)
+        {
+            return a + b + count;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan
+    {
+        public final Service target = new Service();
+        public final ProxyRequest<Service> request = ProxyRequest.builder(Service.class)
+                .setClassLoader(Service.class.getClassLoader())
+                .setInvocationHandler((proxy, method, args) -> method.invoke(target, args))
+                .setTarget(target)
+                .build();
+    }
+
+    @Benchmark
+    public Service javassistProxyWithTarget(ExecutionPlan plan)
+    {
+        return JavassistProxy.newProxyInstance(plan.request);
+    }
+
+    @Benchmark
+    public Service aopGoProxy(ExecutionPlan plan)
+    {
+        return AopGo.proxy(plan.target)
+                .aop(binder -> binder.doBefore(before -> {}).when().add(0, 0))
+                .build();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2018 The GadTry Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.harbby.gadtry.jmh;
+
+import com.github.harbby.gadtry.aop.ProxyRequest;
+import com.github.harbby.gadtry.aop.impl.DirectHandler;
+import com.github.harbby.gadtry.aop.impl.JavassistProxy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比代理方法经过 InvocationHandler(Method + Object[]) 派发 与 DirectHandler(方法下标 + 按参数个数调用) 派发的开销
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProxyDispatchBenchMarks
+{
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(ProxyDispatchBenchMarks.class.getSimpleName())
+                .shouldFailOnError(true)
+                .build();
+        new Runner(opt).run();
+    }
+
+    public static class Dao
+    {
+        public int add(int a, int b)
+        {
+            return a + b;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan
+    {
+        public final Dao target = new Dao();
+        public Dao handlerProxy;
+        public Dao directProxy;
+        public int a = 1;
+        public int b = 2;
+
+        @Setup
+        public void setUp()
+        {
+            InvocationHandler handler = (proxy, method, args) -> target.add((int) args[0], (int) args[1]);
+            handlerProxy = JavassistProxy.newProxyInstance(ProxyRequest.builder(Dao.class)
+                    .setInvocationHandler(handler)
+                    .setClassLoader(Dao.class.getClassLoader())
+                    .disableSuperMethod()
+                    .build());
+            directProxy = JavassistProxy.newProxyInstance(ProxyRequest.builder(Dao.class)
+                    .setInvocationHandler(new AddDirectHandler(target))
+                    .setClassLoader(Dao.class.getClassLoader())
+                    .disableSuperMethod()
+                    .directDispatch()
+                    .build());
+        }
+    }
+
+    private static class AddDirectHandler
+            implements DirectHandler
+    {
+        private final Dao target;
+
+        private AddDirectHandler(Dao target)
+        {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke0(Object proxy, int methodIndex)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object invoke1(Object proxy, int methodIndex, Object arg0)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object invoke2(Object proxy, int methodIndex, Object arg0, Object arg1)
+        {
+            return target.add((int) arg0, (int) arg1);
+        }
+
+        @Override
+        public Object invoke3(Object proxy, int methodIndex, Object arg0, Object arg1, Object arg2)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object invokeN(Object proxy, int methodIndex, Object[] args)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+            return target.add((int) args[0], (int) args[1]);
+        }
+    }
+
+    @Benchmark
+    public int direct(ExecutionPlan plan)
+    {
+        return plan.target.add(plan.a, plan.b);
+    }
+
+    @Benchmark
+    public int invocationHandlerProxy(ExecutionPlan plan)
+    {
+        return plan.handlerProxy.add(plan.a, plan.b);
+    }
+
+    @Benchmark
+    public int directDispatchProxy(ExecutionPlan plan)
+    {
+        return plan.directProxy.add(plan.a, plan.b);
+    }
+}